@@ -51,4 +51,14 @@ public interface Alarm {
      */
     Long getNodeId();
 
+    /**
+     * The time at which the alarm was received by the datasource. This is used to measure the latency
+     * of the correlation, and is not considered to be part of the state of the alarm.
+     *
+     * @return the ingest time, in milliseconds since the epoch, or null if unknown
+     */
+    default Long getIngestTime() {
+        return null;
+    }
+
 }
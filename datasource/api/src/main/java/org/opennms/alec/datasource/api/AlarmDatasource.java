@@ -29,6 +29,8 @@
 package org.opennms.alec.datasource.api;
 
 import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
 
 public interface AlarmDatasource {
 
@@ -36,6 +38,44 @@ public interface AlarmDatasource {
 
     List<Alarm> getAlarmsAndRegisterHandler(AlarmHandler handler);
 
+    /**
+     * Retrieve the alarms in chunks, allowing these to be processed without holding all of them in memory at once.
+     *
+     * Implementations should override this when they are able to read the alarms incrementally,
+     * by default the complete list is retrieved and then partitioned.
+     *
+     * @param chunkSize maximum number of alarms passed to the consumer at once
+     * @param consumer invoked with every chunk, in turn
+     */
+    default void getAlarmsInChunks(int chunkSize, Consumer<List<Alarm>> consumer) {
+        Chunks.forEachChunk(getAlarms(), chunkSize, consumer);
+    }
+
+    /**
+     * Retrieve the alarms in chunks, see {@link #getAlarmsInChunks(int, Consumer)}, and register the
+     * given handler, guaranteeing that no updates are missed in between.
+     */
+    default void getAlarmsInChunksAndRegisterHandler(AlarmHandler handler, int chunkSize,
+                                                     Consumer<List<Alarm>> consumer) {
+        Chunks.forEachChunk(getAlarmsAndRegisterHandler(handler), chunkSize, consumer);
+    }
+
+    /**
+     * Retrieve the alarms in chunks and register the given handler, see
+     * {@link #getAlarmsInChunksAndRegisterHandler(AlarmHandler, int, Consumer)}, for a handler that can only accept
+     * updates once {@code handlerReady} completes (i.e. once it has processed the alarms).
+     *
+     * Implementations should override this when they are able to hold back the updates made in between until the
+     * handler is ready, instead of blocking on the handler. No updates are missed either way.
+     *
+     * @param handlerReady completes once the handler can accept updates
+     */
+    default void getAlarmsInChunksAndRegisterHandler(AlarmHandler handler, int chunkSize,
+                                                     Consumer<List<Alarm>> consumer,
+                                                     CompletionStage<?> handlerReady) {
+        getAlarmsInChunksAndRegisterHandler(handler, chunkSize, consumer);
+    }
+
     void registerHandler(AlarmHandler handler);
 
     void unregisterHandler(AlarmHandler handler);
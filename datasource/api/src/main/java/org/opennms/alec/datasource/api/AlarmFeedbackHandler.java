@@ -28,9 +28,22 @@
 
 package org.opennms.alec.datasource.api;
 
+import java.util.Collection;
+
 /**
  * The interface defining the callback that will be issued when feedback is received.
  */
 public interface AlarmFeedbackHandler {
     void handleAlarmFeedback(AlarmFeedback alarmFeedback);
+
+    /**
+     * Invoked by datasources that deliver many feedbacks at once.
+     *
+     * Handlers can override this to process the feedback more efficiently than one at a time.
+     *
+     * @param alarmFeedbacks the feedback, in the order in which it was received
+     */
+    default void handleAlarmFeedbacks(Collection<AlarmFeedback> alarmFeedbacks) {
+        alarmFeedbacks.forEach(this::handleAlarmFeedback);
+    }
 }
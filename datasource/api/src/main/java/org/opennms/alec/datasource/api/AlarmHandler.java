@@ -28,10 +28,34 @@
 
 package org.opennms.alec.datasource.api;
 
+import java.util.Collection;
+
 public interface AlarmHandler {
 
     void onAlarmCreatedOrUpdated(Alarm alarm);
 
     void onAlarmCleared(Alarm alarm);
 
+    /**
+     * Invoked by datasources that deliver many alarms at once, i.e. when catching up on a backlog.
+     *
+     * Handlers can override this to process the alarms more efficiently than one at a time.
+     *
+     * @param alarms alarms that were created or updated, in the order in which they were received
+     */
+    default void onAlarmsCreatedOrUpdated(Collection<Alarm> alarms) {
+        alarms.forEach(this::onAlarmCreatedOrUpdated);
+    }
+
+    /**
+     * Invoked by datasources that deliver many alarms at once, i.e. when catching up on a backlog.
+     *
+     * Handlers can override this to process the alarms more efficiently than one at a time.
+     *
+     * @param alarms alarms that were cleared, in the order in which they were received
+     */
+    default void onAlarmsCleared(Collection<Alarm> alarms) {
+        alarms.forEach(this::onAlarmCleared);
+    }
+
 }
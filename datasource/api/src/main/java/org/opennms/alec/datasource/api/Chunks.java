@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Helpers for handing out records in chunks of bounded size.
+ */
+public class Chunks {
+
+    private Chunks() {}
+
+    public static <T> void forEachChunk(List<T> items, int chunkSize, Consumer<List<T>> consumer) {
+        checkChunkSize(chunkSize);
+        for (int i = 0; i < items.size(); i += chunkSize) {
+            consumer.accept(items.subList(i, Math.min(i + chunkSize, items.size())));
+        }
+    }
+
+    private static void checkChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be strictly positive, got: " + chunkSize);
+        }
+    }
+
+    /**
+     * Collects the items in chunks, and passes the chunks on as they fill up.
+     */
+    public static class Collector<T> implements Consumer<T>, AutoCloseable {
+        private final int chunkSize;
+        private final Consumer<List<T>> consumer;
+        private List<T> chunk;
+
+        public Collector(int chunkSize, Consumer<List<T>> consumer) {
+            checkChunkSize(chunkSize);
+            this.chunkSize = chunkSize;
+            this.consumer = Objects.requireNonNull(consumer);
+            chunk = new ArrayList<>();
+        }
+
+        @Override
+        public void accept(T item) {
+            chunk.add(item);
+            if (chunk.size() >= chunkSize) {
+                consumer.accept(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+
+        /**
+         * Pass on the last, possibly partial, chunk.
+         */
+        @Override
+        public void close() {
+            if (!chunk.isEmpty()) {
+                consumer.accept(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+    }
+}
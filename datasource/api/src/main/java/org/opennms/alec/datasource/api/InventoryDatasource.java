@@ -29,6 +29,8 @@
 package org.opennms.alec.datasource.api;
 
 import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
 
 public interface InventoryDatasource {
 
@@ -36,6 +38,44 @@ public interface InventoryDatasource {
 
     List<InventoryObject> getInventoryAndRegisterHandler(InventoryHandler handler);
 
+    /**
+     * Retrieve the inventory in chunks, allowing it to be processed without holding all of it in memory at once.
+     *
+     * Implementations should override this when they are able to read the inventory incrementally,
+     * by default the complete list is retrieved and then partitioned.
+     *
+     * @param chunkSize maximum number of inventory objects passed to the consumer at once
+     * @param consumer invoked with every chunk, in turn
+     */
+    default void getInventoryInChunks(int chunkSize, Consumer<List<InventoryObject>> consumer) {
+        Chunks.forEachChunk(getInventory(), chunkSize, consumer);
+    }
+
+    /**
+     * Retrieve the inventory in chunks, see {@link #getInventoryInChunks(int, Consumer)}, and register the
+     * given handler, guaranteeing that no updates are missed in between.
+     */
+    default void getInventoryInChunksAndRegisterHandler(InventoryHandler handler, int chunkSize,
+                                                        Consumer<List<InventoryObject>> consumer) {
+        Chunks.forEachChunk(getInventoryAndRegisterHandler(handler), chunkSize, consumer);
+    }
+
+    /**
+     * Retrieve the inventory in chunks and register the given handler, see
+     * {@link #getInventoryInChunksAndRegisterHandler(InventoryHandler, int, Consumer)}, for a handler that can only
+     * accept updates once {@code handlerReady} completes (i.e. once it has processed the inventory).
+     *
+     * Implementations should override this when they are able to hold back the updates made in between until the
+     * handler is ready, instead of blocking on the handler. No updates are missed either way.
+     *
+     * @param handlerReady completes once the handler can accept updates
+     */
+    default void getInventoryInChunksAndRegisterHandler(InventoryHandler handler, int chunkSize,
+                                                        Consumer<List<InventoryObject>> consumer,
+                                                        CompletionStage<?> handlerReady) {
+        getInventoryInChunksAndRegisterHandler(handler, chunkSize, consumer);
+    }
+
     void registerHandler(InventoryHandler handler);
 
     void unregisterHandler(InventoryHandler handler);
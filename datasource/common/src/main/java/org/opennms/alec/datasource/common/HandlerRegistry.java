@@ -28,11 +28,24 @@
 
 package org.opennms.alec.datasource.common;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,10 +58,35 @@ import org.slf4j.LoggerFactory;
 public class HandlerRegistry<T> {
     private static final Logger LOG = LoggerFactory.getLogger(HandlerRegistry.class);
 
+    public static final int DEFAULT_MAX_REPLAY_LOG_SIZE = 100000;
+
+    private final int maxReplayLogSize;
     private final ReadWriteLock handlerLock = new ReentrantReadWriteLock();
     private final Set<T> handlers = new HashSet<>();
+    /**
+     * Handlers registered via {@link #registerWithReplay} that have not yet caught up with the callbacks that were
+     * made while their snapshot was being delivered.
+     */
+    private final Map<T, ReplayLog<T>> pendingHandlers = new LinkedHashMap<>();
+
+    public HandlerRegistry() {
+        this(DEFAULT_MAX_REPLAY_LOG_SIZE);
+    }
+
+    /**
+     * @param maxReplayLogSize the number of objects buffered for a handler being registered via
+     *                         {@link #registerWithReplay}, past which the callers are blocked until the handler
+     *                         catches up
+     */
+    public HandlerRegistry(int maxReplayLogSize) {
+        if (maxReplayLogSize < 1) {
+            throw new IllegalArgumentException("maxReplayLogSize must be strictly positive: " + maxReplayLogSize);
+        }
+        this.maxReplayLogSize = maxReplayLogSize;
+    }
 
     public void forEach(Consumer<T> consumer) {
+        final List<ReplayLog<T>> replayLogs;
         handlerLock.readLock().lock();
         try {
             handlers.forEach(t -> {
@@ -58,9 +96,85 @@ public class HandlerRegistry<T> {
                     LOG.error("Error occurred on handler {}: {}", t, e.getMessage(), e);
                 }
             });
+            replayLogs = appendToReplayLogs(new Callback<>(consumer));
+        } finally {
+            handlerLock.readLock().unlock();
+        }
+        awaitRoom(replayLogs);
+    }
+
+    /**
+     * Invoke the consumer with a list of objects that were created or updated.
+     *
+     * Handlers that are being registered via {@link #registerWithReplay} will not be passed the objects that they
+     * already know about in the same state.
+     *
+     * @param objects  the created or updated objects
+     * @param consumer callback to make for every handler
+     * @param <P>      type of the objects
+     */
+    public <P> void forEachUpdate(List<P> objects, BiConsumer<T, List<P>> consumer) {
+        forEach(objects, consumer, false);
+    }
+
+    /**
+     * Invoke the consumer with a list of objects that were removed.
+     *
+     * @param objects  the removed objects
+     * @param consumer callback to make for every handler
+     * @param <P>      type of the objects
+     */
+    public <P> void forEachRemoval(List<P> objects, BiConsumer<T, List<P>> consumer) {
+        forEach(objects, consumer, true);
+    }
+
+    private <P> void forEach(List<P> objects, BiConsumer<T, List<P>> consumer, boolean removal) {
+        final List<ReplayLog<T>> replayLogs;
+        handlerLock.readLock().lock();
+        try {
+            handlers.forEach(t -> {
+                try {
+                    consumer.accept(t, objects);
+                } catch (Exception e) {
+                    LOG.error("Error occurred on handler {}: {}", t, e.getMessage(), e);
+                }
+            });
+            replayLogs = appendToReplayLogs(new Callback<>(objects, consumer, removal));
         } finally {
             handlerLock.readLock().unlock();
         }
+        awaitRoom(replayLogs);
+    }
+
+    /**
+     * Must be called while holding the read lock.
+     *
+     * @return the replay logs the callback was appended to
+     */
+    private List<ReplayLog<T>> appendToReplayLogs(Callback<T> callback) {
+        if (pendingHandlers.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<ReplayLog<T>> replayLogs = new ArrayList<>(pendingHandlers.values());
+        replayLogs.forEach(log -> log.add(callback));
+        return replayLogs;
+    }
+
+    /**
+     * Blocks the caller while any of the given replay logs is full. This happens after releasing the read lock, so
+     * that handlers can still be registered and unregistered in the meantime.
+     */
+    private static <T> void awaitRoom(List<ReplayLog<T>> replayLogs) {
+        for (ReplayLog<T> replayLog : replayLogs) {
+            try {
+                replayLog.awaitRoom();
+            } catch (InterruptedException e) {
+                // The callback was already buffered, so nothing is lost
+                LOG.warn("Interrupted while waiting for a handler to catch up.");
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
     }
 
     /**
@@ -82,6 +196,108 @@ public class HandlerRegistry<T> {
         }
     }
 
+    /**
+     * Register the handler, and invoke the given snapshot callback without blocking the callbacks to the other
+     * handlers, see {@link #registerWithReplay(Object, Function, Consumer, CompletionStage)}. The callbacks are
+     * replayed as soon as the snapshot callback returns.
+     */
+    public <P> CompletableFuture<Void> registerWithReplay(T handler, Function<P, Object> keyFunction,
+                                                          Consumer<Consumer<P>> snapshot) {
+        return registerWithReplay(handler, keyFunction, snapshot, CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Register the handler, and invoke the given snapshot callback without blocking the callbacks to the other
+     * handlers.
+     *
+     * The callbacks made while the snapshot is being delivered are buffered, and replayed to the handler in order
+     * once both the snapshot callback returned and the handler is ready. The handler may only be ready once it has
+     * processed the snapshot (i.e. an engine waiting for its initialization to complete). The replay happens on a
+     * separate thread. Objects passed to {@link #forEachUpdate} are de-duplicated against the objects reported by the
+     * snapshot: an object is only replayed if it is not equal to the last state of the object the handler knows about.
+     * The reported objects are retained until the handler has caught up.
+     *
+     * No callback is ever discarded. Once more than {@code maxReplayLogSize} objects are buffered for the handler,
+     * the threads making the callbacks are blocked until the replay catches up.
+     *
+     * @param handler     handler to register
+     * @param keyFunction used to identify the objects reported by the snapshot and passed to the callbacks
+     * @param snapshot    callback that delivers the current state to the handler, and reports every object it
+     *                    delivers to the given consumer
+     * @param ready       completes once the handler can accept the callbacks, normally or exceptionally
+     * @param <P>         type of the objects
+     * @return a future that completes once the handler has caught up and receives the callbacks directly
+     */
+    public <P> CompletableFuture<Void> registerWithReplay(T handler, Function<P, Object> keyFunction,
+                                                          Consumer<Consumer<P>> snapshot, CompletionStage<?> ready) {
+        Objects.requireNonNull(keyFunction);
+        Objects.requireNonNull(ready);
+        final ReplayLog<T> replayLog = new ReplayLog<>(maxReplayLogSize);
+        handlerLock.writeLock().lock();
+        try {
+            pendingHandlers.put(handler, replayLog);
+        } finally {
+            handlerLock.writeLock().unlock();
+        }
+
+        // The state of every object the handler knows about
+        final Map<Object, Object> delivered = new HashMap<>();
+        try {
+            snapshot.accept(object -> delivered.put(keyFunction.apply(object), object));
+        } catch (RuntimeException e) {
+            handlerLock.writeLock().lock();
+            try {
+                pendingHandlers.remove(handler);
+            } finally {
+                handlerLock.writeLock().unlock();
+            }
+            replayLog.close();
+            throw e;
+        }
+
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        ready.whenComplete((v, ex) -> {
+            final Thread replayThread = new Thread(() -> {
+                replay(handler, replayLog, delivered, keyFunction);
+                future.complete(null);
+            }, "ALEC Handler Replay [" + handler + "]");
+            replayThread.setDaemon(true);
+            replayThread.start();
+        });
+        return future;
+    }
+
+    private <P> void replay(T handler, ReplayLog<T> replayLog, Map<Object, Object> delivered,
+                            Function<P, Object> keyFunction) {
+        int numReplayed = 0;
+        while (true) {
+            final Callback<T> callback = replayLog.poll();
+            if (callback == null) {
+                handlerLock.writeLock().lock();
+                try {
+                    // Nothing can be added to the log while we hold the write lock
+                    if (replayLog.isEmpty()) {
+                        if (pendingHandlers.remove(handler) != null) {
+                            handlers.add(handler);
+                        }
+                        replayLog.close();
+                        break;
+                    }
+                } finally {
+                    handlerLock.writeLock().unlock();
+                }
+                continue;
+            }
+            try {
+                callback.replay(handler, delivered, keyFunction);
+            } catch (Exception e) {
+                LOG.error("Error occurred while replaying to handler {}: {}", handler, e.getMessage(), e);
+            }
+            numReplayed++;
+        }
+        LOG.debug("Replayed {} callbacks to handler {} after delivering its snapshot.", numReplayed, handler);
+    }
+
     public void register(T handler) {
         handlerLock.writeLock().lock();
         try {
@@ -91,12 +307,133 @@ public class HandlerRegistry<T> {
         }
     }
 
+    public boolean isEmpty() {
+        handlerLock.readLock().lock();
+        try {
+            return handlers.isEmpty() && pendingHandlers.isEmpty();
+        } finally {
+            handlerLock.readLock().unlock();
+        }
+    }
+
     public void unregister(T handler) {
         handlerLock.writeLock().lock();
         try {
             handlers.remove(handler);
+            final ReplayLog<T> replayLog = pendingHandlers.remove(handler);
+            if (replayLog != null) {
+                // Release the callers waiting for the handler to catch up
+                replayLog.close();
+            }
         } finally {
             handlerLock.writeLock().unlock();
         }
     }
+
+    /**
+     * Callbacks buffered for a handler being registered. Callbacks are appended by concurrent readers.
+     *
+     * The size of the log is the number of objects passed to the buffered callbacks. Callbacks are always appended,
+     * but the callers wait for room once the log is full.
+     */
+    private static class ReplayLog<T> {
+        private final Queue<Callback<T>> callbacks = new ArrayDeque<>();
+        private final int maxSize;
+        private int size = 0;
+        private boolean closed = false;
+
+        private ReplayLog(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        private synchronized void add(Callback<T> callback) {
+            if (closed) {
+                return;
+            }
+            callbacks.add(callback);
+            size += callback.size();
+        }
+
+        private synchronized Callback<T> poll() {
+            final Callback<T> callback = callbacks.poll();
+            if (callback != null) {
+                size -= callback.size();
+                if (size <= maxSize) {
+                    notifyAll();
+                }
+            }
+            return callback;
+        }
+
+        private synchronized boolean isEmpty() {
+            return callbacks.isEmpty();
+        }
+
+        private synchronized void awaitRoom() throws InterruptedException {
+            while (!closed && size > maxSize) {
+                wait();
+            }
+        }
+
+        /**
+         * Discards the buffered callbacks, and releases the waiting callers.
+         */
+        private synchronized void close() {
+            closed = true;
+            callbacks.clear();
+            size = 0;
+            notifyAll();
+        }
+    }
+
+    private static class Callback<T> {
+        private final Consumer<T> consumer;
+        private final List<?> objects;
+        private final BiConsumer<T, List<?>> objectConsumer;
+        private final boolean removal;
+
+        private Callback(Consumer<T> consumer) {
+            this.consumer = consumer;
+            this.objects = null;
+            this.objectConsumer = null;
+            this.removal = false;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <P> Callback(List<P> objects, BiConsumer<T, List<P>> objectConsumer, boolean removal) {
+            this.consumer = null;
+            this.objects = objects;
+            this.objectConsumer = (BiConsumer<T, List<?>>) (BiConsumer<T, ?>) objectConsumer;
+            this.removal = removal;
+        }
+
+        private int size() {
+            return objects != null ? Math.max(1, objects.size()) : 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <P> void replay(T handler, Map<Object, Object> delivered, Function<P, Object> keyFunction) {
+            if (consumer != null) {
+                consumer.accept(handler);
+                return;
+            }
+
+            if (removal) {
+                objects.forEach(object -> delivered.remove(keyFunction.apply((P) object)));
+                objectConsumer.accept(handler, objects);
+                return;
+            }
+
+            // Skip the objects the handler already knows about in the same state
+            final List<Object> changedObjects = new ArrayList<>(objects.size());
+            for (Object object : objects) {
+                if (!Objects.equals(object, delivered.put(keyFunction.apply((P) object), object))) {
+                    changedObjects.add(object);
+                }
+            }
+            if (!changedObjects.isEmpty()) {
+                objectConsumer.accept(handler, changedObjects);
+            }
+        }
+    }
 }
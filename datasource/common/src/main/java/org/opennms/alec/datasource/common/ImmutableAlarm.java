@@ -45,6 +45,7 @@ public final class ImmutableAlarm implements Alarm {
     private final String summary;
     private final String description;
     private final Long nodeId;
+    private final Long ingestTime;
 
     private ImmutableAlarm(Builder builder) {
         this.id = builder.id;
@@ -55,6 +56,7 @@ public final class ImmutableAlarm implements Alarm {
         this.summary = builder.summary;
         this.description = builder.description;
         this.nodeId = builder.nodeId;
+        this.ingestTime = builder.ingestTime;
     }
 
     public static final class Builder {
@@ -66,6 +68,7 @@ public final class ImmutableAlarm implements Alarm {
         private String summary;
         private String description;
         private Long nodeId;
+        private Long ingestTime;
 
         private Builder() {
             time = System.currentTimeMillis();
@@ -80,6 +83,7 @@ public final class ImmutableAlarm implements Alarm {
             this.summary = alarm.getSummary();
             this.description = alarm.getDescription();
             this.nodeId = alarm.getNodeId();
+            this.ingestTime = alarm.getIngestTime();
         }
 
         public Builder setId(String id) {
@@ -121,6 +125,11 @@ public final class ImmutableAlarm implements Alarm {
             this.nodeId = nodeId;
         }
 
+        public Builder setIngestTime(Long ingestTime) {
+            this.ingestTime = ingestTime;
+            return this;
+        }
+
         public ImmutableAlarm build() {
             Objects.requireNonNull(id, "Id cannot be null");
 
@@ -181,6 +190,12 @@ public final class ImmutableAlarm implements Alarm {
         return nodeId;
     }
 
+    @Override
+    public Long getIngestTime() {
+        return ingestTime;
+    }
+
+    // The ingest time is intentionally left out of equals() and hashCode() since it does not reflect the state of the alarm
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -212,6 +227,7 @@ public final class ImmutableAlarm implements Alarm {
                 ", summary='" + summary + '\'' +
                 ", description='" + description + '\'' +
                 ", nodeId=" + nodeId +
+                ", ingestTime=" + ingestTime +
                 '}';
     }
 }
@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.common;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class HandlerRegistryTest {
+    private final HandlerRegistry<Handler> registry = new HandlerRegistry<>();
+
+    @Test
+    public void canReplayCallbacksMadeDuringSnapshot() throws Exception {
+        final Handler handler = new Handler();
+        registry.registerWithReplay(handler, keyFunction(), (Consumer<String> delivered) -> {
+            handler.received.add("a@1");
+            handler.received.add("b@1");
+            delivered.accept("a@1");
+            delivered.accept("b@1");
+            // Callbacks made while the snapshot is being delivered
+            update("a@1");
+            update("a@2");
+            update("b@1");
+            remove("b@1");
+            update("b@1");
+            assertThat(handler.received.size(), equalTo(2));
+        }).get(5, TimeUnit.SECONDS);
+        // a@1 and the first b@1 were already known by the handler in the same state
+        assertThat(handler.received, contains("a@1", "b@1", "a@2", "-b@1", "b@1"));
+
+        // Once caught up, the handler receives the callbacks directly
+        update("c@1");
+        assertThat(handler.received.get(handler.received.size() - 1), equalTo("c@1"));
+    }
+
+    @Test
+    public void canReplayOlderStatesWithoutLosingTheLatestState() throws Exception {
+        final Handler handler = new Handler();
+        registry.registerWithReplay(handler, keyFunction(), (Consumer<String> delivered) -> {
+            handler.received.add("a@2");
+            delivered.accept("a@2");
+            // An update that was already reflected in the snapshot, followed by one that is
+            update("a@1");
+            update("a@2");
+        }).get(5, TimeUnit.SECONDS);
+        assertThat(handler.received, contains("a@2", "a@1", "a@2"));
+    }
+
+    @Test
+    public void canReplayObjectsWithTheSameHashCode() throws Exception {
+        // "Aa" and "BB" have the same hash code, but are different states of the object
+        assertThat("a@Aa".hashCode(), equalTo("a@BB".hashCode()));
+        final Handler handler = new Handler();
+        registry.registerWithReplay(handler, keyFunction(), (Consumer<String> delivered) -> {
+            handler.received.add("a@Aa");
+            delivered.accept("a@Aa");
+            update("a@BB");
+        }).get(5, TimeUnit.SECONDS);
+        assertThat(handler.received, contains("a@Aa", "a@BB"));
+    }
+
+    @Test(timeout = 30000)
+    public void canBlockCallersUntilTheHandlerCatchesUp() throws Exception {
+        final HandlerRegistry<Handler> registry = new HandlerRegistry<>(5);
+        final Map<String, String> store = new ConcurrentHashMap<>();
+        for (int i = 0; i < 10; i++) {
+            store.put("k" + i, "k" + i + "@0");
+        }
+
+        // Keep changing the store once the snapshot was read, making many more callbacks than can be buffered
+        final int numChanges = 200;
+        final AtomicInteger numChanged = new AtomicInteger();
+        final Thread writer = new Thread(() -> {
+            for (int i = 0; i < numChanges; i++) {
+                final String key = "k" + (i % 10);
+                if (i % 7 == 3) {
+                    final String removed = store.remove(key);
+                    if (removed != null) {
+                        registry.forEachRemoval(Collections.singletonList(removed),
+                                (h, objects) -> objects.forEach(o -> h.received.add("-" + o)));
+                    }
+                } else {
+                    final String updated = key + "@" + (i + 1);
+                    store.put(key, updated);
+                    registry.forEachUpdate(Collections.singletonList(updated), (h, objects) -> h.received.addAll(objects));
+                }
+                numChanged.incrementAndGet();
+            }
+        });
+
+        final Handler handler = new Handler();
+        final CompletableFuture<Void> ready = new CompletableFuture<>();
+        final CompletableFuture<Void> caughtUp = registry.registerWithReplay(handler, keyFunction(),
+                (Consumer<String> delivered) -> {
+                    store.values().forEach(object -> {
+                        handler.received.add(object);
+                        delivered.accept(object);
+                    });
+                    writer.start();
+                }, ready);
+
+        // The writer is blocked once the log is full, and nothing is replayed until the handler is ready
+        awaitWaiting(writer);
+        assertThat(numChanged.get() < numChanges, equalTo(true));
+        assertThat(handler.received.size(), equalTo(10));
+
+        ready.complete(null);
+        writer.join();
+        caughtUp.get(10, TimeUnit.SECONDS);
+
+        // The handler ends up with the same state as the store
+        assertThat(handler.getState(), equalTo(store));
+    }
+
+    @Test
+    public void canReplayOnceTheHandlerIsReady() throws Exception {
+        final Handler handler = new Handler();
+        final CompletableFuture<Void> ready = new CompletableFuture<>();
+        final CompletableFuture<Void> caughtUp = registry.registerWithReplay(handler, keyFunction(),
+                (Consumer<String> delivered) -> update("a@1"), ready);
+        Thread.sleep(100);
+        assertThat(caughtUp.isDone(), equalTo(false));
+        assertThat(handler.received.size(), equalTo(0));
+
+        ready.complete(null);
+        caughtUp.get(5, TimeUnit.SECONDS);
+        assertThat(handler.received, contains("a@1"));
+    }
+
+    @Test(timeout = 10000)
+    public void canReleaseBlockedCallersOnUnregister() throws Exception {
+        final HandlerRegistry<Handler> registry = new HandlerRegistry<>(1);
+        final Handler handler = new Handler();
+        registry.registerWithReplay(handler, keyFunction(), (Consumer<String> delivered) -> { },
+                new CompletableFuture<>());
+        final Thread dispatcher = new Thread(() -> {
+            for (int i = 0; i < 10; i++) {
+                registry.forEachUpdate(Collections.singletonList("a@" + i), (h, objects) -> h.received.addAll(objects));
+            }
+        });
+        dispatcher.start();
+        awaitWaiting(dispatcher);
+
+        registry.unregister(handler);
+        dispatcher.join();
+        assertThat(handler.received.size(), equalTo(0));
+        assertThat(registry.isEmpty(), equalTo(true));
+    }
+
+    @Test(timeout = 10000)
+    public void canReplayWhileTheHandlerBlocksItsCallbacks() throws Exception {
+        final CountDownLatch initialized = new CountDownLatch(1);
+        final Handler handler = new Handler();
+        final CompletableFuture<Void> caughtUp = registry.registerWithReplay(handler, keyFunction(),
+                (Consumer<String> delivered) -> registry.forEach(h -> {
+                    // The handler blocks its callbacks until it is initialized
+                    try {
+                        initialized.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    h.received.add("init");
+                }));
+        // The registration returns, and callbacks are buffered rather than blocking the caller
+        update("a@1");
+        assertThat(caughtUp.isDone(), equalTo(false));
+
+        initialized.countDown();
+        caughtUp.get(5, TimeUnit.SECONDS);
+        assertThat(handler.received, contains("init", "a@1"));
+    }
+
+    @Test(timeout = 10000)
+    public void canDispatchToOtherHandlersDuringSnapshot() throws Exception {
+        final Handler otherHandler = new Handler();
+        registry.register(otherHandler);
+
+        final CountDownLatch dispatched = new CountDownLatch(1);
+        final Handler handler = new Handler();
+        final Thread dispatcher = new Thread(() -> {
+            update("a@1");
+            dispatched.countDown();
+        });
+        registry.registerWithReplay(handler, keyFunction(), (Consumer<String> delivered) -> {
+            dispatcher.start();
+            try {
+                // The dispatch must not be blocked by the registration
+                assertThat(dispatched.await(5, TimeUnit.SECONDS), equalTo(true));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }).get(5, TimeUnit.SECONDS);
+        dispatcher.join();
+        assertThat(otherHandler.received, contains("a@1"));
+        assertThat(handler.received, contains("a@1"));
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void update(String... objects) {
+        registry.forEachUpdate(Arrays.asList(objects), (h, updated) -> h.received.addAll(updated));
+    }
+
+    private void remove(String... objects) {
+        registry.forEachRemoval(Arrays.asList(objects), (h, removed) -> removed.forEach(r -> h.received.add("-" + r)));
+    }
+
+    /**
+     * Handlers are compared by identity, like the engines.
+     */
+    private static class Handler {
+        private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+
+        /**
+         * @return the objects by key, after applying all of the received updates and removals in order
+         */
+        private Map<String, String> getState() {
+            final Map<String, String> state = new HashMap<>();
+            synchronized (received) {
+                for (String object : received) {
+                    if (object.startsWith("-")) {
+                        state.remove(object.substring(1).split("@")[0]);
+                    } else {
+                        state.put(object.split("@")[0], object);
+                    }
+                }
+            }
+            return state;
+        }
+    }
+
+    private static Function<String, Object> keyFunction() {
+        // objects are of the form key@version
+        return object -> object.split("@")[0];
+    }
+}
@@ -28,9 +28,14 @@
 
 package org.opennms.alec.datasource.common.inventory.script;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.script.Invocable;
 import javax.script.ScriptEngine;
@@ -41,11 +46,20 @@ import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Charsets;
 import com.google.common.io.Files;
 import com.google.common.io.Resources;
 
 /**
+ * Evaluates the inventory script and invokes its functions.
+ *
+ * Script engines are not safe to use from several threads at once, so every invocation borrows an engine,
+ * in which the script was evaluated, from a bounded pool and returns it afterwards. When the script file is
+ * updated, a new pool is swapped in at once, so that no invocation ever sees a mix of the old and the new
+ * script. Engines of the old pool are dropped as the invocations using them complete.
+ *
  * @author smith
  *
  */
@@ -59,31 +73,40 @@ public abstract class AbstractScriptedInventory {
 
     private static final String DEFAULT_SCRIPT_EXTENSION = "groovy";
 
-    private final boolean usingClasspathScript;
+    private static final int MAX_SCRIPT_ENGINES = Math.max(2, Runtime.getRuntime().availableProcessors());
 
-    private final Invocable invocable;
+    private final boolean usingClasspathScript;
 
     private final String scriptPath;
 
-    private final ScriptEngineManager manager;
+    private final String scriptExtension;
 
-    private final ScriptEngine engine;
+    private final ScriptEngineManager manager;
 
     private final long scriptCacheMillis;
 
-    private long configurationTimestamp;
+    private final MetricRegistry metrics;
+
+    private volatile ScriptInstances instances;
+
+    private volatile long configurationTimestamp;
 
     private long scriptFileTimestamp;
 
     public AbstractScriptedInventory(String scriptPath, long scriptCacheMillis, BundleContext bundleContext) {
+        this(scriptPath, scriptCacheMillis, bundleContext, new MetricRegistry());
+    }
+
+    public AbstractScriptedInventory(String scriptPath, long scriptCacheMillis, BundleContext bundleContext,
+                                     MetricRegistry metrics) {
         if (scriptPath == null) {
             throw new IllegalArgumentException("Null value for scriptFile.");
         }
 
         String script;
-        String scriptExtension;
 
         this.scriptCacheMillis = scriptCacheMillis;
+        this.metrics = metrics;
 
         if (scriptPath.isEmpty()) {
             // load default from classpath
@@ -126,35 +149,50 @@ public abstract class AbstractScriptedInventory {
             manager = new OSGiScriptEngineManager(bundleContext);
         }
 
-        engine = manager.getEngineByExtension(scriptExtension);
-        if (engine == null) {
-            throw new IllegalStateException("No engine found for extension: " + scriptExtension);
-        }
-        if (!Invocable.class.isAssignableFrom(engine.getClass())) {
-            throw new IllegalStateException("engine found for extension: " + scriptExtension + " is not invocable");
-        }
-
         try {
-            engine.eval(script);
+            instances = new ScriptInstances(script);
         } catch (ScriptException e) {
             throw new IllegalStateException("Failed to eval() script file - " + this.scriptPath, e);
         }
 
         LOG.info("ScriptEngine Initialized with {}", this.scriptPath);
-        invocable = (Invocable) engine;
         configurationTimestamp = System.currentTimeMillis();
     }
 
-    protected Invocable getInvocable() {
+    /**
+     * Invokes the given function of the script, and records the time taken.
+     */
+    protected Object invokeFunction(String function, Object... args) throws ScriptException, NoSuchMethodException {
+        final Timer timer = metrics.timer(name("script", function));
+        try (Timer.Context ctx = timer.time()) {
+            final ScriptInstances current = getInstances();
+            final Invocable invocable = current.borrow();
+            try {
+                return invocable.invokeFunction(function, args);
+            } finally {
+                current.release(invocable);
+            }
+        }
+    }
+
+    private ScriptInstances getInstances() {
         // if the script is on disk, check every so often to see if it has been updated
         if (!usingClasspathScript && scriptCacheExpired()) {
-            // reset cache
-            configurationTimestamp = System.currentTimeMillis();
-            if (scriptHasBeenUpdated()) {
-                updateInvocable();
-            }
+            reloadIfUpdated();
+        }
+        return instances;
+    }
+
+    private synchronized void reloadIfUpdated() {
+        // another thread may have reloaded the script while we were waiting for the lock
+        if (!scriptCacheExpired()) {
+            return;
+        }
+        // reset cache
+        configurationTimestamp = System.currentTimeMillis();
+        if (scriptHasBeenUpdated()) {
+            updateInstances();
         }
-        return invocable;
     }
 
     private boolean scriptHasBeenUpdated() {
@@ -171,8 +209,8 @@ public abstract class AbstractScriptedInventory {
         return System.currentTimeMillis() - configurationTimestamp > scriptCacheMillis;
     }
 
-    // Attempt to update the invocable but catch all exceptions so user will continue to use existing invocable.
-    private void updateInvocable() {
+    // Attempt to update the instances but catch all exceptions so user will continue to use existing instances.
+    private void updateInstances() {
         try {
             File file = new File(scriptPath);
             if (!file.canRead()) {
@@ -184,7 +222,7 @@ public abstract class AbstractScriptedInventory {
             LOG.info("Loaded script {} from {} with timestamp: {}", file, scriptPath, scriptFileTimestamp);
 
             try {
-                engine.eval(script);
+                instances = new ScriptInstances(script);
             } catch (ScriptException e) {
                 LOG.error("Failed to eval() script file - " + scriptPath, e);
             }
@@ -193,4 +231,63 @@ public abstract class AbstractScriptedInventory {
         }
     }
 
+    private Invocable newInvocable(String script) throws ScriptException {
+        final ScriptEngine engine = manager.getEngineByExtension(scriptExtension);
+        if (engine == null) {
+            throw new IllegalStateException("No engine found for extension: " + scriptExtension);
+        }
+        if (!Invocable.class.isAssignableFrom(engine.getClass())) {
+            throw new IllegalStateException("engine found for extension: " + scriptExtension + " is not invocable");
+        }
+        engine.eval(script);
+        return (Invocable) engine;
+    }
+
+    /**
+     * A bounded pool of script engines for one version of the script, created as invocations need them.
+     */
+    private class ScriptInstances {
+        private final String script;
+        private final BlockingQueue<Invocable> idle = new LinkedBlockingQueue<>();
+        private final AtomicInteger numCreated = new AtomicInteger(0);
+
+        /**
+         * Evaluates the script once up front, so that a script that fails to evaluate is never swapped in.
+         */
+        private ScriptInstances(String script) throws ScriptException {
+            this.script = script;
+            idle.add(newInvocable(script));
+            numCreated.incrementAndGet();
+        }
+
+        /**
+         * @return an engine that must not be shared with other threads until it is released
+         */
+        private Invocable borrow() throws ScriptException {
+            final Invocable invocable = idle.poll();
+            if (invocable != null) {
+                return invocable;
+            }
+            if (numCreated.incrementAndGet() <= MAX_SCRIPT_ENGINES) {
+                try {
+                    return newInvocable(script);
+                } catch (RuntimeException|ScriptException e) {
+                    numCreated.decrementAndGet();
+                    throw e;
+                }
+            }
+            numCreated.decrementAndGet();
+            // all of the engines are in use, wait for one to be released
+            try {
+                return idle.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ScriptException("Interrupted while waiting for a script engine for " + scriptPath);
+            }
+        }
+
+        private void release(Invocable invocable) {
+            idle.add(invocable);
+        }
+    }
 }
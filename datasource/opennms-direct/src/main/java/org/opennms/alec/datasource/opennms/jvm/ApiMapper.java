@@ -72,9 +72,17 @@ public class ApiMapper {
     }
 
     public Alarm toAlarm(org.opennms.integration.api.v1.model.Alarm alarm) {
+        return toAlarm(alarm, null);
+    }
+
+    /**
+     * @param ingestTime the time at which the alarm was received, or null if unknown
+     */
+    public Alarm toAlarm(org.opennms.integration.api.v1.model.Alarm alarm, Long ingestTime) {
         ImmutableAlarm.Builder alarmBuilder = ImmutableAlarm.newBuilder();
         alarmBuilder
                 .setId(alarm.getReductionKey())
+                .setIngestTime(ingestTime)
                 .setTime(alarm.getLastEventTime().getTime())
                 .setSeverity(toSeverity(alarm.getSeverity()))
                 .setInventoryObjectId(alarm.getManagedObjectInstance())
@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.jvm;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Decouples the callbacks we receive from OpenNMS from the work they result in, so that contention within the
+ * handlers (i.e. the engine) does not push back into the OpenNMS threads issuing the callbacks.
+ *
+ * Tasks are executed in order on a single thread. A task submitted with a key replaces any pending task with the same
+ * key, keeping the position of the original task in the queue. Tasks submitted without a key are never coalesced and
+ * act as a barrier: keyed tasks submitted afterwards will never be coalesced with tasks submitted before.
+ *
+ * The number of pending tasks is bounded, and the {@link OverflowPolicy} determines what happens when the limit is
+ * reached.
+ */
+public class CoalescingDispatcher implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(CoalescingDispatcher.class);
+
+    public static final int DEFAULT_MAX_QUEUE_SIZE = 100000;
+
+    public enum OverflowPolicy {
+        /**
+         * Block the caller until there is room in the queue.
+         */
+        BLOCK,
+        /**
+         * Drop the submitted task.
+         */
+        DROP
+    }
+
+    private static class Task {
+        private final Object key;
+        private Runnable runnable;
+
+        private Task(Object key, Runnable runnable) {
+            this.key = key;
+            this.runnable = runnable;
+        }
+    }
+
+    private final String name;
+    private final int maxQueueSize;
+    private final OverflowPolicy overflowPolicy;
+    private final boolean synchronous;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition idle = lock.newCondition();
+    private final Deque<Task> queue = new ArrayDeque<>();
+    /**
+     * The pending keyed tasks that were submitted after the last barrier.
+     */
+    private final Map<Object, Task> pendingTasksByKey = new HashMap<>();
+    private boolean running;
+    private boolean busy;
+    private Thread worker;
+
+    private final Meter droppedMeter;
+    private final Meter coalescedMeter;
+
+    public CoalescingDispatcher(String name, int maxQueueSize, OverflowPolicy overflowPolicy,
+                                MetricRegistry metrics) {
+        this(name, maxQueueSize, overflowPolicy, metrics, false);
+    }
+
+    private CoalescingDispatcher(String name, int maxQueueSize, OverflowPolicy overflowPolicy, MetricRegistry metrics,
+                                 boolean synchronous) {
+        if (maxQueueSize < 1) {
+            throw new IllegalArgumentException("maxQueueSize must be strictly positive, got: " + maxQueueSize);
+        }
+        this.name = Objects.requireNonNull(name);
+        this.maxQueueSize = maxQueueSize;
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy);
+        this.synchronous = synchronous;
+        metrics.register(MetricRegistry.name(name, "queueDepth"), (Gauge<Integer>) this::getQueueDepth);
+        droppedMeter = metrics.meter(MetricRegistry.name(name, "dropped"));
+        coalescedMeter = metrics.meter(MetricRegistry.name(name, "coalesced"));
+    }
+
+    /**
+     * @return a dispatcher that executes the tasks directly on the calling thread
+     */
+    public static CoalescingDispatcher synchronous(String name) {
+        return new CoalescingDispatcher(name, 1, OverflowPolicy.BLOCK, new MetricRegistry(), true);
+    }
+
+    public synchronized void start() {
+        if (synchronous || worker != null) {
+            return;
+        }
+        lock.lock();
+        try {
+            running = true;
+        } finally {
+            lock.unlock();
+        }
+        worker = new Thread(this::run, "alec-" + name + "-dispatcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Submits a task that replaces any pending task with the same key.
+     *
+     * @param key      identifies the entity the task relates to, i.e. an alarm id
+     * @param runnable the task
+     */
+    public void dispatch(Object key, Runnable runnable) {
+        Objects.requireNonNull(key);
+        submit(key, runnable);
+    }
+
+    /**
+     * Submits a task that is never coalesced and acts as a barrier for coalescing.
+     *
+     * @param runnable the task
+     */
+    public void dispatch(Runnable runnable) {
+        submit(null, runnable);
+    }
+
+    private void submit(Object key, Runnable runnable) {
+        Objects.requireNonNull(runnable);
+        if (synchronous) {
+            runSafely(runnable);
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (!running) {
+                LOG.warn("Dispatcher {} is not running. Dropping task.", name);
+                droppedMeter.mark();
+                return;
+            }
+
+            if (key != null) {
+                final Task pendingTask = pendingTasksByKey.get(key);
+                if (pendingTask != null) {
+                    pendingTask.runnable = runnable;
+                    coalescedMeter.mark();
+                    return;
+                }
+            }
+
+            while (queue.size() >= maxQueueSize) {
+                if (overflowPolicy == OverflowPolicy.DROP) {
+                    LOG.debug("Queue for dispatcher {} is full. Dropping task.", name);
+                    droppedMeter.mark();
+                    return;
+                }
+                notFull.await();
+                if (!running) {
+                    droppedMeter.mark();
+                    return;
+                }
+            }
+
+            final Task task = new Task(key, runnable);
+            queue.addLast(task);
+            if (key != null) {
+                pendingTasksByKey.put(key, task);
+            } else {
+                pendingTasksByKey.clear();
+            }
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while waiting for room in the queue of dispatcher {}. Dropping task.", name);
+            droppedMeter.mark();
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            final Runnable runnable;
+            lock.lock();
+            try {
+                while (running && queue.isEmpty()) {
+                    notEmpty.await();
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                final Task task = queue.removeFirst();
+                if (task.key != null && pendingTasksByKey.get(task.key) == task) {
+                    pendingTasksByKey.remove(task.key);
+                }
+                runnable = task.runnable;
+                busy = true;
+                notFull.signal();
+            } catch (InterruptedException e) {
+                LOG.debug("Dispatcher {} was interrupted.", name);
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            runSafely(runnable);
+
+            lock.lock();
+            try {
+                busy = false;
+                if (queue.isEmpty()) {
+                    idle.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void runSafely(Runnable runnable) {
+        try {
+            runnable.run();
+        } catch (Exception e) {
+            LOG.error("Error occurred while executing task on dispatcher {}: {}", name, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Waits until all of the pending tasks were executed.
+     *
+     * @return true if the dispatcher is idle, false if the timeout elapsed
+     */
+    @VisibleForTesting
+    boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (busy || !queue.isEmpty()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = idle.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting new tasks, and waits for the worker to drain the tasks that are already queued.
+     */
+    @Override
+    public synchronized void close() {
+        if (worker == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while waiting for dispatcher {} to drain.", name);
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            LOG.warn("Dispatcher {} did not drain in time. {} tasks will be lost.", name, getQueueDepth());
+            worker.interrupt();
+        }
+        worker = null;
+    }
+}
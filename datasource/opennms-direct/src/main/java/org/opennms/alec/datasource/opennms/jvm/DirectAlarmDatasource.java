@@ -29,11 +29,11 @@
 package org.opennms.alec.datasource.opennms.jvm;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -54,16 +54,37 @@ import org.opennms.alec.datasource.common.HandlerRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Sets;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 public class DirectAlarmDatasource implements AlarmDatasource, AlarmLifecycleListener, SituationDatasource {
 
     private static final Logger LOG = LoggerFactory.getLogger(DirectAlarmDatasource.class);
 
+    private static final HashFunction FINGERPRINT_HASH_FUNCTION = Hashing.murmur3_128();
+
     private final HandlerRegistry<AlarmHandler> alarmHandlers = new HandlerRegistry<>();
     private final HandlerRegistry<SituationHandler> situationHandlers = new HandlerRegistry<>();
 
-    private final Map<Integer, org.opennms.integration.api.v1.model.Alarm> alarmsById = new LinkedHashMap<>();
+    /**
+     * A compact projection of every active alarm. We only keep the ALEC types we map the alarms to, rather than
+     * the integration API alarms themselves, which reference nodes, related alarms and events.
+     */
+    private final Map<Integer, AlarmEntry> alarmsById = new LinkedHashMap<>();
+
+    /**
+     * The result of {@link #getAlarms()}, cached until the alarms change.
+     */
+    private volatile List<Alarm> alarmsView;
+
+    /**
+     * The result of {@link #getSituations()}, cached until the situations change.
+     */
+    private volatile List<Situation> situationsView;
 
     private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
     private final CountDownLatch initLock = new CountDownLatch(1);
@@ -71,16 +92,26 @@ public class DirectAlarmDatasource implements AlarmDatasource, AlarmLifecycleLis
     private final AlarmDao alarmDao;
     private final EventForwarder eventForwarder;
     private final ApiMapper mapper;
+    /**
+     * Used to process the callbacks from OpenNMS, coalescing the pending callbacks by alarm id.
+     */
+    private final CoalescingDispatcher dispatcher;
 
     public DirectAlarmDatasource(AlarmDao alarmDao, EventForwarder eventForwarder, ApiMapper mapper) {
+        this(alarmDao, eventForwarder, mapper, CoalescingDispatcher.synchronous("alarms"));
+    }
+
+    public DirectAlarmDatasource(AlarmDao alarmDao, EventForwarder eventForwarder, ApiMapper mapper,
+                                 CoalescingDispatcher dispatcher) {
         this.alarmDao = Objects.requireNonNull(alarmDao);
         this.eventForwarder = Objects.requireNonNull(eventForwarder);
         this.mapper = Objects.requireNonNull(mapper);
+        this.dispatcher = Objects.requireNonNull(dispatcher);
     }
 
     public void init() {
         // Populate the map with the current set of alarms
-        alarmDao.getAlarms().forEach(a -> alarmsById.put(a.getId(), a));
+        alarmDao.getAlarms().forEach(a -> alarmsById.put(a.getId(), toEntry(a, fingerprint(a), null)));
         initLock.countDown();
     }
     
@@ -95,106 +126,179 @@ public class DirectAlarmDatasource implements AlarmDatasource, AlarmLifecycleLis
 
     @Override
     public void handleAlarmSnapshot(List<org.opennms.integration.api.v1.model.Alarm> alarms) {
+        final long ingestTime = System.currentTimeMillis();
+        dispatcher.dispatch(() -> reconcileSnapshot(alarms, ingestTime));
+    }
+
+    private void reconcileSnapshot(List<org.opennms.integration.api.v1.model.Alarm> alarms, long ingestTime) {
         waitForInit();
 
-        final Map<Integer,org.opennms.integration.api.v1.model.Alarm> snapshotAlarmsById = alarms.stream()
-                .collect(Collectors.toMap(org.opennms.integration.api.v1.model.Alarm::getId, a -> a));
-        rwLock.writeLock().lock();
-        try {
-            final Set<Integer> alarmIdsInMap = alarmsById.keySet();
-            final Set<Integer> alarmIdsInSnapshot = snapshotAlarmsById.keySet();
+        final SnapshotDiff diff = diffSnapshot(alarms);
+        if (diff.isEmpty()) {
+            LOG.debug("Alarm snapshot with {} alarms is in sync.", alarms.size());
+            return;
+        }
+        LOG.debug("Alarm snapshot with {} alarms resulted in {} deletes and {} adds or updates.", alarms.size(),
+                diff.deletes.size(), diff.addsOrUpdates.size());
+        applySnapshotDiff(diff, ingestTime);
+    }
 
-            // Push clears for alarms that are in the map, but not in the snapshot
-            final Set<Integer> alarmIdsToDelete = Sets.newHashSet(Sets.difference(alarmIdsInMap, alarmIdsInSnapshot));
-            for (Integer alarmIdToDelete : alarmIdsToDelete) {
-                handleDeletedNoLock(alarmIdToDelete);
-            }
+    /**
+     * Computes the changes needed to bring the alarms in line with the snapshot, while only holding the read lock.
+     * Every change records the fingerprint of the entry it was computed against.
+     */
+    @VisibleForTesting
+    SnapshotDiff diffSnapshot(List<org.opennms.integration.api.v1.model.Alarm> alarms) {
+        // Fingerprint the snapshot before acquiring any locks
+        final Map<Integer, Long> snapshotFingerprintsById = new HashMap<>(alarms.size() * 2);
+        for (org.opennms.integration.api.v1.model.Alarm alarm : alarms) {
+            snapshotFingerprintsById.put(alarm.getId(), fingerprint(alarm));
+        }
 
-            // Push new alarms for ids that are in the snapshot, but not in the map
-            final Set<Integer> alarmIdsToAdd = Sets.newHashSet(Sets.difference(alarmIdsInSnapshot, alarmIdsInMap));
-            for (Integer alarmIdToAdd : alarmIdsToAdd) {
-                handleNewOrUpdatedAlarmNoLock(snapshotAlarmsById.get(alarmIdToAdd));
+        final SnapshotDiff diff = new SnapshotDiff();
+        rwLock.readLock().lock();
+        try {
+            for (Map.Entry<Integer, AlarmEntry> entry : alarmsById.entrySet()) {
+                if (!snapshotFingerprintsById.containsKey(entry.getKey())) {
+                    diff.deletes.put(entry.getKey(), entry.getValue().fingerprint);
+                }
+            }
+            for (org.opennms.integration.api.v1.model.Alarm alarm : alarms) {
+                final long snapshotFingerprint = snapshotFingerprintsById.get(alarm.getId());
+                final Long seenFingerprint = getFingerprint(alarm.getId());
+                if (!Objects.equals(snapshotFingerprint, seenFingerprint)) {
+                    diff.addsOrUpdates.add(new SnapshotUpdate(alarm, snapshotFingerprint, seenFingerprint));
+                }
             }
-
-            // Handle Updates
-            final Set<Integer> commonAlarmIds = Sets.newHashSet(Sets.intersection(alarmIdsInSnapshot, alarmIdsInMap));
-            commonAlarmIds.forEach(id -> {
-                handleNewOrUpdatedAlarmNoLock(snapshotAlarmsById.get(id));
-            });
         } finally {
-            rwLock.writeLock().unlock();
+            rwLock.readLock().unlock();
         }
+        return diff;
     }
 
-    @Override
-    public void handleNewOrUpdatedAlarm(org.opennms.integration.api.v1.model.Alarm alarm) {
-        waitForInit();
-
+    /**
+     * Applies the changes while holding the write lock, skipping any entries that were changed by callbacks since
+     * the diff was computed. The callbacks are more recent than the snapshot.
+     */
+    @VisibleForTesting
+    void applySnapshotDiff(SnapshotDiff diff, long ingestTime) {
         rwLock.writeLock().lock();
         try {
-            handleNewOrUpdatedAlarmNoLock(alarm);
+            for (Map.Entry<Integer, Long> delete : diff.deletes.entrySet()) {
+                if (Objects.equals(delete.getValue(), getFingerprint(delete.getKey()))) {
+                    handleDeletedNoLock(delete.getKey());
+                }
+            }
+            for (SnapshotUpdate update : diff.addsOrUpdates) {
+                if (Objects.equals(update.seenFingerprint, getFingerprint(update.alarm.getId()))) {
+                    handleNewOrUpdatedAlarmNoLock(update.alarm, update.snapshotFingerprint, ingestTime);
+                }
+            }
         } finally {
             rwLock.writeLock().unlock();
         }
     }
 
-    private void handleNewOrUpdatedAlarmNoLock(org.opennms.integration.api.v1.model.Alarm alarm) {
-        final org.opennms.integration.api.v1.model.Alarm existingAlarm = alarmsById.get(alarm.getId());
-        alarmsById.put(alarm.getId(), alarm);
-        final Alarm oceAlarm = mapper.toAlarm(alarm);
+    @Override
+    public void handleNewOrUpdatedAlarm(org.opennms.integration.api.v1.model.Alarm alarm) {
+        final long ingestTime = System.currentTimeMillis();
+        dispatcher.dispatch(alarm.getId(), () -> {
+            waitForInit();
+
+            rwLock.writeLock().lock();
+            try {
+                handleNewOrUpdatedAlarmNoLock(alarm, fingerprint(alarm), ingestTime);
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+        });
+    }
 
-        if (!alarm.isSituation()) {
-            if (existingAlarm == null && !isCleared(alarm)) {
-                alarmHandlers.forEach(h -> h.onAlarmCreatedOrUpdated(oceAlarm));
+    private void handleNewOrUpdatedAlarmNoLock(org.opennms.integration.api.v1.model.Alarm alarm, long fingerprint,
+                                               long ingestTime) {
+        final AlarmEntry existingEntry = alarmsById.get(alarm.getId());
+        final AlarmEntry entry = toEntry(alarm, fingerprint, ingestTime);
+        alarmsById.put(alarm.getId(), entry);
+        invalidateViews();
+
+        if (!entry.isSituation()) {
+            if (existingEntry == null && !isCleared(alarm)) {
+                alarmHandlers.forEach(h -> h.onAlarmCreatedOrUpdated(entry.alarm));
                 // if there was no existing alarm, and the new one is cleared, don't bother issuing the callback
-            } else if (existingAlarm != null) {
+            } else if (existingEntry != null) {
                 if (!isCleared(alarm)) {
-                    alarmHandlers.forEach(h -> h.onAlarmCreatedOrUpdated(oceAlarm));
+                    alarmHandlers.forEach(h -> h.onAlarmCreatedOrUpdated(entry.alarm));
                 } else {
-                    alarmHandlers.forEach(h -> h.onAlarmCleared(oceAlarm));
+                    alarmHandlers.forEach(h -> h.onAlarmCleared(entry.alarm));
                 }
             }
         } else {
-            final Situation oceSituation = mapper.toSituation(existingAlarm);
-            situationHandlers.forEach(h -> h.onSituation(oceSituation));
+            situationHandlers.forEach(h -> h.onSituation(entry.situation));
         }
     }
 
     @Override
     public void handleDeletedAlarm(int alarmId, String reductionKey) {
-        waitForInit();
-
-        rwLock.writeLock().lock();
-        try {
-            handleDeletedNoLock(alarmId);
-        } finally {
-            rwLock.writeLock().unlock();
-        }
+        dispatcher.dispatch(alarmId, () -> {
+            waitForInit();
+
+            rwLock.writeLock().lock();
+            try {
+                handleDeletedNoLock(alarmId);
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+        });
     }
 
     private void handleDeletedNoLock(int alarmId) {
-        final org.opennms.integration.api.v1.model.Alarm existingAlarm = alarmsById.remove(alarmId);
-        if (existingAlarm != null) {
-            if (!existingAlarm.isSituation()) {
-                final Alarm oceAlarm = mapper.toAlarm(existingAlarm);
-                alarmHandlers.forEach(h -> h.onAlarmCleared(oceAlarm));
+        final AlarmEntry existingEntry = alarmsById.remove(alarmId);
+        if (existingEntry != null) {
+            invalidateViews();
+            if (!existingEntry.isSituation()) {
+                alarmHandlers.forEach(h -> h.onAlarmCleared(existingEntry.alarm));
             } else {
-                final Situation oceSituation = mapper.toSituation(existingAlarm);
-                situationHandlers.forEach(h -> h.onSituation(oceSituation));
+                situationHandlers.forEach(h -> h.onSituation(existingEntry.situation));
             }
         }
     }
 
+    private Long getFingerprint(Integer alarmId) {
+        final AlarmEntry entry = alarmsById.get(alarmId);
+        return entry != null ? entry.fingerprint : null;
+    }
+
+    private AlarmEntry toEntry(org.opennms.integration.api.v1.model.Alarm alarm, long fingerprint, Long ingestTime) {
+        if (alarm.isSituation()) {
+            return new AlarmEntry(fingerprint, null, mapper.toSituation(alarm));
+        }
+        return new AlarmEntry(fingerprint, mapper.toAlarm(alarm, ingestTime), null);
+    }
+
+    /**
+     * Must be called while holding the write lock, whenever {@link #alarmsById} changes.
+     */
+    private void invalidateViews() {
+        alarmsView = null;
+        situationsView = null;
+    }
+
     @Override
     public List<Alarm> getAlarms() {
         waitForInit();
 
         rwLock.readLock().lock();
         try {
-            return alarmsById.values().stream()
-                    .filter(a -> !a.isSituation())
-                    .map(a -> mapper.toAlarm(a))
-                    .collect(Collectors.toList());
+            // The view is only ever built while holding the read lock, so it can't be invalidated concurrently
+            List<Alarm> alarms = alarmsView;
+            if (alarms == null) {
+                alarms = alarmsById.values().stream()
+                        .filter(e -> !e.isSituation())
+                        .map(e -> e.alarm)
+                        .collect(Collectors.collectingAndThen(Collectors.toList(), ImmutableList::copyOf));
+                alarmsView = alarms;
+            }
+            return alarms;
         } finally {
             rwLock.readLock().unlock();
         }
@@ -222,6 +326,27 @@ public class DirectAlarmDatasource implements AlarmDatasource, AlarmLifecycleLis
         waitForInit();
     }
 
+    /**
+     * Computes a cheap fingerprint of the fields of an alarm that are relevant for correlation. Alarms with the same
+     * fingerprint are considered unchanged.
+     */
+    @VisibleForTesting
+    static long fingerprint(org.opennms.integration.api.v1.model.Alarm alarm) {
+        final Hasher hasher = FINGERPRINT_HASH_FUNCTION.newHasher()
+                .putBoolean(alarm.isSituation())
+                .putInt(alarm.getSeverity() != null ? alarm.getSeverity().ordinal() : -1)
+                .putLong(alarm.getLastEventTime() != null ? alarm.getLastEventTime().getTime() : -1L)
+                .putInt(alarm.getNode() != null && alarm.getNode().getId() != null ? alarm.getNode().getId() : -1)
+                .putUnencodedChars(Strings.nullToEmpty(alarm.getManagedObjectType()))
+                .putByte((byte) 0)
+                .putUnencodedChars(Strings.nullToEmpty(alarm.getManagedObjectInstance()));
+        if (alarm.isSituation() && alarm.getRelatedAlarms() != null) {
+            // The membership of a situation is part of its state
+            alarm.getRelatedAlarms().forEach(related -> hasher.putInt(related.getId()));
+        }
+        return hasher.hash().asLong();
+    }
+
     private static boolean isCleared(org.opennms.integration.api.v1.model.Alarm alarm) {
         return Severity.INDETERMINATE.equals(alarm.getSeverity()) || Severity.CLEARED.equals(alarm.getSeverity());
     }
@@ -232,10 +357,15 @@ public class DirectAlarmDatasource implements AlarmDatasource, AlarmLifecycleLis
 
         rwLock.readLock().lock();
         try {
-            return alarmsById.values().stream()
-                    .filter(org.opennms.integration.api.v1.model.Alarm::isSituation)
-                    .map(s -> mapper.toSituation(s))
-                    .collect(Collectors.toList());
+            List<Situation> situations = situationsView;
+            if (situations == null) {
+                situations = alarmsById.values().stream()
+                        .filter(AlarmEntry::isSituation)
+                        .map(e -> e.situation)
+                        .collect(Collectors.collectingAndThen(Collectors.toList(), ImmutableList::copyOf));
+                situationsView = situations;
+            }
+            return situations;
         } finally {
             rwLock.readLock().unlock();
         }
@@ -256,4 +386,55 @@ public class DirectAlarmDatasource implements AlarmDatasource, AlarmLifecycleLis
     public void unregisterHandler(SituationHandler handler) {
         situationHandlers.unregister(handler);
     }
+
+    /**
+     * The changes needed to reconcile the alarms with a snapshot.
+     */
+    @VisibleForTesting
+    static final class SnapshotDiff {
+        /**
+         * The fingerprints of the entries to delete, by alarm id.
+         */
+        private final Map<Integer, Long> deletes = new LinkedHashMap<>();
+        private final List<SnapshotUpdate> addsOrUpdates = new ArrayList<>();
+
+        private boolean isEmpty() {
+            return deletes.isEmpty() && addsOrUpdates.isEmpty();
+        }
+    }
+
+    private static final class SnapshotUpdate {
+        private final org.opennms.integration.api.v1.model.Alarm alarm;
+        private final long snapshotFingerprint;
+        /**
+         * The fingerprint of the entry when the diff was computed, or null if there was no entry.
+         */
+        private final Long seenFingerprint;
+
+        private SnapshotUpdate(org.opennms.integration.api.v1.model.Alarm alarm, long snapshotFingerprint,
+                               Long seenFingerprint) {
+            this.alarm = alarm;
+            this.snapshotFingerprint = snapshotFingerprint;
+            this.seenFingerprint = seenFingerprint;
+        }
+    }
+
+    /**
+     * The projection of an alarm we keep in memory: either the mapped alarm or, for situations, the mapped situation.
+     */
+    private static final class AlarmEntry {
+        private final long fingerprint;
+        private final Alarm alarm;
+        private final Situation situation;
+
+        private AlarmEntry(long fingerprint, Alarm alarm, Situation situation) {
+            this.fingerprint = fingerprint;
+            this.alarm = alarm;
+            this.situation = situation;
+        }
+
+        private boolean isSituation() {
+            return situation != null;
+        }
+    }
 }
@@ -82,13 +82,29 @@ public class DirectAlarmFeedbackDatasource implements AlarmFeedbackListener, Ala
 
     private final ApiMapper mapper;
 
+    /**
+     * Used to process the callbacks from OpenNMS.
+     */
+    private final CoalescingDispatcher dispatcher;
+
     /**
      * @param alarmFeedbackDao used to retrieve the current feedback
      * @param mapper used to Map between API and ALEC types
      */
     public DirectAlarmFeedbackDatasource(AlarmFeedbackDao alarmFeedbackDao, ApiMapper mapper) {
+        this(alarmFeedbackDao, mapper, CoalescingDispatcher.synchronous("feedback"));
+    }
+
+    /**
+     * @param alarmFeedbackDao used to retrieve the current feedback
+     * @param mapper used to Map between API and ALEC types
+     * @param dispatcher used to process the callbacks
+     */
+    public DirectAlarmFeedbackDatasource(AlarmFeedbackDao alarmFeedbackDao, ApiMapper mapper,
+                                         CoalescingDispatcher dispatcher) {
         this.feedbackDao = Objects.requireNonNull(alarmFeedbackDao);
         this.mapper = Objects.requireNonNull(mapper);
+        this.dispatcher = Objects.requireNonNull(dispatcher);
     }
 
     /**
@@ -117,15 +133,18 @@ public class DirectAlarmFeedbackDatasource implements AlarmFeedbackListener, Ala
 
     @Override
     public void onFeedback(org.opennms.integration.api.v1.model.AlarmFeedback feedback) {
-        waitForInit();
-        rwLock.writeLock().lock();
-        try {
-            AlarmFeedback newFeedback = mapper.toAlarmFeedback(feedback);
-            this.feedback.add(newFeedback);
-            feedbackHandlers.forEach(handler -> handler.handleAlarmFeedback(newFeedback));
-        } finally {
-            rwLock.writeLock().unlock();
-        }
+        // Feedback is never coalesced, every piece of feedback is relevant
+        dispatcher.dispatch(() -> {
+            waitForInit();
+            rwLock.writeLock().lock();
+            try {
+                AlarmFeedback newFeedback = mapper.toAlarmFeedback(feedback);
+                this.feedback.add(newFeedback);
+                feedbackHandlers.forEach(handler -> handler.handleAlarmFeedback(newFeedback));
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+        });
     }
 
     @Override
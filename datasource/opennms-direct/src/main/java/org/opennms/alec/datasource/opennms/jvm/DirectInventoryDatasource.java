@@ -31,16 +31,10 @@ package org.opennms.alec.datasource.opennms.jvm;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.opennms.alec.datasource.api.InventoryDatasource;
 import org.opennms.alec.datasource.api.InventoryHandler;
@@ -63,7 +57,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
 
 /**
  * A datasource that provides {@link InventoryObject inventory} via the integration API.
@@ -77,58 +71,10 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
     private final HandlerRegistry<InventoryHandler> inventoryHandlers = new HandlerRegistry<>();
 
     /**
-     * The set of inventory objects derived from alarms initially populated via {@link #init} and subsequently via
-     * callbacks {@link #handleAlarmSnapshot} and {@link #handleNewOrUpdatedAlarm}.
+     * The inventory derived from alarms, edges and nodes, initially populated via {@link #init} and subsequently via
+     * callbacks. All access must be synchronized on the registry.
      */
-    private Set<InventoryObject> inventoryFromAlarms = new LinkedHashSet<>();
-
-    /**
-     * The set of inventory objects derived from edges initially populated via {@link #init} and subsequently via
-     * callback {@link #onEdgeAddedOrUpdated}.
-     */
-    private Set<InventoryObject> inventoryFromEdges = new LinkedHashSet<>();
-
-    /**
-     * The set of inventory objects derived from nodes populated via {@link #init}. This set is never modified after it
-     * is initially populated.
-     */
-    private Set<InventoryObject> inventoryFromNodes = new LinkedHashSet<>();
-
-    /**
-     * A map of {@link InventoryObject inventory objects} to alarm Ids to facilitate tracking which alarms derived which
-     * inventory.
-     */
-    private Map<InventoryObject, Set<Integer>> inventoryToAlarmIdMapping = new HashMap<>();
-
-    /**
-     * A map of alarm Ids to {@link InventoryObject inventory objects} to facilitate tracking which alarms derived which
-     * inventory.
-     */
-    private Map<Integer, Set<InventoryObject>> alarmIdToInventoryMapping = new HashMap<>();
-
-    /**
-     * A map of {@link InventoryObject inventory objects} to edge Ids to facilitate tracking which edges derived which
-     * inventory.
-     */
-    private Map<InventoryObject, Set<String>> inventoryToEdgeIdMapping = new HashMap<>();
-
-    /**
-     * A map of edge Ids to {@link InventoryObject inventory objects} to facilitate tracking which edges derived which
-     * inventory.
-     */
-    private Map<String, Set<InventoryObject>> edgeIdToInventoryMapping = new HashMap<>();
-
-    /**
-     * A map of {@link InventoryObject inventory objects} to node Ids to facilitate tracking which nodes derived which
-     * inventory.
-     */
-    private Map<InventoryObject, Set<Integer>> inventoryToNodeIdMapping = new HashMap<>();
-
-    /**
-     * A map of node Ids to {@link InventoryObject inventory objects} to facilitate tracking which nodes derived which
-     * inventory.
-     */
-    private Map<Integer, Set<InventoryObject>> nodeIdToInventoryMapping = new HashMap<>();
+    private final InventoryRegistry registry = new InventoryRegistry();
 
     /**
      * A lock that prevents callbacks from being processed before we have finished {@link #init initializing}.
@@ -136,17 +82,17 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
     private final CountDownLatch initLock = new CountDownLatch(1);
 
     /**
-     * Used during {@link #init} to initialize {@link #inventoryFromNodes}.
+     * Used during {@link #init} to initialize the inventory derived from nodes.
      */
     private final NodeDao nodeDao;
 
     /**
-     * Used during {@link #init} to initialize {@link #inventoryFromAlarms}.
+     * Used during {@link #init} to initialize the inventory derived from alarms.
      */
     private final AlarmDao alarmDao;
 
     /**
-     * Used during {@link #init} to initialize {@link #inventoryFromEdges}.
+     * Used during {@link #init} to initialize the inventory derived from edges.
      */
     private final EdgeDao edgeDao;
 
@@ -160,6 +106,11 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
      */
     private final EventSubscriptionService eventSubscriptionService;
 
+    /**
+     * Used to process the callbacks from OpenNMS, coalescing the pending callbacks by alarm, edge and node id.
+     */
+    private final CoalescingDispatcher dispatcher;
+
     /**
      * A listener that reacts to the node events.
      */
@@ -178,6 +129,21 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
      */
     public DirectInventoryDatasource(NodeDao nodeDao, AlarmDao alarmDao, EdgeDao edgeDao, ApiMapper mapper,
                                      EventSubscriptionService eventSubscriptionService) {
+        this(nodeDao, alarmDao, edgeDao, mapper, eventSubscriptionService,
+                CoalescingDispatcher.synchronous("inventory"));
+    }
+
+    /**
+     * @param nodeDao    used to retrieve the current inventory
+     * @param alarmDao   used to retrieve the current inventory
+     * @param edgeDao    used to retrieve the current inventory
+     * @param mapper     used to Map between API and ALEC types
+     * @param dispatcher used to process the callbacks
+     */
+    public DirectInventoryDatasource(NodeDao nodeDao, AlarmDao alarmDao, EdgeDao edgeDao, ApiMapper mapper,
+                                     EventSubscriptionService eventSubscriptionService,
+                                     CoalescingDispatcher dispatcher) {
+        this.dispatcher = Objects.requireNonNull(dispatcher);
         this.nodeDao = Objects.requireNonNull(nodeDao);
         this.alarmDao = Objects.requireNonNull(alarmDao);
         this.edgeDao = Objects.requireNonNull(edgeDao);
@@ -189,7 +155,7 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
      * On init we will populate the inventory by retrieving all current inventory from the {@link NodeDao} and
      * {@link AlarmDao}.
      */
-    public synchronized void init() {
+    public void init() {
         eventSubscriptionService.addEventListener(nodeEventListener, nodeEventListener.nodeEventUeis);
         nodeDao.getNodes().forEach(n -> processNode(n, false));
         alarmDao.getAlarms().forEach(a -> processAlarm(a, false));
@@ -200,7 +166,7 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
     /**
      * On destroy we have to unsubscribe our listener.
      */
-    public synchronized void destroy() {
+    public void destroy() {
         eventSubscriptionService.removeEventListener(nodeEventListener);
     }
 
@@ -218,24 +184,42 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
     }
 
     /**
-     * Checks if this inventory is new and notifies handlers only on new inventory.
+     * Records the inventory derived from the given source, and notifies the handlers of the inventory that was not
+     * known before.
      *
-     * @param inventoryObjects the inventory mapped from the callback
-     * @param notifyHandlers   whether or not to notify handlers
+     * @param source         the type of source
+     * @param sourceId       the id of the alarm, edge or node
+     * @param inventory      the inventory mapped from the source
+     * @param notifyHandlers whether or not to notify handlers
      * @return the newly added inventory or an empty collection if no new inventory was added
      */
-    private synchronized Collection<InventoryObject> considerNewInventory(Set<InventoryObject> inventoryObjects,
-                                                                          boolean notifyHandlers) {
-        // Only add and notify for inventory that was not already known
-        Set<InventoryObject> newInventory = Sets.difference(inventoryObjects, allInventory()).immutableCopy();
-
-        if (!newInventory.isEmpty()) {
-            if (notifyHandlers) {
+    private List<InventoryObject> addInventory(InventoryRegistry.Source source, Object sourceId,
+                                               Collection<InventoryObject> inventory, boolean notifyHandlers) {
+        synchronized (registry) {
+            final List<InventoryObject> newInventory = registry.add(source, sourceId, inventory);
+            // Notify while holding the lock, so that the handlers see the additions and removals in order
+            if (notifyHandlers && !newInventory.isEmpty()) {
                 inventoryHandlers.forEach(handler -> handler.onInventoryAdded(newInventory));
             }
+            return newInventory;
         }
+    }
 
-        return newInventory;
+    /**
+     * Releases the inventory derived from the given source, and notifies the handlers of the inventory that is no
+     * longer referenced.
+     *
+     * @param source   the type of source
+     * @param sourceId the id of the alarm, edge or node
+     */
+    private void removeInventory(InventoryRegistry.Source source, Object sourceId) {
+        synchronized (registry) {
+            final List<InventoryObject> removedInventory = registry.remove(source, sourceId);
+            if (!removedInventory.isEmpty()) {
+                LOG.trace("Notifying handlers of inventory removal for IOs {}", removedInventory);
+                inventoryHandlers.forEach(handler -> handler.onInventoryRemoved(removedInventory));
+            }
+        }
     }
 
     private void processAlarm(Alarm alarm) {
@@ -245,11 +229,12 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
     /**
      * Process an alarm depending on if it is associated with a node or not.
      *
+     * The inventory is mapped before acquiring the lock on the registry, since this is by far the most expensive step.
+     *
      * @param alarm       the alarm to process
      * @param waitForInit whether or not to wait for init to finish first
      */
-    @SuppressWarnings("Duplicates")
-    private synchronized void processAlarm(Alarm alarm, boolean waitForInit) {
+    private void processAlarm(Alarm alarm, boolean waitForInit) {
         if (waitForInit) {
             waitForInit();
         }
@@ -259,47 +244,15 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
             return;
         }
 
-        Set<InventoryObject> inventoryToAdd = new HashSet<>();
         Node nodeForAlarm = alarm.getNode();
-
-        if (nodeForAlarm != null) {
-            inventoryToAdd.addAll(mapper.toInventory(nodeForAlarm));
-
-        } else {
-            inventoryToAdd.addAll(mapper.toInventory(alarm));
-        }
-
+        List<InventoryObject> inventoryToAdd = nodeForAlarm != null ? mapper.toInventory(nodeForAlarm) :
+                mapper.toInventory(alarm);
         if (!inventoryToAdd.isEmpty()) {
-            Collection<InventoryObject> newInventory = considerNewInventory(inventoryToAdd, waitForInit);
-            inventoryFromAlarms.addAll(inventoryToAdd);
-
+            List<InventoryObject> newInventory = addInventory(InventoryRegistry.Source.ALARM, alarm.getId(),
+                    inventoryToAdd, waitForInit);
             if (!newInventory.isEmpty() && LOG.isTraceEnabled()) {
                 LOG.trace("Alarm {} resulted in the following inventory being added {}", alarm, newInventory);
             }
-
-            // Update the set of alarm Ids that this inventory was derived from (alarm reference counting for this
-            // inventory)
-            inventoryToAdd.forEach(inventory ->
-                    inventoryToAlarmIdMapping.compute(inventory, (k, v) -> {
-                        if (v == null) {
-                            return new HashSet<>(Collections.singleton(alarm.getId()));
-                        }
-
-                        v.add(alarm.getId());
-                        return v;
-                    })
-            );
-
-            // Record that this alarm derived this inventory to make the lookup easier when it comes time to delete this
-            // alarm
-            alarmIdToInventoryMapping.compute(alarm.getId(), (k, v) -> {
-                if (v == null) {
-                    return new HashSet<>(inventoryToAdd);
-                }
-
-                v.addAll(inventoryToAdd);
-                return v;
-            });
         }
     }
 
@@ -313,8 +266,7 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
      * @param edge        the edge to process
      * @param waitForInit whether or not to wait for init to finish first
      */
-    @SuppressWarnings("Duplicates")
-    private synchronized void processEdge(TopologyEdge edge, boolean waitForInit) {
+    private void processEdge(TopologyEdge edge, boolean waitForInit) {
         if (waitForInit) {
             waitForInit();
         }
@@ -325,38 +277,12 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
         }
 
         List<InventoryObject> inventoryToAdd = mapper.toInventory(edge);
-
         if (!inventoryToAdd.isEmpty()) {
-            Collection<InventoryObject> newInventory = considerNewInventory(new HashSet<>(inventoryToAdd), waitForInit);
-            inventoryFromEdges.addAll(inventoryToAdd);
-
+            List<InventoryObject> newInventory = addInventory(InventoryRegistry.Source.EDGE, edge.getId(),
+                    inventoryToAdd, waitForInit);
             if (!newInventory.isEmpty() && LOG.isTraceEnabled()) {
                 LOG.trace("Edge {} resulted in the following inventory being added {}", edge, newInventory);
             }
-
-            // Update the set of edge Ids that this inventory was derived from (edge reference counting for this
-            // inventory)
-            inventoryToAdd.forEach(inventory ->
-                    inventoryToEdgeIdMapping.compute(inventory, (k, v) -> {
-                        if (v == null) {
-                            return new HashSet<>(Collections.singleton(edge.getId()));
-                        }
-
-                        v.add(edge.getId());
-                        return v;
-                    })
-            );
-
-            // Record that this edge derived this inventory to make the lookup easier when it comes time to delete this
-            // edge
-            edgeIdToInventoryMapping.compute(edge.getId(), (k, v) -> {
-                if (v == null) {
-                    return new HashSet<>(inventoryToAdd);
-                }
-
-                v.addAll(inventoryToAdd);
-                return v;
-            });
         }
     }
 
@@ -370,8 +296,7 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
      * @param node        the node to process
      * @param waitForInit whether or not to wait for init to finish first
      */
-    @SuppressWarnings("Duplicates")
-    private synchronized void processNode(Node node, boolean waitForInit) {
+    private void processNode(Node node, boolean waitForInit) {
         if (waitForInit) {
             waitForInit();
         }
@@ -382,116 +307,47 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
         }
 
         List<InventoryObject> inventoryToAdd = mapper.toInventory(node);
-
         if (!inventoryToAdd.isEmpty()) {
-            Collection<InventoryObject> newInventory = considerNewInventory(new HashSet<>(inventoryToAdd), waitForInit);
-            inventoryFromNodes.addAll(inventoryToAdd);
-
+            List<InventoryObject> newInventory = addInventory(InventoryRegistry.Source.NODE, node.getId(),
+                    inventoryToAdd, waitForInit);
             if (!newInventory.isEmpty() && LOG.isTraceEnabled()) {
                 LOG.trace("Node {} resulted in the following inventory being added {}", node, newInventory);
             }
-
-            // Update the set of node Ids that this inventory was derived from (alarm reference counting for this
-            // inventory)
-            inventoryToAdd.forEach(inventory ->
-                    inventoryToNodeIdMapping.compute(inventory, (k, v) -> {
-                        if (v == null) {
-                            return new HashSet<>(Collections.singleton(node.getId()));
-                        }
-
-                        v.add(node.getId());
-                        return v;
-                    })
-            );
-
-            // Record that this node derived this inventory to make the lookup easier when it comes time to delete this
-            // alarm
-            nodeIdToInventoryMapping.compute(node.getId(), (k, v) -> {
-                if (v == null) {
-                    return new HashSet<>(inventoryToAdd);
-                }
-
-                v.addAll(inventoryToAdd);
-                return v;
-            });
         }
     }
 
-    /**
-     * Notifies handlers of removal of an inventory object if it is no longer referenced.
-     *
-     * @param inventoryObject the inventory to consider for removal
-     */
-    private synchronized void considerInventoryForRemoval(InventoryObject inventoryObject) {
-        if (!isInventoryReferenced(inventoryObject)) {
-            // This inventory is no longer referenced by anything so we can notify handlers of its
-            // removal
-            LOG.trace("Notifying handlers of inventory removal for IO {}", inventoryObject);
-            inventoryHandlers.forEach(handler -> handler.onInventoryRemoved(Collections.singleton(inventoryObject)));
-        }
-    }
-
-    /**
-     * Checks if the given inventory is still referenced by an source.
-     *
-     * @param inventoryObject the inventory to check
-     * @return true if referenced by any source, false otherwise
-     */
-    private synchronized boolean isInventoryReferenced(InventoryObject inventoryObject) {
-        boolean isReferenced = false;
-        LOG.trace("Checking if inventory is still referenced {}", inventoryObject);
-        if (inventoryFromNodes.contains(inventoryObject)) {
-            isReferenced = true;
-            LOG.trace("IO is still referenced by nodes {}", inventoryObject);
-        }
-        if (inventoryFromAlarms.contains(inventoryObject)) {
-            isReferenced = true;
-            LOG.trace("IO is still referenced by alarms {}", inventoryObject);
-        }
-        if (inventoryFromEdges.contains(inventoryObject)) {
-            isReferenced = true;
-            LOG.trace("IO is still referenced by edges {}", inventoryObject);
-        }
-        return isReferenced;
-    }
-
-    private Set<InventoryObject> allInventory() {
-        //noinspection unchecked
-        return Collections.unmodifiableSet(mergeSets(inventoryFromAlarms, inventoryFromNodes, inventoryFromEdges));
-    }
-
-    @SafeVarargs
-    private static Set<InventoryObject> mergeSets(Set<InventoryObject>... sets) {
-        return Stream.of(sets)
-                .flatMap(Set::stream)
-                .collect(Collectors.toSet());
-    }
-
     @VisibleForTesting
-    synchronized boolean hasAnyAlarmReferences() {
-        return !inventoryFromAlarms.isEmpty() || !alarmIdToInventoryMapping.isEmpty() ||
-                !inventoryToAlarmIdMapping.isEmpty();
+    boolean hasAnyAlarmReferences() {
+        synchronized (registry) {
+            return registry.hasReferences(InventoryRegistry.Source.ALARM);
+        }
     }
 
     @VisibleForTesting
-    synchronized boolean hasAnyNodeReferences() {
-        return !inventoryFromNodes.isEmpty() || !nodeIdToInventoryMapping.isEmpty() ||
-                !inventoryToNodeIdMapping.isEmpty();
+    boolean hasAnyNodeReferences() {
+        synchronized (registry) {
+            return registry.hasReferences(InventoryRegistry.Source.NODE);
+        }
     }
 
     @VisibleForTesting
-    synchronized boolean hasAnyEdgeReferences() {
-        return !inventoryFromEdges.isEmpty() || !edgeIdToInventoryMapping.isEmpty() ||
-                !inventoryToEdgeIdMapping.isEmpty();
+    boolean hasAnyEdgeReferences() {
+        synchronized (registry) {
+            return registry.hasReferences(InventoryRegistry.Source.EDGE);
+        }
     }
 
     @VisibleForTesting
-    synchronized boolean hasAnyInventoryReferences() {
+    boolean hasAnyInventoryReferences() {
         return hasAnyAlarmReferences() || hasAnyNodeReferences() || hasAnyEdgeReferences();
     }
 
     @Override
-    public synchronized void handleAlarmSnapshot(List<Alarm> alarms) {
+    public void handleAlarmSnapshot(List<Alarm> alarms) {
+        dispatcher.dispatch(() -> reconcileSnapshot(alarms));
+    }
+
+    private void reconcileSnapshot(List<Alarm> alarms) {
         if (LOG.isTraceEnabled()) {
             LOG.trace("Received alarm snapshot {}", alarms);
         }
@@ -499,72 +355,46 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
         alarms.forEach(this::processAlarm);
 
         // Determine and process the alarms that must have been deleted according to the snapshot
-        Set<Integer> authoritativeAlarmIds = alarms.stream().map(Alarm::getId).collect(Collectors.toSet());
-        Set<Integer> deletedAlarms = Sets.difference(alarmIdToInventoryMapping.keySet(),
-                authoritativeAlarmIds).immutableCopy();
-        deletedAlarms.forEach(deletedAlarmId -> handleDeletedAlarm(deletedAlarmId, null));
+        final Set<Object> deletedAlarmIds;
+        synchronized (registry) {
+            deletedAlarmIds = registry.getSourceIds(InventoryRegistry.Source.ALARM);
+        }
+        alarms.forEach(alarm -> deletedAlarmIds.remove(alarm.getId()));
+        deletedAlarmIds.forEach(deletedAlarmId -> removeInventory(InventoryRegistry.Source.ALARM, deletedAlarmId));
     }
 
     @Override
     public void handleNewOrUpdatedAlarm(Alarm alarm) {
         LOG.trace("Received new or updated alarm {}", alarm);
-        processAlarm(alarm);
+        dispatcher.dispatch(key(InventoryRegistry.Source.ALARM, alarm.getId()), () -> processAlarm(alarm));
     }
 
-    @SuppressWarnings("Duplicates")
     @Override
-    public synchronized void handleDeletedAlarm(int alarmId, String reductionKey) {
+    public void handleDeletedAlarm(int alarmId, String reductionKey) {
         LOG.trace("Received delete for alarm Id {}", alarmId);
-        // Check if this alarm had any inventory associated
-        Set<InventoryObject> inventoryForAlarm = alarmIdToInventoryMapping.get(alarmId);
-
-        if (inventoryForAlarm != null) {
-            // Since this alarm has been deleted we can clear the inventory associated with it
-            alarmIdToInventoryMapping.remove(alarmId);
-
-            inventoryForAlarm.forEach(inventory -> {
-                Set<Integer> alarmIdsForInventory = inventoryToAlarmIdMapping.get(inventory);
-                alarmIdsForInventory.remove(alarmId);
-
-                if (alarmIdsForInventory.isEmpty()) {
-                    // This inventory is no longer derived via alarms
-                    inventoryFromAlarms.remove(inventory);
-                    inventoryToAlarmIdMapping.remove(inventory);
-                }
-                considerInventoryForRemoval(inventory);
-            });
-        }
+        dispatcher.dispatch(key(InventoryRegistry.Source.ALARM, alarmId),
+                () -> removeInventory(InventoryRegistry.Source.ALARM, alarmId));
     }
 
     @Override
     public void onEdgeAddedOrUpdated(TopologyEdge topologyEdge) {
         LOG.trace("Received add/update for edge {}", topologyEdge);
-        processEdge(topologyEdge);
+        dispatcher.dispatch(key(InventoryRegistry.Source.EDGE, topologyEdge.getId()),
+                () -> processEdge(topologyEdge));
     }
 
-    @SuppressWarnings("Duplicates")
     @Override
-    public synchronized void onEdgeDeleted(TopologyEdge topologyEdge) {
+    public void onEdgeDeleted(TopologyEdge topologyEdge) {
         LOG.trace("Received delete for edge {}", topologyEdge);
-        // Check if this edge had any inventory associated
-        Set<InventoryObject> inventoryForEdge = edgeIdToInventoryMapping.get(topologyEdge.getId());
-
-        if (inventoryForEdge != null) {
-            // Since this edge has been deleted we can clear the inventory associated with it
-            edgeIdToInventoryMapping.remove(topologyEdge.getId());
-
-            inventoryForEdge.forEach(inventory -> {
-                Set<String> edgeIdsForInventory = inventoryToEdgeIdMapping.get(inventory);
-                edgeIdsForInventory.remove(topologyEdge.getId());
-
-                if (edgeIdsForInventory.isEmpty()) {
-                    // This inventory is no longer derived via edges
-                    inventoryFromEdges.remove(inventory);
-                    inventoryToEdgeIdMapping.remove(inventory);
-                }
-                considerInventoryForRemoval(inventory);
-            });
-        }
+        dispatcher.dispatch(key(InventoryRegistry.Source.EDGE, topologyEdge.getId()),
+                () -> removeInventory(InventoryRegistry.Source.EDGE, topologyEdge.getId()));
+    }
+
+    /**
+     * @return the key used to coalesce callbacks for the given source
+     */
+    private static Object key(InventoryRegistry.Source source, Object sourceId) {
+        return Maps.immutableEntry(source, sourceId);
     }
 
     @Override
@@ -573,15 +403,21 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
     }
 
     @Override
-    public synchronized List<InventoryObject> getInventory() {
+    public List<InventoryObject> getInventory() {
         waitForInit();
-        return ImmutableList.copyOf(allInventory());
+        synchronized (registry) {
+            return ImmutableList.copyOf(registry.getInventory());
+        }
     }
 
     @Override
     public List<InventoryObject> getInventoryAndRegisterHandler(InventoryHandler handler) {
-        inventoryHandlers.register(handler);
-        return getInventory();
+        waitForInit();
+        // Register while holding the lock so the handler neither misses nor duplicates any changes
+        synchronized (registry) {
+            inventoryHandlers.register(handler);
+            return ImmutableList.copyOf(registry.getInventory());
+        }
     }
 
     @Override
@@ -610,32 +446,10 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
         private final Collection<String> nodeEventUeis = Arrays.asList(NODE_ADDED_UEI, NODE_UPDATED_UEI,
                 NODE_DELETED_UEI);
 
-        @SuppressWarnings("Duplicates")
         private void handleNodeDeleted(Integer nodeId) {
             Objects.requireNonNull(nodeId);
             waitForInit();
-
-            synchronized (DirectInventoryDatasource.this) {
-                // Check if this node had any inventory associated
-                Set<InventoryObject> inventoryForNode = nodeIdToInventoryMapping.get(nodeId);
-
-                if (inventoryForNode != null) {
-                    // Since this node has been deleted we can clear the inventory associated with it
-                    nodeIdToInventoryMapping.remove(nodeId);
-
-                    inventoryForNode.forEach(inventory -> {
-                        Set<Integer> nodeIdsForInventory = inventoryToNodeIdMapping.get(inventory);
-                        nodeIdsForInventory.remove(nodeId);
-
-                        if (nodeIdsForInventory.isEmpty()) {
-                            // This inventory is no longer derived via nodes
-                            inventoryFromNodes.remove(inventory);
-                            inventoryToNodeIdMapping.remove(inventory);
-                        }
-                        considerInventoryForRemoval(inventory);
-                    });
-                }
-            }
+            removeInventory(InventoryRegistry.Source.NODE, nodeId);
         }
 
         @Override
@@ -645,22 +459,25 @@ public class DirectInventoryDatasource implements InventoryDatasource, AlarmLife
 
         @Override
         public int getNumThreads() {
-            // One thread should be fine since all the work that results form the callback is synchronized anyway
+            // One thread keeps the node events in order
             return 1;
         }
 
         @Override
         public void onEvent(InMemoryEvent inMemoryEvent) {
+            final Integer nodeId = inMemoryEvent.getNodeId();
             switch (inMemoryEvent.getUei()) {
                 case NODE_ADDED_UEI:
                 case NODE_UPDATED_UEI:
-                    Node node = nodeDao.getNodeById(inMemoryEvent.getNodeId());
-                    LOG.trace("Received add/update for node {}", node);
-                    processNode(node);
+                    dispatcher.dispatch(key(InventoryRegistry.Source.NODE, nodeId), () -> {
+                        Node node = nodeDao.getNodeById(nodeId);
+                        LOG.trace("Received add/update for node {}", node);
+                        processNode(node);
+                    });
                     break;
                 case NODE_DELETED_UEI:
-                    LOG.trace("Received delete for node Id {}", inMemoryEvent.getNodeId());
-                    handleNodeDeleted(inMemoryEvent.getNodeId());
+                    LOG.trace("Received delete for node Id {}", nodeId);
+                    dispatcher.dispatch(key(InventoryRegistry.Source.NODE, nodeId), () -> handleNodeDeleted(nodeId));
             }
         }
     }
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.jvm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.opennms.alec.datasource.api.InventoryObject;
+
+/**
+ * Keeps track of the inventory derived from alarms, edges and nodes.
+ *
+ * Every inventory object is reference counted by the ids of the alarms, edges and nodes it was derived from,
+ * so that membership checks and removals are constant time, regardless of the total amount of inventory.
+ *
+ * This class is not thread safe, callers are expected to synchronize access to it.
+ */
+class InventoryRegistry {
+
+    enum Source {
+        ALARM,
+        EDGE,
+        NODE
+    }
+
+    /**
+     * The number of alarms, edges and nodes referencing each inventory object, indexed by {@link Source#ordinal()}.
+     * Objects are only present in this map while they are referenced.
+     */
+    private final Map<InventoryObject, int[]> referenceCounts = new LinkedHashMap<>();
+
+    /**
+     * The inventory derived from every alarm, edge and node.
+     */
+    private final Map<Source, Map<Object, Set<InventoryObject>>> inventoryBySourceId = new EnumMap<>(Source.class);
+
+    InventoryRegistry() {
+        for (Source source : Source.values()) {
+            inventoryBySourceId.put(source, new HashMap<>());
+        }
+    }
+
+    /**
+     * Records that the given inventory was derived from the given source.
+     *
+     * @param source the type of source
+     * @param sourceId the id of the alarm, edge or node
+     * @param inventory the inventory derived from the source
+     * @return the inventory that was not referenced by any source before
+     */
+    List<InventoryObject> add(Source source, Object sourceId, Collection<InventoryObject> inventory) {
+        final Set<InventoryObject> inventoryForSource = inventoryBySourceId.get(source)
+                .computeIfAbsent(sourceId, k -> new HashSet<>());
+        final List<InventoryObject> newInventory = new ArrayList<>();
+        for (InventoryObject io : inventory) {
+            if (!inventoryForSource.add(io)) {
+                // already referenced by this source
+                continue;
+            }
+            final int[] counts = referenceCounts.computeIfAbsent(io, k -> {
+                newInventory.add(io);
+                return new int[Source.values().length];
+            });
+            counts[source.ordinal()]++;
+        }
+        if (inventoryForSource.isEmpty()) {
+            inventoryBySourceId.get(source).remove(sourceId);
+        }
+        return newInventory;
+    }
+
+    /**
+     * Releases the references held by the given source.
+     *
+     * @param source the type of source
+     * @param sourceId the id of the alarm, edge or node
+     * @return the inventory that is no longer referenced by any source
+     */
+    List<InventoryObject> remove(Source source, Object sourceId) {
+        final Set<InventoryObject> inventoryForSource = inventoryBySourceId.get(source).remove(sourceId);
+        if (inventoryForSource == null) {
+            return Collections.emptyList();
+        }
+        final List<InventoryObject> removedInventory = new ArrayList<>();
+        for (InventoryObject io : inventoryForSource) {
+            final int[] counts = referenceCounts.get(io);
+            counts[source.ordinal()]--;
+            if (isUnreferenced(counts)) {
+                referenceCounts.remove(io);
+                removedInventory.add(io);
+            }
+        }
+        return removedInventory;
+    }
+
+    boolean contains(InventoryObject io) {
+        return referenceCounts.containsKey(io);
+    }
+
+    /**
+     * @return a copy of the ids of the sources of the given type that reference inventory
+     */
+    Set<Object> getSourceIds(Source source) {
+        return new HashSet<>(inventoryBySourceId.get(source).keySet());
+    }
+
+    /**
+     * @return a copy of all of the inventory that is currently referenced
+     */
+    List<InventoryObject> getInventory() {
+        return new ArrayList<>(referenceCounts.keySet());
+    }
+
+    boolean hasReferences(Source source) {
+        if (!inventoryBySourceId.get(source).isEmpty()) {
+            return true;
+        }
+        return referenceCounts.values().stream().anyMatch(counts -> counts[source.ordinal()] > 0);
+    }
+
+    private static boolean isUnreferenced(int[] counts) {
+        for (int count : counts) {
+            if (count > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -41,6 +41,8 @@ import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+
 /**
  * @author smith
  *
@@ -52,6 +54,11 @@ public class OpennmsDirectScriptedInventory extends AbstractScriptedInventory im
     public OpennmsDirectScriptedInventory(String scriptPath, long scriptCacheMillis, BundleContext bundleContext) {
         super(scriptPath, scriptCacheMillis, bundleContext);
     }
+
+    public OpennmsDirectScriptedInventory(String scriptPath, long scriptCacheMillis, BundleContext bundleContext,
+                                          MetricRegistry metrics) {
+        super(scriptPath, scriptCacheMillis, bundleContext, metrics);
+    }
     
     public static OpennmsDirectScriptedInventory withDefaults() {
         // Empty string results in the default script being loaded
@@ -70,10 +77,10 @@ public class OpennmsDirectScriptedInventory extends AbstractScriptedInventory im
      * @throws ScriptedInventoryException if the script invocation fails
      */
     @Override
-    public synchronized void overrideTypeAndInstance(ImmutableAlarm.Builder alarmBuilder,
+    public void overrideTypeAndInstance(ImmutableAlarm.Builder alarmBuilder,
             org.opennms.integration.api.v1.model.Alarm alarm) throws ScriptedInventoryException {
         try {
-            getInvocable().invokeFunction("overrideTypeAndInstance", alarmBuilder, alarm);
+            invokeFunction("overrideTypeAndInstance", alarmBuilder, alarm);
         } catch (Exception e) {
             throw new ScriptedInventoryException("Failed to override inventory for alarm", e);
         }
@@ -81,9 +88,9 @@ public class OpennmsDirectScriptedInventory extends AbstractScriptedInventory im
 
     @Override
     @SuppressWarnings("unchecked")
-    public synchronized List<InventoryObject> createInventoryObjects(Alarm alarm) throws ScriptedInventoryException {
+    public List<InventoryObject> createInventoryObjects(Alarm alarm) throws ScriptedInventoryException {
         try {
-            return (List<InventoryObject>) getInvocable().invokeFunction("alarmToInventory", alarm);
+            return (List<InventoryObject>) invokeFunction("alarmToInventory", alarm);
         } catch (Exception e) {
             throw new ScriptedInventoryException("Failed to create inventory from alarm", e);
         }
@@ -91,9 +98,9 @@ public class OpennmsDirectScriptedInventory extends AbstractScriptedInventory im
 
     @Override
     @SuppressWarnings("unchecked")
-    public synchronized List<InventoryObject> createInventoryObjects(Node node) throws ScriptedInventoryException {
+    public List<InventoryObject> createInventoryObjects(Node node) throws ScriptedInventoryException {
         try {
-            return (List<InventoryObject>) getInvocable().invokeFunction("nodeToInventory", node);
+            return (List<InventoryObject>) invokeFunction("nodeToInventory", node);
         } catch (Exception e) {
             throw new ScriptedInventoryException("Failed to create inventory from node", e);
         }
@@ -103,7 +110,7 @@ public class OpennmsDirectScriptedInventory extends AbstractScriptedInventory im
     @SuppressWarnings("unchecked")
     public List<InventoryObject> createInventoryObjects(TopologyEdge edge) throws ScriptedInventoryException {
         try {
-            return (List<InventoryObject>) getInvocable().invokeFunction("edgeToInventory", edge);
+            return (List<InventoryObject>) invokeFunction("edgeToInventory", edge);
         } catch (Exception e) {
             throw new ScriptedInventoryException("Failed to create inventory from edge", e);
         }
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.jvm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class CoalescingDispatcherTest {
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final List<String> executed = new CopyOnWriteArrayList<>();
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private CoalescingDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        unblock.countDown();
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    public void canCoalesceTasksWithTheSameKey() throws InterruptedException {
+        dispatcher = start(10, CoalescingDispatcher.OverflowPolicy.BLOCK);
+        blockWorker();
+
+        dispatcher.dispatch(1, () -> executed.add("a1"));
+        dispatcher.dispatch(2, () -> executed.add("b1"));
+        dispatcher.dispatch(1, () -> executed.add("a2"));
+        assertThat(dispatcher.getQueueDepth(), equalTo(2));
+
+        unblock.countDown();
+        assertThat(dispatcher.awaitIdle(10, TimeUnit.SECONDS), equalTo(true));
+        // The latest task for the key keeps the position of the first
+        assertThat(executed, contains("a2", "b1"));
+        assertThat(metrics.meter("test.coalesced").getCount(), equalTo(1L));
+    }
+
+    @Test
+    public void canNotCoalesceAcrossBarriers() throws InterruptedException {
+        dispatcher = start(10, CoalescingDispatcher.OverflowPolicy.BLOCK);
+        blockWorker();
+
+        dispatcher.dispatch(1, () -> executed.add("a1"));
+        dispatcher.dispatch(() -> executed.add("snapshot"));
+        dispatcher.dispatch(1, () -> executed.add("a2"));
+        dispatcher.dispatch(1, () -> executed.add("a3"));
+
+        unblock.countDown();
+        assertThat(dispatcher.awaitIdle(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(executed, contains("a1", "snapshot", "a3"));
+    }
+
+    @Test
+    public void canDropTasksWhenFull() throws InterruptedException {
+        dispatcher = start(2, CoalescingDispatcher.OverflowPolicy.DROP);
+        blockWorker();
+
+        dispatcher.dispatch(1, () -> executed.add("a1"));
+        dispatcher.dispatch(2, () -> executed.add("b1"));
+        dispatcher.dispatch(3, () -> executed.add("c1"));
+        // Coalescing does not require room in the queue
+        dispatcher.dispatch(2, () -> executed.add("b2"));
+        assertThat(metrics.getGauges().get("test.queueDepth").getValue(), equalTo(2));
+
+        unblock.countDown();
+        assertThat(dispatcher.awaitIdle(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(executed, contains("a1", "b2"));
+        assertThat(metrics.meter("test.dropped").getCount(), equalTo(1L));
+    }
+
+    @Test
+    public void canRunSynchronously() {
+        dispatcher = CoalescingDispatcher.synchronous("test");
+        dispatcher.dispatch(1, () -> executed.add("a1"));
+        dispatcher.dispatch(1, () -> executed.add("a2"));
+        assertThat(executed, contains("a1", "a2"));
+    }
+
+    private CoalescingDispatcher start(int maxQueueSize, CoalescingDispatcher.OverflowPolicy overflowPolicy) {
+        final CoalescingDispatcher dispatcher = new CoalescingDispatcher("test", maxQueueSize, overflowPolicy,
+                metrics);
+        dispatcher.start();
+        return dispatcher;
+    }
+
+    private void blockWorker() throws InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        dispatcher.dispatch(() -> {
+            blocked.countDown();
+            try {
+                unblock.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        blocked.await();
+    }
+}
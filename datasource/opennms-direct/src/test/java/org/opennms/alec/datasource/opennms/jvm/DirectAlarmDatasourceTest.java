@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.jvm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.alec.datasource.api.AlarmHandler;
+import org.opennms.integration.api.v1.dao.AlarmDao;
+import org.opennms.integration.api.v1.events.EventForwarder;
+import org.opennms.integration.api.v1.model.Alarm;
+import org.opennms.integration.api.v1.model.Severity;
+
+public class DirectAlarmDatasourceTest {
+    private final AlarmDao alarmDao = mock(AlarmDao.class);
+    private final ApiMapper mapper = mock(ApiMapper.class);
+    private final AlarmHandler alarmHandler = mock(AlarmHandler.class);
+    private DirectAlarmDatasource datasource;
+
+    @Before
+    public void setUp() {
+        final org.opennms.alec.datasource.api.Alarm mappedAlarm = mock(org.opennms.alec.datasource.api.Alarm.class);
+        when(mapper.toAlarm(any(), any())).thenReturn(mappedAlarm);
+        final List<Alarm> initialAlarms = Arrays.asList(alarm(1, Severity.MAJOR, 1000L),
+                alarm(2, Severity.MINOR, 1000L));
+        when(alarmDao.getAlarms()).thenReturn(initialAlarms);
+        datasource = new DirectAlarmDatasource(alarmDao, mock(EventForwarder.class), mapper);
+        datasource.init();
+        datasource.registerHandler(alarmHandler);
+    }
+
+    @Test
+    public void canSkipUnchangedAlarmsInSnapshot() {
+        datasource.handleAlarmSnapshot(Arrays.asList(alarm(1, Severity.MAJOR, 1000L),
+                alarm(2, Severity.MINOR, 1000L)));
+        verify(alarmHandler, never()).onAlarmCreatedOrUpdated(any());
+        verify(alarmHandler, never()).onAlarmCleared(any());
+    }
+
+    @Test
+    public void canReconcileChangedAlarmsInSnapshot() {
+        // Alarm 1 has a new event, alarm 2 is gone and alarm 3 is new
+        datasource.handleAlarmSnapshot(Arrays.asList(alarm(1, Severity.MAJOR, 2000L),
+                alarm(3, Severity.WARNING, 1000L)));
+        verify(alarmHandler, times(2)).onAlarmCreatedOrUpdated(any());
+        verify(alarmHandler, times(1)).onAlarmCleared(any());
+        assertThat(datasource.getAlarms().size(), equalTo(2));
+
+        // Applying the same snapshot again is a no-op
+        datasource.handleAlarmSnapshot(Arrays.asList(alarm(1, Severity.MAJOR, 2000L),
+                alarm(3, Severity.WARNING, 1000L)));
+        verify(alarmHandler, times(2)).onAlarmCreatedOrUpdated(any());
+        verify(alarmHandler, times(1)).onAlarmCleared(any());
+
+        datasource.handleAlarmSnapshot(Collections.emptyList());
+        verify(alarmHandler, times(3)).onAlarmCleared(any());
+    }
+
+    @Test
+    public void canSkipAlarmsChangedWhileReconcilingSnapshot() {
+        // Alarm 1 has a new event, alarm 2 is gone and alarm 3 is new
+        final Alarm snapshotAlarm1 = alarm(1, Severity.MAJOR, 2000L);
+        final Alarm snapshotAlarm3 = alarm(3, Severity.WARNING, 1000L);
+        final DirectAlarmDatasource.SnapshotDiff diff = datasource.diffSnapshot(
+                Arrays.asList(snapshotAlarm1, snapshotAlarm3));
+
+        // Callbacks for all of these alarms arrive before the diff is applied
+        datasource.handleNewOrUpdatedAlarm(alarm(1, Severity.CRITICAL, 3000L));
+        datasource.handleNewOrUpdatedAlarm(alarm(2, Severity.MINOR, 3000L));
+        datasource.handleNewOrUpdatedAlarm(alarm(3, Severity.WARNING, 3000L));
+        verify(alarmHandler, times(3)).onAlarmCreatedOrUpdated(any());
+
+        // The callbacks are more recent than the snapshot, so none of its changes should be applied
+        datasource.applySnapshotDiff(diff, System.currentTimeMillis());
+        verify(alarmHandler, times(3)).onAlarmCreatedOrUpdated(any());
+        verify(alarmHandler, never()).onAlarmCleared(any());
+        verify(mapper, never()).toAlarm(eq(snapshotAlarm1), any());
+        verify(mapper, never()).toAlarm(eq(snapshotAlarm3), any());
+        assertThat(datasource.getAlarms().size(), equalTo(3));
+    }
+
+    @Test
+    public void canCacheMappedAlarms() {
+        final List<org.opennms.alec.datasource.api.Alarm> alarms = datasource.getAlarms();
+        assertThat(alarms.size(), equalTo(2));
+        assertThat(datasource.getAlarms(), sameInstance(alarms));
+        // Alarms are only mapped when they are received
+        verify(mapper, times(2)).toAlarm(any(), any());
+
+        datasource.handleNewOrUpdatedAlarm(alarm(3, Severity.MAJOR, 1000L));
+        assertThat(datasource.getAlarms(), not(sameInstance(alarms)));
+        assertThat(datasource.getAlarms().size(), equalTo(3));
+        verify(mapper, times(3)).toAlarm(any(), any());
+    }
+
+    @Test
+    public void canFingerprintAlarms() {
+        assertThat(DirectAlarmDatasource.fingerprint(alarm(1, Severity.MAJOR, 1000L)),
+                equalTo(DirectAlarmDatasource.fingerprint(alarm(1, Severity.MAJOR, 1000L))));
+        assertThat(DirectAlarmDatasource.fingerprint(alarm(1, Severity.MAJOR, 1000L)),
+                not(equalTo(DirectAlarmDatasource.fingerprint(alarm(1, Severity.CRITICAL, 1000L)))));
+        assertThat(DirectAlarmDatasource.fingerprint(alarm(1, Severity.MAJOR, 1000L)),
+                not(equalTo(DirectAlarmDatasource.fingerprint(alarm(1, Severity.MAJOR, 1001L)))));
+    }
+
+    private static Alarm alarm(int id, Severity severity, long lastEventTime) {
+        final Alarm alarm = mock(Alarm.class);
+        when(alarm.getId()).thenReturn(id);
+        when(alarm.getReductionKey()).thenReturn("alarm:" + id);
+        when(alarm.getSeverity()).thenReturn(severity);
+        when(alarm.getLastEventTime()).thenReturn(new Date(lastEventTime));
+        when(alarm.getManagedObjectType()).thenReturn("node");
+        when(alarm.getManagedObjectInstance()).thenReturn("n" + id);
+        return alarm;
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.jvm;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.opennms.alec.datasource.api.InventoryObject;
+import org.opennms.alec.datasource.common.ImmutableInventoryObject;
+import org.opennms.alec.datasource.opennms.jvm.InventoryRegistry.Source;
+
+public class InventoryRegistryTest {
+    private final InventoryRegistry registry = new InventoryRegistry();
+    private final InventoryObject node = io("node", "n1");
+    private final InventoryObject port = io("port", "n1:1");
+
+    @Test
+    public void canReferenceCountInventoryAcrossSources() {
+        assertThat(registry.add(Source.NODE, 1, Collections.singletonList(node)), contains(node));
+        // Already known via the node
+        assertThat(registry.add(Source.ALARM, 10, Arrays.asList(node, port)), contains(port));
+        assertThat(registry.add(Source.ALARM, 11, Arrays.asList(node, port)), empty());
+        assertThat(registry.getInventory(), containsInAnyOrder(node, port));
+
+        assertThat(registry.remove(Source.ALARM, 10), empty());
+        // The port is no longer referenced by any alarm, but the node is still referenced by the node itself
+        assertThat(registry.remove(Source.ALARM, 11), contains(port));
+        assertThat(registry.hasReferences(Source.ALARM), equalTo(false));
+        assertThat(registry.contains(node), equalTo(true));
+        assertThat(registry.contains(port), equalTo(false));
+
+        assertThat(registry.remove(Source.NODE, 1), contains(node));
+        assertThat(registry.getInventory(), empty());
+        assertThat(registry.hasReferences(Source.NODE), equalTo(false));
+    }
+
+    @Test
+    public void canAddTheSameInventoryForTheSameSourceRepeatedly() {
+        registry.add(Source.EDGE, "e1", Collections.singletonList(port));
+        assertThat(registry.add(Source.EDGE, "e1", Arrays.asList(port, node)), contains(node));
+        assertThat(registry.getSourceIds(Source.EDGE), contains("e1"));
+        // A single removal releases everything the edge referenced
+        assertThat(registry.remove(Source.EDGE, "e1"), containsInAnyOrder(node, port));
+        assertThat(registry.getSourceIds(Source.EDGE), empty());
+    }
+
+    @Test
+    public void canRemoveUnknownSource() {
+        assertThat(registry.remove(Source.ALARM, 99), empty());
+    }
+
+    private static InventoryObject io(String type, String id) {
+        return ImmutableInventoryObject.newBuilder()
+                .setType(type)
+                .setId(id)
+                .build();
+    }
+}
@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.opennms.alec.engine.api.EngineStateDelta;
+import org.opennms.alec.engine.api.EngineStateTransport;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Streams the engine state deltas through a log-compacted Kafka topic.
+ *
+ * Every situation and every blacklist is stored under its own key and deletions are written as tombstones, so that
+ * once compacted, the topic holds the complete state of the active engine. The topic should be created with
+ * <code>cleanup.policy=compact</code>.
+ *
+ * The Kafka clients are only created once the transport is used. The topic is consumed from the beginning once the
+ * first consumer subscribes, so the state is rebuilt from the retained records before following the updates.
+ */
+public class KafkaEngineStateTransport implements EngineStateTransport {
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaEngineStateTransport.class);
+
+    static final String SITUATION_KEY_PREFIX = "situation:";
+    static final String BLACKLIST_KEY_PREFIX = "blacklist:";
+
+    private static final Gson GSON = new Gson();
+
+    private static class SituationValue {
+        private long creationTime;
+        private List<String> alarmIds;
+        private String diagnosticText;
+    }
+
+    private final ConfigurationAdmin configAdmin;
+    private final String topic;
+    private final Set<Consumer<EngineStateDelta>> consumers = new CopyOnWriteArraySet<>();
+
+    private KafkaProducer<String, String> producer;
+    private KafkaConsumer<String, String> consumer;
+    private Thread consumerThread;
+    private volatile boolean running = true;
+
+    public KafkaEngineStateTransport(ConfigurationAdmin configAdmin, String topic) {
+        this.configAdmin = Objects.requireNonNull(configAdmin);
+        this.topic = Objects.requireNonNull(topic);
+    }
+
+    public synchronized void destroy() {
+        running = false;
+        if (consumer != null) {
+            consumer.wakeup();
+        }
+        if (consumerThread != null) {
+            try {
+                consumerThread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while waiting for the engine state consumer to stop.");
+                Thread.currentThread().interrupt();
+            }
+            consumerThread = null;
+        }
+        if (producer != null) {
+            producer.close(Duration.ofSeconds(30));
+            producer = null;
+        }
+    }
+
+    private synchronized KafkaProducer<String, String> getProducer() throws IOException {
+        if (producer == null) {
+            if (!running) {
+                throw new IllegalStateException("The transport was destroyed.");
+            }
+            final Properties producerProperties = loadClientProperties();
+            producerProperties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+            producerProperties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+            producer = KafkaUtils.runWithGivenClassLoader(() -> new KafkaProducer<>(producerProperties),
+                    KafkaProducer.class.getClassLoader());
+        }
+        return producer;
+    }
+
+    @Override
+    public void publish(EngineStateDelta delta) {
+        final KafkaProducer<String, String> producer;
+        try {
+            producer = getProducer();
+        } catch (IOException e) {
+            LOG.error("Failed to load the configuration for the engine state producer. The delta will be lost.", e);
+            return;
+        }
+        for (ProducerRecord<String, String> record : toRecords(topic, delta)) {
+            producer.send(record, (metadata, ex) -> {
+                if (ex != null) {
+                    LOG.warn("An error occurred while publishing the engine state for key: {}", record.key(), ex);
+                }
+            });
+        }
+    }
+
+    @Override
+    public synchronized void subscribe(Consumer<EngineStateDelta> deltaConsumer) {
+        consumers.add(Objects.requireNonNull(deltaConsumer));
+        if (consumerThread == null && running) {
+            consumerThread = new Thread(this::consume, "alec-engine-state-consumer");
+            consumerThread.setDaemon(true);
+            consumerThread.start();
+        }
+    }
+
+    @Override
+    public void unsubscribe(Consumer<EngineStateDelta> deltaConsumer) {
+        consumers.remove(deltaConsumer);
+    }
+
+    private void consume() {
+        final Properties consumerProperties;
+        try {
+            consumerProperties = loadClientProperties();
+        } catch (IOException e) {
+            LOG.error("Failed to load the configuration for the engine state consumer.", e);
+            return;
+        }
+        consumerProperties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        consumerProperties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        // Every member reads the complete topic, we never commit offsets
+        consumerProperties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        consumerProperties.remove(ConsumerConfig.GROUP_ID_CONFIG);
+
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            consumer = KafkaUtils.runWithGivenClassLoader(() -> new KafkaConsumer<>(consumerProperties),
+                    KafkaConsumer.class.getClassLoader());
+        }
+        try {
+            final List<TopicPartition> partitions = waitForPartitions();
+            consumer.assign(partitions);
+            consumer.seekToBeginning(partitions);
+            LOG.info("Consuming the engine state from {} partitions of topic: {}", partitions.size(), topic);
+            while (running) {
+                final ConsumerRecords<String, String> records = consumer.poll(Duration.ofSeconds(1));
+                if (records.isEmpty()) {
+                    continue;
+                }
+                final EngineStateDelta delta = toDelta(records);
+                for (Consumer<EngineStateDelta> deltaConsumer : consumers) {
+                    try {
+                        deltaConsumer.accept(delta);
+                    } catch (Exception e) {
+                        LOG.error("An error occurred while applying the engine state.", e);
+                    }
+                }
+            }
+        } catch (WakeupException e) {
+            if (running) {
+                LOG.error("The engine state consumer was woken up unexpectedly.", e);
+            }
+        } catch (InterruptedException e) {
+            LOG.debug("Interrupted while waiting for the engine state topic.");
+        } finally {
+            consumer.close();
+        }
+    }
+
+    private List<TopicPartition> waitForPartitions() throws InterruptedException {
+        while (true) {
+            final List<PartitionInfo> partitionInfos = consumer.partitionsFor(topic);
+            if (partitionInfos != null && !partitionInfos.isEmpty()) {
+                return partitionInfos.stream()
+                        .map(p -> new TopicPartition(p.topic(), p.partition()))
+                        .collect(Collectors.toList());
+            }
+            LOG.info("Waiting for the engine state topic: {}", topic);
+            Thread.sleep(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    private Properties loadClientProperties() throws IOException {
+        // The connection settings are shared with the producer used to forward situations
+        final Properties properties = new Properties();
+        final Dictionary<String, Object> producerProperties = configAdmin
+                .getConfiguration(OpennmsDatasource.KAFKA_PRODUCER_PID).getProperties();
+        if (producerProperties != null) {
+            final Enumeration<String> keys = producerProperties.keys();
+            while (keys.hasMoreElements()) {
+                final String key = keys.nextElement();
+                properties.put(key, producerProperties.get(key));
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Converts the delta to one record per situation and per blacklist.
+     */
+    static List<ProducerRecord<String, String>> toRecords(String topic, EngineStateDelta delta) {
+        final List<ProducerRecord<String, String>> records = new ArrayList<>();
+        for (String situationId : delta.getDeletedSituationIds()) {
+            records.add(new ProducerRecord<>(topic, SITUATION_KEY_PREFIX + situationId, null));
+            records.add(new ProducerRecord<>(topic, BLACKLIST_KEY_PREFIX + situationId, null));
+        }
+        for (EngineStateDelta.SituationMembership situation : delta.getSituations().values()) {
+            final SituationValue value = new SituationValue();
+            value.creationTime = situation.getCreationTime();
+            value.alarmIds = new ArrayList<>(situation.getAlarmIds());
+            value.diagnosticText = situation.getDiagnosticText();
+            records.add(new ProducerRecord<>(topic, SITUATION_KEY_PREFIX + situation.getId(), GSON.toJson(value)));
+        }
+        delta.getBlacklistsBySituationId().forEach((situationId, alarmIds) ->
+                records.add(new ProducerRecord<>(topic, BLACKLIST_KEY_PREFIX + situationId,
+                        alarmIds.isEmpty() ? null : GSON.toJson(alarmIds))));
+        return records;
+    }
+
+    /**
+     * Converts the records back to a single delta, later records taking precedence over earlier ones.
+     */
+    static EngineStateDelta toDelta(Iterable<ConsumerRecord<String, String>> records) {
+        final EngineStateDelta.Builder delta = EngineStateDelta.newBuilder();
+        long timestamp = 0;
+        for (ConsumerRecord<String, String> record : records) {
+            timestamp = Math.max(timestamp, record.timestamp());
+            final String key = record.key();
+            if (key == null) {
+                continue;
+            }
+            if (key.startsWith(SITUATION_KEY_PREFIX)) {
+                final String situationId = key.substring(SITUATION_KEY_PREFIX.length());
+                if (record.value() == null) {
+                    delta.deleteSituation(situationId);
+                } else {
+                    final SituationValue value = GSON.fromJson(record.value(), SituationValue.class);
+                    delta.addSituation(new EngineStateDelta.SituationMembership(situationId, value.creationTime,
+                            value.alarmIds != null ? value.alarmIds : Collections.emptyList(),
+                            value.diagnosticText));
+                }
+            } else if (key.startsWith(BLACKLIST_KEY_PREFIX)) {
+                final String situationId = key.substring(BLACKLIST_KEY_PREFIX.length());
+                final List<String> alarmIds = record.value() == null ? Collections.emptyList() :
+                        GSON.fromJson(record.value(), new TypeToken<List<String>>() {}.getType());
+                delta.setBlacklist(situationId, alarmIds);
+            } else {
+                LOG.debug("Ignoring engine state record with unknown key: {}", key);
+            }
+        }
+        return delta.setTimestamp(timestamp).build();
+    }
+
+    @Override
+    public String toString() {
+        return "KafkaEngineStateTransport{topic='" + topic + "'}";
+    }
+}
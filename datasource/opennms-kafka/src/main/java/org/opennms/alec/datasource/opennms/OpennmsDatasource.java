@@ -28,11 +28,14 @@
 
 package org.opennms.alec.datasource.opennms;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashSet;
@@ -41,7 +44,10 @@ import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.apache.kafka.clients.producer.KafkaProducer;
@@ -57,7 +63,10 @@ import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.errors.InvalidStateStoreException;
 import org.apache.kafka.streams.errors.StreamsException;
+import org.apache.kafka.streams.kstream.Consumed;
 import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.KeyValueIterator;
 import org.apache.kafka.streams.state.KeyValueStore;
 import org.apache.kafka.streams.state.QueryableStoreTypes;
 import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
@@ -69,6 +78,7 @@ import org.opennms.alec.datasource.api.AlarmFeedback;
 import org.opennms.alec.datasource.api.AlarmFeedbackDatasource;
 import org.opennms.alec.datasource.api.AlarmFeedbackHandler;
 import org.opennms.alec.datasource.api.AlarmHandler;
+import org.opennms.alec.datasource.api.Chunks;
 import org.opennms.alec.datasource.api.InventoryDatasource;
 import org.opennms.alec.datasource.api.InventoryHandler;
 import org.opennms.alec.datasource.api.InventoryObject;
@@ -79,6 +89,8 @@ import org.opennms.alec.datasource.api.SituationHandler;
 import org.opennms.alec.datasource.common.HandlerRegistry;
 import org.opennms.alec.datasource.opennms.processors.AlarmFeedbackTableProcessor;
 import org.opennms.alec.datasource.opennms.processors.AlarmTableProcessor;
+import org.opennms.alec.datasource.opennms.processors.InventoryChangeFilter;
+import org.opennms.alec.datasource.opennms.processors.InventoryOwners;
 import org.opennms.alec.datasource.opennms.processors.InventoryTableProcessor;
 import org.opennms.alec.datasource.opennms.processors.SituationTableProcessor;
 import org.opennms.alec.datasource.opennms.proto.FeedbackModelProtos;
@@ -90,6 +102,12 @@ import org.opennms.alec.datasource.opennms.serialization.NodeDeserializer;
 import org.opennms.alec.datasource.opennms.serialization.OpennmsSerdes;
 import org.opennms.alec.datasource.opennms.serialization.ProtobufDeserializer;
 import org.opennms.alec.datasource.opennms.serialization.TopologyEdgeDeserializer;
+import org.opennms.alec.datasource.opennms.sharding.EdgeStubs;
+import org.opennms.alec.datasource.opennms.sharding.RevokedTasks;
+import org.opennms.alec.datasource.opennms.sharding.ShardKeys;
+import org.opennms.alec.datasource.opennms.sharding.ShardPartitioner;
+import org.opennms.alec.datasource.opennms.sharding.ShardRouter;
+import org.opennms.alec.datasource.opennms.sharding.TopologyPartitionKeys;
 import org.opennms.alec.datasource.opennms.events.Event;
 import org.opennms.alec.datasource.opennms.events.JaxbUtils;
 import org.opennms.alec.datasource.opennms.events.Log;
@@ -98,6 +116,11 @@ import org.osgi.service.cm.ConfigurationAdmin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 public class OpennmsDatasource implements SituationDatasource, AlarmDatasource, InventoryDatasource,
         AlarmFeedbackDatasource {
     private static final Logger LOG = LoggerFactory.getLogger(OpennmsDatasource.class);
@@ -112,24 +135,59 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
     public static final String DEFAULT_EVENT_SINK_TOPIC = "OpenNMS.Sink.Events";
     public static final String DEFAULT_INVENTORY_TOPIC = "alec-inventory";
     public static final String DEFAULT_EDGES_TOPIC = "edges";
+    public static final String DEFAULT_SHARDED_ALARM_TOPIC = "alec-alarms-sharded";
 
     public static final long DEFAULT_INVENTORY_GC_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
     public static final long DEFAULT_INVENTORY_TTL_MS = TimeUnit.DAYS.toMillis(1);
+    public static final int DEFAULT_HANDLER_BATCH_SIZE = 1000;
+    public static final long DEFAULT_HANDLER_FLUSH_INTERVAL_MS = 100;
+    public static final int DEFAULT_SITUATION_BATCH_SIZE = 100;
+    public static final long DEFAULT_SITUATION_LINGER_MS = 20;
 
     private static final String INVENTORY_STORE_NODE_PREFIX = "node:";
     private static final String INVENTORY_STORE_ALARM_PREFIX = "alarm:";
     private static final String INVENTORY_STORE_EDGE_PREFIX = "edge:";
+    /**
+     * Prefix for the keys holding the stubs for the remote ends of the edges crossing partitions.
+     */
+    public static final String INVENTORY_STORE_STUB_PREFIX = "stub:";
 
     public static final String INVENTORY_STORE = "inventoryStore";
+    public static final String INVENTORY_EXPIRY_STORE = "inventoryExpiryStore";
+    public static final String INVENTORY_REFERENCES_STORE = "inventoryReferencesStore";
     public static final String ALARM_STORE = "alarmStore";
     public static final String ALARM_FEEDBACK_STORE = "alarmFeedbackStore";
     public static final String SITUATION_STORE = "situationStore";
     public static final String EDGE_STORE = "edgeStore";
+    public static final String ALARM_ROUTES_STORE = "alarmRoutesStore";
+    public static final String EDGE_ROUTES_STORE = "edgeRoutesStore";
+    public static final String ALARM_INVENTORY_HASH_STORE = "alarmInventoryHashStore";
+    public static final String EDGE_INVENTORY_HASH_STORE = "edgeInventoryHashStore";
+    public static final String NODE_INVENTORY_HASH_STORE = "nodeInventoryHashStore";
+
+    /**
+     * Encoding buffers that grow beyond this size are not retained for re-use.
+     */
+    private static final int MAX_RETAINED_ENCODING_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Default value of the producer's max.request.size.
+     */
+    private static final int DEFAULT_MAX_REQUEST_SIZE = 1024 * 1024;
+
+    /**
+     * Room left in a request for the record key, headers and batch overhead, in addition to the situation payload.
+     */
+    private static final int MAX_RECORD_OVERHEAD_BYTES = 1024;
+
+    private static final ThreadLocal<EncodingBuffer> ENCODING_BUFFERS = ThreadLocal.withInitial(EncodingBuffer::new);
 
     private final HandlerRegistry<AlarmHandler> alarmHandlers = new HandlerRegistry<>();
     private final HandlerRegistry<AlarmFeedbackHandler> alarmFeedbackHandlers = new HandlerRegistry<>();
     private final HandlerRegistry<InventoryHandler> inventoryHandlers = new HandlerRegistry<>();
     private final HandlerRegistry<SituationHandler> situationHandlers = new HandlerRegistry<>();
+    private final InventoryOwners inventoryOwners = new InventoryOwners();
+    private final RevokedTasks revokedTasks = new RevokedTasks();
 
     private final ConfigurationAdmin configAdmin;
 
@@ -141,13 +199,22 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
     private String eventSinkTopic = DEFAULT_EVENT_SINK_TOPIC;
     private String inventoryTopic = DEFAULT_INVENTORY_TOPIC;
     private String edgesTopic = DEFAULT_EDGES_TOPIC;
+    private String shardedAlarmTopic = DEFAULT_SHARDED_ALARM_TOPIC;
 
     private long inventoryGcIntervalMs = DEFAULT_INVENTORY_GC_INTERVAL_MS;
     private long inventoryTtlMs = DEFAULT_INVENTORY_TTL_MS;
+    private int handlerBatchSize = DEFAULT_HANDLER_BATCH_SIZE;
+    private long handlerFlushIntervalMs = DEFAULT_HANDLER_FLUSH_INTERVAL_MS;
+    private boolean checkInventoryReferencesOnInit = false;
+    private boolean shardingEnabled = false;
+    private int situationBatchSize = DEFAULT_SITUATION_BATCH_SIZE;
+    private long situationLingerMs = DEFAULT_SITUATION_LINGER_MS;
 
     private boolean wrapSinkMessagesInProto = true;
 
     private KafkaProducer<String, byte[]> producer;
+    private int maxSituationPayloadBytes;
+    private SituationBatcher situationBatcher;
 
     private final NodeToInventory nodeToInventory;
 
@@ -157,18 +224,34 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
 
     private final SinkWrapper sinkWrapper;
 
+    private final Timer situationEncodeTimer;
+    private final Histogram situationEncodedSize;
+    private final Histogram situationBatchSizes;
+    private final MetricRegistry metrics;
+
     public OpennmsDatasource(ConfigurationAdmin configAdmin, NodeToInventory nodeToInventory, AlarmToInventory alarmToInventory,
             EdgeToInventory edgeToInventory, SinkWrapper sinkWrapper) {
+        this(configAdmin, nodeToInventory, alarmToInventory, edgeToInventory, sinkWrapper, new MetricRegistry());
+    }
+
+    public OpennmsDatasource(ConfigurationAdmin configAdmin, NodeToInventory nodeToInventory, AlarmToInventory alarmToInventory,
+            EdgeToInventory edgeToInventory, SinkWrapper sinkWrapper, MetricRegistry metrics) {
         this.configAdmin = Objects.requireNonNull(configAdmin);
         this.nodeToInventory = Objects.requireNonNull(nodeToInventory);
         this.alarmToInventory = Objects.requireNonNull(alarmToInventory);
         this.edgeToInventory = Objects.requireNonNull(edgeToInventory);
         this.sinkWrapper = Objects.requireNonNull(sinkWrapper);
+        situationEncodeTimer = metrics.timer(MetricRegistry.name("situations", "encode"));
+        situationEncodedSize = metrics.histogram(MetricRegistry.name("situations", "encodedSize"));
+        situationBatchSizes = metrics.histogram(MetricRegistry.name("situations", "batchSize"));
+        this.metrics = metrics;
     }
 
     public void init() throws IOException {
         final Properties producerProperties = loadProducerProperties();
         producer = KafkaUtils.runWithGivenClassLoader(() -> new KafkaProducer<>(producerProperties), KafkaProducer.class.getClassLoader());
+        maxSituationPayloadBytes = getMaxRequestSize(producerProperties) - MAX_RECORD_OVERHEAD_BYTES;
+        situationBatcher = new SituationBatcher(situationBatchSize, situationLingerMs, this::sendSituations);
 
         final Properties streamProperties = loadStreamsProperties();
 
@@ -178,6 +261,12 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
 
         streams.setUncaughtExceptionHandler((t, e) ->
                 LOG.error(String.format("Stream error on thread: %s", t.getName()), e));
+        streams.setStateListener((newState, oldState) -> {
+            if (newState == KafkaStreams.State.RUNNING) {
+                // the rebalance is complete, remove the state of the tasks that are no longer assigned to us
+                revokedTasks.releaseAll();
+            }
+        });
         try {
             streams.start();
         } catch (StreamsException | IllegalStateException e) {
@@ -186,7 +275,11 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
     }
 
     public void destroy() {
+        if (situationBatcher != null) {
+            situationBatcher.close();
+        }
         if (streams != null) {
+            revokedTasks.shutdown();
             if (!streams.close(1, TimeUnit.MINUTES)) {
                 LOG.error("Stream failed to close in 1 minute.");
             }
@@ -203,6 +296,11 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         }
     }
 
+    private static int getMaxRequestSize(Properties producerProperties) {
+        final Object maxRequestSize = producerProperties.get(ProducerConfig.MAX_REQUEST_SIZE_CONFIG);
+        return maxRequestSize != null ? Integer.parseInt(maxRequestSize.toString().trim()) : DEFAULT_MAX_REQUEST_SIZE;
+    }
+
     protected Properties loadProducerProperties() throws IOException {        
         final Properties producerProperties = new Properties();
         // User
@@ -239,6 +337,9 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         // Produce a KStream of EnrichedAlarm objects from the alarm stream
         final AlarmDeserializer alarmDeserializer = new AlarmDeserializer();
         KStream<String, byte[]> alarmBytesStream = builder.stream(getAlarmTopic());
+        if (shardingEnabled) {
+            alarmBytesStream = routeAlarmsToShards(alarmBytesStream);
+        }
         KStream<String, OpennmsModelProtos.Alarm> allAlarmStream = alarmBytesStream.mapValues(alarmBytes -> alarmDeserializer.deserialize(null, alarmBytes));
         KStream<String, OpennmsModelProtos.Alarm> alarmStream = allAlarmStream.filter((k, v) -> !isSituation(k));
         KStream<String, EnrichedAlarm> enrichedAlarmStream = alarmStream.mapValues(alarmToInventory::enrichAlarm);
@@ -253,18 +354,44 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         return builder.build();
     }
 
+    // Route the alarms by node, and re-partition these so that each shard consumes the alarms for the nodes it owns
+    private KStream<String, byte[]> routeAlarmsToShards(KStream<String, byte[]> alarmBytesStream) {
+        final AlarmDeserializer alarmDeserializer = new AlarmDeserializer();
+        return alarmBytesStream.mapValues(alarmBytes -> alarmDeserializer.deserialize(null, alarmBytes))
+                .transform(() -> new ShardRouter<>(ALARM_ROUTES_STORE, TopologyPartitionKeys::forAlarm), ALARM_ROUTES_STORE)
+                .mapValues(alarm -> alarm != null ? alarm.toByteArray() : null)
+                .through(getShardedAlarmTopic(), Produced.with(Serdes.String(), Serdes.ByteArray(), new ShardPartitioner<>()));
+    }
+
+    // Only inventory that differs from the inventory last sent for the same key is sent to the inventory topic.
+    // When sharding, the inventory is partitioned using the partition key carried by the record keys.
+    private void toInventoryTopic(KStream<String, byte[]> allInventoryBytesStream, String source, String hashStoreName) {
+        final Meter forwarded = metrics.meter(MetricRegistry.name("inventory", source, "forwarded"));
+        final Meter suppressed = metrics.meter(MetricRegistry.name("inventory", source, "suppressed"));
+        final KStream<String, byte[]> inventoryBytesStream = allInventoryBytesStream.transform(
+                () -> new InventoryChangeFilter(hashStoreName, forwarded, suppressed), hashStoreName);
+        if (shardingEnabled) {
+            inventoryBytesStream.to(getInventoryTopic(), Produced.with(Serdes.String(), Serdes.ByteArray(),
+                    new ShardPartitioner<>()));
+        } else {
+            inventoryBytesStream.to(getInventoryTopic());
+        }
+    }
+
     // From the stream of enriched alarms, derive inventory objects
     private void mapEnrichedAlarmsToInventory(KStream<String, EnrichedAlarm> enrichedAlarmStream) {
         KStream<String, InventoryModelProtos.InventoryObjects> alarmInventoryStream =
                 enrichedAlarmStream.map((reductionKey, enrichedAlarm) -> {
-                    final String key = INVENTORY_STORE_ALARM_PREFIX + reductionKey;
+                    final String key = ShardKeys.withKey(reductionKey,
+                            INVENTORY_STORE_ALARM_PREFIX + ShardKeys.getKey(reductionKey));
                     if (enrichedAlarm == null) {
                         return KeyValue.pair(key, null);
                     }
                     return KeyValue.pair(key, enrichedAlarm.getInventory());
                 });
         // Take the newly created stream of inventory objects and serialize them onto the inventory topic
-        alarmInventoryStream.mapValues(ios -> ios != null ? ios.toByteArray() : null).to(getInventoryTopic());
+        toInventoryTopic(alarmInventoryStream.mapValues(ios -> ios != null ? ios.toByteArray() : null), "alarms",
+                ALARM_INVENTORY_HASH_STORE);
     }
 
     // Map the enriched alarms back to regular alarm objects overriding the MO type and id with the ones set in the
@@ -283,7 +410,11 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
                 alarmBuilder.setManagedObjectType(enrichedAlarm.getManagedObjectType());
             }
             return alarmBuilder.build();
-        }).process(() -> new AlarmTableProcessor(alarmHandlers), ALARM_STORE);
+        }).process(() -> new AlarmTableProcessor(alarmHandlers, handlerBatchSize, handlerFlushIntervalMs, shardingEnabled,
+                        shardingEnabled ? revokedTasks : null),
+                // When sharding, connect the inventory store as well in order to have the alarm and inventory tasks
+                // for the same partition assigned to the same instance
+                shardingEnabled ? new String[]{ALARM_STORE, INVENTORY_STORE} : new String[]{ALARM_STORE});
     }
 
     // Handle converting topology edges to inventory links
@@ -292,17 +423,30 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         KStream<String, byte[]> edgesBytesStream = builder.stream(getEdgesTopic());
         KStream<String, OpennmsModelProtos.TopologyEdge> edgesStream =
                 edgesBytesStream.mapValues(edgeBytes -> topologyEdgeDeserializer.deserialize(null, edgeBytes));
+        if (shardingEnabled) {
+            // Edges may cross partitions, so we send these to the shards on both ends
+            edgesStream = edgesStream.transform(() -> new ShardRouter<>(EDGE_ROUTES_STORE, TopologyPartitionKeys::forEdge),
+                    EDGE_ROUTES_STORE);
+        }
         // From the stream of topology edges, derive inventory objects and create a KStream of those
         KStream<String, InventoryModelProtos.InventoryObjects> edgesInventoryStream =
-                edgesStream.map((edgeKey, topologyEdge) -> {
-                    final String key = INVENTORY_STORE_EDGE_PREFIX + edgeKey;
-                    if (topologyEdge == null) {
-                        return KeyValue.pair(key, null);
+                edgesStream.flatMap((edgeKey, topologyEdge) -> {
+                    final String key = ShardKeys.withKey(edgeKey, INVENTORY_STORE_EDGE_PREFIX + ShardKeys.getKey(edgeKey));
+                    final InventoryModelProtos.InventoryObjects edgeInventory = topologyEdge != null ?
+                            edgeToInventory.toInventoryObjects(topologyEdge) : null;
+                    if (!shardingEnabled) {
+                        return Collections.singletonList(KeyValue.pair(key, edgeInventory));
                     }
-                    return KeyValue.pair(key, edgeToInventory.toInventoryObjects(topologyEdge));
+                    // Send stubs for the ends that are owned by other shards along with the edge
+                    final String stubKey = ShardKeys.withKey(edgeKey, INVENTORY_STORE_STUB_PREFIX + INVENTORY_STORE_EDGE_PREFIX
+                            + ShardKeys.getKey(edgeKey));
+                    final InventoryModelProtos.InventoryObjects stubs = edgeInventory != null ?
+                            EdgeStubs.forRemoteEndpoints(ShardKeys.getPartitionKey(edgeKey), topologyEdge, edgeInventory) : null;
+                    return Arrays.asList(KeyValue.pair(key, edgeInventory), KeyValue.pair(stubKey, stubs));
                 });
         // Take the newly created stream of inventory objects and serialize them onto the inventory topic
-        edgesInventoryStream.mapValues(ios -> ios != null ? ios.toByteArray() : null).to(getInventoryTopic());
+        toInventoryTopic(edgesInventoryStream.mapValues(ios -> ios != null ? ios.toByteArray() : null), "edges",
+                EDGE_INVENTORY_HASH_STORE);
     }
 
     // Filter out situations from the alarm stream and process them
@@ -319,7 +463,9 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
                 nodeBytesStream.mapValues(nodeBytes -> nodeDeserializer.deserialize(null, nodeBytes));
         KStream<String, InventoryModelProtos.InventoryObjects> nodeInventoryStream = nodeStream.map((nodeCriteria,
                                                                                                      node) -> {
-            final String key = INVENTORY_STORE_NODE_PREFIX + nodeCriteria;
+            final String key = shardingEnabled ?
+                    ShardKeys.route(TopologyPartitionKeys.forNode(nodeCriteria), INVENTORY_STORE_NODE_PREFIX + nodeCriteria) :
+                    INVENTORY_STORE_NODE_PREFIX + nodeCriteria;
             if (node == null) {
                 return KeyValue.pair(key, null);
             }
@@ -329,7 +475,8 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
             }
             return KeyValue.pair(key, iosBuilder.build());
         });
-        nodeInventoryStream.mapValues(ios -> ios != null ? ios.toByteArray() : null).to(getInventoryTopic());
+        toInventoryTopic(nodeInventoryStream.mapValues(ios -> ios != null ? ios.toByteArray() : null), "nodes",
+                NODE_INVENTORY_HASH_STORE);
     }
 
     // Process the inventory from the inventory topic now that alarms, nodes and edges have been mapped to the inventory
@@ -341,15 +488,25 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         KStream<String, InventoryModelProtos.InventoryObjects> inventoryStream =
                 inventoryByteStream.mapValues(iosBytes -> inventoryObjectsDeserializer.deserialize(null, iosBytes));
         inventoryStream.process(() -> new InventoryTableProcessor(inventoryHandlers, inventoryGcIntervalMs,
-                inventoryTtlMs), INVENTORY_STORE);
+                inventoryTtlMs, handlerBatchSize, handlerFlushIntervalMs, checkInventoryReferencesOnInit, shardingEnabled,
+                inventoryOwners, shardingEnabled ? revokedTasks : null),
+                INVENTORY_STORE, INVENTORY_EXPIRY_STORE, INVENTORY_REFERENCES_STORE);
 
         // Process the alarm feedback
+        if (shardingEnabled) {
+            // Feedback is not associated with any node, so every shard consumes all of it
+            builder.addGlobalStore(alarmFeedbackStoreBuilder().withLoggingDisabled(), getAlarmFeedbackTopic(),
+                    Consumed.with(Serdes.String(), new OpennmsSerdes.ProtobufSerde<>(OpennmsModelProtos.AlarmFeedback.class)),
+                    () -> new AlarmFeedbackTableProcessor(alarmFeedbackHandlers));
+            return;
+        }
         final AlarmFeedbackDeserializer alarmFeedbackDeserializer = new AlarmFeedbackDeserializer();
         KStream<String, byte[]> alarmFeedbackBytesStream = builder.stream(getAlarmFeedbackTopic());
         KStream<String, OpennmsModelProtos.AlarmFeedback> alarmFeedbackStream =
                 alarmFeedbackBytesStream.mapValues(alarmFeedbackBytes -> alarmFeedbackDeserializer.deserialize(null,
                         alarmFeedbackBytes));
-        alarmFeedbackStream.process(() -> new AlarmFeedbackTableProcessor(alarmFeedbackHandlers), ALARM_FEEDBACK_STORE);
+        alarmFeedbackStream.process(() -> new AlarmFeedbackTableProcessor(alarmFeedbackHandlers, handlerBatchSize,
+                handlerFlushIntervalMs), ALARM_FEEDBACK_STORE);
     }
 
     private void createStores(StreamsBuilder builder) {
@@ -358,6 +515,18 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
                         Stores.persistentKeyValueStore(INVENTORY_STORE),
                         Serdes.String(),
                         OpennmsSerdes.InventoryObjects());
+        // Index of the inventory store keys ordered by expiry time, maintained by the InventoryTableProcessor
+        final StoreBuilder<KeyValueStore<String, String>> inventoryExpiryStore =
+                Stores.keyValueStoreBuilder(
+                        Stores.persistentKeyValueStore(INVENTORY_EXPIRY_STORE),
+                        Serdes.String(),
+                        Serdes.String());
+        // Number of inventory store keys referencing each inventory object, maintained by the InventoryTableProcessor
+        final StoreBuilder<KeyValueStore<String, Integer>> inventoryReferencesStore =
+                Stores.keyValueStoreBuilder(
+                        Stores.persistentKeyValueStore(INVENTORY_REFERENCES_STORE),
+                        Serdes.String(),
+                        Serdes.Integer());
         final StoreBuilder<KeyValueStore<String, OpennmsModelProtos.Alarm>> alarmStore = Stores.keyValueStoreBuilder(
                 Stores.persistentKeyValueStore(ALARM_STORE),
                 Serdes.String(),
@@ -367,11 +536,6 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
                         Stores.persistentKeyValueStore(SITUATION_STORE),
                         Serdes.String(),
                         OpennmsSerdes.Alarm());
-        final StoreBuilder<KeyValueStore<String, FeedbackModelProtos.AlarmFeedbacks>> alarmFeedbackStore =
-                Stores.keyValueStoreBuilder(
-                        Stores.persistentKeyValueStore(ALARM_FEEDBACK_STORE),
-                        Serdes.String(),
-                        OpennmsSerdes.AlarmFeedbacks());
         final StoreBuilder<KeyValueStore<String, OpennmsModelProtos.TopologyEdge>> topologyEdgeStore =
                 Stores.keyValueStoreBuilder(
                         Stores.persistentKeyValueStore(EDGE_STORE),
@@ -379,22 +543,47 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
                         OpennmsSerdes.TopologyEdge());
 
         builder.addStateStore(inventoryStore);
+        builder.addStateStore(inventoryExpiryStore);
+        builder.addStateStore(inventoryReferencesStore);
         builder.addStateStore(alarmStore);
         builder.addStateStore(situationStore);
-        builder.addStateStore(alarmFeedbackStore);
         builder.addStateStore(topologyEdgeStore);
+        // Hash of the inventory last sent to the inventory topic for every key, maintained by the InventoryChangeFilter.
+        // We use one store per source since the alarm, edge and node topics are not co-partitioned.
+        for (String inventoryHashStore : new String[]{ALARM_INVENTORY_HASH_STORE, EDGE_INVENTORY_HASH_STORE, NODE_INVENTORY_HASH_STORE}) {
+            builder.addStateStore(Stores.keyValueStoreBuilder(
+                    Stores.persistentKeyValueStore(inventoryHashStore),
+                    Serdes.String(),
+                    Serdes.Long()));
+        }
+
+        if (shardingEnabled) {
+            // Partition keys each alarm and edge was last routed to, maintained by the ShardRouter
+            builder.addStateStore(Stores.keyValueStoreBuilder(
+                    Stores.persistentKeyValueStore(ALARM_ROUTES_STORE),
+                    Serdes.String(),
+                    Serdes.String()));
+            builder.addStateStore(Stores.keyValueStoreBuilder(
+                    Stores.persistentKeyValueStore(EDGE_ROUTES_STORE),
+                    Serdes.String(),
+                    Serdes.String()));
+        } else {
+            // The alarm feedback store is global when sharding, and is added along with its processor
+            builder.addStateStore(alarmFeedbackStoreBuilder());
+        }
+    }
+
+    private static StoreBuilder<KeyValueStore<String, FeedbackModelProtos.AlarmFeedbacks>> alarmFeedbackStoreBuilder() {
+        return Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(ALARM_FEEDBACK_STORE),
+                Serdes.String(),
+                OpennmsSerdes.AlarmFeedbacks());
     }
 
     @Override
     public List<Alarm> getAlarms() {
         final List<Alarm> alarms = new ArrayList<>();
-        try {
-            waitUntilAlarmStoreIsQueryable().all().forEachRemaining(entry -> {
-                alarms.add(OpennmsMapper.toAlarm(entry.value));
-            });
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        getAlarmsInChunks(Integer.MAX_VALUE, alarms::addAll);
         return alarms;
     }
 
@@ -405,6 +594,31 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         return alarms;
     }
 
+    @Override
+    public void getAlarmsInChunks(int chunkSize, Consumer<List<Alarm>> consumer) {
+        try (KeyValueIterator<String, OpennmsModelProtos.Alarm> iter = waitUntilAlarmStoreIsQueryable().all();
+             Chunks.Collector<Alarm> chunks = new Chunks.Collector<>(chunkSize, consumer)) {
+            iter.forEachRemaining(entry -> chunks.accept(OpennmsMapper.toAlarm(entry.value)));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void getAlarmsInChunksAndRegisterHandler(AlarmHandler handler, int chunkSize, Consumer<List<Alarm>> consumer) {
+        getAlarmsInChunksAndRegisterHandler(handler, chunkSize, consumer, CompletableFuture.completedFuture(null));
+    }
+
+    @Override
+    public void getAlarmsInChunksAndRegisterHandler(AlarmHandler handler, int chunkSize, Consumer<List<Alarm>> consumer,
+                                                    CompletionStage<?> handlerReady) {
+        // Deliver the alarms without blocking the callbacks to the other handlers while the store is being read
+        alarmHandlers.registerWithReplay(handler, Alarm::getId, delivered -> getAlarmsInChunks(chunkSize, chunk -> {
+            consumer.accept(chunk);
+            chunk.forEach(delivered);
+        }), handlerReady);
+    }
+
     @Override
     public void registerHandler(AlarmHandler handler) {
         alarmHandlers.register(handler);
@@ -457,31 +671,9 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
 
     @Override
     public List<InventoryObject> getInventory() {
-        final List<InventoryModelProtos.InventoryObjects> inventory = new ArrayList<>();
-        try {
-            waitUntilInventoryStoreIsQueryable().all().forEachRemaining(entry -> {
-                inventory.add(entry.value);
-            });
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-
-        Set<ResourceKey> uniqueIds = new HashSet<>();
-
-        // Discard any duplicate inventory objects
-        return InventoryTableProcessor.toInventory(inventory).stream()
-                .filter(io -> {
-                    ResourceKey id = new ResourceKey(io.getId(), io.getType());
-
-                    if (uniqueIds.contains(id)) {
-                        return false;
-                    }
-
-                    uniqueIds.add(id);
-
-                    return true;
-                })
-                .collect(Collectors.toList());
+        final List<InventoryObject> inventory = new ArrayList<>();
+        getInventoryInChunks(Integer.MAX_VALUE, inventory::addAll);
+        return inventory;
     }
 
     @Override
@@ -491,6 +683,42 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         return inventory;
     }
 
+    @Override
+    public void getInventoryInChunks(int chunkSize, Consumer<List<InventoryObject>> consumer) {
+        // Only keep track of the keys, the objects themselves are released once the chunk was consumed
+        final Set<ResourceKey> uniqueIds = new HashSet<>();
+        try (KeyValueIterator<String, InventoryModelProtos.InventoryObjects> iter = waitUntilInventoryStoreIsQueryable().all();
+             Chunks.Collector<InventoryObject> chunks = new Chunks.Collector<>(chunkSize, consumer)) {
+            iter.forEachRemaining(entry -> InventoryTableProcessor.toInventory(Collections.singletonList(entry.value))
+                    .forEach(io -> {
+                        // Discard any duplicate inventory objects
+                        if (uniqueIds.add(new ResourceKey(io.getId(), io.getType()))) {
+                            chunks.accept(io);
+                        }
+                    }));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void getInventoryInChunksAndRegisterHandler(InventoryHandler handler, int chunkSize,
+                                                       Consumer<List<InventoryObject>> consumer) {
+        getInventoryInChunksAndRegisterHandler(handler, chunkSize, consumer, CompletableFuture.completedFuture(null));
+    }
+
+    @Override
+    public void getInventoryInChunksAndRegisterHandler(InventoryHandler handler, int chunkSize,
+                                                       Consumer<List<InventoryObject>> consumer,
+                                                       CompletionStage<?> handlerReady) {
+        // Deliver the inventory without blocking the callbacks to the other handlers while the store is being read
+        inventoryHandlers.registerWithReplay(handler, (InventoryObject io) -> new ResourceKey(io.getId(), io.getType()),
+                delivered -> getInventoryInChunks(chunkSize, chunk -> {
+                    consumer.accept(chunk);
+                    chunk.forEach(delivered);
+                }), handlerReady);
+    }
+
     @Override
     public void registerHandler(InventoryHandler handler) {
         inventoryHandlers.register(handler);
@@ -550,27 +778,86 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
             return;
         }
 
-        final Event e = SituationToEvent.toEvent(situation);
-        final String situationXml = JaxbUtils.toXml(new Log(e), Log.class);
-        LOG.debug("Sending event to create situation with id '{}'. XML: {}", situation.getId(), situationXml);
+        if (situationBatcher == null) {
+            throw new IllegalStateException("Datasource must be started first.");
+        }
+        situationBatcher.add(situation);
+    }
+
+    /**
+     * Sends the given situations as a single sink message containing one event per situation.
+     */
+    private void sendSituations(List<Situation> batch) {
+        // Split the batch if necessary, since the producer rejects records larger than the maximum request size
+        SituationBatcher.encodeToFit(batch, this::timedEncode, maxSituationPayloadBytes, this::sendSituations);
+    }
 
-        byte[] payload = situationXml.getBytes(StandardCharsets.UTF_8);
-        if (wrapSinkMessagesInProto) {
-            final String messageId = UUID.randomUUID().toString();
-            payload = sinkWrapper.wrapMessageInProto(messageId, payload);
+    private byte[] timedEncode(List<Situation> situations) {
+        try (Timer.Context ctx = situationEncodeTimer.time()) {
+            return encode(situations);
         }
+    }
+
+    private void sendSituations(List<Situation> situations, byte[] payload) {
+        situationEncodedSize.update(payload.length);
+        situationBatchSizes.update(situations.size());
 
         producer.send(new ProducerRecord<>(getEventSinkTopic(), payload), (metadata, ex) -> {
-            if (ex != null) {
-                LOG.warn("An error occurred while sending event for situation with id '{}'.", situation.getId(), ex);
-            } else {
-                LOG.debug("Successfully sent event for situation with id '{}'.", situation.getId());
+            for (Situation situation : situations) {
+                if (ex != null) {
+                    LOG.warn("An error occurred while sending event for situation with id '{}'.", situation.getId(), ex);
+                } else {
+                    LOG.debug("Successfully sent event for situation with id '{}'.", situation.getId());
+                }
             }
         });
     }
 
+    private byte[] encode(List<Situation> situations) {
+        final Event[] events = situations.stream()
+                .map(SituationToEvent::toEvent)
+                .toArray(Event[]::new);
+        final EncodingBuffer buffer = ENCODING_BUFFERS.get();
+        try {
+            JaxbUtils.toXml(new Log(events), Log.class, buffer);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Sending events to create situations with ids {}. XML: {}",
+                        situations.stream().map(Situation::getId).collect(Collectors.toList()),
+                        new String(buffer.getBuffer(), 0, buffer.size(), StandardCharsets.UTF_8));
+            }
+            if (wrapSinkMessagesInProto) {
+                final String messageId = UUID.randomUUID().toString();
+                return sinkWrapper.wrapMessageInProto(messageId, buffer.getBuffer(), 0, buffer.size());
+            }
+            return Arrays.copyOf(buffer.getBuffer(), buffer.size());
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_ENCODING_BUFFER_SIZE) {
+                ENCODING_BUFFERS.remove();
+            } else {
+                buffer.reset();
+            }
+        }
+    }
+
+    /**
+     * Exposes the underlying array so that the encoded event can be handed off without an additional copy.
+     */
+    private static class EncodingBuffer extends ByteArrayOutputStream {
+        private EncodingBuffer() {
+            super(8 * 1024);
+        }
+
+        private byte[] getBuffer() {
+            return buf;
+        }
+
+        private int capacity() {
+            return buf.length;
+        }
+    }
+
     private static boolean isSituation(String reductionKey) {
-        return reductionKey.startsWith(SituationToEvent.SITUATION_UEI);
+        return ShardKeys.getKey(reductionKey).startsWith(SituationToEvent.SITUATION_UEI);
     }
 
     public String getAlarmTopic() {
@@ -621,6 +908,22 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         this.edgesTopic = edgesTopic;
     }
 
+    public String getShardedAlarmTopic() {
+        return shardedAlarmTopic;
+    }
+
+    public void setShardedAlarmTopic(String shardedAlarmTopic) {
+        this.shardedAlarmTopic = shardedAlarmTopic;
+    }
+
+    public boolean isShardingEnabled() {
+        return shardingEnabled;
+    }
+
+    public void setShardingEnabled(boolean shardingEnabled) {
+        this.shardingEnabled = shardingEnabled;
+    }
+
     public long getInventoryGcIntervalMs() {
         return inventoryGcIntervalMs;
     }
@@ -637,6 +940,46 @@ public class OpennmsDatasource implements SituationDatasource, AlarmDatasource,
         this.inventoryTtlMs = inventoryTtlMs;
     }
 
+    public int getHandlerBatchSize() {
+        return handlerBatchSize;
+    }
+
+    public void setHandlerBatchSize(int handlerBatchSize) {
+        this.handlerBatchSize = handlerBatchSize;
+    }
+
+    public long getHandlerFlushIntervalMs() {
+        return handlerFlushIntervalMs;
+    }
+
+    public void setHandlerFlushIntervalMs(long handlerFlushIntervalMs) {
+        this.handlerFlushIntervalMs = handlerFlushIntervalMs;
+    }
+
+    public boolean isCheckInventoryReferencesOnInit() {
+        return checkInventoryReferencesOnInit;
+    }
+
+    public void setCheckInventoryReferencesOnInit(boolean checkInventoryReferencesOnInit) {
+        this.checkInventoryReferencesOnInit = checkInventoryReferencesOnInit;
+    }
+
+    public int getSituationBatchSize() {
+        return situationBatchSize;
+    }
+
+    public void setSituationBatchSize(int situationBatchSize) {
+        this.situationBatchSize = situationBatchSize;
+    }
+
+    public long getSituationLingerMs() {
+        return situationLingerMs;
+    }
+
+    public void setSituationLingerMs(long situationLingerMs) {
+        this.situationLingerMs = situationLingerMs;
+    }
+
     public boolean isWrapSinkMessagesInProto() {
         return wrapSinkMessagesInProto;
     }
@@ -41,6 +41,8 @@ import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+
 /**
  * @author smith
  *
@@ -52,6 +54,11 @@ public class OpennmsKafkaScriptedInventory extends AbstractScriptedInventory imp
     public OpennmsKafkaScriptedInventory(String scriptPath, long scriptCacheMillis, BundleContext bundleContext) {
         super(scriptPath, scriptCacheMillis, bundleContext);
     }
+
+    public OpennmsKafkaScriptedInventory(String scriptPath, long scriptCacheMillis, BundleContext bundleContext,
+                                         MetricRegistry metrics) {
+        super(scriptPath, scriptCacheMillis, bundleContext, metrics);
+    }
     
     public static OpennmsKafkaScriptedInventory withDefaults() {
         // Empty string results in the default script being loaded
@@ -65,7 +72,7 @@ public class OpennmsKafkaScriptedInventory extends AbstractScriptedInventory imp
     @Override
     public InventoryModelProtos.InventoryObjects edgeToInventory(OpennmsModelProtos.TopologyEdge edge) throws ScriptedInventoryException {
         try {
-            return (InventoryModelProtos.InventoryObjects) getInvocable().invokeFunction("edgeToInventory", edge);
+            return (InventoryModelProtos.InventoryObjects) invokeFunction("edgeToInventory", edge);
         } catch (NoSuchMethodException | ScriptException e) {
             throw new ScriptedInventoryException("Failed getInventoryFromAlarm", e);
         }
@@ -74,7 +81,7 @@ public class OpennmsKafkaScriptedInventory extends AbstractScriptedInventory imp
     @Override
     public EnrichedAlarm enrichAlarm(OpennmsModelProtos.Alarm alarm) throws ScriptedInventoryException {
         try {
-            return (EnrichedAlarm) getInvocable().invokeFunction("enrichAlarm", alarm);
+            return (EnrichedAlarm) invokeFunction("enrichAlarm", alarm);
         } catch (NoSuchMethodException | ScriptException e) {
             throw new ScriptedInventoryException("Failed enrichAlarm", e);
         }
@@ -84,7 +91,7 @@ public class OpennmsKafkaScriptedInventory extends AbstractScriptedInventory imp
     @SuppressWarnings("unchecked")
     public Collection<InventoryModelProtos.InventoryObject> toInventoryObjects(OpennmsModelProtos.Node node) throws ScriptedInventoryException {
         try {
-            return (List<InventoryModelProtos.InventoryObject>) getInvocable().invokeFunction("toInventoryObjects", node);
+            return (List<InventoryModelProtos.InventoryObject>) invokeFunction("toInventoryObjects", node);
         } catch (NoSuchMethodException | ScriptException e) {
             throw new ScriptedInventoryException("Failed node toInventoryObjects", e);
         }
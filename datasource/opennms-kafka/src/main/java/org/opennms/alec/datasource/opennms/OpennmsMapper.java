@@ -52,7 +52,15 @@ import com.google.common.base.Strings;
 public class OpennmsMapper {
 
     public static Alarm toAlarm(OpennmsModelProtos.Alarm alarm) {
-        ImmutableAlarm.Builder alarmBuilder = ImmutableAlarm.newBuilder();
+        return toAlarm(alarm, null);
+    }
+
+    /**
+     * @param ingestTime the time at which the alarm was received, or null if unknown
+     */
+    public static Alarm toAlarm(OpennmsModelProtos.Alarm alarm, Long ingestTime) {
+        ImmutableAlarm.Builder alarmBuilder = ImmutableAlarm.newBuilder()
+                .setIngestTime(ingestTime);
 
         if (alarm.hasNodeCriteria()) {
             alarmBuilder.setNodeId(alarm.getNodeCriteria().getId());
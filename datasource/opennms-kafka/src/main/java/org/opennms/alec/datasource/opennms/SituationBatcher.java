@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.opennms.alec.datasource.api.Situation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Gathers situations into batches so that these can be forwarded together.
+ *
+ * A batch is emitted once it contains maxBatchSize situations, or lingerMs after the first situation was added to it,
+ * whichever comes first. When lingerMs is <= 0, every situation is emitted immediately in a batch of its own.
+ *
+ * The batches are handed to the consumer outside of the lock guarding the current batch, so that situations can
+ * keep being added while a batch is being sent. The batches are still handed over one at a time, and in order.
+ */
+public class SituationBatcher implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(SituationBatcher.class);
+
+    private final int maxBatchSize;
+    private final long lingerMs;
+    private final Consumer<List<Situation>> consumer;
+    private final ScheduledExecutorService executor;
+    private final Object sendLock = new Object();
+
+    private List<Situation> batch = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    public SituationBatcher(int maxBatchSize, long lingerMs, Consumer<List<Situation>> consumer) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be strictly positive. Got: " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMs = lingerMs;
+        this.consumer = Objects.requireNonNull(consumer);
+        if (lingerMs > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("alec-situation-batcher-%d")
+                    .setDaemon(true)
+                    .build());
+        } else {
+            executor = null;
+        }
+    }
+
+    public void add(Situation situation) {
+        final boolean flushNow;
+        synchronized (this) {
+            batch.add(Objects.requireNonNull(situation));
+            flushNow = executor == null || batch.size() >= maxBatchSize;
+            if (!flushNow && scheduledFlush == null) {
+                scheduledFlush = executor.schedule(this::flush, lingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    /**
+     * Emits the current batch, if any.
+     */
+    public void flush() {
+        synchronized (sendLock) {
+            final List<Situation> situations;
+            synchronized (this) {
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                situations = batch;
+                batch = new ArrayList<>();
+            }
+            // more situations may have been added since the batch filled up
+            for (int i = 0; i < situations.size(); i += maxBatchSize) {
+                final List<Situation> situationsToSend = situations.subList(i, Math.min(i + maxBatchSize, situations.size()));
+                try {
+                    consumer.accept(situationsToSend);
+                } catch (RuntimeException e) {
+                    LOG.error("An error occurred while forwarding {} situations. These will be lost.", situationsToSend.size(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes the given batch, splitting it in halves until every part encodes to at most maxBytes,
+     * i.e. in order to stay within the maximum size of a Kafka request. A part with a single situation
+     * is always emitted, regardless of its size.
+     *
+     * @param situations the batch to encode
+     * @param encoder encodes a part of the batch
+     * @param maxBytes maximum size of an encoded part
+     * @param sender receives every part along with its encoded form, in order
+     */
+    static void encodeToFit(List<Situation> situations, Function<List<Situation>, byte[]> encoder, int maxBytes,
+                            BiConsumer<List<Situation>, byte[]> sender) {
+        final byte[] payload = encoder.apply(situations);
+        if (payload.length <= maxBytes || situations.size() < 2) {
+            sender.accept(situations, payload);
+            return;
+        }
+        LOG.debug("{} situations were encoded to {} bytes, which exceeds {} bytes. Splitting these.", situations.size(),
+                payload.length, maxBytes);
+        final int half = situations.size() / 2;
+        encodeToFit(situations.subList(0, half), encoder, maxBytes, sender);
+        encodeToFit(situations.subList(half, situations.size()), encoder, maxBytes, sender);
+    }
+
+    @Override
+    public void close() {
+        flush();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -28,35 +28,76 @@
 
 package org.opennms.alec.datasource.opennms.events;
 
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 
+/**
+ * Contexts are expensive to create and thread-safe, so we create these once per class.
+ * Marshallers are not thread-safe, so these are cached per thread.
+ */
 public class JaxbUtils {
 
+    private static final Map<Class<?>, JAXBContext> CONTEXTS = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Map<Class<?>, Marshaller>> MARSHALLERS = ThreadLocal.withInitial(HashMap::new);
+
     public static String toXml(Object o, Class<?> clazz) {
         try {
             final StringWriter sw = new StringWriter();
-            final JAXBContext context = JAXBContext.newInstance(clazz);
-            final Marshaller m = context.createMarshaller();
-            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-            m.marshal(o, sw);
+            getMarshaller(clazz).marshal(o, sw);
             return sw.toString();
         } catch(Exception ex) {
             throw new RuntimeException(ex);
         }
     }
 
+    /**
+     * Marshals the given object as UTF-8 encoded XML directly to the given stream.
+     */
+    public static void toXml(Object o, Class<?> clazz, OutputStream os) {
+        try {
+            getMarshaller(clazz).marshal(o, os);
+        } catch(Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
     public static <V> V fromXml(String xml, Class<V> clazz) {
         try (StringReader reader = new StringReader(xml)){
-            final JAXBContext context = JAXBContext.newInstance(clazz);
-            final Unmarshaller um = context.createUnmarshaller();
+            final Unmarshaller um = getContext(clazz).createUnmarshaller();
             return (V)um.unmarshal(reader);
         } catch(Exception ex) {
             throw new RuntimeException(ex);
         }
     }
+
+    private static Marshaller getMarshaller(Class<?> clazz) throws JAXBException {
+        final Map<Class<?>, Marshaller> marshallers = MARSHALLERS.get();
+        Marshaller m = marshallers.get(clazz);
+        if (m == null) {
+            m = getContext(clazz).createMarshaller();
+            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            marshallers.put(clazz, m);
+        }
+        return m;
+    }
+
+    private static JAXBContext getContext(Class<?> clazz) throws JAXBException {
+        final JAXBContext context = CONTEXTS.get(clazz);
+        if (context != null) {
+            return context;
+        }
+        final JAXBContext newContext = JAXBContext.newInstance(clazz);
+        final JAXBContext existingContext = CONTEXTS.putIfAbsent(clazz, newContext);
+        return existingContext != null ? existingContext : newContext;
+    }
 }
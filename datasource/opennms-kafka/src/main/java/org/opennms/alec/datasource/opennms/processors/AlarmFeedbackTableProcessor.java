@@ -28,10 +28,12 @@
 
 package org.opennms.alec.datasource.opennms.processors;
 
+import java.util.List;
 import java.util.Objects;
 
 import org.apache.kafka.streams.processor.Processor;
 import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
 import org.apache.kafka.streams.state.KeyValueStore;
 import org.opennms.alec.datasource.api.AlarmFeedback;
 import org.opennms.alec.datasource.api.AlarmFeedbackHandler;
@@ -43,13 +45,27 @@ import org.opennms.alec.datasource.opennms.proto.OpennmsModelProtos;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Maintains the alarm feedback store and notifies the handlers of any changes.
+ *
+ * The handlers are notified in batches, see {@link AlarmTableProcessor}.
+ */
 public class AlarmFeedbackTableProcessor implements Processor<String, OpennmsModelProtos.AlarmFeedback> {
     private final Logger LOG = LoggerFactory.getLogger(AlarmFeedbackTableProcessor.class);
     private final HandlerRegistry<AlarmFeedbackHandler> alarmFeedbackHandlers;
+    private final long flushIntervalMs;
+    private final HandlerBatch<AlarmFeedback> feedbacks;
     private KeyValueStore<String, FeedbackModelProtos.AlarmFeedbacks> kvStore;
 
     public AlarmFeedbackTableProcessor(HandlerRegistry<AlarmFeedbackHandler> alarmFeedbackHandlers) {
+        this(alarmFeedbackHandlers, 1, 0);
+    }
+
+    public AlarmFeedbackTableProcessor(HandlerRegistry<AlarmFeedbackHandler> alarmFeedbackHandlers, int batchSize,
+                                       long flushIntervalMs) {
         this.alarmFeedbackHandlers = Objects.requireNonNull(alarmFeedbackHandlers);
+        this.flushIntervalMs = flushIntervalMs;
+        feedbacks = new HandlerBatch<>(batchSize, this::handleAlarmFeedbacks);
     }
 
     @Override
@@ -57,6 +73,11 @@ public class AlarmFeedbackTableProcessor implements Processor<String, OpennmsMod
     public void init(ProcessorContext context) {
         // retrieve the key-value store
         kvStore = (KeyValueStore) context.getStateStore(OpennmsDatasource.ALARM_FEEDBACK_STORE);
+
+        if (flushIntervalMs > 0) {
+            // schedule a punctuate() method based on clock time to deliver any pending feedback
+            context.schedule(flushIntervalMs, PunctuationType.WALL_CLOCK_TIME, timestamp -> flush());
+        }
     }
 
     @Override
@@ -65,33 +86,41 @@ public class AlarmFeedbackTableProcessor implements Processor<String, OpennmsMod
             // Store the AlarmFeedbacks object with just a single feedback for now
             kvStore.put(alarmKey,
                     FeedbackModelProtos.AlarmFeedbacks.newBuilder().addAlarmFeedback(alarmFeedback).build());
-            alarmFeedbackHandlers.forEach(h -> {
-                try {
-                    h.handleAlarmFeedback(OpennmsMapper.toAlarmFeedback(alarmFeedback));
-                } catch (Exception e) {
-                    LOG.error("handleAlarmFeedback() call failed with feedback: {} on handler: {}",
-                            alarmFeedback, h, e);
-                }
-            });
+            feedbacks.add(OpennmsMapper.toAlarmFeedback(alarmFeedback));
         } else {
             final FeedbackModelProtos.AlarmFeedbacks prevAlarmFeedbacks = kvStore.delete(alarmKey);
             if (prevAlarmFeedbacks != null) {
                 // For now we assume the AlarmFeedbacks container contains a single feedback
-                AlarmFeedback prevAlarmFeedback = OpennmsMapper.toAlarmFeedback(prevAlarmFeedbacks.getAlarmFeedback(0));
-                alarmFeedbackHandlers.forEach(h -> {
-                    try {
-                        h.handleAlarmFeedback(prevAlarmFeedback);
-                    } catch (Exception e) {
-                        LOG.error("handleAlarmFeedback() call failed with feedback: {} on handler: {}",
-                                prevAlarmFeedback, h, e);
-                    }
-                });
+                feedbacks.add(OpennmsMapper.toAlarmFeedback(prevAlarmFeedbacks.getAlarmFeedback(0)));
             }
         }
     }
 
+    /**
+     * Deliver any pending feedback to the handlers.
+     */
+    public void flush() {
+        feedbacks.flush();
+    }
+
+    private void handleAlarmFeedbacks(List<AlarmFeedback> alarmFeedbacks) {
+        alarmFeedbackHandlers.forEach(h -> {
+            try {
+                if (alarmFeedbacks.size() == 1) {
+                    h.handleAlarmFeedback(alarmFeedbacks.get(0));
+                } else {
+                    h.handleAlarmFeedbacks(alarmFeedbacks);
+                }
+            } catch (Exception e) {
+                LOG.error("handleAlarmFeedbacks() call failed with feedback: {} on handler: {}",
+                        alarmFeedbacks, h, e);
+            }
+        });
+    }
+
     @Override
     public void close() {
-        // pass, no external resources managed by this processor
+        // deliver anything that is still pending, no external resources managed by this processor
+        flush();
     }
 }
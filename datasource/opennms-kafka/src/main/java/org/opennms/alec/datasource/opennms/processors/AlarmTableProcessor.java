@@ -28,10 +28,15 @@
 
 package org.opennms.alec.datasource.opennms.processors;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 import org.apache.kafka.streams.processor.Processor;
 import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.TaskId;
+import org.apache.kafka.streams.state.KeyValueIterator;
 import org.apache.kafka.streams.state.KeyValueStore;
 import org.opennms.alec.datasource.api.Alarm;
 import org.opennms.alec.datasource.api.AlarmHandler;
@@ -39,54 +44,162 @@ import org.opennms.alec.datasource.common.HandlerRegistry;
 import org.opennms.alec.datasource.opennms.OpennmsDatasource;
 import org.opennms.alec.datasource.opennms.OpennmsMapper;
 import org.opennms.alec.datasource.opennms.proto.OpennmsModelProtos;
+import org.opennms.alec.datasource.opennms.sharding.RevokedTasks;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Maintains the alarm store and notifies the handlers of any changes.
+ *
+ * The handlers are notified in batches: consecutive updates and consecutive clears are buffered and
+ * delivered together once the batch is full, or when the flush interval elapses. Switching between
+ * updates and clears flushes the pending batch, so the handlers see the changes in the order in which
+ * they were received.
+ *
+ * When sharding, the tasks may be moved between instances, in which case the alarms in the store are
+ * delivered to the handlers when the task is initialized, and cleared from these once the task was revoked,
+ * see {@link #AlarmTableProcessor(HandlerRegistry, int, long, boolean, RevokedTasks)}.
+ */
 public class AlarmTableProcessor implements Processor<String, OpennmsModelProtos.Alarm> {
     private final Logger LOG = LoggerFactory.getLogger(AlarmTableProcessor.class);
     private final HandlerRegistry<AlarmHandler> alarmHandlers;
+    private final long flushIntervalMs;
+    private final boolean replayOnInit;
+    private final RevokedTasks revokedTasks;
+    private final HandlerBatch<Alarm> createdOrUpdated;
+    private final HandlerBatch<Alarm> cleared;
     private KeyValueStore<String, OpennmsModelProtos.Alarm> kvStore;
+    private ProcessorContext context;
 
     public AlarmTableProcessor(HandlerRegistry<AlarmHandler> alarmHandlers) {
+        this(alarmHandlers, 1, 0);
+    }
+
+    public AlarmTableProcessor(HandlerRegistry<AlarmHandler> alarmHandlers, int batchSize, long flushIntervalMs) {
+        this(alarmHandlers, batchSize, flushIntervalMs, false);
+    }
+
+    /**
+     * @param replayOnInit when true, deliver the alarms that are already in the store to the handlers on init
+     */
+    public AlarmTableProcessor(HandlerRegistry<AlarmHandler> alarmHandlers, int batchSize, long flushIntervalMs,
+                               boolean replayOnInit) {
+        this(alarmHandlers, batchSize, flushIntervalMs, replayOnInit, null);
+    }
+
+    /**
+     * @param replayOnInit when true, deliver the alarms that are already in the store to the handlers on init
+     * @param revokedTasks when set, the alarms in the store are cleared from the handlers once the task was revoked
+     */
+    public AlarmTableProcessor(HandlerRegistry<AlarmHandler> alarmHandlers, int batchSize, long flushIntervalMs,
+                               boolean replayOnInit, RevokedTasks revokedTasks) {
         this.alarmHandlers = Objects.requireNonNull(alarmHandlers);
+        this.flushIntervalMs = flushIntervalMs;
+        this.replayOnInit = replayOnInit;
+        this.revokedTasks = revokedTasks;
+        createdOrUpdated = new HandlerBatch<>(batchSize, this::onAlarmsCreatedOrUpdated);
+        cleared = new HandlerBatch<>(batchSize, this::onAlarmsCleared);
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public void init(ProcessorContext context) {
+        this.context = context;
         // retrieve the key-value store
         kvStore = (KeyValueStore) context.getStateStore(OpennmsDatasource.ALARM_STORE);
+
+        // the handlers still know about the alarms if the task was closed during a rebalance and assigned back to us
+        final boolean reclaimed = revokedTasks != null && revokedTasks.reclaim(context.taskId(), OpennmsDatasource.ALARM_STORE);
+        if (replayOnInit && !reclaimed && !alarmHandlers.isEmpty()) {
+            // the handlers were registered before this task was assigned to us, let them know about its alarms
+            try (KeyValueIterator<String, OpennmsModelProtos.Alarm> iter = kvStore.all()) {
+                iter.forEachRemaining(entry -> createdOrUpdated.add(OpennmsMapper.toAlarm(entry.value)));
+            }
+            flush();
+        }
+
+        if (flushIntervalMs > 0) {
+            // schedule a punctuate() method based on clock time to deliver any pending alarms
+            context.schedule(flushIntervalMs, PunctuationType.WALL_CLOCK_TIME, timestamp -> flush());
+        }
     }
 
     @Override
     public void process(String reductionKey, OpennmsModelProtos.Alarm alarm) {
         if (alarm != null) {
             kvStore.put(reductionKey, alarm);
-            final Alarm mappedAlarm = OpennmsMapper.toAlarm(alarm);
-            alarmHandlers.forEach(h -> {
-                try {
-                    h.onAlarmCreatedOrUpdated(mappedAlarm);
-                } catch (Exception e) {
-                    LOG.error("onAlarmCreatedOrUpdated() call failed with alarm: {} on handler: {}", mappedAlarm, h, e);
-                }
-            });
+            cleared.flush();
+            // use the timestamp of the record as the ingest time, so that the time spent in Kafka is accounted for
+            createdOrUpdated.add(OpennmsMapper.toAlarm(alarm, getIngestTime()));
         } else {
             final OpennmsModelProtos.Alarm prevAlarm = kvStore.delete(reductionKey);
             if (prevAlarm != null) {
-                final Alarm mappedAlarm = OpennmsMapper.toAlarm(prevAlarm);
-                alarmHandlers.forEach(h -> {
-                    try {
-                        h.onAlarmCleared(mappedAlarm);
-                    } catch (Exception e) {
-                        LOG.error("onAlarmCleared() call failed with alarm: {} on handler: {}", mappedAlarm, h, e);
-                    }
-                });
+                createdOrUpdated.flush();
+                cleared.add(OpennmsMapper.toAlarm(prevAlarm));
             }
         }
     }
 
+    private Long getIngestTime() {
+        final long timestamp = context.timestamp();
+        return timestamp >= 0 ? timestamp : null;
+    }
+
+    /**
+     * Deliver any pending alarms to the handlers.
+     */
+    public void flush() {
+        // Only one of these will have pending alarms
+        createdOrUpdated.flush();
+        cleared.flush();
+    }
+
+    private void onAlarmsCreatedOrUpdated(List<Alarm> createdOrUpdatedAlarms) {
+        alarmHandlers.forEachUpdate(createdOrUpdatedAlarms, (h, alarms) -> {
+            try {
+                if (alarms.size() == 1) {
+                    h.onAlarmCreatedOrUpdated(alarms.get(0));
+                } else {
+                    h.onAlarmsCreatedOrUpdated(alarms);
+                }
+            } catch (Exception e) {
+                LOG.error("onAlarmsCreatedOrUpdated() call failed with alarms: {} on handler: {}", alarms, h, e);
+            }
+        });
+    }
+
+    private void onAlarmsCleared(List<Alarm> clearedAlarms) {
+        alarmHandlers.forEachRemoval(clearedAlarms, (h, alarms) -> {
+            try {
+                if (alarms.size() == 1) {
+                    h.onAlarmCleared(alarms.get(0));
+                } else {
+                    h.onAlarmsCleared(alarms);
+                }
+            } catch (Exception e) {
+                LOG.error("onAlarmsCleared() call failed with alarms: {} on handler: {}", alarms, h, e);
+            }
+        });
+    }
+
     @Override
     public void close() {
-        // pass, no external resources managed by this processor
+        // deliver anything that is still pending, no external resources managed by this processor
+        flush();
+
+        if (revokedTasks != null && !revokedTasks.isShuttingDown()) {
+            // The store is no longer available once the task is closed, so we collect the alarms to clear now
+            final List<Alarm> alarms = new ArrayList<>();
+            try (KeyValueIterator<String, OpennmsModelProtos.Alarm> iter = kvStore.all()) {
+                iter.forEachRemaining(entry -> alarms.add(OpennmsMapper.toAlarm(entry.value)));
+            }
+            final TaskId taskId = context.taskId();
+            revokedTasks.defer(taskId, OpennmsDatasource.ALARM_STORE, () -> {
+                LOG.debug("Clearing {} alarms for revoked task: {}", alarms.size(), taskId);
+                if (!alarms.isEmpty()) {
+                    onAlarmsCleared(alarms);
+                }
+            });
+        }
     }
 }
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.processors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Buffers the items that need to be passed to the handlers, so that these can be
+ * delivered many at a time.
+ *
+ * The batch is flushed once it reaches the maximum size, or whenever {@link #flush()}
+ * is called i.e. on punctuation. This class is not thread-safe, and is intended to be
+ * used from the stream thread that owns the processor.
+ *
+ * @param <T> item type
+ */
+class HandlerBatch<T> {
+    private final int maxSize;
+    private final Consumer<List<T>> onFlush;
+    private List<T> items = new ArrayList<>();
+
+    HandlerBatch(int maxSize, Consumer<List<T>> onFlush) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Batch size must be strictly positive. Got: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.onFlush = Objects.requireNonNull(onFlush);
+    }
+
+    void add(T item) {
+        items.add(item);
+        if (items.size() >= maxSize) {
+            flush();
+        }
+    }
+
+    void addAll(List<T> itemsToAdd) {
+        items.addAll(itemsToAdd);
+        if (items.size() >= maxSize) {
+            flush();
+        }
+    }
+
+    void flush() {
+        if (items.isEmpty()) {
+            return;
+        }
+        final List<T> batch = items;
+        items = new ArrayList<>();
+        onFlush.accept(batch);
+    }
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.processors;
+
+import java.util.Objects;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import com.codahale.metrics.Meter;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Drops serialized inventory that is identical to the inventory last forwarded for the same key.
+ *
+ * The inventory derived from alarms and nodes is usually unchanged when these are updated, i.e. when only the
+ * counters of an alarm change, so we keep a hash of the last inventory forwarded for every key and only forward
+ * the inventory when the hash differs. Tombstones are always forwarded.
+ */
+public class InventoryChangeFilter implements Transformer<String, byte[], KeyValue<String, byte[]>> {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final String hashStoreName;
+    private final Meter forwarded;
+    private final Meter suppressed;
+
+    private KeyValueStore<String, Long> hashStore;
+
+    /**
+     * @param hashStoreName name of the store used to track the hash of the last inventory forwarded for every key
+     * @param forwarded marked for every record that is forwarded
+     * @param suppressed marked for every record that is dropped
+     */
+    public InventoryChangeFilter(String hashStoreName, Meter forwarded, Meter suppressed) {
+        this.hashStoreName = Objects.requireNonNull(hashStoreName);
+        this.forwarded = Objects.requireNonNull(forwarded);
+        this.suppressed = Objects.requireNonNull(suppressed);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void init(ProcessorContext context) {
+        hashStore = (KeyValueStore) context.getStateStore(hashStoreName);
+    }
+
+    @Override
+    public KeyValue<String, byte[]> transform(String key, byte[] inventoryBytes) {
+        if (inventoryBytes == null) {
+            hashStore.delete(key);
+            forwarded.mark();
+            return KeyValue.pair(key, null);
+        }
+
+        final long hash = HASH_FUNCTION.hashBytes(inventoryBytes).asLong();
+        final Long previousHash = hashStore.get(key);
+        if (previousHash != null && previousHash == hash) {
+            suppressed.mark();
+            return null;
+        }
+        hashStore.put(key, hash);
+        forwarded.mark();
+        return KeyValue.pair(key, inventoryBytes);
+    }
+
+    @Override
+    public void close() {
+        // pass
+    }
+}
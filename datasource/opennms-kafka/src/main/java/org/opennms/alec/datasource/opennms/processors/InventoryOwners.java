@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.processors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks which of the tasks on this instance reference each inventory object delivered to the handlers.
+ *
+ * The handlers are shared by all of the tasks, so an object is only added once the first task references it,
+ * and only removed once no task references it any longer. Stubs, which stand in for objects owned by another
+ * shard, are tracked separately: these are only added when the object is not known otherwise, and never
+ * replace the object itself. The object stays around as long as it is referenced, either directly or by a stub.
+ */
+public class InventoryOwners {
+
+    private final Map<String, Owners> ownersByRef = new HashMap<>();
+
+    /**
+     * Record that the given task references the inventory object.
+     *
+     * @param ref the reference key of the inventory object
+     * @param stub whether the reference is for a stub of the object
+     * @param task the task referencing the object
+     * @return true if the object should be delivered to the handlers, false otherwise
+     */
+    public synchronized boolean acquire(String ref, boolean stub, Object task) {
+        final Owners owners = ownersByRef.computeIfAbsent(ref, r -> new Owners());
+        if (stub) {
+            final boolean wasReferenced = owners.isReferenced();
+            return owners.stubs.add(task) && !wasReferenced;
+        }
+        final boolean wasDelivered = !owners.tasks.isEmpty();
+        return owners.tasks.add(task) && !wasDelivered;
+    }
+
+    /**
+     * Record that the given task no longer references the inventory object.
+     *
+     * @param ref the reference key of the inventory object
+     * @param stub whether the reference is for a stub of the object
+     * @param task the task that referenced the object
+     * @return true if the object should be removed from the handlers, false otherwise
+     */
+    public synchronized boolean release(String ref, boolean stub, Object task) {
+        final Owners owners = ownersByRef.get(ref);
+        if (owners == null) {
+            // not delivered by any of the tasks since we started, so we can't tell
+            return true;
+        }
+        (stub ? owners.stubs : owners.tasks).remove(task);
+        if (owners.isReferenced()) {
+            return false;
+        }
+        ownersByRef.remove(ref);
+        return true;
+    }
+
+    synchronized int size() {
+        return ownersByRef.size();
+    }
+
+    private static class Owners {
+        // there are only a handful of tasks per instance, so these are kept small
+        private final OwnerList tasks = new OwnerList();
+        private final OwnerList stubs = new OwnerList();
+
+        private boolean isReferenced() {
+            return !tasks.isEmpty() || !stubs.isEmpty();
+        }
+    }
+
+    private static class OwnerList {
+        private List<Object> owners;
+
+        private boolean add(Object owner) {
+            if (owners == null) {
+                owners = new ArrayList<>(1);
+            } else if (owners.contains(owner)) {
+                return false;
+            }
+            return owners.add(owner);
+        }
+
+        private void remove(Object owner) {
+            if (owners != null) {
+                owners.remove(owner);
+                if (owners.isEmpty()) {
+                    owners = null;
+                }
+            }
+        }
+
+        private boolean isEmpty() {
+            return owners == null;
+        }
+    }
+}
@@ -30,55 +30,135 @@ package org.opennms.alec.datasource.opennms.processors;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.processor.Processor;
 import org.apache.kafka.streams.processor.ProcessorContext;
 import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.TaskId;
 import org.apache.kafka.streams.state.KeyValueIterator;
 import org.apache.kafka.streams.state.KeyValueStore;
 import org.opennms.alec.datasource.api.InventoryHandler;
 import org.opennms.alec.datasource.api.InventoryObject;
 import org.opennms.alec.datasource.api.InventoryObjectPeerEndpoint;
-import org.opennms.alec.datasource.api.ResourceKey;
 import org.opennms.alec.datasource.common.HandlerRegistry;
 import org.opennms.alec.datasource.common.ImmutableInventoryObject;
 import org.opennms.alec.datasource.common.ImmutableInventoryObjectPeerRef;
 import org.opennms.alec.datasource.common.ImmutableInventoryObjectRelativeRef;
 import org.opennms.alec.datasource.opennms.OpennmsDatasource;
 import org.opennms.alec.datasource.opennms.proto.InventoryModelProtos;
+import org.opennms.alec.datasource.opennms.sharding.RevokedTasks;
+import org.opennms.alec.datasource.opennms.sharding.ShardKeys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Strings;
 
+/**
+ * Maintains the inventory store and notifies the handlers of any changes.
+ *
+ * Newly referenced inventory is delivered to the handlers in batches, see {@link AlarmTableProcessor}.
+ * Pending inventory is always delivered before any expired inventory is removed.
+ *
+ * Inventory that was deleted upstream is kept around until it expires. In order to find the expired inventory
+ * without scanning the whole inventory store, we maintain a secondary store ordered by expiry time, see
+ * {@link #toExpiryKey(long, String)}. Entries in this index are added when the inventory is given an expiry,
+ * and are only removed by the garbage collection: entries that no longer match the expiry of the stored
+ * inventory (i.e. because the inventory was updated since) are simply skipped and discarded.
+ *
+ * The same inventory object may be referenced by several keys, and the handlers are only notified of a removal
+ * once it is no longer referenced by any of these. The number of keys referencing each inventory object is kept
+ * in another store, see {@link #toReferenceKey(InventoryObject)}, so that we do not need to scan the whole
+ * inventory store in order to rebuild these counts when starting up. The counts are only rebuilt from the
+ * inventory store when migrating a store that was created without them, or when explicitly requested
+ * in order to verify their consistency. The counts read from the store are cached until the next garbage
+ * collection, so that objects referenced by several keys in quick succession only read their count once.
+ *
+ * Objects that are dropped from a key that is still present are subject to the same TTL as deleted keys: their
+ * references are moved to a separate key, see {@link #toDroppedKey(String)}, which expires like any other.
+ *
+ * The handlers are shared by all of the tasks on this instance, so the objects are only added when first referenced
+ * by any of these, and only removed once no longer referenced by any of these, see {@link InventoryOwners}.
+ *
+ * When sharding, the tasks may be moved between instances, in which case the inventory in the store is
+ * delivered to the handlers when the task is initialized, and removed from these once the task was revoked,
+ * see {@link RevokedTasks}. The inventory stored under the keys starting with
+ * {@link OpennmsDatasource#INVENTORY_STORE_STUB_PREFIX} stands in for the objects owned by other shards.
+ */
 public class InventoryTableProcessor implements Processor<String, InventoryModelProtos.InventoryObjects> {
     private static final Logger LOG = LoggerFactory.getLogger(InventoryTableProcessor.class);
 
     private final HandlerRegistry<InventoryHandler> inventoryHandlers;
     private final long inventoryGcIntervalMs;
     private final long inventoryTtlMs;
+    private final long flushIntervalMs;
+    private final boolean checkReferencesOnInit;
+    private final boolean replayOnInit;
+    private final HandlerBatch<InventoryObject> addedInventory;
+    private final InventoryOwners owners;
+    private final RevokedTasks revokedTasks;
 
     private ProcessorContext context;
+    private TaskId taskId;
     private KeyValueStore<String, InventoryModelProtos.InventoryObjects> kvStore;
+    private KeyValueStore<String, String> expiryStore;
+    private KeyValueStore<String, Integer> referencesStore;
+    private final Map<String, Integer> referencesCache = new HashMap<>();
+
+    private static final String DROPPED_KEY_SUFFIX = "#dropped";
+    private static final String STUB_REFERENCE_PREFIX = "~";
 
-    private final Map<ResourceKey, AtomicInteger> inventoryReferences =
-            new ConcurrentHashMap<>();
     private final CountDownLatch initLock = new CountDownLatch(1);
 
     public InventoryTableProcessor(HandlerRegistry<InventoryHandler> inventoryHandlers, long inventoryGcIntervalMs, long inventoryTtlMs) {
+        this(inventoryHandlers, inventoryGcIntervalMs, inventoryTtlMs, 1, 0);
+    }
+
+    public InventoryTableProcessor(HandlerRegistry<InventoryHandler> inventoryHandlers, long inventoryGcIntervalMs,
+                                   long inventoryTtlMs, int batchSize, long flushIntervalMs) {
+        this(inventoryHandlers, inventoryGcIntervalMs, inventoryTtlMs, batchSize, flushIntervalMs, false);
+    }
+
+    public InventoryTableProcessor(HandlerRegistry<InventoryHandler> inventoryHandlers, long inventoryGcIntervalMs,
+                                   long inventoryTtlMs, int batchSize, long flushIntervalMs,
+                                   boolean checkReferencesOnInit) {
+        this(inventoryHandlers, inventoryGcIntervalMs, inventoryTtlMs, batchSize, flushIntervalMs,
+                checkReferencesOnInit, false);
+    }
+
+    public InventoryTableProcessor(HandlerRegistry<InventoryHandler> inventoryHandlers, long inventoryGcIntervalMs,
+                                   long inventoryTtlMs, int batchSize, long flushIntervalMs,
+                                   boolean checkReferencesOnInit, boolean replayOnInit) {
+        this(inventoryHandlers, inventoryGcIntervalMs, inventoryTtlMs, batchSize, flushIntervalMs,
+                checkReferencesOnInit, replayOnInit, new InventoryOwners(), null);
+    }
+
+    /**
+     * @param owners tracks the inventory delivered by all of the tasks on this instance
+     * @param revokedTasks when set, the inventory is removed from the handlers once the task was revoked
+     */
+    public InventoryTableProcessor(HandlerRegistry<InventoryHandler> inventoryHandlers, long inventoryGcIntervalMs,
+                                   long inventoryTtlMs, int batchSize, long flushIntervalMs,
+                                   boolean checkReferencesOnInit, boolean replayOnInit, InventoryOwners owners,
+                                   RevokedTasks revokedTasks) {
         this.inventoryHandlers = Objects.requireNonNull(inventoryHandlers);
         this.inventoryGcIntervalMs = inventoryGcIntervalMs;
         this.inventoryTtlMs = inventoryTtlMs;
+        this.flushIntervalMs = flushIntervalMs;
+        this.checkReferencesOnInit = checkReferencesOnInit;
+        this.replayOnInit = replayOnInit;
+        this.owners = Objects.requireNonNull(owners);
+        this.revokedTasks = revokedTasks;
+        addedInventory = new HandlerBatch<>(batchSize, this::onInventoryAdded);
     }
 
     @Override
@@ -86,96 +166,281 @@ public class InventoryTableProcessor implements Processor<String, InventoryModel
     public void init(ProcessorContext context) {
         // keep the processor context locally because we need it in punctuate() and commit()
         this.context = context;
+        taskId = context.taskId();
 
         try {
-            // retrieve the key-value store
+            // retrieve the key-value stores
             kvStore = (KeyValueStore) context.getStateStore(OpennmsDatasource.INVENTORY_STORE);
-            kvStore.all().forEachRemaining(this::initReferences);
+            expiryStore = (KeyValueStore) context.getStateStore(OpennmsDatasource.INVENTORY_EXPIRY_STORE);
+            referencesStore = (KeyValueStore) context.getStateStore(OpennmsDatasource.INVENTORY_REFERENCES_STORE);
+            if (checkReferencesOnInit) {
+                LOG.info("Verifying the inventory reference counts.");
+                rebuildReferencesAndExpiry();
+            } else if (isEmpty(referencesStore) && !isEmpty(kvStore)) {
+                LOG.info("No inventory reference counts found. Rebuilding these from the inventory store.");
+                rebuildReferencesAndExpiry();
+            }
         } finally {
             initLock.countDown();
         }
 
+        // the handlers still know about the inventory if the task was closed during a rebalance and assigned back to us
+        final boolean reclaimed = revokedTasks != null && revokedTasks.reclaim(taskId, OpennmsDatasource.INVENTORY_STORE);
+        if (replayOnInit && !reclaimed && !inventoryHandlers.isEmpty()) {
+            // the handlers were registered before this task was assigned to us, let them know about its inventory
+            final Set<String> refs = new HashSet<>();
+            try (KeyValueIterator<String, InventoryModelProtos.InventoryObjects> iter = kvStore.all()) {
+                iter.forEachRemaining(entry -> toInventoryByReferenceKey(entry.key, entry.value).forEach((ref, io) -> {
+                    if (refs.add(ref) && acquire(ref)) {
+                        addedInventory.add(io);
+                    }
+                }));
+            }
+            flush();
+        }
+
         // schedule a punctuate() method based on clock time
         this.context.schedule(inventoryGcIntervalMs, PunctuationType.WALL_CLOCK_TIME, this::onPunctuate);
+        if (flushIntervalMs > 0) {
+            // schedule another punctuate() method to deliver any pending inventory
+            this.context.schedule(flushIntervalMs, PunctuationType.WALL_CLOCK_TIME, timestamp -> flush());
+        }
     }
-    
-    private void initReferences(KeyValue<String, InventoryModelProtos.InventoryObjects> keyValue) {
-        keyValue.value.getInventoryObjectList().forEach(io -> recordReference(toInventory(io)));
+
+    private static boolean isEmpty(KeyValueStore<String, ?> store) {
+        try (KeyValueIterator<String, ?> iter = store.all()) {
+            return !iter.hasNext();
+        }
+    }
+
+    /**
+     * Rebuild the reference counts and the expiry index from the inventory store, and
+     * update the stored reference counts where these differ.
+     *
+     * This requires a full scan of the inventory store.
+     */
+    private void rebuildReferencesAndExpiry() {
+        final long startNanos = System.nanoTime();
+        final Map<String, Integer> references = new HashMap<>();
+        try (KeyValueIterator<String, InventoryModelProtos.InventoryObjects> iter = kvStore.all()) {
+            iter.forEachRemaining(keyValue -> {
+                toInventoryByReferenceKey(keyValue.key, keyValue.value).keySet().forEach(ref -> references.merge(ref, 1, Integer::sum));
+                // (Re-)index the expiry, this is idempotent and populates the index for stores that were created without one
+                indexExpiry(keyValue.key, keyValue.value);
+            });
+        }
+
+        int numMismatched = 0;
+        final List<String> refsToDelete = new ArrayList<>();
+        try (KeyValueIterator<String, Integer> iter = referencesStore.all()) {
+            while (iter.hasNext()) {
+                final KeyValue<String, Integer> keyValue = iter.next();
+                final Integer expectedCount = references.remove(keyValue.key);
+                if (expectedCount == null) {
+                    LOG.debug("Inventory object {} has {} stored references, but is no longer referenced.", keyValue.key, keyValue.value);
+                    refsToDelete.add(keyValue.key);
+                    numMismatched++;
+                } else if (!expectedCount.equals(keyValue.value)) {
+                    LOG.debug("Inventory object {} has {} stored references, but is referenced {} times.", keyValue.key, keyValue.value, expectedCount);
+                    referencesStore.put(keyValue.key, expectedCount);
+                    numMismatched++;
+                }
+            }
+        }
+        refsToDelete.forEach(referencesStore::delete);
+        // Anything left over is missing from the store
+        numMismatched += references.size();
+        references.forEach(referencesStore::put);
+
+        final long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (numMismatched > 0) {
+            LOG.warn("Repaired {} inconsistent inventory reference counts in {}ms.", numMismatched, durationMs);
+        } else {
+            LOG.info("Inventory reference counts are consistent. Verified in {}ms.", durationMs);
+        }
+    }
+
+    /**
+     * Build the key used to index the given inventory by expiry time.
+     *
+     * Keys are compared byte-wise by the store, so we zero-pad the timestamp in order for the lexicographic
+     * order to match the chronological order.
+     */
+    static String toExpiryKey(long expiresAt, String key) {
+        return String.format("%020d:%s", expiresAt, key);
+    }
+
+    /**
+     * Build the key used to track the number of references to the given inventory object.
+     */
+    static String toReferenceKey(InventoryObject io) {
+        return toReferenceKey(io.getType(), io.getId());
+    }
+
+    private static String toReferenceKey(String type, String id) {
+        return type + ":" + id;
+    }
+
+    /**
+     * The references held by stubs are counted separately from the references to the objects themselves.
+     */
+    private static String toReferenceKey(String key, String type, String id) {
+        return isStubKey(key) ? STUB_REFERENCE_PREFIX + toReferenceKey(type, id) : toReferenceKey(type, id);
+    }
+
+    private static boolean isStubKey(String key) {
+        return ShardKeys.getKey(key).startsWith(OpennmsDatasource.INVENTORY_STORE_STUB_PREFIX);
+    }
+
+    /**
+     * Record that this task references the given object, now that no other key of this task did.
+     *
+     * @return true if the object should be delivered to the handlers
+     */
+    private boolean acquire(String ref) {
+        return ref.startsWith(STUB_REFERENCE_PREFIX) ?
+                owners.acquire(ref.substring(STUB_REFERENCE_PREFIX.length()), true, taskId) :
+                owners.acquire(ref, false, taskId);
+    }
+
+    /**
+     * Record that this task no longer references the given object.
+     *
+     * @return true if the object should be removed from the handlers
+     */
+    private boolean release(String ref) {
+        return ref.startsWith(STUB_REFERENCE_PREFIX) ?
+                owners.release(ref.substring(STUB_REFERENCE_PREFIX.length()), true, taskId) :
+                owners.release(ref, false, taskId);
+    }
+
+    /**
+     * Build the key used to hold on to the objects that were dropped from the given key until they expire.
+     */
+    static String toDroppedKey(String key) {
+        return key + DROPPED_KEY_SUFFIX;
+    }
+
+    private void indexExpiry(String key, InventoryModelProtos.InventoryObjects ios) {
+        if (ios.getExpiresAt() > 0) {
+            expiryStore.put(toExpiryKey(ios.getExpiresAt(), key), key);
+        }
     }
     
     private void onPunctuate(long timestamp) {
         LOG.debug("onPunctuate({})", timestamp);
+        // make sure the handlers have seen all of the added inventory before we remove any of it
+        flush();
+        final long startNanos = System.nanoTime();
+        int numScanned = 0;
+        final List<String> expiryKeysToDelete = new ArrayList<>();
         final Set<String> keysToDelete = new HashSet<>();
-        try (KeyValueIterator<String, InventoryModelProtos.InventoryObjects> iter = this.kvStore.all()) {
+        // Only visit the index entries that have expired. The upper bound is inclusive, but we never store a key
+        // without a suffix, so this will not match any of the entries for the following millisecond.
+        try (KeyValueIterator<String, String> iter = expiryStore.range(toExpiryKey(0, ""), String.format("%020d", timestamp + 1))) {
             while (iter.hasNext()) {
-                KeyValue<String, InventoryModelProtos.InventoryObjects> entry = iter.next();
-                if (entry.value.getExpiresAt() > 0 && entry.value.getExpiresAt() <= timestamp) {
-                    LOG.debug("Deleting expired inventory for key: {} with expiry: {} at: {}", entry.key, entry.value.getExpiresAt(), timestamp);
-                    keysToDelete.add(entry.key);
+                final KeyValue<String, String> entry = iter.next();
+                numScanned++;
+                expiryKeysToDelete.add(entry.key);
+                final InventoryModelProtos.InventoryObjects ios = kvStore.get(entry.value);
+                // Make sure the index entry is still current
+                if (ios != null && ios.getExpiresAt() > 0 && ios.getExpiresAt() <= timestamp
+                        && entry.key.equals(toExpiryKey(ios.getExpiresAt(), entry.value))) {
+                    LOG.debug("Deleting expired inventory for key: {} with expiry: {} at: {}", entry.value, ios.getExpiresAt(), timestamp);
+                    keysToDelete.add(entry.value);
                 }
             }
         }
+        expiryKeysToDelete.forEach(expiryStore::delete);
 
-        final List<InventoryModelProtos.InventoryObjects> inventoryObjects = new ArrayList<>();
+        final List<InventoryObject> inventoryToDelete = new ArrayList<>();
         keysToDelete.forEach(key -> {
             final InventoryModelProtos.InventoryObjects deletedIos = this.kvStore.delete(key);
             if (deletedIos != null) {
-                inventoryObjects.add(deletedIos);
-            }
-        });
-
-        if (inventoryObjects.size() > 0) {
-            // Only notify handlers of a removal for inventory that is no longer referenced
-            List<InventoryObject> inventoryToDelete = toInventory(inventoryObjects).stream()
-                    .filter(io -> {
-                        ResourceKey id = new ResourceKey(io.getId(), io.getType());
-                        AtomicInteger references = inventoryReferences.get(id);
-
-                        if (references.decrementAndGet() > 0) {
-                            LOG.trace("Inventory object {} references decreased to {}", io, references);
-
-                            return false;
-                        }
-
-                        LOG.debug("Inventory object {} is no longer referenced and will be removed", io);
-                        inventoryReferences.remove(id);
-
-                        return true;
-                    })
-                    .collect(Collectors.toList());
-
-            if (!inventoryToDelete.isEmpty()) {
-                inventoryHandlers.forEach(h -> {
-                    try {
-                        h.onInventoryRemoved(inventoryToDelete);
-                    } catch (Exception e) {
-                        LOG.error("onInventoryRemoved() call failed with inventory: {} on handler: {}",
-                                inventoryObjects, h, e);
+                // Only notify handlers of a removal for inventory that is no longer referenced
+                toInventoryByReferenceKey(key, deletedIos).forEach((ref, io) -> {
+                    if (releaseReference(ref) && release(ref)) {
+                        inventoryToDelete.add(io);
                     }
                 });
             }
+        });
+        onInventoryRemoved(inventoryToDelete);
+        // the cached counts are only kept for a single interval in order to bound the memory used
+        referencesCache.clear();
+
+        final long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (keysToDelete.isEmpty()) {
+            LOG.debug("Inventory GC scanned {} expiry entries and deleted no keys in {}ms.", numScanned, durationMs);
+        } else {
+            LOG.info("Inventory GC scanned {} expiry entries and deleted {} keys in {}ms.", numScanned, keysToDelete.size(), durationMs);
         }
 
         // commit the current processing progress
         context.commit();
     }
-    
-    private boolean recordReference(InventoryObject inventoryObject) {
-        ResourceKey id = new ResourceKey(inventoryObject.getId(), inventoryObject.getType());
-        AtomicInteger references = inventoryReferences.putIfAbsent(id, new AtomicInteger(1));
-
-        if (references == null) {
-            LOG.trace("Inventory object {} is new and will be added", id);
 
+    /**
+     * Add a reference to the given inventory object.
+     *
+     * @return true if the object was not referenced before, false otherwise
+     */
+    private boolean recordReference(String ref) {
+        final int references = getReferences(ref);
+        if (references == 0) {
+            LOG.trace("Inventory object {} is new and will be added", ref);
+            putReferences(ref, 1);
             return true;
         }
 
-        references.incrementAndGet();
-        LOG.trace("Inventory object {} references increased to {}", inventoryObject, references);
-
+        putReferences(ref, references + 1);
+        LOG.trace("Inventory object {} references increased to {}", ref, references + 1);
         return false;
     }
 
+    /**
+     * Remove a reference to the given inventory object.
+     *
+     * @return true if the object is no longer referenced, false otherwise
+     */
+    private boolean releaseReference(String ref) {
+        final int references = getReferences(ref);
+        if (references > 1) {
+            putReferences(ref, references - 1);
+            LOG.trace("Inventory object {} references decreased to {}", ref, references - 1);
+            return false;
+        }
+
+        LOG.debug("Inventory object {} is no longer referenced and will be removed", ref);
+        putReferences(ref, 0);
+        return true;
+    }
+
+    private int getReferences(String ref) {
+        Integer references = referencesCache.get(ref);
+        if (references == null) {
+            references = referencesStore.get(ref);
+            if (references == null) {
+                references = 0;
+            }
+            referencesCache.put(ref, references);
+        }
+        return references;
+    }
+
+    /**
+     * Update the number of references to the given inventory object. The store is always
+     * written to, the cache only saves us from reading it back.
+     */
+    private void putReferences(String ref, int references) {
+        if (references > 0) {
+            referencesStore.put(ref, references);
+        } else {
+            referencesStore.delete(ref);
+        }
+        referencesCache.put(ref, references);
+    }
+
     @Override
     public void process(String key, InventoryModelProtos.InventoryObjects inventory) {
         try {
@@ -187,38 +452,143 @@ public class InventoryTableProcessor implements Processor<String, InventoryModel
             return;
         }
 
-        if (inventory == null) {
-            final InventoryModelProtos.InventoryObjects ios = this.kvStore.get(key);
-            if (ios == null) {
+        final InventoryModelProtos.InventoryObjects previousInventory = this.kvStore.get(key);
+        if (inventory != null && inventory.getInventoryObjectCount() == 0 && previousInventory == null) {
+            LOG.trace("No inventory to store for key: {}", key);
+        } else if (inventory == null) {
+            if (previousInventory == null) {
                 LOG.info("No inventory found for key: {}", key);
             } else {
-                this.kvStore.put(key, InventoryModelProtos.InventoryObjects.newBuilder(ios)
+                final InventoryModelProtos.InventoryObjects expiringIos = InventoryModelProtos.InventoryObjects.newBuilder(previousInventory)
                         .setExpiresAt(context.timestamp() + inventoryTtlMs)
-                        .build());
+                        .build();
+                this.kvStore.put(key, expiringIos);
+                indexExpiry(key, expiringIos);
             }
         } else {
             this.kvStore.put(key, inventory);
+            indexExpiry(key, inventory);
+
+            // Objects that were already stored under this key are already referenced by it
+            final Map<String, InventoryObject> previousInventoryByRef = previousInventory != null ?
+                    toInventoryByReferenceKey(key, previousInventory) : Collections.emptyMap();
+            final Map<String, InventoryObject> inventoryByRef = toInventoryByReferenceKey(key, inventory);
 
             // Only handle inventory that has not been referenced before
-            List<InventoryObject> newInventory = toInventory(Collections.singletonList(inventory)).stream()
-                    .filter(this::recordReference)
-                    .collect(Collectors.toList());
-
-            if (!newInventory.isEmpty()) {
-                inventoryHandlers.forEach(h -> {
-                    try {
-                        h.onInventoryAdded(newInventory);
-                    } catch (Exception e) {
-                        LOG.error("onInventoryAdded() call failed with inventory: {} on handler: {}", inventory, h, e);
-                    }
-                });
+            inventoryByRef.forEach((ref, io) -> {
+                if (!previousInventoryByRef.containsKey(ref) && recordReference(ref) && acquire(ref)) {
+                    addedInventory.add(io);
+                }
+            });
+
+            // Keep the objects that were dropped from this key around until they expire
+            final List<InventoryModelProtos.InventoryObject> droppedIos = new ArrayList<>();
+            for (InventoryModelProtos.InventoryObject io : previousInventory != null ?
+                    previousInventory.getInventoryObjectList() : Collections.<InventoryModelProtos.InventoryObject>emptyList()) {
+                if (!inventoryByRef.containsKey(toReferenceKey(key, io.getType(), io.getId()))) {
+                    droppedIos.add(io);
+                }
+            }
+            if (!droppedIos.isEmpty()) {
+                expireDroppedInventory(key, droppedIos);
             }
         }
     }
 
+    /**
+     * Move the references held by the given key for the dropped objects to the key's dropped
+     * inventory, which expires after the TTL and is then garbage collected like any other key.
+     */
+    private void expireDroppedInventory(String key, List<InventoryModelProtos.InventoryObject> droppedIos) {
+        final String droppedKey = toDroppedKey(key);
+        final InventoryModelProtos.InventoryObjects previouslyDropped = kvStore.get(droppedKey);
+        final Set<String> previouslyDroppedRefs = new HashSet<>();
+        final InventoryModelProtos.InventoryObjects.Builder dropped = InventoryModelProtos.InventoryObjects.newBuilder();
+        if (previouslyDropped != null) {
+            for (InventoryModelProtos.InventoryObject io : previouslyDropped.getInventoryObjectList()) {
+                if (previouslyDroppedRefs.add(toReferenceKey(droppedKey, io.getType(), io.getId()))) {
+                    dropped.addInventoryObject(io);
+                }
+            }
+        }
+        for (InventoryModelProtos.InventoryObject io : droppedIos) {
+            final String ref = toReferenceKey(droppedKey, io.getType(), io.getId());
+            if (previouslyDroppedRefs.add(ref)) {
+                // the reference is handed over as-is
+                dropped.addInventoryObject(io);
+            } else {
+                // the dropped inventory already holds a reference, so this one is never the last
+                releaseReference(ref);
+            }
+        }
+        final InventoryModelProtos.InventoryObjects expiringIos = dropped
+                .setExpiresAt(context.timestamp() + inventoryTtlMs)
+                .build();
+        kvStore.put(droppedKey, expiringIos);
+        indexExpiry(droppedKey, expiringIos);
+    }
+
+    /**
+     * Deliver any pending inventory to the handlers.
+     */
+    public void flush() {
+        addedInventory.flush();
+    }
+
+    private void onInventoryAdded(List<InventoryObject> addedInventory) {
+        inventoryHandlers.forEachUpdate(addedInventory, (h, inventory) -> {
+            try {
+                h.onInventoryAdded(inventory);
+            } catch (Exception e) {
+                LOG.error("onInventoryAdded() call failed with inventory: {} on handler: {}", inventory, h, e);
+            }
+        });
+    }
+
+    private void onInventoryRemoved(List<InventoryObject> removedInventory) {
+        if (removedInventory.isEmpty()) {
+            return;
+        }
+        inventoryHandlers.forEachRemoval(removedInventory, (h, inventory) -> {
+            try {
+                h.onInventoryRemoved(inventory);
+            } catch (Exception e) {
+                LOG.error("onInventoryRemoved() call failed with inventory: {} on handler: {}", inventory, h, e);
+            }
+        });
+    }
+
     @Override
     public void close() {
-        // pass, no external resources managed by this processor
+        // deliver anything that is still pending, no external resources managed by this processor
+        flush();
+
+        if (revokedTasks != null && !revokedTasks.isShuttingDown()) {
+            // The store is no longer available once the task is closed, so we collect the inventory to release now
+            final Map<String, InventoryObject> inventoryByRef = new LinkedHashMap<>();
+            try (KeyValueIterator<String, InventoryModelProtos.InventoryObjects> iter = kvStore.all()) {
+                iter.forEachRemaining(entry -> toInventoryByReferenceKey(entry.key, entry.value).forEach(inventoryByRef::putIfAbsent));
+            }
+            revokedTasks.defer(taskId, OpennmsDatasource.INVENTORY_STORE, () -> {
+                final List<InventoryObject> inventoryToDelete = new ArrayList<>();
+                inventoryByRef.forEach((ref, io) -> {
+                    if (release(ref)) {
+                        inventoryToDelete.add(io);
+                    }
+                });
+                LOG.debug("Removing {} inventory objects for revoked task: {}", inventoryToDelete.size(), taskId);
+                onInventoryRemoved(inventoryToDelete);
+            });
+        }
+    }
+
+    private static Map<String, InventoryObject> toInventoryByReferenceKey(String key, InventoryModelProtos.InventoryObjects ios) {
+        final Map<String, InventoryObject> inventoryByRef = new LinkedHashMap<>();
+        for (InventoryModelProtos.InventoryObject io : ios.getInventoryObjectList()) {
+            final InventoryObject inventoryObject = toInventory(io);
+            inventoryByRef.putIfAbsent(toReferenceKey(key, io.getType(), io.getId()), inventoryObject);
+        }
+        return inventoryByRef;
     }
 
     public static List<InventoryObject> toInventory(List<InventoryModelProtos.InventoryObjects> listOfIos) {
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.sharding;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import org.opennms.alec.datasource.opennms.proto.InventoryModelProtos;
+import org.opennms.alec.datasource.opennms.proto.OpennmsModelProtos;
+
+/**
+ * Derives the stubs that stand in for the remote ends of the edges crossing partitions.
+ *
+ * An edge is sent to the shards on both of its ends, but the inventory for either end is only known to the shard
+ * that owns it. Without the remote end, the engine would keep waiting on the peer for good, so we send a stub for
+ * the remote end along with the edge. The stub only carries the type and id of the object, the object itself
+ * takes precedence whenever both are known to the same instance.
+ */
+public class EdgeStubs {
+
+    private EdgeStubs() {}
+
+    /**
+     * @param partitionKey the partition key of the shard the edge is sent to
+     * @param edge the edge
+     * @param edgeInventory the inventory derived from the edge
+     * @return stubs for the peers of the edge inventory that are owned by other shards, empty if there are none
+     */
+    public static InventoryModelProtos.InventoryObjects forRemoteEndpoints(String partitionKey,
+                                                                           OpennmsModelProtos.TopologyEdge edge,
+                                                                           InventoryModelProtos.InventoryObjects edgeInventory) {
+        Objects.requireNonNull(partitionKey);
+        final String sourcePartitionKey = TopologyPartitionKeys.forEdgeSource(edge);
+        final String targetPartitionKey = TopologyPartitionKeys.forEdgeTarget(edge);
+
+        final Set<String> refs = new HashSet<>();
+        for (InventoryModelProtos.InventoryObject io : edgeInventory.getInventoryObjectList()) {
+            // objects that are part of the edge inventory don't need a stub
+            refs.add(io.getType() + ":" + io.getId());
+        }
+
+        final InventoryModelProtos.InventoryObjects.Builder stubs = InventoryModelProtos.InventoryObjects.newBuilder();
+        for (InventoryModelProtos.InventoryObject io : edgeInventory.getInventoryObjectList()) {
+            for (InventoryModelProtos.InventoryObjectPeerRef peerRef : io.getPeerList()) {
+                final String endpointPartitionKey = InventoryModelProtos.InventoryObjectPeerEndpoint.A.equals(peerRef.getEndpoint()) ?
+                        sourcePartitionKey : targetPartitionKey;
+                if (endpointPartitionKey == null || endpointPartitionKey.equals(partitionKey)
+                        || !refs.add(peerRef.getType() + ":" + peerRef.getId())) {
+                    continue;
+                }
+                stubs.addInventoryObject(InventoryModelProtos.InventoryObject.newBuilder()
+                        .setType(peerRef.getType())
+                        .setId(peerRef.getId())
+                        .build());
+            }
+        }
+        return stubs.build();
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.sharding;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.streams.processor.TaskId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Releases the state of the tasks that were moved to another instance.
+ *
+ * The processors of a task are closed whenever the partitions are rebalanced, including when the task is
+ * assigned back to the same instance, in which case these are initialized again once the rebalance completes.
+ * Instead of removing the alarms and inventory of a closed task from the handlers right away, the processors
+ * defer this until the rebalance is complete, see {@link #releaseAll()}. Tasks that are initialized again in
+ * the meantime reclaim their state, so that the handlers are left untouched.
+ */
+public class RevokedTasks {
+    private static final Logger LOG = LoggerFactory.getLogger(RevokedTasks.class);
+
+    private final Map<String, Runnable> pendingReleases = new LinkedHashMap<>();
+    private boolean shuttingDown = false;
+
+    /**
+     * Defer the release of the state held by the given processor of a closed task.
+     *
+     * @param taskId the task that was closed
+     * @param storeName the name of the store holding the state, used to tell the processors of a task apart
+     * @param release removes the state from the handlers
+     */
+    public synchronized void defer(TaskId taskId, String storeName, Runnable release) {
+        if (shuttingDown) {
+            // everything goes away, nothing to release
+            return;
+        }
+        pendingReleases.put(toKey(taskId, storeName), release);
+    }
+
+    /**
+     * Cancel the pending release of the state held by the given processor when its task is initialized again.
+     *
+     * @return true if the state was pending release, in which case the handlers still know about it
+     */
+    public synchronized boolean reclaim(TaskId taskId, String storeName) {
+        return pendingReleases.remove(toKey(taskId, storeName)) != null;
+    }
+
+    /**
+     * Release the state of all of the tasks that were closed, and were not initialized again since.
+     */
+    public void releaseAll() {
+        final List<Runnable> releases;
+        synchronized (this) {
+            releases = new ArrayList<>(pendingReleases.values());
+            pendingReleases.clear();
+        }
+        if (releases.isEmpty()) {
+            return;
+        }
+        LOG.info("Releasing the state of {} processors for the tasks that were revoked.", releases.size());
+        for (Runnable release : releases) {
+            try {
+                release.run();
+            } catch (Exception e) {
+                LOG.error("Failed to release the state of a revoked task.", e);
+            }
+        }
+    }
+
+    /**
+     * Stop tracking the closed tasks, since these are all being closed for good.
+     */
+    public synchronized void shutdown() {
+        shuttingDown = true;
+        pendingReleases.clear();
+    }
+
+    public synchronized boolean isShuttingDown() {
+        return shuttingDown;
+    }
+
+    private static String toKey(TaskId taskId, String storeName) {
+        return taskId + "/" + storeName;
+    }
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.sharding;
+
+import java.util.Objects;
+
+/**
+ * Record keys that carry the topology partition key used to select the partition (and thereby the shard)
+ * to which the record is sent, along with the original key.
+ *
+ * Keys that were not routed are left as-is, and act as their own partition key, so that the helpers in
+ * this class can be applied to any record key.
+ */
+public class ShardKeys {
+
+    private static final char SEPARATOR = '\u001e';
+
+    private ShardKeys() {}
+
+    public static String route(String partitionKey, String key) {
+        Objects.requireNonNull(partitionKey, "partitionKey is required");
+        if (partitionKey.indexOf(SEPARATOR) >= 0) {
+            throw new IllegalArgumentException("Invalid partition key: " + partitionKey);
+        }
+        return SEPARATOR + partitionKey + SEPARATOR + key;
+    }
+
+    public static boolean isRouted(String key) {
+        return key != null && !key.isEmpty() && key.charAt(0) == SEPARATOR;
+    }
+
+    /**
+     * @return the original key
+     */
+    public static String getKey(String key) {
+        if (!isRouted(key)) {
+            return key;
+        }
+        return key.substring(key.indexOf(SEPARATOR, 1) + 1);
+    }
+
+    /**
+     * @return the partition key for the given key
+     */
+    public static String getPartitionKey(String key) {
+        if (!isRouted(key)) {
+            return key;
+        }
+        return key.substring(1, key.indexOf(SEPARATOR, 1));
+    }
+
+    /**
+     * Replace the original key, keeping the partition key if the given key was routed.
+     */
+    public static String withKey(String routedKey, String key) {
+        if (!isRouted(routedKey)) {
+            return key;
+        }
+        return route(getPartitionKey(routedKey), key);
+    }
+}
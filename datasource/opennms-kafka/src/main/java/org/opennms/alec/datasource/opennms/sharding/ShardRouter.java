@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.sharding;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+/**
+ * Routes records to the shards owning the partition keys derived from their values.
+ *
+ * A record is forwarded once for every partition key, using the keys from {@link ShardKeys#route(String, String)}.
+ * Since tombstones do not carry a value, we keep track of the partition keys each record was last routed to,
+ * and use these to forward the tombstones to the same shards. Records that no longer map to a partition key
+ * they were previously routed to are removed from that shard by forwarding a tombstone there as well.
+ *
+ * @param <V> value type
+ */
+public class ShardRouter<V> implements Transformer<String, V, KeyValue<String, V>> {
+
+    private static final String SEPARATOR = "\n";
+
+    private final String routesStoreName;
+    private final Function<V, Set<String>> partitionKeysFunction;
+
+    private ProcessorContext context;
+    private KeyValueStore<String, String> routesStore;
+
+    /**
+     * @param routesStoreName name of the store used to track the partition keys for every record
+     * @param partitionKeysFunction derives the partition keys from a record, the key of the record itself
+     *                              is used if none are returned
+     */
+    public ShardRouter(String routesStoreName, Function<V, Set<String>> partitionKeysFunction) {
+        this.routesStoreName = Objects.requireNonNull(routesStoreName);
+        this.partitionKeysFunction = Objects.requireNonNull(partitionKeysFunction);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void init(ProcessorContext context) {
+        this.context = context;
+        routesStore = (KeyValueStore) context.getStateStore(routesStoreName);
+    }
+
+    @Override
+    public KeyValue<String, V> transform(String key, V value) {
+        final String previousRoutes = routesStore.get(key);
+        final Set<String> previousPartitionKeys = previousRoutes != null ?
+                new LinkedHashSet<>(Arrays.asList(previousRoutes.split(SEPARATOR))) : Collections.emptySet();
+
+        Set<String> partitionKeys = Collections.emptySet();
+        if (value != null) {
+            partitionKeys = partitionKeysFunction.apply(value);
+            if (partitionKeys.isEmpty()) {
+                partitionKeys = Collections.singleton(key);
+            }
+        }
+
+        for (String partitionKey : previousPartitionKeys) {
+            if (!partitionKeys.contains(partitionKey)) {
+                context.forward(ShardKeys.route(partitionKey, key), null);
+            }
+        }
+        for (String partitionKey : partitionKeys) {
+            context.forward(ShardKeys.route(partitionKey, key), value);
+        }
+
+        if (partitionKeys.isEmpty()) {
+            if (previousRoutes != null) {
+                routesStore.delete(key);
+            }
+        } else if (!partitionKeys.equals(previousPartitionKeys)) {
+            routesStore.put(key, String.join(SEPARATOR, partitionKeys));
+        }
+        // the records were forwarded above
+        return null;
+    }
+
+    @Override
+    public void close() {
+        // pass
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.sharding;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.opennms.alec.datasource.opennms.OpennmsMapper;
+import org.opennms.alec.datasource.opennms.proto.OpennmsModelProtos;
+
+/**
+ * Derives the topology partition keys used to shard the records.
+ *
+ * We partition by node, so that a node, its alarms and the inventory derived from these are all
+ * handled by the same shard.
+ */
+public class TopologyPartitionKeys {
+
+    private TopologyPartitionKeys() {}
+
+    /**
+     * Partition key for the node with the given node criteria, as used to key the records on the node topic.
+     */
+    public static String forNode(String nodeCriteria) {
+        return nodeCriteria;
+    }
+
+    /**
+     * Alarms are partitioned by the node they are associated with. Situations are partitioned along with the
+     * first of their related alarms that is associated with a node, so that they are handled by the shard
+     * that created them.
+     *
+     * @return the partition key, or an empty set if the alarm is not associated with any node
+     */
+    public static Set<String> forAlarm(OpennmsModelProtos.Alarm alarm) {
+        if (alarm.hasNodeCriteria()) {
+            return Collections.singleton(forNode(OpennmsMapper.toNodeCriteria(alarm.getNodeCriteria())));
+        }
+        for (OpennmsModelProtos.Alarm relatedAlarm : alarm.getRelatedAlarmList()) {
+            if (relatedAlarm.hasNodeCriteria()) {
+                return Collections.singleton(forNode(OpennmsMapper.toNodeCriteria(relatedAlarm.getNodeCriteria())));
+            }
+        }
+        return Collections.emptySet();
+    }
+
+    /**
+     * Edges are sent to the shards of the nodes on both ends, so that the edges crossing
+     * partitions are known on either side.
+     *
+     * @return the partition keys, or an empty set if neither end is associated with a node
+     */
+    public static Set<String> forEdge(OpennmsModelProtos.TopologyEdge edge) {
+        final Set<String> partitionKeys = new LinkedHashSet<>();
+        final String sourcePartitionKey = forEdgeSource(edge);
+        if (sourcePartitionKey != null) {
+            partitionKeys.add(sourcePartitionKey);
+        }
+        final String targetPartitionKey = forEdgeTarget(edge);
+        if (targetPartitionKey != null) {
+            partitionKeys.add(targetPartitionKey);
+        }
+        return partitionKeys;
+    }
+
+    /**
+     * @return the partition key for the source end of the edge, or null if it is not associated with a node
+     */
+    public static String forEdgeSource(OpennmsModelProtos.TopologyEdge edge) {
+        if (edge.hasSourcePort() && edge.getSourcePort().hasNodeCriteria()) {
+            return forNode(OpennmsMapper.toNodeCriteria(edge.getSourcePort().getNodeCriteria()));
+        } else if (edge.hasSourceNode()) {
+            return forNode(OpennmsMapper.toNodeCriteria(edge.getSourceNode()));
+        }
+        return null;
+    }
+
+    /**
+     * @return the partition key for the target end of the edge, or null if it is not associated with a node
+     */
+    public static String forEdgeTarget(OpennmsModelProtos.TopologyEdge edge) {
+        if (edge.hasTargetPort() && edge.getTargetPort().hasNodeCriteria()) {
+            return forNode(OpennmsMapper.toNodeCriteria(edge.getTargetPort().getNodeCriteria()));
+        } else if (edge.hasTargetNode()) {
+            return forNode(OpennmsMapper.toNodeCriteria(edge.getTargetNode()));
+        }
+        return null;
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.Test;
+import org.opennms.alec.engine.api.EngineStateDelta;
+
+public class KafkaEngineStateTransportTest {
+    private static final String TOPIC = "alec-engine-state";
+
+    /**
+     * Verifies that the deltas survive the round trip through the records, and that the records are keyed so that
+     * compacting the topic retains the latest state of every situation.
+     */
+    @Test
+    public void canConvertDeltasToRecordsAndBack() {
+        EngineStateDelta delta = EngineStateDelta.newBuilder()
+                .setTimestamp(1)
+                .addSituation(new EngineStateDelta.SituationMembership("s1", 10, Arrays.asList("a1", "a2"),
+                        "The 2 alarms happened within 0.00 seconds across 1 vertices."))
+                .setBlacklist("s1", Collections.singletonList("a3"))
+                .deleteSituation("s2")
+                .setBlacklist("s3", Collections.emptyList())
+                .build();
+
+        List<ProducerRecord<String, String>> producerRecords = KafkaEngineStateTransport.toRecords(TOPIC, delta);
+        assertThat(producerRecords, hasSize(5));
+
+        // Deleted situations and empty blacklists are written as tombstones
+        ProducerRecord<String, String> s2 = findRecord(producerRecords, "situation:s2");
+        assertThat(s2.value(), nullValue());
+        assertThat(findRecord(producerRecords, "blacklist:s2").value(), nullValue());
+        assertThat(findRecord(producerRecords, "blacklist:s3").value(), nullValue());
+
+        EngineStateDelta converted = KafkaEngineStateTransport.toDelta(toConsumerRecords(producerRecords));
+        assertThat(converted.getSituations(), equalTo(delta.getSituations()));
+        assertThat(converted.getDeletedSituationIds(), contains("s2"));
+        assertThat(converted.getBlacklistsBySituationId().get("s1"), contains("a3"));
+        assertThat(converted.getBlacklistsBySituationId().get("s3"), empty());
+    }
+
+    /**
+     * Verifies that the latest record for a situation wins when several are consumed at once.
+     */
+    @Test
+    public void canApplyRecordsInOrder() {
+        List<ProducerRecord<String, String>> producerRecords = new ArrayList<>();
+        producerRecords.addAll(KafkaEngineStateTransport.toRecords(TOPIC, EngineStateDelta.newBuilder()
+                .addSituation(new EngineStateDelta.SituationMembership("s1", 10, Arrays.asList("a1", "a2"), null))
+                .addSituation(new EngineStateDelta.SituationMembership("s2", 10, Arrays.asList("a3", "a4"), null))
+                .build()));
+        producerRecords.addAll(KafkaEngineStateTransport.toRecords(TOPIC, EngineStateDelta.newBuilder()
+                .addSituation(new EngineStateDelta.SituationMembership("s1", 10, Arrays.asList("a1", "a2", "a5"),
+                        null))
+                .deleteSituation("s2")
+                .build()));
+
+        EngineStateDelta converted = KafkaEngineStateTransport.toDelta(toConsumerRecords(producerRecords));
+        assertThat(converted.getSituations().get("s1").getAlarmIds(), contains("a1", "a2", "a5"));
+        assertThat(converted.getSituations(), not(hasKey("s2")));
+        assertThat(converted.getDeletedSituationIds(), contains("s2"));
+    }
+
+    private static ProducerRecord<String, String> findRecord(List<ProducerRecord<String, String>> records,
+                                                             String key) {
+        return records.stream()
+                .filter(r -> key.equals(r.key()))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No record with key: " + key));
+    }
+
+    private static List<ConsumerRecord<String, String>> toConsumerRecords(
+            List<ProducerRecord<String, String>> producerRecords) {
+        final List<ConsumerRecord<String, String>> consumerRecords = new ArrayList<>();
+        long offset = 0;
+        for (ProducerRecord<String, String> record : producerRecords) {
+            consumerRecords.add(new ConsumerRecord<>(record.topic(), 0, offset++, record.key(), record.value()));
+        }
+        return consumerRecords;
+    }
+}
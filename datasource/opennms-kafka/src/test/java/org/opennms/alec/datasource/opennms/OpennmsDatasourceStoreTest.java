@@ -29,6 +29,7 @@
 package org.opennms.alec.datasource.opennms;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -41,11 +42,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.TopologyDescription;
 import org.apache.kafka.streams.TopologyTestDriver;
 import org.apache.kafka.streams.state.KeyValueIterator;
 import org.apache.kafka.streams.state.KeyValueStore;
@@ -78,6 +81,39 @@ public class OpennmsDatasourceStoreTest {
 
     @Test
     public void canBuildAndMaintainStores() throws IOException {
+        canBuildAndMaintainStores(false);
+    }
+
+    @Test
+    public void canBuildAndMaintainStoresWhenSharded() throws IOException {
+        canBuildAndMaintainStores(true);
+    }
+
+    @Test
+    public void canColocateAlarmsAndInventoryWhenSharded() {
+        ConfigurationAdmin configAdmin = mock(ConfigurationAdmin.class, RETURNS_DEEP_STUBS);
+        ScriptedInventoryService inventoryService = OpennmsKafkaScriptedInventory.withDefaults();
+        OpennmsDatasource datasource = new OpennmsDatasource(configAdmin, new NodeToInventory(inventoryService),
+                new AlarmToInventory(inventoryService), new EdgeToInventory(inventoryService), mock(SinkWrapper.class));
+        datasource.setShardingEnabled(true);
+
+        // The alarm and inventory stores must be part of the same sub-topology, so that the tasks for
+        // any given partition are assigned together
+        final TopologyDescription.Subtopology subtopology = datasource.getKTopology().describe().subtopologies().stream()
+                .filter(s -> s.nodes().stream()
+                        .filter(n -> n instanceof TopologyDescription.Processor)
+                        .anyMatch(n -> ((TopologyDescription.Processor)n).stores().contains(OpennmsDatasource.ALARM_STORE)))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No sub-topology found for the alarm store."));
+        final Set<String> stores = subtopology.nodes().stream()
+                .filter(n -> n instanceof TopologyDescription.Processor)
+                .flatMap(n -> ((TopologyDescription.Processor)n).stores().stream())
+                .collect(Collectors.toSet());
+        assertThat(stores, hasItems(OpennmsDatasource.ALARM_STORE, OpennmsDatasource.INVENTORY_STORE,
+                OpennmsDatasource.SITUATION_STORE));
+    }
+
+    private void canBuildAndMaintainStores(boolean sharded) throws IOException {
         long step = 10000L;
 
         ConfigurationAdmin configAdmin = mock(ConfigurationAdmin.class, RETURNS_DEEP_STUBS);
@@ -89,6 +125,7 @@ public class OpennmsDatasourceStoreTest {
         OpennmsDatasource datasource = new OpennmsDatasource(configAdmin, nodeToInventory, alarmToInventory, edgeToInventory, sinkWrapper);
         datasource.setInventoryTtlMs(step-1);
         datasource.setInventoryGcIntervalMs(step);
+        datasource.setShardingEnabled(sharded);
 
         Topology topology = datasource.getKTopology();
         Properties props = datasource.loadStreamsProperties();
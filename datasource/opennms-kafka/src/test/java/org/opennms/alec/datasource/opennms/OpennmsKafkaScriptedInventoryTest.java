@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.isOneOf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.alec.datasource.opennms.proto.OpennmsModelProtos;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class OpennmsKafkaScriptedInventoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void canInvokeScriptConcurrently() throws Exception {
+        final File script = writeScript("v1", 0);
+        final MetricRegistry metrics = new MetricRegistry();
+        final OpennmsKafkaScriptedInventory inventory = new OpennmsKafkaScriptedInventory(script.getAbsolutePath(),
+                30000, null, metrics);
+
+        final int numThreads = 4;
+        final int numCallsPerThread = 100;
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < numCallsPerThread; j++) {
+                        final long id = j;
+                        assertThat(invoke(inventory, id), equalTo("v1:" + id));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The invocations should be timed per function
+        assertThat(metrics.timer("script.toInventoryObjects").getCount(), equalTo((long)numThreads * numCallsPerThread));
+    }
+
+    @Test
+    public void canReloadScript() throws Exception {
+        final File script = writeScript("v1", 0);
+        final OpennmsKafkaScriptedInventory inventory = new OpennmsKafkaScriptedInventory(script.getAbsolutePath(),
+                0, null);
+        assertThat(invoke(inventory, 1), equalTo("v1:1"));
+
+        // Update the script, and make sure the new version is picked up
+        writeScript("v2", script.lastModified() + 1000);
+        Thread.sleep(1);
+        assertThat(invoke(inventory, 1), equalTo("v2:1"));
+
+        // A script that fails to evaluate should not replace the current one
+        Files.write("def toInventoryObjects(node) {", script, Charsets.UTF_8);
+        script.setLastModified(script.lastModified() + 2000);
+        Thread.sleep(1);
+        assertThat(invoke(inventory, 1), equalTo("v2:1"));
+    }
+
+    @Test
+    public void canReloadScriptWhileInvokingConcurrently() throws Exception {
+        final File script = writeScript("v1", 0);
+        final OpennmsKafkaScriptedInventory inventory = new OpennmsKafkaScriptedInventory(script.getAbsolutePath(),
+                0, null);
+
+        // Use more threads than there are engines in the pool, so that some of these need to wait for an engine
+        final int numThreads = 4 * Runtime.getRuntime().availableProcessors();
+        final int numCallsPerThread = 20;
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < numCallsPerThread; j++) {
+                        assertThat(invoke(inventory, j), isOneOf("v1:" + j, "v2:" + j));
+                    }
+                    return null;
+                }));
+            }
+            // Update the script while the invocations are in progress
+            writeScript("v2", script.lastModified() + 1000);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Thread.sleep(1);
+        assertThat(invoke(inventory, 1), equalTo("v2:1"));
+    }
+
+    private File writeScript(String version, long lastModified) throws IOException {
+        final File script = new File(temporaryFolder.getRoot(), "inventory.groovy");
+        Files.write("def toInventoryObjects(node) { return [(\"" + version + ":\" + node.getId()).toString()] }", script, Charsets.UTF_8);
+        if (lastModified > 0) {
+            script.setLastModified(lastModified);
+        }
+        return script;
+    }
+
+    private static Object invoke(OpennmsKafkaScriptedInventory inventory, long id) throws Exception {
+        final List<Object> results = new ArrayList<>(inventory.toInventoryObjects(node(id)));
+        assertThat(results.size(), equalTo(1));
+        return results.get(0);
+    }
+
+    private static OpennmsModelProtos.Node node(long id) {
+        return OpennmsModelProtos.Node.newBuilder().setId(id).build();
+    }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opennms.alec.datasource.api.Situation;
+import org.opennms.alec.datasource.common.ImmutableSituation;
+
+public class SituationBatcherTest {
+
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void canForwardImmediatelyWithoutLinger() {
+        try (SituationBatcher batcher = new SituationBatcher(10, 0, this::onBatch)) {
+            batcher.add(situation("s1"));
+            batcher.add(situation("s2"));
+            assertThat(batches, contains(contains("s1"), contains("s2")));
+        }
+    }
+
+    @Test
+    public void canBatchUpToMaxBatchSize() {
+        try (SituationBatcher batcher = new SituationBatcher(2, TimeUnit.HOURS.toMillis(1), this::onBatch)) {
+            batcher.add(situation("s1"));
+            assertThat(batches, hasSize(0));
+            batcher.add(situation("s2"));
+            batcher.add(situation("s3"));
+            assertThat(batches, contains(contains("s1", "s2")));
+        }
+        // The remaining situations should be flushed on close
+        assertThat(batches, contains(contains("s1", "s2"), contains("s3")));
+    }
+
+    @Test
+    public void canFlushAfterLinger() {
+        try (SituationBatcher batcher = new SituationBatcher(100, 10, this::onBatch)) {
+            batcher.add(situation("s1"));
+            batcher.add(situation("s2"));
+            await().atMost(10, TimeUnit.SECONDS).until(() -> batches, hasSize(1));
+            assertThat(batches, contains(contains("s1", "s2")));
+        }
+    }
+
+    @Test
+    public void canAddWhileSending() throws Exception {
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch sent = new CountDownLatch(1);
+        try (SituationBatcher batcher = new SituationBatcher(2, TimeUnit.HOURS.toMillis(1), situations -> {
+            sending.countDown();
+            try {
+                sent.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            onBatch(situations);
+        })) {
+            final ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                executor.submit(() -> {
+                    batcher.add(situation("s1"));
+                    batcher.add(situation("s2"));
+                });
+                assertThat(sending.await(10, TimeUnit.SECONDS), equalTo(true));
+
+                // The first batch is still being sent, but we can keep adding situations
+                batcher.add(situation("s3"));
+                sent.countDown();
+            } finally {
+                executor.shutdown();
+            }
+        }
+        assertThat(batches, contains(contains("s1", "s2"), contains("s3")));
+    }
+
+    @Test
+    public void canSplitBatchesToFit() {
+        final List<List<String>> parts = new ArrayList<>();
+        final List<Situation> situations = Arrays.asList(situation("s1"), situation("s2"), situation("s3"), situation("s4"));
+        // Every situation encodes to 10 bytes
+        SituationBatcher.encodeToFit(situations, batch -> new byte[batch.size() * 10], 25,
+                (batch, payload) -> parts.add(batch.stream().map(Situation::getId).collect(Collectors.toList())));
+        assertThat(parts, contains(contains("s1", "s2"), contains("s3", "s4")));
+
+        // Single situations are sent regardless of their size
+        parts.clear();
+        SituationBatcher.encodeToFit(situations.subList(0, 3), batch -> new byte[batch.size() * 10], 5,
+                (batch, payload) -> parts.add(batch.stream().map(Situation::getId).collect(Collectors.toList())));
+        assertThat(parts, contains(contains("s1"), contains("s2"), contains("s3")));
+    }
+
+    private void onBatch(List<Situation> situations) {
+        batches.add(situations.stream().map(Situation::getId).collect(Collectors.toList()));
+    }
+
+    private static Situation situation(String id) {
+        return ImmutableSituation.newBuilderNow().setId(id).build();
+    }
+}
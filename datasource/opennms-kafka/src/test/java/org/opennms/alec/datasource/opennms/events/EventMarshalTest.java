@@ -34,6 +34,8 @@ import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.xmlunit.matchers.CompareMatcher.isSimilarTo;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.Date;
 
@@ -95,6 +97,22 @@ public class EventMarshalTest {
         assertThat(JaxbUtils.fromXml(JaxbUtils.toXml(log, Log.class), Log.class), equalTo(log));
     }
 
+    @Test
+    public void canMarshalToStream() {
+        Event e = new Event();
+        e.setUei("someuei");
+        e.addParam("k1", "v\u00e9");
+        Log log = new Log(e);
+
+        // Re-use the same stream to verify that the cached marshaller can be used repeatedly
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        for (int i = 0; i < 2; i++) {
+            os.reset();
+            JaxbUtils.toXml(log, Log.class, os);
+            assertThat(new String(os.toByteArray(), StandardCharsets.UTF_8), equalTo(JaxbUtils.toXml(log, Log.class)));
+        }
+    }
+
     @Test
     public void canParseDate() throws ParseException {
         Date start = new Date();
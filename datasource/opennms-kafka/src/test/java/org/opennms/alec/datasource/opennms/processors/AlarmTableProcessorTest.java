@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.processors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.processor.MockProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.alec.datasource.api.Alarm;
+import org.opennms.alec.datasource.api.AlarmHandler;
+import org.opennms.alec.datasource.common.HandlerRegistry;
+import org.opennms.alec.datasource.opennms.OpennmsDatasource;
+import org.opennms.alec.datasource.opennms.proto.OpennmsModelProtos;
+import org.opennms.alec.datasource.opennms.serialization.OpennmsSerdes;
+import org.opennms.alec.datasource.opennms.sharding.RevokedTasks;
+
+public class AlarmTableProcessorTest {
+
+    private final HandlerRegistry<AlarmHandler> alarmHandlers = new HandlerRegistry<>();
+    private final RecordingAlarmHandler handler = new RecordingAlarmHandler();
+    private MockProcessorContext context;
+
+    @Before
+    public void setUp() {
+        alarmHandlers.register(handler);
+        context = new MockProcessorContext();
+        context.setTimestamp(42L);
+        final KeyValueStore<String, OpennmsModelProtos.Alarm> store = Stores.keyValueStoreBuilder(
+                Stores.inMemoryKeyValueStore(OpennmsDatasource.ALARM_STORE), Serdes.String(), new OpennmsSerdes.AlarmSerde())
+                .withLoggingDisabled()
+                .build();
+        store.init(context, store);
+        context.register(store, null);
+    }
+
+    @Test
+    public void canDeliverAlarmsInBatches() {
+        final AlarmTableProcessor processor = new AlarmTableProcessor(alarmHandlers, 3, 100);
+        processor.init(context);
+
+        processor.process("a1", alarm("a1"));
+        processor.process("a2", alarm("a2"));
+        // Nothing should have been delivered yet
+        assertThat(handler.calls, hasSize(0));
+
+        processor.process("a3", alarm("a3"));
+        // The batch is full
+        assertThat(handler.calls, contains("updated[a1, a2, a3]"));
+
+        processor.process("a4", alarm("a4"));
+        processor.process("a1", null);
+        processor.process("a2", null);
+        // Unknown alarm, should be ignored
+        processor.process("a5", null);
+        // Switching from updates to clears flushes the pending updates
+        assertThat(handler.calls, contains("updated[a1, a2, a3]", "updated[a4]"));
+
+        // Punctuate
+        context.scheduledPunctuators().get(0).getPunctuator().punctuate(0);
+        assertThat(handler.calls, contains("updated[a1, a2, a3]", "updated[a4]", "cleared[a1, a2]"));
+
+        // Anything pending is delivered on close
+        processor.process("a1", alarm("a1"));
+        processor.close();
+        assertThat(handler.calls, contains("updated[a1, a2, a3]", "updated[a4]", "cleared[a1, a2]", "updated[a1]"));
+    }
+
+    @Test
+    public void canDeliverAlarmsOneAtATime() {
+        final AlarmTableProcessor processor = new AlarmTableProcessor(alarmHandlers);
+        processor.init(context);
+        assertThat(context.scheduledPunctuators(), hasSize(0));
+
+        processor.process("a1", alarm("a1"));
+        processor.process("a1", null);
+        assertThat(handler.calls, contains("updated[a1]", "cleared[a1]"));
+    }
+
+    @Test
+    public void canUseRecordTimestampAsIngestTime() {
+        final AlarmTableProcessor processor = new AlarmTableProcessor(alarmHandlers);
+        processor.init(context);
+
+        context.setTimestamp(1000L);
+        processor.process("a1", alarm("a1"));
+        assertThat(handler.lastAlarm.getIngestTime(), equalTo(1000L));
+    }
+
+    @Test
+    public void canClearAlarmsOfRevokedTask() {
+        final RevokedTasks revokedTasks = new RevokedTasks();
+        final AlarmTableProcessor processor = new AlarmTableProcessor(alarmHandlers, 1, 0, true, revokedTasks);
+        processor.init(context);
+        processor.process("a1", alarm("a1"));
+
+        // The task is closed during a rebalance, but assigned back to us, so the alarms are neither cleared nor replayed
+        processor.close();
+        processor.init(context);
+        revokedTasks.releaseAll();
+        assertThat(handler.calls, contains("updated[a1]"));
+
+        // The task is revoked
+        processor.close();
+        revokedTasks.releaseAll();
+        assertThat(handler.calls, contains("updated[a1]", "cleared[a1]"));
+
+        // Nothing is cleared when shutting down
+        processor.init(context);
+        revokedTasks.shutdown();
+        processor.close();
+        revokedTasks.releaseAll();
+        assertThat(handler.calls, contains("updated[a1]", "cleared[a1]", "updated[a1]"));
+    }
+
+    private static OpennmsModelProtos.Alarm alarm(String reductionKey) {
+        return OpennmsModelProtos.Alarm.newBuilder()
+                .setReductionKey(reductionKey)
+                .setLastEventTime(1)
+                .setSeverity(OpennmsModelProtos.Severity.MINOR)
+                .build();
+    }
+
+    private static class RecordingAlarmHandler implements AlarmHandler {
+        private final List<String> calls = new ArrayList<>();
+        private Alarm lastAlarm;
+
+        @Override
+        public void onAlarmCreatedOrUpdated(Alarm alarm) {
+            onAlarmsCreatedOrUpdated(Collections.singletonList(alarm));
+        }
+
+        @Override
+        public void onAlarmCleared(Alarm alarm) {
+            onAlarmsCleared(Collections.singletonList(alarm));
+        }
+
+        @Override
+        public void onAlarmsCreatedOrUpdated(Collection<Alarm> alarms) {
+            calls.add("updated" + toIds(alarms));
+            alarms.forEach(a -> lastAlarm = a);
+        }
+
+        @Override
+        public void onAlarmsCleared(Collection<Alarm> alarms) {
+            calls.add("cleared" + toIds(alarms));
+        }
+
+        private static List<String> toIds(Collection<Alarm> alarms) {
+            return alarms.stream().map(Alarm::getId).collect(Collectors.toList());
+        }
+    }
+}
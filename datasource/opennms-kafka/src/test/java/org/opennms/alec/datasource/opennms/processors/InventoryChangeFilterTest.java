@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.processors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.processor.MockProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codahale.metrics.Meter;
+
+public class InventoryChangeFilterTest {
+
+    private static final String HASH_STORE = "hashStore";
+
+    private final Meter forwarded = new Meter();
+    private final Meter suppressed = new Meter();
+    private InventoryChangeFilter filter;
+
+    @Before
+    public void setUp() {
+        final MockProcessorContext context = new MockProcessorContext();
+        final KeyValueStore<String, Long> store = Stores.keyValueStoreBuilder(
+                Stores.inMemoryKeyValueStore(HASH_STORE), Serdes.String(), Serdes.Long())
+                .withLoggingDisabled()
+                .build();
+        store.init(context, store);
+        context.register(store, null);
+
+        filter = new InventoryChangeFilter(HASH_STORE, forwarded, suppressed);
+        filter.init(context);
+    }
+
+    @Test
+    public void canSuppressUnchangedInventory() {
+        // The first inventory for a key is always forwarded
+        assertThat(filter.transform("k1", bytes("v1")), notNullValue());
+        assertThat(filter.transform("k2", bytes("v1")), notNullValue());
+
+        // Identical inventory is dropped
+        assertThat(filter.transform("k1", bytes("v1")), nullValue());
+
+        // Changed inventory is forwarded
+        final KeyValue<String, byte[]> kv = filter.transform("k1", bytes("v2"));
+        assertThat(kv.key, equalTo("k1"));
+        assertThat(kv.value, equalTo(bytes("v2")));
+        assertThat(filter.transform("k1", bytes("v2")), nullValue());
+
+        // Tombstones are always forwarded, and reset the state for the key
+        assertThat(filter.transform("k1", null), equalTo(KeyValue.pair("k1", null)));
+        assertThat(filter.transform("k1", null), equalTo(KeyValue.pair("k1", null)));
+        assertThat(filter.transform("k1", bytes("v2")), notNullValue());
+
+        assertThat(forwarded.getCount(), equalTo(6L));
+        assertThat(suppressed.getCount(), equalTo(2L));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.processors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.processor.MockProcessorContext;
+import org.apache.kafka.streams.processor.TaskId;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.alec.datasource.api.InventoryHandler;
+import org.opennms.alec.datasource.api.InventoryObject;
+import org.opennms.alec.datasource.common.HandlerRegistry;
+import org.opennms.alec.datasource.opennms.OpennmsDatasource;
+import org.opennms.alec.datasource.opennms.proto.InventoryModelProtos;
+import org.opennms.alec.datasource.opennms.sharding.RevokedTasks;
+import org.opennms.alec.datasource.opennms.serialization.OpennmsSerdes;
+
+import com.google.common.collect.Iterators;
+
+public class InventoryTableProcessorTest {
+
+    private static final long GC_INTERVAL_MS = 1000;
+    private static final long TTL_MS = 5000;
+
+    private final HandlerRegistry<InventoryHandler> inventoryHandlers = new HandlerRegistry<>();
+    private final List<String> addedInventory = new ArrayList<>();
+    private final List<String> removedInventory = new ArrayList<>();
+    private MockProcessorContext context;
+    private KeyValueStore<String, InventoryModelProtos.InventoryObjects> inventoryStore;
+    private KeyValueStore<String, String> expiryStore;
+    private KeyValueStore<String, Integer> referencesStore;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        inventoryHandlers.register(new InventoryHandler() {
+            @Override
+            public void onInventoryAdded(Collection<InventoryObject> inventoryObjects) {
+                addedInventory.addAll(inventoryObjects.stream().map(InventoryObject::getId).collect(Collectors.toList()));
+            }
+
+            @Override
+            public void onInventoryRemoved(Collection<InventoryObject> inventoryObjects) {
+                removedInventory.addAll(inventoryObjects.stream().map(InventoryObject::getId).collect(Collectors.toList()));
+            }
+        });
+        context = newContext(new TaskId(0, 0));
+        inventoryStore = (KeyValueStore) context.getStateStore(OpennmsDatasource.INVENTORY_STORE);
+        expiryStore = (KeyValueStore) context.getStateStore(OpennmsDatasource.INVENTORY_EXPIRY_STORE);
+        referencesStore = (KeyValueStore) context.getStateStore(OpennmsDatasource.INVENTORY_REFERENCES_STORE);
+    }
+
+    private static MockProcessorContext newContext(TaskId taskId) {
+        final Properties config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, "");
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "");
+        final MockProcessorContext context = new MockProcessorContext(config, taskId, null);
+        final KeyValueStore<String, InventoryModelProtos.InventoryObjects> inventoryStore =
+                Stores.keyValueStoreBuilder(Stores.inMemoryKeyValueStore(OpennmsDatasource.INVENTORY_STORE),
+                        Serdes.String(), OpennmsSerdes.InventoryObjects())
+                        .withLoggingDisabled()
+                        .build();
+        inventoryStore.init(context, inventoryStore);
+        context.register(inventoryStore, null);
+        final KeyValueStore<String, String> expiryStore =
+                Stores.keyValueStoreBuilder(Stores.inMemoryKeyValueStore(OpennmsDatasource.INVENTORY_EXPIRY_STORE),
+                        Serdes.String(), Serdes.String())
+                        .withLoggingDisabled()
+                        .build();
+        expiryStore.init(context, expiryStore);
+        context.register(expiryStore, null);
+        final KeyValueStore<String, Integer> referencesStore =
+                Stores.keyValueStoreBuilder(Stores.inMemoryKeyValueStore(OpennmsDatasource.INVENTORY_REFERENCES_STORE),
+                        Serdes.String(), Serdes.Integer())
+                        .withLoggingDisabled()
+                        .build();
+        referencesStore.init(context, referencesStore);
+        context.register(referencesStore, null);
+        return context;
+    }
+
+    @Test
+    public void canGarbageCollectExpiredInventory() {
+        final InventoryTableProcessor processor = new InventoryTableProcessor(inventoryHandlers, GC_INTERVAL_MS, TTL_MS);
+        processor.init(context);
+
+        processor.process("node:1", inventory("n1"));
+        processor.process("node:2", inventory("n2"));
+        processor.process("node:3", inventory("n3"));
+        assertThat(Iterators.size(expiryStore.all()), equalTo(0));
+
+        // Delete n1 and n2 at different times
+        context.setTimestamp(1000);
+        processor.process("node:1", null);
+        context.setTimestamp(2000);
+        processor.process("node:2", null);
+        assertThat(Iterators.size(expiryStore.all()), equalTo(2));
+
+        // n2 comes back before it expires
+        processor.process("node:2", inventory("n2"));
+
+        // Nothing has expired yet
+        punctuate(5999);
+        assertThat(removedInventory, empty());
+        assertThat(Iterators.size(expiryStore.all()), equalTo(2));
+
+        // n1 expires
+        punctuate(6000);
+        assertThat(removedInventory, contains("n1"));
+        assertThat(inventoryStore.get("node:1"), nullValue());
+        assertThat(Iterators.size(expiryStore.all()), equalTo(1));
+
+        // n2 was updated since, so the index entry is simply discarded
+        punctuate(7000);
+        assertThat(removedInventory, contains("n1"));
+        assertThat(inventoryStore.get("node:2"), notNullValue());
+        assertThat(inventoryStore.get("node:3"), notNullValue());
+        assertThat(Iterators.size(expiryStore.all()), equalTo(0));
+    }
+
+    @Test
+    public void canRebuildIndexOnInit() {
+        // Populate the store with inventory that is already expiring, but was never indexed
+        inventoryStore.put("node:1", InventoryModelProtos.InventoryObjects.newBuilder(inventory("n1"))
+                .setExpiresAt(1000)
+                .build());
+        inventoryStore.put("node:2", inventory("n2"));
+
+        final InventoryTableProcessor processor = new InventoryTableProcessor(inventoryHandlers, GC_INTERVAL_MS, TTL_MS);
+        processor.init(context);
+        assertThat(Iterators.size(expiryStore.all()), equalTo(1));
+
+        punctuate(1000);
+        assertThat(removedInventory, contains("n1"));
+        assertThat(Iterators.size(inventoryStore.all()), equalTo(1));
+    }
+
+    @Test
+    public void canMaintainReferenceCounts() {
+        final InventoryTableProcessor processor = new InventoryTableProcessor(inventoryHandlers, GC_INTERVAL_MS, TTL_MS);
+        processor.init(context);
+
+        // n1 is referenced by two keys
+        context.setTimestamp(0);
+        processor.process("node:1", inventory("n1"));
+        processor.process("alarm:1", inventory("n1", "a1"));
+        assertThat(referencesStore.get("Node:n1"), equalTo(2));
+        assertThat(referencesStore.get("Node:a1"), equalTo(1));
+
+        // Updating the same key should not add another reference
+        processor.process("node:1", inventory("n1"));
+        assertThat(referencesStore.get("Node:n1"), equalTo(2));
+
+        // Dropping an object from a key releases the reference once it expires
+        processor.process("alarm:1", inventory("n1"));
+        assertThat(removedInventory, empty());
+        assertThat(referencesStore.get("Node:a1"), equalTo(1));
+
+        // n1 is still referenced by alarm:1 once node:1 expires
+        processor.process("node:1", null);
+        punctuate(TTL_MS);
+        assertThat(removedInventory, contains("a1"));
+        assertThat(referencesStore.get("Node:a1"), nullValue());
+        assertThat(referencesStore.get("Node:n1"), equalTo(1));
+
+        // The counts are available without scanning the inventory store on init
+        final InventoryTableProcessor restartedProcessor = new InventoryTableProcessor(inventoryHandlers, GC_INTERVAL_MS, TTL_MS);
+        restartedProcessor.init(context);
+        restartedProcessor.process("alarm:1", null);
+        punctuate(2 * TTL_MS);
+        assertThat(removedInventory, contains("a1", "n1"));
+        assertThat(Iterators.size(referencesStore.all()), equalTo(0));
+    }
+
+    @Test
+    public void canExpireDroppedInventory() {
+        final InventoryTableProcessor processor = new InventoryTableProcessor(inventoryHandlers, GC_INTERVAL_MS, TTL_MS);
+        processor.init(context);
+
+        context.setTimestamp(0);
+        processor.process("alarm:1", inventory("n1", "a1", "a2"));
+
+        // a1 and a2 are dropped, but a1 comes back before it expires
+        context.setTimestamp(1000);
+        processor.process("alarm:1", inventory("n1"));
+        context.setTimestamp(2000);
+        processor.process("alarm:1", inventory("n1", "a1"));
+        assertThat(inventoryStore.get(InventoryTableProcessor.toDroppedKey("alarm:1")), notNullValue());
+
+        // Dropping a1 again while it is still held by the dropped inventory extends its expiry
+        context.setTimestamp(3000);
+        processor.process("alarm:1", inventory("n1"));
+        assertThat(referencesStore.get("Node:a1"), equalTo(1));
+
+        punctuate(1000 + TTL_MS);
+        assertThat(removedInventory, empty());
+
+        punctuate(3000 + TTL_MS);
+        assertThat(removedInventory, containsInAnyOrder("a1", "a2"));
+        assertThat(inventoryStore.get(InventoryTableProcessor.toDroppedKey("alarm:1")), nullValue());
+        assertThat(referencesStore.get("Node:n1"), equalTo(1));
+        assertThat(Iterators.size(referencesStore.all()), equalTo(1));
+    }
+
+    @Test
+    public void canReleaseInventoryOfRevokedTasks() {
+        final InventoryOwners owners = new InventoryOwners();
+        final RevokedTasks revokedTasks = new RevokedTasks();
+        final InventoryTableProcessor processor = new InventoryTableProcessor(inventoryHandlers, GC_INTERVAL_MS, TTL_MS,
+                1, 0, false, true, owners, revokedTasks);
+        processor.init(context);
+        final MockProcessorContext otherContext = newContext(new TaskId(0, 1));
+        final InventoryTableProcessor otherProcessor = new InventoryTableProcessor(inventoryHandlers, GC_INTERVAL_MS,
+                TTL_MS, 1, 0, false, true, owners, revokedTasks);
+        otherProcessor.init(otherContext);
+
+        // s1 is referenced by both tasks, but only delivered once
+        processor.process("node:1", inventory("n1", "s1"));
+        otherProcessor.process("edge:1", inventory("s1"));
+        assertThat(addedInventory, contains("n1", "s1"));
+
+        // The task is closed during a rebalance, but assigned back to us
+        processor.close();
+        processor.init(context);
+        revokedTasks.releaseAll();
+        assertThat(addedInventory, contains("n1", "s1"));
+        assertThat(removedInventory, empty());
+
+        // The task is revoked, s1 is still referenced by the other task
+        processor.close();
+        revokedTasks.releaseAll();
+        assertThat(removedInventory, contains("n1"));
+
+        otherProcessor.close();
+        revokedTasks.releaseAll();
+        assertThat(removedInventory, contains("n1", "s1"));
+        assertThat(owners.size(), equalTo(0));
+    }
+
+    @Test
+    public void canStubInventoryOwnedByOtherShards() {
+        final InventoryTableProcessor processor = new InventoryTableProcessor(inventoryHandlers, GC_INTERVAL_MS, TTL_MS);
+        processor.init(context);
+
+        // The stub is delivered until the object itself is known, which takes precedence over the stub
+        context.setTimestamp(0);
+        final String stubKey = OpennmsDatasource.INVENTORY_STORE_STUB_PREFIX + "edge:1";
+        processor.process(stubKey, inventory("p2"));
+        processor.process("node:2", inventory("p2"));
+        processor.process("edge:2", inventory("p2"));
+        assertThat(addedInventory, contains("p2", "p2"));
+
+        // The object is kept while stubbed
+        processor.process("node:2", null);
+        processor.process("edge:2", null);
+        punctuate(TTL_MS);
+        assertThat(removedInventory, empty());
+
+        context.setTimestamp(TTL_MS);
+        processor.process(stubKey, null);
+        punctuate(2 * TTL_MS);
+        assertThat(removedInventory, contains("p2"));
+        assertThat(Iterators.size(referencesStore.all()), equalTo(0));
+    }
+
+    @Test
+    public void canRepairReferenceCountsOnInit() {
+        inventoryStore.put("node:1", inventory("n1"));
+        inventoryStore.put("alarm:1", inventory("n1", "a1"));
+        referencesStore.put("Node:n1", 1);
+        referencesStore.put("Node:x1", 3);
+
+        final InventoryTableProcessor processor = new InventoryTableProcessor(inventoryHandlers, GC_INTERVAL_MS, TTL_MS,
+                1, 0, true);
+        processor.init(context);
+        assertThat(referencesStore.get("Node:n1"), equalTo(2));
+        assertThat(referencesStore.get("Node:a1"), equalTo(1));
+        assertThat(referencesStore.get("Node:x1"), nullValue());
+        assertThat(Iterators.size(referencesStore.all()), equalTo(2));
+    }
+
+    @Test
+    public void canOrderExpiryKeysChronologically() {
+        final List<String> keys = new ArrayList<>();
+        keys.add(InventoryTableProcessor.toExpiryKey(10000, "a"));
+        keys.add(InventoryTableProcessor.toExpiryKey(9, "z"));
+        keys.add(InventoryTableProcessor.toExpiryKey(10, "a"));
+        keys.sort(String::compareTo);
+        assertThat(keys, hasSize(3));
+        assertThat(keys, contains(InventoryTableProcessor.toExpiryKey(9, "z"),
+                InventoryTableProcessor.toExpiryKey(10, "a"),
+                InventoryTableProcessor.toExpiryKey(10000, "a")));
+    }
+
+    private void punctuate(long timestamp) {
+        // The first punctuator performs the garbage collection
+        context.scheduledPunctuators().get(0).getPunctuator().punctuate(timestamp);
+    }
+
+    private static InventoryModelProtos.InventoryObjects inventory(String... ids) {
+        final InventoryModelProtos.InventoryObjects.Builder builder = InventoryModelProtos.InventoryObjects.newBuilder();
+        for (String id : ids) {
+            builder.addInventoryObject(InventoryModelProtos.InventoryObject.newBuilder()
+                    .setType("Node")
+                    .setId(id)
+                    .build());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.sharding;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opennms.alec.datasource.opennms.proto.InventoryModelProtos;
+import org.opennms.alec.datasource.opennms.proto.OpennmsModelProtos;
+
+public class EdgeStubsTest {
+
+    @Test
+    public void canStubRemoteEndpoints() {
+        final OpennmsModelProtos.TopologyEdge edge = OpennmsModelProtos.TopologyEdge.newBuilder()
+                .setRef(OpennmsModelProtos.TopologyRef.newBuilder()
+                        .setId("e1")
+                        .setProtocol(OpennmsModelProtos.TopologyRef.Protocol.LLDP)
+                        .build())
+                .setSourcePort(port("n1"))
+                .setTargetPort(port("n2"))
+                .build();
+        final InventoryModelProtos.InventoryObjects edgeInventory = InventoryModelProtos.InventoryObjects.newBuilder()
+                .addInventoryObject(InventoryModelProtos.InventoryObject.newBuilder()
+                        .setType("SnmpInterfaceLink")
+                        .setId("e1")
+                        .addPeer(peer(InventoryModelProtos.InventoryObjectPeerEndpoint.A, "p1"))
+                        .addPeer(peer(InventoryModelProtos.InventoryObjectPeerEndpoint.Z, "p2"))
+                        .build())
+                .build();
+
+        // Each shard only needs a stub for the port on the other end
+        final String sourcePartitionKey = TopologyPartitionKeys.forEdgeSource(edge);
+        final String targetPartitionKey = TopologyPartitionKeys.forEdgeTarget(edge);
+        assertThat(stubIds(EdgeStubs.forRemoteEndpoints(sourcePartitionKey, edge, edgeInventory)), contains("p2"));
+        assertThat(stubIds(EdgeStubs.forRemoteEndpoints(targetPartitionKey, edge, edgeInventory)), contains("p1"));
+
+        // No stubs are needed when both ends are on the same node
+        final OpennmsModelProtos.TopologyEdge loop = OpennmsModelProtos.TopologyEdge.newBuilder(edge)
+                .setTargetPort(port("n1"))
+                .build();
+        assertThat(stubIds(EdgeStubs.forRemoteEndpoints(sourcePartitionKey, loop, edgeInventory)), empty());
+    }
+
+    private static OpennmsModelProtos.TopologyPort port(String foreignId) {
+        return OpennmsModelProtos.TopologyPort.newBuilder()
+                .setIfIndex(1)
+                .setNodeCriteria(OpennmsModelProtos.NodeCriteria.newBuilder()
+                        .setForeignSource("fs")
+                        .setForeignId(foreignId)
+                        .build())
+                .build();
+    }
+
+    private static InventoryModelProtos.InventoryObjectPeerRef peer(InventoryModelProtos.InventoryObjectPeerEndpoint endpoint,
+                                                                    String id) {
+        return InventoryModelProtos.InventoryObjectPeerRef.newBuilder()
+                .setEndpoint(endpoint)
+                .setType("SnmpInterface")
+                .setId(id)
+                .build();
+    }
+
+    private static List<String> stubIds(InventoryModelProtos.InventoryObjects stubs) {
+        return stubs.getInventoryObjectList().stream()
+                .map(InventoryModelProtos.InventoryObject::getId)
+                .collect(Collectors.toList());
+    }
+}
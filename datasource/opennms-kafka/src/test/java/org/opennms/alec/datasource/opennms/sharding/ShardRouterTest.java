@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.datasource.opennms.sharding;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.processor.MockProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardRouterTest {
+
+    private static final String ROUTES_STORE = "routes";
+
+    private MockProcessorContext context;
+    private KeyValueStore<String, String> routesStore;
+    private ShardRouter<String> router;
+
+    @Before
+    public void setUp() {
+        context = new MockProcessorContext();
+        routesStore = Stores.keyValueStoreBuilder(Stores.inMemoryKeyValueStore(ROUTES_STORE),
+                Serdes.String(), Serdes.String())
+                .withLoggingDisabled()
+                .build();
+        routesStore.init(context, routesStore);
+        context.register(routesStore, null);
+        // Values are comma separated lists of partition keys
+        router = new ShardRouter<>(ROUTES_STORE, value -> value.isEmpty() ? new LinkedHashSet<>() :
+                new LinkedHashSet<>(Arrays.asList(value.split(","))));
+        router.init(context);
+    }
+
+    @Test
+    public void canRouteRecordsAndTombstones() {
+        // Route to both partition keys
+        router.transform("e1", "n1,n2");
+        assertThat(getForwarded(), contains(
+                KeyValue.pair(ShardKeys.route("n1", "e1"), "n1,n2"),
+                KeyValue.pair(ShardKeys.route("n2", "e1"), "n1,n2")));
+
+        // n2 is no longer referenced, so it should receive a tombstone
+        router.transform("e1", "n1,n3");
+        assertThat(getForwarded(), contains(
+                KeyValue.pair(ShardKeys.route("n2", "e1"), null),
+                KeyValue.pair(ShardKeys.route("n1", "e1"), "n1,n3"),
+                KeyValue.pair(ShardKeys.route("n3", "e1"), "n1,n3")));
+
+        // Tombstones are sent everywhere the record was last routed to
+        router.transform("e1", null);
+        assertThat(getForwarded(), contains(
+                KeyValue.pair(ShardKeys.route("n1", "e1"), null),
+                KeyValue.pair(ShardKeys.route("n3", "e1"), null)));
+        assertThat(routesStore.get("e1"), nullValue());
+
+        // Records without partition keys are routed by their own key
+        router.transform("e2", "");
+        assertThat(getForwarded(), contains(KeyValue.pair(ShardKeys.route("e2", "e2"), "")));
+    }
+
+    @Test
+    public void canEncodeAndDecodeKeys() {
+        final String routedKey = ShardKeys.route("fs:fid", "alarm:uei.opennms.org/nodes/nodeDown::1");
+        assertThat(ShardKeys.isRouted(routedKey), equalTo(true));
+        assertThat(ShardKeys.getPartitionKey(routedKey), equalTo("fs:fid"));
+        assertThat(ShardKeys.getKey(routedKey), equalTo("alarm:uei.opennms.org/nodes/nodeDown::1"));
+        assertThat(ShardKeys.getKey(ShardKeys.withKey(routedKey, "other")), equalTo("other"));
+        assertThat(ShardKeys.getPartitionKey(ShardKeys.withKey(routedKey, "other")), equalTo("fs:fid"));
+
+        // Keys that were not routed are left as-is
+        assertThat(ShardKeys.isRouted("node:1"), equalTo(false));
+        assertThat(ShardKeys.getKey("node:1"), equalTo("node:1"));
+        assertThat(ShardKeys.getPartitionKey("node:1"), equalTo("node:1"));
+        assertThat(ShardKeys.withKey("node:1", "other"), equalTo("other"));
+
+        // Records with the same partition key are sent to the same partition
+        final ShardPartitioner<String> partitioner = new ShardPartitioner<>();
+        final Set<Integer> partitions = Arrays.asList("node:1", "alarm:1", "edge:1").stream()
+                .map(key -> partitioner.partition("topic", ShardKeys.route("fs:fid", key), null, 16))
+                .collect(Collectors.toSet());
+        assertThat(partitions, contains(ShardPartitioner.partitionFor("fs:fid", 16)));
+    }
+
+    private List<KeyValue<String, String>> getForwarded() {
+        final List<KeyValue<String, String>> forwarded = context.forwarded().stream()
+                .map(f -> KeyValue.<String, String>pair((String)f.keyValue().key, (String)f.keyValue().value))
+                .collect(Collectors.toList());
+        context.resetForwards();
+        return forwarded;
+    }
+}
@@ -30,6 +30,7 @@ package org.opennms.alec.driver.main;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Hashtable;
@@ -37,22 +38,31 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.opennms.alec.datasource.api.Alarm;
 import org.opennms.alec.datasource.api.AlarmDatasource;
 import org.opennms.alec.datasource.api.AlarmFeedback;
 import org.opennms.alec.datasource.api.AlarmFeedbackDatasource;
 import org.opennms.alec.datasource.api.InventoryDatasource;
-import org.opennms.alec.datasource.api.InventoryObject;
 import org.opennms.alec.datasource.api.Situation;
 import org.opennms.alec.datasource.api.SituationDatasource;
 import org.opennms.alec.datasource.api.SituationHandler;
 import org.opennms.alec.engine.api.Engine;
 import org.opennms.alec.engine.api.EngineFactory;
+import org.opennms.alec.engine.api.EngineInitializer;
 import org.opennms.alec.engine.api.EngineRegistry;
+import org.opennms.alec.engine.api.EngineStateDelta;
+import org.opennms.alec.engine.api.EngineStateTransport;
+import org.opennms.alec.engine.api.ReplicatedEngine;
 import org.opennms.alec.features.graph.api.GraphProvider;
 import org.opennms.alec.processor.api.SituationConfirmer;
 import org.opennms.alec.processor.api.SituationProcessor;
@@ -63,10 +73,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class Driver implements EngineRegistry {
     private static final Logger LOG = LoggerFactory.getLogger(Driver.class);
 
+    /**
+     * Maximum number of inventory objects or alarms passed to the engine at once while initializing.
+     */
+    private static final int INIT_CHUNK_SIZE = 1000;
+
+    /**
+     * Maximum number of chunks of alarms read ahead while the engine is still processing the inventory.
+     */
+    private static final int MAX_PENDING_ALARM_CHUNKS = 16;
+
+    /**
+     * Marks the end of the alarms in the queue of chunks.
+     */
+    private static final List<Alarm> END_OF_ALARMS = Collections.unmodifiableList(new ArrayList<>());
+
+    private static final int NUM_BOOTSTRAP_THREADS = 4;
+
     private final AlarmDatasource alarmDatasource;
     private final AlarmFeedbackDatasource alarmFeedbackDatasource;
     private final InventoryDatasource inventoryDatasource;
@@ -85,9 +113,18 @@ public class Driver implements EngineRegistry {
 
     // Health
     private final com.codahale.metrics.Timer ticks;
+    private final SituationLatencyTracker latencyTracker;
+    private final StartupTimeline timeline;
     private long tickResolutionMs = 0;
     private DriverState state = DriverState.CREATED;
 
+    // Hot standby
+    private boolean hotStandbyEnabled = false;
+    private List<EngineStateTransport> engineStateTransports = Collections.emptyList();
+    private volatile ReplicatedEngine replicatedEngine;
+    private EngineStateTransport engineStateTransport;
+    private Consumer<EngineStateDelta> engineStateDeltaConsumer;
+
     public Driver(BundleContext bundleContext, AlarmDatasource alarmDatasource,
                   AlarmFeedbackDatasource alarmFeedbackDatasource, InventoryDatasource inventoryDatasource,
                   SituationDatasource situationDatasource, EngineFactory engineFactory,
@@ -103,6 +140,8 @@ public class Driver implements EngineRegistry {
                 Objects.requireNonNull(situationProcessorFactory).getInstance();
         confirmingSituationHandler = SituationConfirmer.newInstance(situationProcessor);
         ticks = metrics.timer(name(engineFactory.getName(), "ticks"));
+        latencyTracker = new SituationLatencyTracker(engineFactory.getName(), metrics);
+        timeline = new StartupTimeline(engineFactory.getName(), metrics);
     }
 
     public void init() {
@@ -121,6 +160,7 @@ public class Driver implements EngineRegistry {
         engine.registerSituationHandler(new SituationHandler() {
             @Override
             public void onSituation(Situation situation) {
+                latencyTracker.onSituation(situation, System.currentTimeMillis());
                 situationProcessor.accept(situation);
             }
         });
@@ -128,19 +168,35 @@ public class Driver implements EngineRegistry {
         timer = new Timer();
         // The get methods on the datasources may block, so we do this on a separate thread
         initThread = new Thread(() -> {
+            // Used to query the independent datasources in parallel
+            final ExecutorService bootstrapExecutor = Executors.newFixedThreadPool(NUM_BOOTSTRAP_THREADS,
+                    new ThreadFactoryBuilder()
+                            .setNameFormat(String.format("ALEC Driver Bootstrap [%s] #%%d", engineFactory.getName()))
+                            .setDaemon(true)
+                            .build());
+            // The alarms are handed over to the initializer via a bounded queue, see below. Both are created up-front
+            // so that these can be released if we fail at any point.
+            final BlockingQueue<List<Alarm>> alarmChunks = new ArrayBlockingQueue<>(MAX_PENDING_ALARM_CHUNKS);
+            final AtomicBoolean alarmsAborted = new AtomicBoolean(false);
+            final EngineInitializer initializer = engine.newInitializer();
+            // The engine blocks its callbacks until it is initialized, so the datasources hold back the updates made
+            // while bootstrapping until then, rather than having these pile up on the engine
+            final CompletableFuture<Void> engineReady = new CompletableFuture<>();
             try {
                 state = DriverState.WAITING_FOR_DATASOURCES;
+                timeline.start();
 
                 // Wait for all the data sources to be ready to minimize the time between when we register handlers and
                 // the engine inits
-                LOG.info("Waiting for inventory datasource...");
-                inventoryDatasource.waitUntilReady();
-                LOG.info("Waiting for alarm datasource...");
-                alarmDatasource.waitUntilReady();
-                LOG.info("Waiting for alarm feedback datasource...");
-                alarmFeedbackDatasource.waitUntilReady();
-                LOG.info("Waiting for situation datasource...");
-                situationDatasource.waitUntilReady();
+                LOG.info("Waiting for datasources...");
+                timeline.begin(StartupTimeline.Phase.WAIT_FOR_DATASOURCES);
+                CompletableFuture.allOf(
+                        waitUntilReadyAsync(inventoryDatasource::waitUntilReady, bootstrapExecutor),
+                        waitUntilReadyAsync(alarmDatasource::waitUntilReady, bootstrapExecutor),
+                        waitUntilReadyAsync(alarmFeedbackDatasource::waitUntilReady, bootstrapExecutor),
+                        waitUntilReadyAsync(situationDatasource::waitUntilReady, bootstrapExecutor)
+                ).join();
+                timeline.end(StartupTimeline.Phase.WAIT_FOR_DATASOURCES);
                 LOG.info("All datasources are now available");
 
                 // Register the handler that deletes situations from the engine when we see they have been deleted
@@ -151,17 +207,57 @@ public class Driver implements EngineRegistry {
 
                 state = DriverState.INITIALIZING_ENGINE;
 
-                LOG.info("Retrieving inventory...");
-                final List<InventoryObject> inventory = inventoryDatasource.getInventoryAndRegisterHandler(engine);
-                LOG.info("Retrieving alarms...");
-                final List<Alarm> alarms = alarmDatasource.getAlarmsAndRegisterHandler(engine);
-                LOG.info("Retrieving alarm feedback...");
-                final List<AlarmFeedback> alarmFeedback =
-                        alarmFeedbackDatasource.getAlarmFeedbackAndRegisterHandler(engine);
-                LOG.info("Retrieving situations...");
-                final List<Situation> situations = situationDatasource.getSituations();
+                // The alarm feedback and situations are independent of the inventory and alarms, retrieve these in
+                // the background
+                LOG.info("Retrieving alarm feedback and situations...");
+                final CompletableFuture<List<AlarmFeedback>> alarmFeedbackFuture = CompletableFuture.supplyAsync(() ->
+                        timeline.time(StartupTimeline.Phase.ALARM_FEEDBACK,
+                                () -> alarmFeedbackDatasource.getAlarmFeedbackAndRegisterHandler(engine)),
+                        bootstrapExecutor);
+                final CompletableFuture<List<Situation>> situationsFuture = CompletableFuture.supplyAsync(() ->
+                        timeline.time(StartupTimeline.Phase.SITUATIONS, situationDatasource::getSituations),
+                        bootstrapExecutor);
+
+                // Read the alarms in the background while the engine builds its graph from the inventory. The alarms
+                // must be added after the inventory, so these are handed over via a bounded queue, which limits the
+                // number of alarms held in memory at once.
+                LOG.info("Retrieving inventory and alarms...");
+                final CompletableFuture<Void> alarmsFuture = CompletableFuture.runAsync(() -> {
+                    timeline.begin(StartupTimeline.Phase.ALARMS);
+                    try {
+                        alarmDatasource.getAlarmsInChunksAndRegisterHandler(engine, INIT_CHUNK_SIZE, chunk -> {
+                            if (!alarmsAborted.get()) {
+                                enqueue(alarmChunks, chunk);
+                            }
+                        }, engineReady);
+                    } finally {
+                        if (!alarmsAborted.get()) {
+                            enqueue(alarmChunks, END_OF_ALARMS);
+                        }
+                    }
+                }, bootstrapExecutor);
+
+                // Feed the inventory and alarms to the engine in chunks as these are retrieved, instead of
+                // holding all of them in memory at once
+                timeline.time(StartupTimeline.Phase.INVENTORY, () -> {
+                    inventoryDatasource.getInventoryInChunksAndRegisterHandler(engine, INIT_CHUNK_SIZE,
+                            initializer::addInventory, engineReady);
+                    return null;
+                });
+                List<Alarm> alarmChunk;
+                while ((alarmChunk = alarmChunks.take()) != END_OF_ALARMS) {
+                    initializer.addAlarms(alarmChunk);
+                }
+                alarmsFuture.join();
+                timeline.end(StartupTimeline.Phase.ALARMS);
+
+                final List<AlarmFeedback> alarmFeedback = alarmFeedbackFuture.join();
+                final List<Situation> situations = situationsFuture.join();
                 LOG.info("Initializing engine...");
-                engine.init(alarms, alarmFeedback, situations, inventory);
+                timeline.time(StartupTimeline.Phase.ENGINE_INIT, () -> {
+                    initializer.complete(alarmFeedback, situations);
+                    return null;
+                });
 
                 if (engine instanceof GraphProvider) {
                     LOG.info("Registering graph provider...");
@@ -170,14 +266,26 @@ public class Driver implements EngineRegistry {
                     graphProviderServiceRegistrationRef.set(bundleContext.registerService(GraphProvider.class.getCanonicalName(), engine, props));
                 }
             } catch (Exception e) {
-                if (e.getCause() != null && e.getCause() instanceof InterruptedException) {
+                if (e instanceof InterruptedException
+                        || (e.getCause() != null && e.getCause() instanceof InterruptedException)) {
                     LOG.warn("Initialization was interrupted.");
                 } else {
                     LOG.error("Initialization failed with exception.", e);
                 }
                 future.completeExceptionally(e);
                 return;
+            } finally {
+                // Discard any remaining alarms, unblocking the producer if it is waiting for room in the queue, and
+                // release anything waiting on the engine if we failed before completing its initialization
+                alarmsAborted.set(true);
+                alarmChunks.clear();
+                initializer.abort();
+                // The engine accepts callbacks once initialized or aborted
+                engineReady.complete(null);
+                // Interrupts any of the tasks that are still running if we failed
+                bootstrapExecutor.shutdownNow();
             }
+            startStateReplication();
             LOG.info("Initialization successful. Scheduling ticks every {}ms", engine.getTickResolutionMs());
 
             tickResolutionMs = engine.getTickResolutionMs();
@@ -186,7 +294,14 @@ public class Driver implements EngineRegistry {
                 public void run() {
                     Thread.currentThread().setName("ALEC Driver Tick");
                     try (com.codahale.metrics.Timer.Context context = ticks.time()) {
-                        engine.tick(System.currentTimeMillis());
+                        timeline.end(StartupTimeline.Phase.TIME_TO_FIRST_TICK);
+                        final long now = System.currentTimeMillis();
+                        latencyTracker.onTick(now);
+                        if (replicatedEngine != null) {
+                            // Take over with the state streamed by the active member as soon as we become active
+                            replicatedEngine.setStandby(!situationProcessor.isActive());
+                        }
+                        engine.tick(now);
                     } catch (Exception e) {
                         LOG.error("Tick failed with exception.", e);
                     }
@@ -200,6 +315,39 @@ public class Driver implements EngineRegistry {
         return future;
     }
 
+    /**
+     * Streams the state of the engine to the standby members while active, and applies the state streamed by the
+     * active member while standby.
+     */
+    private void startStateReplication() {
+        if (!hotStandbyEnabled) {
+            return;
+        }
+        if (!(engine instanceof ReplicatedEngine)) {
+            LOG.warn("Hot standby is enabled, but the {} engine does not support it.", engineFactory.getName());
+            return;
+        }
+        final EngineStateTransport transport = engineStateTransports.stream().findFirst().orElse(null);
+        if (transport == null) {
+            LOG.warn("Hot standby is enabled, but no engine state transport is available.");
+            return;
+        }
+
+        LOG.info("Streaming the engine state via {}.", transport);
+        final ReplicatedEngine replicated = (ReplicatedEngine) engine;
+        replicated.setStandby(!situationProcessor.isActive());
+        // The engine only reports deltas while active
+        replicated.registerStateDeltaHandler(transport::publish);
+        engineStateDeltaConsumer = delta -> {
+            if (replicated.isStandby()) {
+                replicated.applyStateDelta(delta);
+            }
+        };
+        transport.subscribe(engineStateDeltaConsumer);
+        engineStateTransport = transport;
+        replicatedEngine = replicated;
+    }
+
     public void destroy() {
         state = DriverState.DESTROYING;
         situationDatasource.unregisterHandler(deletingSituationHandler);
@@ -225,6 +373,11 @@ public class Driver implements EngineRegistry {
             timer.cancel();
             timer = null;
         }
+        if (engineStateTransport != null) {
+            engineStateTransport.unsubscribe(engineStateDeltaConsumer);
+            engineStateTransport = null;
+            replicatedEngine = null;
+        }
         if (engine != null) {
             engine.destroy();
             engine = null;
@@ -232,10 +385,52 @@ public class Driver implements EngineRegistry {
         state = DriverState.DESTROYED;
     }
 
+    @FunctionalInterface
+    private interface Waiter {
+        void waitUntilReady() throws InterruptedException;
+    }
+
+    private static CompletableFuture<Void> waitUntilReadyAsync(Waiter waiter, ExecutorService executor) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                waiter.waitUntilReady();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Puts the element in the queue, waiting for room in the queue if necessary.
+     */
+    private static <E> void enqueue(BlockingQueue<E> queue, E element) {
+        try {
+            queue.put(element);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
     DriverState getState() {
         return state;
     }
 
+    /**
+     * Stream the state of the engine to the standby members, and take over with the state of the active member when
+     * becoming active.
+     *
+     * @param hotStandbyEnabled whether or not to stream the state of the engine
+     */
+    public void setHotStandbyEnabled(boolean hotStandbyEnabled) {
+        this.hotStandbyEnabled = hotStandbyEnabled;
+    }
+
+    public void setEngineStateTransports(List<EngineStateTransport> engineStateTransports) {
+        this.engineStateTransports = Objects.requireNonNull(engineStateTransports);
+    }
+
     long getTickResolutionMs() {
         return tickResolutionMs;
     }
@@ -244,6 +439,10 @@ public class Driver implements EngineRegistry {
         return ticks;
     }
 
+    StartupTimeline getStartupTimeline() {
+        return timeline;
+    }
+
     @Override
     public Collection<Engine> getEngines() {
         if (DriverState.RUNNING.equals(state)) {
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.driver.main;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import org.opennms.alec.datasource.api.Alarm;
+import org.opennms.alec.datasource.api.Situation;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Tracks the latency between the time alarms are received by the datasource and the time the situations that
+ * contain these are emitted by the engine.
+ *
+ * The latency of a situation is measured from the most recently ingested alarm it contains, since this is the
+ * alarm that most likely caused the situation to be created or updated. Alarms without an ingest time are ignored.
+ *
+ * All of the latencies are recorded in milliseconds, in the following histograms:
+ *  * ingestToTick: from the ingest time of the alarm to the start of the tick that emitted the situation
+ *  * tickToEmit: from the start of the tick to the time the situation was emitted
+ *  * endToEnd: from the ingest time of the alarm to the time the situation was emitted
+ */
+public class SituationLatencyTracker {
+
+    private final Histogram ingestToTick;
+    private final Histogram tickToEmit;
+    private final Histogram endToEnd;
+
+    private volatile long tickStartMs = 0;
+
+    public SituationLatencyTracker(String engineName, MetricRegistry metrics) {
+        ingestToTick = metrics.histogram(name(engineName, "latency", "ingestToTick"));
+        tickToEmit = metrics.histogram(name(engineName, "latency", "tickToEmit"));
+        endToEnd = metrics.histogram(name(engineName, "latency", "endToEnd"));
+    }
+
+    /**
+     * Called when a tick starts.
+     *
+     * @param timestampInMillis the wall-clock time at which the tick started
+     */
+    public void onTick(long timestampInMillis) {
+        tickStartMs = timestampInMillis;
+    }
+
+    /**
+     * Called when a situation is emitted by the engine.
+     *
+     * @param situation the situation
+     * @param timestampInMillis the wall-clock time at which the situation was emitted
+     */
+    public void onSituation(Situation situation, long timestampInMillis) {
+        long ingestTime = 0;
+        for (Alarm alarm : situation.getAlarms()) {
+            final Long alarmIngestTime = alarm.getIngestTime();
+            if (alarmIngestTime != null && alarmIngestTime > ingestTime) {
+                ingestTime = alarmIngestTime;
+            }
+        }
+
+        final long tickStart = tickStartMs;
+        if (tickStart > 0) {
+            tickToEmit.update(Math.max(0, timestampInMillis - tickStart));
+        }
+        if (ingestTime > 0) {
+            endToEnd.update(Math.max(0, timestampInMillis - ingestTime));
+            if (tickStart > 0) {
+                ingestToTick.update(Math.max(0, tickStart - ingestTime));
+            }
+        }
+    }
+
+    Histogram getIngestToTick() {
+        return ingestToTick;
+    }
+
+    Histogram getTickToEmit() {
+        return tickToEmit;
+    }
+
+    Histogram getEndToEnd() {
+        return endToEnd;
+    }
+}
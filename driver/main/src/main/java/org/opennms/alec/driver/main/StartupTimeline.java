@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.driver.main;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Records how long each phase of the driver's startup took, so that slow startups (i.e. after a failover) can be
+ * broken down.
+ *
+ * The duration of each phase of the most recent startup is exposed in milliseconds via a gauge named
+ * <i>engine.startup.phase</i>, or -1 if the phase has not completed yet. Phases may overlap, since some of them run in
+ * parallel.
+ */
+public class StartupTimeline {
+    private static final Logger LOG = LoggerFactory.getLogger(StartupTimeline.class);
+
+    public enum Phase {
+        WAIT_FOR_DATASOURCES("waitForDatasources"),
+        INVENTORY("inventory"),
+        ALARMS("alarms"),
+        ALARM_FEEDBACK("alarmFeedback"),
+        SITUATIONS("situations"),
+        ENGINE_INIT("engineInit"),
+        /**
+         * From the start of the initialization until the first tick.
+         */
+        TIME_TO_FIRST_TICK("timeToFirstTick");
+
+        private final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private final String engineName;
+    private final Map<Phase, Long> startTimes = new EnumMap<>(Phase.class);
+    private final Map<Phase, Long> durations = new EnumMap<>(Phase.class);
+    private long startupStartTime;
+
+    public StartupTimeline(String engineName, MetricRegistry metrics) {
+        this.engineName = engineName;
+        for (Phase phase : Phase.values()) {
+            metrics.register(name(engineName, "startup", phase.metricName), (Gauge<Long>) () -> getDuration(phase));
+        }
+    }
+
+    /**
+     * Called when a new startup begins, resetting the previously recorded durations.
+     */
+    public synchronized void start() {
+        startTimes.clear();
+        durations.clear();
+        startupStartTime = System.currentTimeMillis();
+        startTimes.put(Phase.TIME_TO_FIRST_TICK, startupStartTime);
+    }
+
+    public synchronized void begin(Phase phase) {
+        startTimes.put(phase, System.currentTimeMillis());
+    }
+
+    public synchronized void end(Phase phase) {
+        final Long startTime = startTimes.get(phase);
+        if (startTime == null || durations.containsKey(phase)) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        durations.put(phase, now - startTime);
+        LOG.info("Startup phase {} of engine {} completed in {}ms (+{}ms).", phase.metricName, engineName,
+                now - startTime, now - startupStartTime);
+    }
+
+    /**
+     * Records the duration of the given phase around the call to the supplier.
+     */
+    public <T> T time(Phase phase, Supplier<T> supplier) {
+        begin(phase);
+        final T result = supplier.get();
+        end(phase);
+        return result;
+    }
+
+    public synchronized long getDuration(Phase phase) {
+        return durations.getOrDefault(phase, -1L);
+    }
+}
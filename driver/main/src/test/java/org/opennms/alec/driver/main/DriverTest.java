@@ -29,19 +29,49 @@
 package org.opennms.alec.driver.main;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opennms.alec.datasource.api.Alarm;
 import org.opennms.alec.datasource.api.AlarmDatasource;
+import org.opennms.alec.datasource.api.AlarmFeedback;
 import org.opennms.alec.datasource.api.AlarmFeedbackDatasource;
+import org.opennms.alec.datasource.api.AlarmHandler;
 import org.opennms.alec.datasource.api.InventoryDatasource;
+import org.opennms.alec.datasource.api.InventoryObject;
+import org.opennms.alec.datasource.api.Situation;
 import org.opennms.alec.datasource.api.SituationDatasource;
+import org.opennms.alec.datasource.common.HandlerRegistry;
 import org.opennms.alec.engine.api.EngineFactory;
+import org.opennms.alec.engine.api.EngineInitializer;
+import org.opennms.alec.engine.api.EngineStateDelta;
+import org.opennms.alec.engine.api.EngineStateTransport;
+import org.opennms.alec.engine.api.ReplicatedEngine;
 import org.opennms.alec.processor.api.SituationProcessor;
 import org.opennms.alec.processor.api.SituationProcessorFactory;
 import org.osgi.framework.BundleContext;
@@ -79,4 +109,242 @@ public class DriverTest {
         // Clean-up
         driver.destroy();
     }
+
+    @Test
+    public void canBootstrapFromDatasourcesInParallel() throws Exception {
+        BundleContext bundleContext = mock(BundleContext.class);
+        AlarmDatasource alarmDatasource = mock(AlarmDatasource.class);
+        AlarmFeedbackDatasource alarmFeedbackDatasource = mock(AlarmFeedbackDatasource.class);
+        InventoryDatasource inventoryDatasource = mock(InventoryDatasource.class);
+        SituationDatasource situationDatasource = mock(SituationDatasource.class);
+        EngineFactory engineFactory = mock(EngineFactory.class);
+        when(engineFactory.getName()).thenReturn("test");
+        SituationProcessorFactory situationProcessorFactory = mock(SituationProcessorFactory.class);
+        when(situationProcessorFactory.getInstance()).thenReturn(mock(SituationProcessor.class));
+
+        // Keep the situations blocked until the alarms were read, which requires these to be read in parallel
+        final CountDownLatch alarmsRead = new CountDownLatch(1);
+        final InventoryObject io = mock(InventoryObject.class);
+        final Alarm alarm = mock(Alarm.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<List<InventoryObject>>>getArgument(2).accept(Collections.singletonList(io));
+            return null;
+        }).when(inventoryDatasource).getInventoryInChunksAndRegisterHandler(any(), anyInt(), any(), any());
+        doAnswer(invocation -> {
+            invocation.<Consumer<List<Alarm>>>getArgument(2).accept(Collections.singletonList(alarm));
+            alarmsRead.countDown();
+            return null;
+        }).when(alarmDatasource).getAlarmsInChunksAndRegisterHandler(any(), anyInt(), any(), any());
+        when(situationDatasource.getSituations()).thenAnswer(invocation -> {
+            assertThat(alarmsRead.await(10, TimeUnit.SECONDS), equalTo(true));
+            return Collections.emptyList();
+        });
+
+        final List<Object> initializedWith = new ArrayList<>();
+        TickLoggingEngine engine = new TickLoggingEngine() {
+            @Override
+            public void init(List<Alarm> alarms, List<AlarmFeedback> alarmFeedback, List<Situation> situations,
+                             List<InventoryObject> inventory) {
+                initializedWith.addAll(inventory);
+                initializedWith.addAll(alarms);
+            }
+        };
+        when(engineFactory.createEngine()).thenReturn(engine);
+        MetricRegistry metrics = new MetricRegistry();
+
+        Driver driver = new Driver(bundleContext, alarmDatasource, alarmFeedbackDatasource, inventoryDatasource,
+                situationDatasource, engineFactory, situationProcessorFactory, metrics);
+        driver.initAsync().get(10, TimeUnit.SECONDS);
+        assertThat(initializedWith, contains(io, alarm));
+
+        // Every phase of the startup should be recorded once the first tick has happened
+        await().atMost(10, TimeUnit.SECONDS).until(() -> engine.getTicks().size() > 0);
+        for (StartupTimeline.Phase phase : StartupTimeline.Phase.values()) {
+            assertThat(driver.getStartupTimeline().getDuration(phase), greaterThanOrEqualTo(0L));
+        }
+        assertThat(metrics.getGauges().keySet(), hasItem("test.startup.timeToFirstTick"));
+
+        driver.destroy();
+    }
+
+    @Test
+    public void canAbortInitializationOnFailure() throws Exception {
+        BundleContext bundleContext = mock(BundleContext.class);
+        AlarmDatasource alarmDatasource = mock(AlarmDatasource.class);
+        AlarmFeedbackDatasource alarmFeedbackDatasource = mock(AlarmFeedbackDatasource.class);
+        InventoryDatasource inventoryDatasource = mock(InventoryDatasource.class);
+        SituationDatasource situationDatasource = mock(SituationDatasource.class);
+        EngineFactory engineFactory = mock(EngineFactory.class);
+        when(engineFactory.getName()).thenReturn("test");
+        SituationProcessorFactory situationProcessorFactory = mock(SituationProcessorFactory.class);
+        when(situationProcessorFactory.getInstance()).thenReturn(mock(SituationProcessor.class));
+
+        // Provide more alarm chunks than can be queued, ignoring any interrupts along the way
+        final CountDownLatch alarmsQueued = new CountDownLatch(16);
+        final CountDownLatch alarmsRead = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            for (int i = 0; i < 100; i++) {
+                try {
+                    invocation.<Consumer<List<Alarm>>>getArgument(2).accept(Collections.singletonList(mock(Alarm.class)));
+                    alarmsQueued.countDown();
+                } catch (RuntimeException e) {
+                    Thread.interrupted();
+                }
+            }
+            alarmsRead.countDown();
+            return null;
+        }).when(alarmDatasource).getAlarmsInChunksAndRegisterHandler(any(), anyInt(), any(), any());
+        // Fail once the queue is full
+        doAnswer(invocation -> {
+            assertThat(alarmsQueued.await(10, TimeUnit.SECONDS), equalTo(true));
+            throw new IllegalStateException("inventory unavailable");
+        }).when(inventoryDatasource).getInventoryInChunksAndRegisterHandler(any(), anyInt(), any(), any());
+
+        final EngineInitializer initializer = mock(EngineInitializer.class);
+        when(engineFactory.createEngine()).thenReturn(new TickLoggingEngine() {
+            @Override
+            public EngineInitializer newInitializer() {
+                return initializer;
+            }
+        });
+
+        Driver driver = new Driver(bundleContext, alarmDatasource, alarmFeedbackDatasource, inventoryDatasource,
+                situationDatasource, engineFactory, situationProcessorFactory, new MetricRegistry());
+        try {
+            driver.initAsync().get(10, TimeUnit.SECONDS);
+            fail("Initialization should have failed.");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+
+        // The initializer is aborted, and the alarm producer is no longer blocked on the full queue
+        verify(initializer, timeout(10000)).abort();
+        verify(initializer, never()).complete(any(), any());
+        assertThat(alarmsRead.await(10, TimeUnit.SECONDS), equalTo(true));
+
+        driver.destroy();
+    }
+
+    @Test(timeout = 30000)
+    public void canReplayCallbacksMadeWhileTheEngineInitializes() throws Exception {
+        BundleContext bundleContext = mock(BundleContext.class);
+        AlarmDatasource alarmDatasource = mock(AlarmDatasource.class);
+        AlarmFeedbackDatasource alarmFeedbackDatasource = mock(AlarmFeedbackDatasource.class);
+        InventoryDatasource inventoryDatasource = mock(InventoryDatasource.class);
+        SituationDatasource situationDatasource = mock(SituationDatasource.class);
+        EngineFactory engineFactory = mock(EngineFactory.class);
+        when(engineFactory.getName()).thenReturn("test");
+        SituationProcessorFactory situationProcessorFactory = mock(SituationProcessorFactory.class);
+        when(situationProcessorFactory.getInstance()).thenReturn(mock(SituationProcessor.class));
+
+        // Make many more alarm callbacks while the engine initializes than can be buffered
+        final HandlerRegistry<AlarmHandler> alarmHandlers = new HandlerRegistry<>(10);
+        final Alarm initialAlarm = alarm("a0");
+        final List<String> expectedAlarmIds = new ArrayList<>();
+        final Thread dispatcher = new Thread(() -> {
+            for (int i = 1; i <= 100; i++) {
+                expectedAlarmIds.add("a" + i);
+                alarmHandlers.forEachUpdate(Collections.singletonList(alarm("a" + i)),
+                        (h, alarms) -> alarms.forEach(h::onAlarmCreatedOrUpdated));
+            }
+        });
+        doAnswer(invocation -> {
+            final Consumer<List<Alarm>> consumer = invocation.getArgument(2);
+            alarmHandlers.registerWithReplay(invocation.getArgument(0), Alarm::getId,
+                    (Consumer<Alarm> delivered) -> {
+                        consumer.accept(Collections.singletonList(initialAlarm));
+                        delivered.accept(initialAlarm);
+                    }, invocation.getArgument(3));
+            dispatcher.start();
+            return null;
+        }).when(alarmDatasource).getAlarmsInChunksAndRegisterHandler(any(), anyInt(), any(), any());
+
+        final AtomicBoolean initialized = new AtomicBoolean(false);
+        final List<String> alarmIds = Collections.synchronizedList(new ArrayList<>());
+        final List<String> earlyAlarmIds = Collections.synchronizedList(new ArrayList<>());
+        when(engineFactory.createEngine()).thenReturn(new TickLoggingEngine() {
+            @Override
+            public void init(List<Alarm> alarms, List<AlarmFeedback> alarmFeedback, List<Situation> situations,
+                             List<InventoryObject> inventory) {
+                // Initialize slowly, only completing once the dispatcher is blocked on the full replay log
+                while (dispatcher.getState() != Thread.State.WAITING) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                alarms.forEach(alarm -> alarmIds.add(alarm.getId()));
+                initialized.set(true);
+            }
+
+            @Override
+            public void onAlarmCreatedOrUpdated(Alarm alarm) {
+                if (!initialized.get()) {
+                    earlyAlarmIds.add(alarm.getId());
+                }
+                alarmIds.add(alarm.getId());
+            }
+        });
+
+        Driver driver = new Driver(bundleContext, alarmDatasource, alarmFeedbackDatasource, inventoryDatasource,
+                situationDatasource, engineFactory, situationProcessorFactory, new MetricRegistry());
+        driver.initAsync().get(10, TimeUnit.SECONDS);
+        dispatcher.join();
+
+        // The engine sees every callback, in order, and only once it is initialized
+        expectedAlarmIds.add(0, "a0");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> alarmIds.size() == expectedAlarmIds.size());
+        assertThat(alarmIds, equalTo(expectedAlarmIds));
+        assertThat(earlyAlarmIds, hasSize(0));
+
+        driver.destroy();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void canApplyStreamedStateWhileStandby() throws Exception {
+        BundleContext bundleContext = mock(BundleContext.class);
+        AlarmDatasource alarmDatasource = mock(AlarmDatasource.class);
+        AlarmFeedbackDatasource alarmFeedbackDatasource = mock(AlarmFeedbackDatasource.class);
+        InventoryDatasource inventoryDatasource = mock(InventoryDatasource.class);
+        SituationDatasource situationDatasource = mock(SituationDatasource.class);
+        EngineFactory engineFactory = mock(EngineFactory.class);
+        SituationProcessorFactory situationProcessorFactory = mock(SituationProcessorFactory.class);
+        SituationProcessor situationProcessor = mock(SituationProcessor.class);
+        when(situationProcessor.isActive()).thenReturn(false);
+        when(situationProcessorFactory.getInstance()).thenReturn(situationProcessor);
+        ReplicatedEngine engine = mock(ReplicatedEngine.class);
+        when(engine.getTickResolutionMs()).thenReturn(100L);
+        when(engine.isStandby()).thenReturn(true);
+        when(engine.newInitializer()).thenCallRealMethod();
+        when(engineFactory.createEngine()).thenReturn(engine);
+        EngineStateTransport transport = mock(EngineStateTransport.class);
+
+        Driver driver = new Driver(bundleContext, alarmDatasource, alarmFeedbackDatasource, inventoryDatasource,
+                situationDatasource, engineFactory, situationProcessorFactory, new MetricRegistry());
+        driver.setHotStandbyEnabled(true);
+        driver.setEngineStateTransports(Collections.singletonList(transport));
+        driver.initAsync().get(10, TimeUnit.SECONDS);
+
+        // The engine should be placed in standby and fed with the deltas from the transport
+        verify(engine, timeout(5000).atLeastOnce()).setStandby(true);
+        ArgumentCaptor<Consumer<EngineStateDelta>> consumerCaptor = ArgumentCaptor.forClass(Consumer.class);
+        verify(transport).subscribe(consumerCaptor.capture());
+        EngineStateDelta delta = EngineStateDelta.newBuilder()
+                .deleteSituation("1")
+                .build();
+        consumerCaptor.getValue().accept(delta);
+        verify(engine).applyStateDelta(delta);
+
+        driver.destroy();
+        verify(transport).unsubscribe(consumerCaptor.getValue());
+    }
+
+    private static Alarm alarm(String id) {
+        final Alarm alarm = mock(Alarm.class);
+        when(alarm.getId()).thenReturn(id);
+        return alarm;
+    }
 }
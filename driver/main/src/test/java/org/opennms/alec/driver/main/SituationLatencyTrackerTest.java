@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.driver.main;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.equalTo;
+
+import org.junit.Test;
+import org.opennms.alec.datasource.api.Situation;
+import org.opennms.alec.datasource.common.ImmutableAlarm;
+import org.opennms.alec.datasource.common.ImmutableSituation;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class SituationLatencyTrackerTest {
+
+    @Test
+    public void canTrackLatencies() {
+        final MetricRegistry metrics = new MetricRegistry();
+        final SituationLatencyTracker tracker = new SituationLatencyTracker("engine", metrics);
+
+        final Situation situation = ImmutableSituation.newBuilderNow()
+                .setId("s1")
+                .addAlarm(ImmutableAlarm.newBuilder().setId("a1").setIngestTime(1000L).build())
+                .addAlarm(ImmutableAlarm.newBuilder().setId("a2").setIngestTime(1500L).build())
+                // Alarms without an ingest time are ignored
+                .addAlarm(ImmutableAlarm.newBuilder().setId("a3").build())
+                .build();
+
+        tracker.onTick(2000L);
+        tracker.onSituation(situation, 2200L);
+
+        // The latencies should be measured from the most recently ingested alarm
+        assertThat(tracker.getIngestToTick().getSnapshot().getValues(), equalTo(new long[]{500L}));
+        assertThat(tracker.getTickToEmit().getSnapshot().getValues(), equalTo(new long[]{200L}));
+        assertThat(tracker.getEndToEnd().getSnapshot().getValues(), equalTo(new long[]{700L}));
+
+        // The histograms should be registered with the engine name
+        assertThat(metrics.getHistograms().keySet().toArray(), arrayContaining(
+                "engine.latency.endToEnd", "engine.latency.ingestToTick", "engine.latency.tickToEmit"));
+    }
+
+    @Test
+    public void canSkipSituationsWithoutIngestTimes() {
+        final SituationLatencyTracker tracker = new SituationLatencyTracker("engine", new MetricRegistry());
+
+        tracker.onTick(2000L);
+        tracker.onSituation(ImmutableSituation.newBuilderNow()
+                .setId("s1")
+                .addAlarm(ImmutableAlarm.newBuilder().setId("a1").build())
+                .build(), 2100L);
+
+        assertThat(tracker.getIngestToTick().getCount(), equalTo(0L));
+        assertThat(tracker.getTickToEmit().getCount(), equalTo(1L));
+        assertThat(tracker.getEndToEnd().getCount(), equalTo(0L));
+    }
+}
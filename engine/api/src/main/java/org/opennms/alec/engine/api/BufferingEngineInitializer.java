@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.opennms.alec.datasource.api.Alarm;
+import org.opennms.alec.datasource.api.AlarmFeedback;
+import org.opennms.alec.datasource.api.InventoryObject;
+import org.opennms.alec.datasource.api.Situation;
+
+/**
+ * Collects all of the chunks and passes them to {@link Engine#init(List, List, List, List)} once complete.
+ *
+ * Used by engines that do not support being initialized incrementally.
+ */
+public class BufferingEngineInitializer implements EngineInitializer {
+
+    private final Engine engine;
+    private final List<InventoryObject> inventory = new ArrayList<>();
+    private final List<Alarm> alarms = new ArrayList<>();
+    private boolean completed = false;
+
+    public BufferingEngineInitializer(Engine engine) {
+        this.engine = Objects.requireNonNull(engine);
+    }
+
+    @Override
+    public void addInventory(List<InventoryObject> inventory) {
+        this.inventory.addAll(inventory);
+    }
+
+    @Override
+    public void addAlarms(List<Alarm> alarms) {
+        this.alarms.addAll(alarms);
+    }
+
+    @Override
+    public void complete(List<AlarmFeedback> alarmFeedback, List<Situation> situations) {
+        completed = true;
+        engine.init(alarms, alarmFeedback, situations, inventory);
+    }
+
+    @Override
+    public void abort() {
+        if (completed) {
+            return;
+        }
+        inventory.clear();
+        alarms.clear();
+    }
+}
@@ -48,6 +48,18 @@ public interface Engine extends AlarmHandler, InventoryHandler, AlarmFeedbackHan
     void init(List<Alarm> alarms, List<AlarmFeedback> alarmFeedback, List<Situation> situations,
               List<InventoryObject> inventory);
 
+    /**
+     * Initialize the engine incrementally, as an alternative to {@link #init(List, List, List, List)}.
+     *
+     * Engines that can process the inventory and alarms as these are retrieved should override this
+     * in order to avoid holding all of the initial state in memory at once.
+     *
+     * @return a new initializer for this engine
+     */
+    default EngineInitializer newInitializer() {
+        return new BufferingEngineInitializer(this);
+    }
+
     long getTickResolutionMs();
 
     void tick(long timestampInMillis);
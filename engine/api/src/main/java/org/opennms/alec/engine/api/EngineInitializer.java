@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.api;
+
+import java.util.List;
+
+import org.opennms.alec.datasource.api.Alarm;
+import org.opennms.alec.datasource.api.AlarmFeedback;
+import org.opennms.alec.datasource.api.InventoryObject;
+import org.opennms.alec.datasource.api.Situation;
+
+/**
+ * Initializes an {@link Engine} incrementally, as an alternative to
+ * {@link Engine#init(List, List, List, List)}, so that the state can be
+ * retrieved from the datasources in chunks.
+ *
+ * The inventory should be added before the alarms, and {@link #complete(List, List)}
+ * must be called exactly once, after all of the inventory and alarms were added.
+ * If the state cannot be retrieved, {@link #abort()} must be called instead.
+ */
+public interface EngineInitializer {
+
+    void addInventory(List<InventoryObject> inventory);
+
+    void addAlarms(List<Alarm> alarms);
+
+    void complete(List<AlarmFeedback> alarmFeedback, List<Situation> situations);
+
+    /**
+     * Abandon the initialization, releasing any resources held by the initializer as well
+     * as any callers waiting for the engine to be initialized. Has no effect once completed.
+     */
+    void abort();
+
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.api;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The changes made to the state of an {@link Engine} that must be known by a standby engine in order to take over with
+ * the same situation identities.
+ *
+ * Every entry describes the complete state of a single situation, so that a delta can be applied on its own and
+ * successive deltas for the same situation can be compacted by keeping only the latest entry.
+ */
+public final class EngineStateDelta {
+
+    private final long timestamp;
+    private final Map<String, SituationMembership> situations;
+    private final Set<String> deletedSituationIds;
+    private final Map<String, Set<String>> blacklistsBySituationId;
+
+    private EngineStateDelta(Builder builder) {
+        timestamp = builder.timestamp;
+        situations = Collections.unmodifiableMap(new LinkedHashMap<>(builder.situations));
+        deletedSituationIds = Collections.unmodifiableSet(new LinkedHashSet<>(builder.deletedSituationIds));
+        blacklistsBySituationId = Collections.unmodifiableMap(new LinkedHashMap<>(builder.blacklistsBySituationId));
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the time of the tick the changes were made in
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the situations that were created or updated, keyed by situation id
+     */
+    public Map<String, SituationMembership> getSituations() {
+        return situations;
+    }
+
+    /**
+     * @return the ids of the situations that were deleted
+     */
+    public Set<String> getDeletedSituationIds() {
+        return deletedSituationIds;
+    }
+
+    /**
+     * @return the complete set of alarm ids blacklisted from each situation whose blacklist changed, an empty set
+     * meaning the situation no longer has a blacklist
+     */
+    public Map<String, Set<String>> getBlacklistsBySituationId() {
+        return blacklistsBySituationId;
+    }
+
+    public boolean isEmpty() {
+        return situations.isEmpty() && deletedSituationIds.isEmpty() && blacklistsBySituationId.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        EngineStateDelta that = (EngineStateDelta) o;
+        return timestamp == that.timestamp &&
+                Objects.equals(situations, that.situations) &&
+                Objects.equals(deletedSituationIds, that.deletedSituationIds) &&
+                Objects.equals(blacklistsBySituationId, that.blacklistsBySituationId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timestamp, situations, deletedSituationIds, blacklistsBySituationId);
+    }
+
+    @Override
+    public String toString() {
+        return "EngineStateDelta{" +
+                "timestamp=" + timestamp +
+                ", situations=" + situations.values() +
+                ", deletedSituationIds=" + deletedSituationIds +
+                ", blacklistsBySituationId=" + blacklistsBySituationId +
+                '}';
+    }
+
+    public static final class Builder {
+        private long timestamp;
+        private final Map<String, SituationMembership> situations = new LinkedHashMap<>();
+        private final Set<String> deletedSituationIds = new LinkedHashSet<>();
+        private final Map<String, Set<String>> blacklistsBySituationId = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder setTimestamp(long timestamp) {
+            this.timestamp = timestamp;
+            return this;
+        }
+
+        public Builder addSituation(SituationMembership situation) {
+            deletedSituationIds.remove(situation.getId());
+            situations.put(situation.getId(), situation);
+            return this;
+        }
+
+        public Builder deleteSituation(String situationId) {
+            situations.remove(situationId);
+            blacklistsBySituationId.remove(situationId);
+            deletedSituationIds.add(situationId);
+            return this;
+        }
+
+        public Builder setBlacklist(String situationId, Collection<String> alarmIds) {
+            blacklistsBySituationId.put(situationId, Collections.unmodifiableSet(new LinkedHashSet<>(alarmIds)));
+            return this;
+        }
+
+        public EngineStateDelta build() {
+            return new EngineStateDelta(this);
+        }
+    }
+
+    /**
+     * The identity and membership of a situation.
+     */
+    public static final class SituationMembership {
+        private final String id;
+        private final long creationTime;
+        private final Set<String> alarmIds;
+        private final String diagnosticText;
+
+        public SituationMembership(String id, long creationTime, Collection<String> alarmIds,
+                                   String diagnosticText) {
+            this.id = Objects.requireNonNull(id);
+            this.creationTime = creationTime;
+            this.alarmIds = Collections.unmodifiableSet(new LinkedHashSet<>(alarmIds));
+            this.diagnosticText = diagnosticText;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getCreationTime() {
+            return creationTime;
+        }
+
+        public Set<String> getAlarmIds() {
+            return alarmIds;
+        }
+
+        public String getDiagnosticText() {
+            return diagnosticText;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SituationMembership that = (SituationMembership) o;
+            return creationTime == that.creationTime &&
+                    Objects.equals(id, that.id) &&
+                    Objects.equals(alarmIds, that.alarmIds) &&
+                    Objects.equals(diagnosticText, that.diagnosticText);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, creationTime, alarmIds, diagnosticText);
+        }
+
+        @Override
+        public String toString() {
+            return "SituationMembership{" +
+                    "id='" + id + '\'' +
+                    ", creationTime=" + creationTime +
+                    ", alarmIds=" + alarmIds +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.api;
+
+import java.util.function.Consumer;
+
+/**
+ * An {@link Engine} whose situation state can be streamed to a hot standby.
+ *
+ * While active, the engine reports the changes made to its state after every tick. While standby, the engine does not
+ * create or update situations itself, but applies the deltas reported by the active engine to a shadow state which
+ * it adopts once it becomes active again, so that it takes over with the same situation identities.
+ */
+public interface ReplicatedEngine extends Engine {
+
+    /**
+     * Registers the handler called with the changes made to the state of the engine after every tick.
+     *
+     * @param handler the handler
+     */
+    void registerStateDeltaHandler(Consumer<EngineStateDelta> handler);
+
+    /**
+     * Applies the changes made by the active engine to the shadow state.
+     *
+     * @param delta the delta to apply
+     */
+    void applyStateDelta(EngineStateDelta delta);
+
+    void setStandby(boolean standby);
+
+    boolean isStandby();
+
+}
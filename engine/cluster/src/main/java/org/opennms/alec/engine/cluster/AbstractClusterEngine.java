@@ -35,6 +35,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -57,7 +58,9 @@ import org.opennms.alec.datasource.api.InventoryObject;
 import org.opennms.alec.datasource.api.Situation;
 import org.opennms.alec.datasource.api.SituationHandler;
 import org.opennms.alec.datasource.common.ImmutableSituation;
-import org.opennms.alec.engine.api.Engine;
+import org.opennms.alec.engine.api.EngineInitializer;
+import org.opennms.alec.engine.api.EngineStateDelta;
+import org.opennms.alec.engine.api.ReplicatedEngine;
 import org.opennms.alec.features.graph.api.Edge;
 import org.opennms.alec.features.graph.api.GraphProvider;
 import org.opennms.alec.features.graph.api.OceGraph;
@@ -65,6 +68,10 @@ import org.opennms.alec.features.graph.api.Vertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -78,12 +85,16 @@ import edu.uci.ics.jung.graph.Graph;
 /**
  * Group alarms into situations by leveraging some clustering algorithm (i.e. DBSCAN)
  */
-public abstract class AbstractClusterEngine implements Engine, GraphProvider, SpatialDistanceCalculator {
+public abstract class AbstractClusterEngine implements ReplicatedEngine, GraphProvider, SpatialDistanceCalculator {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractClusterEngine.class);
 
     private static final int NUM_VERTEX_THRESHOLD_FOR_HOP_DIAG = 10;
 
+    public static final long DEFAULT_SITUATION_RETENTION_MS = TimeUnit.MINUTES.toMillis(15);
+    public static final long DEFAULT_BLACKLIST_RETENTION_MS = TimeUnit.DAYS.toMillis(1);
+    public static final long DEFAULT_DEFERRED_INVENTORY_RETENTION_MS = TimeUnit.DAYS.toMillis(1);
+
     private final Map<String, Situation> alarmIdToSituationMap = new HashMap<>();
 
     private final Map<String, Situation> situationsById = new HashMap<>();
@@ -100,6 +111,63 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
      */
     private final Set<String> situationsWithFeedback = new HashSet<>();
 
+    /**
+     * The set of situations whose blacklist changed since the last state delta was reported.
+     * <p>
+     * Guarded by {@link #situationsWithFeedback}.
+     */
+    private final Set<String> situationsWithBlacklistChanges = new HashSet<>();
+
+    private Consumer<EngineStateDelta> stateDeltaHandler;
+
+    /**
+     * The changes made to the situations since the last state delta was reported.
+     */
+    private EngineStateDelta.Builder pendingStateDelta = EngineStateDelta.newBuilder();
+
+    private volatile boolean standby = false;
+
+    /**
+     * The situations reported by the active engine while in standby, adopted once we become active.
+     */
+    private final Map<String, EngineStateDelta.SituationMembership> shadowSituations = new LinkedHashMap<>();
+
+    /**
+     * How long situations are retained once all of their alarms have been garbage collected from the graph.
+     */
+    private long situationRetentionMs = DEFAULT_SITUATION_RETENTION_MS;
+
+    /**
+     * How long blacklists are retained once the engine no longer knows about their situation.
+     */
+    private long blacklistRetentionMs = DEFAULT_BLACKLIST_RETENTION_MS;
+
+    /**
+     * How long inventory objects wait on the resources they are related to before these relations are dropped.
+     */
+    private long deferredInventoryRetentionMs = DEFAULT_DEFERRED_INVENTORY_RETENTION_MS;
+
+    /**
+     * The time at which situations were first found to no longer contain any of the alarms in the graph.
+     */
+    private final Map<String, Long> orphanedSituationsSince = new HashMap<>();
+
+    /**
+     * The time at which blacklists were first found to refer to a situation that is no longer known.
+     * <p>
+     * Guarded by {@link #situationsWithFeedback}.
+     */
+    private final Map<String, Long> orphanedBlacklistsSince = new HashMap<>();
+
+    private final Meter evictedSituations = new Meter();
+    private final Meter expiredBlacklists = new Meter();
+    private final Meter expiredDeferredInventory = new Meter();
+
+    // Estimates of the retained state, updated on every tick so that these can be read without locking
+    private volatile long estimatedSituationBytes = 0;
+    private volatile long estimatedAlarmToSituationBytes = 0;
+    private volatile long estimatedBlacklistBytes = 0;
+
     private long tickResolutionMs = TimeUnit.SECONDS.toMillis(30);
 
     private SituationHandler situationHandler;
@@ -133,6 +201,65 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
         this.tickResolutionMs = tickResolutionMs;
     }
 
+    /**
+     * @param situationRetentionMs how long situations are retained once all of their alarms have been garbage
+     *                             collected, 0 to retain these indefinitely
+     */
+    public void setSituationRetentionMs(long situationRetentionMs) {
+        this.situationRetentionMs = situationRetentionMs;
+    }
+
+    /**
+     * @param blacklistRetentionMs how long blacklists are retained once their situation is no longer known,
+     *                             0 to retain these indefinitely
+     */
+    public void setBlacklistRetentionMs(long blacklistRetentionMs) {
+        this.blacklistRetentionMs = blacklistRetentionMs;
+    }
+
+    /**
+     * @param deferredInventoryRetentionMs how long inventory objects wait on the resources they are related to,
+     *                                     0 to wait indefinitely
+     */
+    public void setDeferredInventoryRetentionMs(long deferredInventoryRetentionMs) {
+        this.deferredInventoryRetentionMs = deferredInventoryRetentionMs;
+    }
+
+    /**
+     * Exposes the size of the state retained by the engine, and the number of entries evicted from it.
+     * <p>
+     * Any metrics registered by a previous engine with the same prefix are replaced.
+     *
+     * @param metrics registry to add the metrics to
+     * @param prefix prefix for the metric names, typically the name of the engine
+     */
+    public void registerMetrics(MetricRegistry metrics, String prefix) {
+        replaceMetric(metrics, MetricRegistry.name(prefix, "situations", "size"),
+                (Gauge<Integer>) situationsById::size);
+        replaceMetric(metrics, MetricRegistry.name(prefix, "situations", "estimatedBytes"),
+                (Gauge<Long>) () -> estimatedSituationBytes);
+        replaceMetric(metrics, MetricRegistry.name(prefix, "situations", "evicted"), evictedSituations);
+        replaceMetric(metrics, MetricRegistry.name(prefix, "alarmToSituation", "size"),
+                (Gauge<Integer>) alarmIdToSituationMap::size);
+        replaceMetric(metrics, MetricRegistry.name(prefix, "alarmToSituation", "estimatedBytes"),
+                (Gauge<Long>) () -> estimatedAlarmToSituationBytes);
+        replaceMetric(metrics, MetricRegistry.name(prefix, "blacklists", "size"),
+                (Gauge<Integer>) situationAlarmBlacklist::size);
+        replaceMetric(metrics, MetricRegistry.name(prefix, "blacklists", "estimatedBytes"),
+                (Gauge<Long>) () -> estimatedBlacklistBytes);
+        replaceMetric(metrics, MetricRegistry.name(prefix, "blacklists", "expired"), expiredBlacklists);
+        replaceMetric(metrics, MetricRegistry.name(prefix, "deferredInventory", "size"),
+                (Gauge<Integer>) graphManager::getNumDeferredObjects);
+        replaceMetric(metrics, MetricRegistry.name(prefix, "deferredInventory", "estimatedBytes"),
+                (Gauge<Long>) graphManager::getEstimatedDeferredBytes);
+        replaceMetric(metrics, MetricRegistry.name(prefix, "deferredInventory", "expired"), expiredDeferredInventory);
+    }
+
+    private static void replaceMetric(MetricRegistry metrics, String name, Metric metric) {
+        metrics.remove(name);
+        metrics.register(name, metric);
+    }
+
     @Override
     public void tick(long timestampInMillis) {
         LOG.debug("Starting tick for {}", timestampInMillis);
@@ -148,36 +275,78 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
     @Override
     public void init(List<Alarm> alarms, List<AlarmFeedback> alarmFeedback, List<Situation> situations,
                      List<InventoryObject> inventory) {
-        try {
-            LOG.debug("Initialized with {} alarms, {} alarm feedback, {} situations and {} inventory objects.",
-                    alarms.size(), alarmFeedback.size(), situations.size(), inventory.size());
-            LOG.trace("Alarms on init: {}", alarms);
-            LOG.trace("Situations on init: {}", situations);
+        final EngineInitializer initializer = newInitializer();
+        initializer.addInventory(inventory);
+        initializer.addAlarms(alarms);
+        initializer.complete(alarmFeedback, situations);
+    }
+
+    /**
+     * Adds the inventory and alarms to the graph as these are received, so that the complete
+     * state never needs to be held in memory at once.
+     */
+    @Override
+    public EngineInitializer newInitializer() {
+        return new ClusterEngineInitializer();
+    }
+
+    private class ClusterEngineInitializer implements EngineInitializer {
+        private long numInventoryObjects = 0;
+        private long numAlarms = 0;
+
+        @Override
+        public void addInventory(List<InventoryObject> inventory) {
             LOG.trace("Inventory objects on init: {}", inventory);
             graphManager.addInventory(inventory);
+            numInventoryObjects += inventory.size();
+        }
+
+        @Override
+        public void addAlarms(List<Alarm> alarms) {
+            LOG.trace("Alarms on init: {}", alarms);
             graphManager.addOrUpdateAlarms(alarms);
+            numAlarms += alarms.size();
+        }
 
-            // Index the given situations and the alarms they contain, so that we can cluster alarms in existing
-            // situations when applicable
-            situations.forEach(situation -> {
-                situationsById.put(situation.getId(), situation);
-                if (situation.getAlarms() != null) {
-                    for (Alarm alarmInSituation : situation.getAlarms()) {
-                        alarmIdToSituationMap.put(alarmInSituation.getId(), situation);
+        @Override
+        public void complete(List<AlarmFeedback> alarmFeedback, List<Situation> situations) {
+            try {
+                LOG.debug("Initialized with {} alarms, {} alarm feedback, {} situations and {} inventory objects.",
+                        numAlarms, alarmFeedback.size(), situations.size(), numInventoryObjects);
+                LOG.trace("Situations on init: {}", situations);
+
+                // Index the given situations and the alarms they contain, so that we can cluster alarms in existing
+                // situations when applicable
+                situations.forEach(situation -> {
+                    situationsById.put(situation.getId(), situation);
+                    if (situation.getAlarms() != null) {
+                        for (Alarm alarmInSituation : situation.getAlarms()) {
+                            alarmIdToSituationMap.put(alarmInSituation.getId(), situation);
+                        }
                     }
-                }
-            });
+                });
 
-            // Process all the alarm feedback provided on init
-            alarmFeedback.forEach(this::handleAlarmFeedback);
+                // Process all the alarm feedback provided on init
+                alarmFeedback.forEach(AbstractClusterEngine.this::handleAlarmFeedback);
 
-            if (alarms.size() > 0) {
-                alarmsChangedSinceLastTick = true;
+                if (numAlarms > 0) {
+                    alarmsChangedSinceLastTick = true;
+                }
+
+                onInit();
+            } finally {
+                initLock.countDown();
             }
+        }
 
-            onInit();
-        } finally {
-            initLock.countDown();
+        @Override
+        public void abort() {
+            if (initLock.getCount() > 0) {
+                LOG.warn("Initialization was aborted after {} alarms and {} inventory objects.", numAlarms,
+                        numInventoryObjects);
+                // Don't leave the callers waiting for an initialization that will never complete
+                initLock.countDown();
+            }
         }
     }
 
@@ -209,17 +378,34 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
         initLock.await();
 
         LOG.debug("Deleting situation references for situation with id: {}", situationId);
-        situationAlarmBlacklist.remove(situationId);
-        Situation situationBeingRemoved = situationsById.remove(situationId);
-
-        if (situationBeingRemoved == null) {
+        if (stateDeltaHandler != null) {
+            pendingStateDelta.deleteSituation(situationId);
+        }
+        shadowSituations.remove(situationId);
+        if (!removeSituation(situationId)) {
             LOG.warn("Situation with id: {} was not found when attempting to delete.", situationId);
-            return;
         }
+    }
+
+    private boolean removeSituation(String situationId) {
+        synchronized (situationsWithFeedback) {
+            situationAlarmBlacklist.remove(situationId);
+        }
+        return removeSituationReferences(situationId);
+    }
 
-        situationBeingRemoved.getAlarms().stream()
-                .map(Alarm::getId)
-                .forEach(alarmIdToSituationMap::remove);
+    private boolean removeSituationReferences(String situationId) {
+        orphanedSituationsSince.remove(situationId);
+        final Situation situation = situationsById.remove(situationId);
+        if (situation == null) {
+            return false;
+        }
+
+        for (Alarm alarm : situation.getAlarms()) {
+            // Only remove the references that were not since moved to another situation
+            alarmIdToSituationMap.remove(alarm.getId(), situation);
+        }
+        return true;
     }
 
     /**
@@ -270,6 +456,20 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
     }
 
     public synchronized void onTick(long timestampInMillis) {
+        if (standby) {
+            LOG.debug("{}: Standby. Situations are maintained by the active engine.", timestampInMillis);
+            return;
+        }
+
+        try {
+            updateSituations(timestampInMillis);
+            applyRetentionPolicies(timestampInMillis);
+        } finally {
+            reportStateDelta(timestampInMillis);
+        }
+    }
+
+    private void updateSituations(long timestampInMillis) {
         if (!alarmsChangedSinceLastTick && !feedbackChangedSinceLastTick) {
             LOG.debug("{}: No alarm changes since last tick. Nothing to do.", timestampInMillis);
             return;
@@ -318,12 +518,17 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
                 // GC alarms from vertices
                 int numGarbageCollectedAlarms = 0;
                 int numAlarms = 0;
+                final Set<String> alarmIdsInGraph = new HashSet<>();
                 for (CEVertex v : g.getVertices()) {
                     numGarbageCollectedAlarms += v.garbageCollectAlarms(timestampInMillis, problemTimeoutMs,
                             clearTimeoutMs);
                     numAlarms += v.getNumAlarms();
+                    for (Alarm alarm : v.getAlarms()) {
+                        alarmIdsInGraph.add(alarm.getId());
+                    }
                 }
                 LOG.debug("{}: Garbage collected {} alarms.", timestampInMillis, numGarbageCollectedAlarms);
+                trackOrphanedSituations(timestampInMillis, alarmIdsInGraph);
 
                 LOG.debug("{}: Clustering {} alarms.", timestampInMillis, numAlarms);
                 List<Cluster<AlarmInSpaceTime>> clustersOfAlarms = cluster(timestampInMillis, g);
@@ -360,10 +565,225 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
             }
 
             situationsById.put(situation.getId(), situation);
+            orphanedSituationsSince.remove(situation.getId());
+            if (stateDeltaHandler != null) {
+                pendingStateDelta.addSituation(new EngineStateDelta.SituationMembership(situation.getId(),
+                        situation.getCreationTime(),
+                        situation.getAlarms().stream().map(Alarm::getId).collect(Collectors.toList()),
+                        situation.getDiagnosticText()));
+            }
             situationHandler.onSituation(situation);
         }
     }
 
+    /**
+     * Keeps track of the situations that no longer contain any of the alarms in the graph.
+     * <p>
+     * The alarms in these situations will not be clustered again, so these are only retained in case the alarms
+     * are re-created.
+     */
+    private void trackOrphanedSituations(long timestampInMillis, Set<String> alarmIdsInGraph) {
+        for (Situation situation : situationsById.values()) {
+            final boolean hasAlarmsInGraph = situation.getAlarms() != null && situation.getAlarms().stream()
+                    .anyMatch(alarm -> alarmIdsInGraph.contains(alarm.getId()));
+            if (hasAlarmsInGraph) {
+                orphanedSituationsSince.remove(situation.getId());
+            } else {
+                orphanedSituationsSince.putIfAbsent(situation.getId(), timestampInMillis);
+            }
+        }
+    }
+
+    /**
+     * Evicts the situations, blacklists and deferred inventory that have outlived their retention period.
+     */
+    private void applyRetentionPolicies(long timestampInMillis) {
+        // Situations
+        final List<String> situationIdsToEvict = new ArrayList<>();
+        if (situationRetentionMs > 0) {
+            orphanedSituationsSince.forEach((situationId, orphanedSince) -> {
+                if (timestampInMillis - orphanedSince >= situationRetentionMs) {
+                    situationIdsToEvict.add(situationId);
+                }
+            });
+        }
+        for (String situationId : situationIdsToEvict) {
+            LOG.debug("{}: Evicting situation with id: {}. All of its alarms were garbage collected.",
+                    timestampInMillis, situationId);
+            removeSituation(situationId);
+            if (stateDeltaHandler != null) {
+                pendingStateDelta.deleteSituation(situationId);
+            }
+        }
+        evictedSituations.mark(situationIdsToEvict.size());
+
+        long situationBytes = 0;
+        for (Situation situation : situationsById.values()) {
+            final int numAlarms = situation.getAlarms() != null ? situation.getAlarms().size() : 0;
+            situationBytes += RetainedSizes.MAP_ENTRY_BYTES + RetainedSizes.ofString(situation.getId())
+                    + RetainedSizes.SITUATION_BYTES + numAlarms * RetainedSizes.MAP_ENTRY_BYTES;
+            if (orphanedSituationsSince.containsKey(situation.getId())) {
+                // The alarms are no longer referenced by the graph
+                situationBytes += numAlarms * RetainedSizes.ALARM_BYTES;
+            }
+        }
+        estimatedSituationBytes = situationBytes;
+        // The keys are shared with the alarms
+        estimatedAlarmToSituationBytes = alarmIdToSituationMap.size() * RetainedSizes.MAP_ENTRY_BYTES;
+
+        // Blacklists
+        int numExpiredBlacklists = 0;
+        long blacklistBytes = 0;
+        synchronized (situationsWithFeedback) {
+            orphanedBlacklistsSince.keySet().retainAll(situationAlarmBlacklist.keySet());
+            final Iterator<Map.Entry<String, Set<String>>> it = situationAlarmBlacklist.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<String, Set<String>> entry = it.next();
+                final String situationId = entry.getKey();
+                if (situationsById.containsKey(situationId)) {
+                    orphanedBlacklistsSince.remove(situationId);
+                } else {
+                    final long orphanedSince = orphanedBlacklistsSince.computeIfAbsent(situationId,
+                            sid -> timestampInMillis);
+                    if (blacklistRetentionMs > 0 && timestampInMillis - orphanedSince >= blacklistRetentionMs) {
+                        LOG.debug("{}: Expiring blacklist for situation with id: {}.", timestampInMillis, situationId);
+                        it.remove();
+                        orphanedBlacklistsSince.remove(situationId);
+                        situationsWithBlacklistChanges.add(situationId);
+                        numExpiredBlacklists++;
+                        continue;
+                    }
+                }
+                blacklistBytes += RetainedSizes.MAP_ENTRY_BYTES + RetainedSizes.ofString(situationId)
+                        + RetainedSizes.ofStrings(entry.getValue());
+            }
+        }
+        expiredBlacklists.mark(numExpiredBlacklists);
+        estimatedBlacklistBytes = blacklistBytes;
+
+        // Deferred inventory
+        final int numExpiredDeferrals = graphManager.expireDeferrals(timestampInMillis, deferredInventoryRetentionMs);
+        expiredDeferredInventory.mark(numExpiredDeferrals);
+
+        if (!situationIdsToEvict.isEmpty() || numExpiredBlacklists > 0 || numExpiredDeferrals > 0) {
+            LOG.info("{}: Evicted {} situations, {} blacklists and {} deferred inventory objects.",
+                    timestampInMillis, situationIdsToEvict.size(), numExpiredBlacklists, numExpiredDeferrals);
+        }
+    }
+
+    private void reportStateDelta(long timestampInMillis) {
+        if (stateDeltaHandler == null) {
+            return;
+        }
+
+        synchronized (situationsWithFeedback) {
+            for (String situationId : situationsWithBlacklistChanges) {
+                pendingStateDelta.setBlacklist(situationId,
+                        situationAlarmBlacklist.getOrDefault(situationId, Collections.emptySet()));
+            }
+            situationsWithBlacklistChanges.clear();
+        }
+
+        final EngineStateDelta delta = pendingStateDelta.setTimestamp(timestampInMillis).build();
+        pendingStateDelta = EngineStateDelta.newBuilder();
+        if (delta.isEmpty()) {
+            return;
+        }
+
+        LOG.debug("{}: Reporting state delta with {} situations, {} deleted situations and {} blacklists.",
+                timestampInMillis, delta.getSituations().size(), delta.getDeletedSituationIds().size(),
+                delta.getBlacklistsBySituationId().size());
+        try {
+            stateDeltaHandler.accept(delta);
+        } catch (Exception e) {
+            LOG.error("{}: An error occurred while reporting the state delta.", timestampInMillis, e);
+        }
+    }
+
+    @Override
+    public synchronized void registerStateDeltaHandler(Consumer<EngineStateDelta> handler) {
+        stateDeltaHandler = handler;
+    }
+
+    @Override
+    public synchronized void applyStateDelta(EngineStateDelta delta) {
+        LOG.debug("Applying state delta with {} situations, {} deleted situations and {} blacklists.",
+                delta.getSituations().size(), delta.getDeletedSituationIds().size(),
+                delta.getBlacklistsBySituationId().size());
+        for (String situationId : delta.getDeletedSituationIds()) {
+            shadowSituations.remove(situationId);
+            removeSituation(situationId);
+        }
+
+        synchronized (situationsWithFeedback) {
+            delta.getBlacklistsBySituationId().forEach((situationId, alarmIds) -> {
+                if (alarmIds.isEmpty()) {
+                    situationAlarmBlacklist.remove(situationId);
+                } else {
+                    situationAlarmBlacklist.put(situationId, new HashSet<>(alarmIds));
+                }
+            });
+        }
+
+        // The situations are only resolved against the graph once we take over, since this requires a pass over
+        // all of the alarms
+        shadowSituations.putAll(delta.getSituations());
+    }
+
+    @Override
+    public synchronized void setStandby(boolean standby) {
+        if (this.standby && !standby) {
+            adoptShadowState();
+        }
+        this.standby = standby;
+    }
+
+    @Override
+    public boolean isStandby() {
+        return standby;
+    }
+
+    /**
+     * Replaces the situations with the ones reported by the active engine while we were in standby.
+     */
+    private void adoptShadowState() {
+        if (shadowSituations.isEmpty()) {
+            return;
+        }
+
+        final Map<String, AlarmInSpaceTime> alarmsById = findAlarmsWithIds(shadowSituations.values().stream()
+                .flatMap(s -> s.getAlarmIds().stream())
+                .distinct()
+                .toArray(String[]::new));
+
+        for (EngineStateDelta.SituationMembership membership : shadowSituations.values()) {
+            removeSituationReferences(membership.getId());
+
+            final ImmutableSituation.Builder situationBuilder = ImmutableSituation.newBuilder()
+                    .setId(membership.getId())
+                    .setCreationTime(membership.getCreationTime())
+                    .setDiagnosticText(membership.getDiagnosticText());
+            for (String alarmId : membership.getAlarmIds()) {
+                // Alarms that we have not seen (yet) will be clustered on the next tick
+                final AlarmInSpaceTime alarm = alarmsById.get(alarmId);
+                if (alarm != null) {
+                    situationBuilder.addAlarm(alarm.getAlarm());
+                }
+            }
+
+            final Situation situation = situationBuilder.build();
+            situationsById.put(situation.getId(), situation);
+            for (Alarm alarm : situation.getAlarms()) {
+                alarmIdToSituationMap.put(alarm.getId(), situation);
+            }
+        }
+        LOG.info("Adopted {} situations from the active engine.", shadowSituations.size());
+        shadowSituations.clear();
+
+        // Re-cluster on the next tick to pick up any alarms that changed since the active engine's last tick
+        alarmsChangedSinceLastTick = true;
+    }
+
     public synchronized void resetHopCache() {
         spatialDistances.invalidateAll();
         shortestPath = null;
@@ -562,6 +982,31 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
         }
     }
 
+    @Override
+    public void onAlarmsCreatedOrUpdated(Collection<Alarm> alarms) {
+        addOrUpdateAlarms(alarms, "onAlarmsCreatedOrUpdated");
+    }
+
+    @Override
+    public void onAlarmsCleared(Collection<Alarm> alarms) {
+        addOrUpdateAlarms(alarms, "onAlarmsCleared");
+    }
+
+    private void addOrUpdateAlarms(Collection<Alarm> alarms, String callback) {
+        if (alarms.isEmpty()) {
+            return;
+        }
+        try {
+            initLock.await();
+            // Apply all of the alarms while holding the graph lock once
+            graphManager.addOrUpdateAlarms(alarms);
+            alarmsChangedSinceLastTick = true;
+        } catch (InterruptedException ignore) {
+            LOG.debug("Interrupted while handling callback, skipping processing {}.", callback);
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public void onInventoryAdded(Collection<InventoryObject> inventory) {
         try {
@@ -614,18 +1059,27 @@ public abstract class AbstractClusterEngine implements Engine, GraphProvider, Sp
 
 
                     situationsWithFeedback.add(alarmFeedback.getSituationId());
+                    situationsWithBlacklistChanges.add(alarmFeedback.getSituationId());
 
                     break;
                 case FALSE_NEGATIVE:
                     if (situationAlarmBlacklist.containsKey(alarmFeedback.getSituationId())) {
                         situationAlarmBlacklist.get(alarmFeedback.getSituationId())
                                 .remove(alarmFeedback.getAlarmKey());
+                        situationsWithBlacklistChanges.add(alarmFeedback.getSituationId());
                     }
                     break;
             }
         }
     }
 
+    @Override
+    public void handleAlarmFeedbacks(Collection<AlarmFeedback> alarmFeedbacks) {
+        synchronized (situationsWithFeedback) {
+            alarmFeedbacks.forEach(this::handleAlarmFeedback);
+        }
+    }
+
     @Override
     public <V> V withReadOnlyGraph(Function<OceGraph, V> consumer) {
         final List<Situation> situations = new ArrayList<>(situationsById.values());
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.cluster;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opennms.alec.datasource.api.InventoryObject;
+import org.opennms.alec.datasource.api.ResourceKey;
+
+/**
+ * Maintains the parent hierarchy of the inventory as a table of linked entries,
+ * so that ancestry questions can be answered by following direct references instead
+ * of building resource keys and performing map lookups at every level.
+ *
+ * Entries for parents we have not yet seen are created as placeholders when a child
+ * references them, and are linked in place once the parent is added. This allows
+ * the hierarchy to be maintained incrementally, regardless of the order in which
+ * inventory is received.
+ *
+ * Updates are expected to be performed while holding the {@link GraphManager} lock,
+ * whereas lookups are safe to perform concurrently without holding any lock.
+ */
+public class AncestorIndex {
+
+    private final Map<ResourceKey, Entry> entriesByKey = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        private final ResourceKey resourceKey;
+        private volatile Entry parent;
+        private volatile boolean present;
+        private int numChildren;
+
+        private Entry(ResourceKey resourceKey) {
+            this.resourceKey = resourceKey;
+        }
+    }
+
+    synchronized void addOrUpdate(InventoryObject io) {
+        final ResourceKey resourceKey = ResourceKey.key(io.getType(), io.getId());
+        final Entry entry = entriesByKey.computeIfAbsent(resourceKey, Entry::new);
+
+        final Entry parent;
+        if (io.getParentType() != null && io.getParentId() != null) {
+            parent = entriesByKey.computeIfAbsent(ResourceKey.key(io.getParentType(), io.getParentId()), Entry::new);
+        } else {
+            parent = null;
+        }
+
+        if (entry.parent != parent) {
+            unlinkParent(entry);
+            if (parent != null) {
+                parent.numChildren++;
+            }
+            entry.parent = parent;
+        }
+        entry.present = true;
+    }
+
+    synchronized void remove(InventoryObject io) {
+        final Entry entry = entriesByKey.get(ResourceKey.key(io.getType(), io.getId()));
+        if (entry == null) {
+            return;
+        }
+        entry.present = false;
+        unlinkParent(entry);
+        entry.parent = null;
+        maybeRemove(entry);
+    }
+
+    private void unlinkParent(Entry entry) {
+        final Entry parent = entry.parent;
+        if (parent == null) {
+            return;
+        }
+        parent.numChildren--;
+        maybeRemove(parent);
+    }
+
+    private void maybeRemove(Entry entry) {
+        // Keep placeholders around for as long as they are referenced by some child
+        if (!entry.present && entry.numChildren < 1) {
+            entriesByKey.remove(entry.resourceKey);
+        }
+    }
+
+    /**
+     * Walk up the hierarchy of both objects in lock step and find the first level
+     * at which they share the same ancestor.
+     *
+     * @param resourceKeyA resource key of the first inventory object
+     * @param resourceKeyB resource key of the second inventory object
+     * @return 0 if both keys refer to the same instance, 1 if they share the same parent,
+     * n if they share the same n-th ancestor, or -1 if no common ancestor was found
+     */
+    public int getFirstAncestorMatch(ResourceKey resourceKeyA, ResourceKey resourceKeyB) {
+        if (resourceKeyA.equals(resourceKeyB)) {
+            // Same instance
+            return 0;
+        }
+
+        Entry a = entriesByKey.get(resourceKeyA);
+        Entry b = entriesByKey.get(resourceKeyB);
+        if (a == null || b == null || !a.present || !b.present) {
+            return -1;
+        }
+
+        int level = 0;
+        while (true) {
+            final Entry parentA = a.parent;
+            final Entry parentB = b.parent;
+            if (parentA == null || parentB == null) {
+                // One of the IOs does not have a parent, stop here
+                return -1;
+            }
+
+            if (parentA == parentB) {
+                // Same ancestor
+                return level + 1;
+            }
+
+            // Both IOs have parents, and they are not the same, go up a level if we know about them
+            if (!parentA.present || !parentB.present) {
+                return -1;
+            }
+            a = parentA;
+            b = parentB;
+            level++;
+        }
+    }
+
+    public int size() {
+        return entriesByKey.size();
+    }
+
+}
@@ -76,6 +76,13 @@ public class GraphManager {
 
     private final Map<ResourceKey, Set<InventoryObject>> deferredIosByDependency = new HashMap<>();
     private final Map<InventoryObject, Set<ResourceKey>> dependenciesByDeferredIos = new HashMap<>();
+    /**
+     * The time at which the deferred IOs were first seen by {@link #expireDeferrals(long, long)}.
+     */
+    private final Map<InventoryObject, Long> deferredSinceByIo = new HashMap<>();
+    private volatile long estimatedDeferredBytes = 0;
+
+    private final AncestorIndex ancestorIndex = new AncestorIndex();
 
     public synchronized void addInventory(Collection<InventoryObject> inventory) {
         addOrUpdateInventory(inventory);
@@ -98,6 +105,7 @@ public class GraphManager {
                 verticesAdded.add(vertex);
                 return vertex;
             }));
+            ancestorIndex.addOrUpdate(io);
         }
 
         // Now handle the relationships
@@ -217,6 +225,7 @@ public class GraphManager {
         // All of the deferrals for the given IO have been satisfied or
         // the IO is being deleted
         final Set<ResourceKey> dependencies = dependenciesByDeferredIos.remove(io);
+        deferredSinceByIo.remove(io);
         if (dependencies == null || dependencies.isEmpty()) {
             // Nothing to do
             return;
@@ -238,6 +247,43 @@ public class GraphManager {
         }
     }
 
+    /**
+     * Stops waiting on the relations of the IOs that have been deferred for longer than the given retention period.
+     * <p>
+     * The vertices for these IOs remain in the graph, but are not associated with the resources that never appeared.
+     * The relations are added again if the IOs are updated once the resources are available.
+     *
+     * @param timestampInMillis the current time
+     * @param retentionMs how long to wait on the relations, 0 to wait indefinitely
+     * @return the number of IOs that are no longer deferred
+     */
+    public synchronized int expireDeferrals(long timestampInMillis, long retentionMs) {
+        // Track how long the IOs have been deferred for at the granularity of the calls to this method, since the
+        // inventory is added without a timestamp
+        deferredSinceByIo.keySet().retainAll(dependenciesByDeferredIos.keySet());
+        final List<InventoryObject> expiredIos = new LinkedList<>();
+        long bytes = 0;
+        for (Map.Entry<InventoryObject, Set<ResourceKey>> entry : dependenciesByDeferredIos.entrySet()) {
+            final long deferredSince = deferredSinceByIo.computeIfAbsent(entry.getKey(), io -> timestampInMillis);
+            if (retentionMs > 0 && timestampInMillis - deferredSince >= retentionMs) {
+                expiredIos.add(entry.getKey());
+                continue;
+            }
+            // One entry in each of the maps for every dependency, and one for the IO itself
+            bytes += RetainedSizes.MAP_ENTRY_BYTES * 2 + RetainedSizes.SET_BYTES
+                    + entry.getValue().size() * RetainedSizes.MAP_ENTRY_BYTES * 2;
+        }
+
+        for (InventoryObject io : expiredIos) {
+            LOG.info("Relations for inventory object with resource key '{}' were deferred for more than {}ms. " +
+                    "No longer waiting on resource keys: {}", getResourceKeyFor(io), retentionMs,
+                    dependenciesByDeferredIos.get(io));
+            clearDeferralsFor(io);
+        }
+        estimatedDeferredBytes = bytes;
+        return expiredIos.size();
+    }
+
     public synchronized void removeInventory(Collection<InventoryObject> inventory) {
         for (InventoryObject io : inventory) {
             final ResourceKey resourceKey = getResourceKeyFor(io);
@@ -254,6 +300,7 @@ public class GraphManager {
                 trackDisconnectedVertices(neighbors);
                 didGraphChange.set(true);
             }
+            ancestorIndex.remove(io);
             clearDeferralsFor(io);
         }
     }
@@ -269,7 +316,7 @@ public class GraphManager {
         }
     }
 
-    public synchronized void addOrUpdateAlarms(List<Alarm> alarms) {
+    public synchronized void addOrUpdateAlarms(Collection<Alarm> alarms) {
         for (Alarm alarm : alarms) {
             addOrUpdateAlarm(alarm);
         }
@@ -367,6 +414,18 @@ public class GraphManager {
         return dependenciesByDeferredIos.size();
     }
 
+    /**
+     * @return the estimated heap used to track the deferred IOs, as of the last call to
+     * {@link #expireDeferrals(long, long)}
+     */
+    public long getEstimatedDeferredBytes() {
+        return estimatedDeferredBytes;
+    }
+
+    public AncestorIndex getAncestorIndex() {
+        return ancestorIndex;
+    }
+
     public Optional<CEVertex> getVertexFor(InventoryObject io) {
         final ResourceKey resourceKey = getResourceKeyFor(io);
         return Optional.ofNullable(resourceKeyVertexMap.get(resourceKey));
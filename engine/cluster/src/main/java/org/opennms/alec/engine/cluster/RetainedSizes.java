@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.cluster;
+
+import java.util.Collection;
+
+/**
+ * Rough estimates of the heap used by the state retained by the engine, assuming a 64-bit JVM with compressed
+ * references.
+ * <p>
+ * These are only meant to show how the retained state grows over time, and do not account for objects that
+ * are shared with the graph.
+ */
+final class RetainedSizes {
+
+    /**
+     * A {@link java.util.HashMap} node and its slot in the table, also used for the elements of a
+     * {@link java.util.HashSet}.
+     */
+    static final long MAP_ENTRY_BYTES = 40;
+
+    /**
+     * An empty {@link java.util.HashSet}, including its backing map.
+     */
+    static final long SET_BYTES = 64;
+
+    /**
+     * A situation, without its alarms.
+     */
+    static final long SITUATION_BYTES = 96;
+
+    /**
+     * An alarm only referenced by a situation, once it has been garbage collected from the graph.
+     */
+    static final long ALARM_BYTES = 256;
+
+    private RetainedSizes() {
+    }
+
+    static long ofString(String s) {
+        return s == null ? 0 : 40 + 2L * s.length();
+    }
+
+    static long ofStrings(Collection<String> strings) {
+        long bytes = SET_BYTES;
+        for (String s : strings) {
+            bytes += MAP_ENTRY_BYTES + ofString(s);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.cluster;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.alec.datasource.api.InventoryObject;
+import org.opennms.alec.datasource.api.ResourceKey;
+import org.opennms.alec.driver.test.MockInventory;
+import org.opennms.alec.driver.test.MockInventoryBuilder;
+import org.opennms.alec.driver.test.MockInventoryType;
+
+public class AncestorIndexTest {
+
+    @Test
+    public void canFindFirstAncestorMatch() {
+        final GraphManager graphManager = new GraphManager();
+        graphManager.addInventory(MockInventory.getSampleNetwork());
+        final AncestorIndex index = graphManager.getAncestorIndex();
+
+        assertThat(index.getFirstAncestorMatch(port("n1-c1-p1"), port("n1-c1-p1")), equalTo(0));
+        assertThat(index.getFirstAncestorMatch(port("n1-c1-p1"), port("n1-c1-p2")), equalTo(1));
+        assertThat(index.getFirstAncestorMatch(port("n1-c1-p1"), port("n1-c2-p1")), equalTo(2));
+        assertThat(index.getFirstAncestorMatch(port("n1-c1-p1"), port("n2-c1-p1")), equalTo(-1));
+        // Objects at different depths are only compared in lock step
+        assertThat(index.getFirstAncestorMatch(port("n1-c1-p1"), card("n1-c2")), equalTo(-1));
+        // Unknown objects have no ancestors
+        assertThat(index.getFirstAncestorMatch(port("n1-c1-p1"), port("n3-c1-p1")), equalTo(-1));
+    }
+
+    @Test
+    public void canMaintainIndexIncrementally() {
+        final GraphManager graphManager = new GraphManager();
+        final AncestorIndex index = graphManager.getAncestorIndex();
+
+        // Add the ports before their parents
+        final List<InventoryObject> ports = new MockInventoryBuilder()
+                .withInventoryObject(MockInventoryType.PORT, "n1-c1-p1", MockInventoryType.CARD, "n1-c1")
+                .withInventoryObject(MockInventoryType.PORT, "n1-c2-p1", MockInventoryType.CARD, "n1-c2")
+                .getInventory();
+        graphManager.addInventory(ports);
+        assertThat(index.getFirstAncestorMatch(port("n1-c1-p1"), port("n1-c2-p1")), equalTo(-1));
+
+        // Now add the cards and the device
+        final List<InventoryObject> cards = new MockInventoryBuilder()
+                .withInventoryObject(MockInventoryType.CARD, "n1-c1", MockInventoryType.DEVICE, "n1")
+                .withInventoryObject(MockInventoryType.CARD, "n1-c2", MockInventoryType.DEVICE, "n1")
+                .getInventory();
+        graphManager.addInventory(cards);
+        assertThat(index.getFirstAncestorMatch(port("n1-c1-p1"), port("n1-c2-p1")), equalTo(2));
+
+        // Remove one of the cards
+        graphManager.removeInventory(Collections.singletonList(cards.get(0)));
+        assertThat(index.getFirstAncestorMatch(port("n1-c1-p1"), port("n1-c2-p1")), equalTo(-1));
+
+        // Re-add it
+        graphManager.addInventory(Collections.singletonList(cards.get(0)));
+        assertThat(index.getFirstAncestorMatch(port("n1-c1-p1"), port("n1-c2-p1")), equalTo(2));
+
+        // Remove everything, no entries should be left behind
+        graphManager.removeInventory(ports);
+        graphManager.removeInventory(cards);
+        assertThat(index.size(), equalTo(0));
+    }
+
+    private static ResourceKey port(String id) {
+        return ResourceKey.key(MockInventoryType.PORT.getType(), id);
+    }
+
+    private static ResourceKey card(String id) {
+        return ResourceKey.key(MockInventoryType.CARD.getType(), id);
+    }
+}
@@ -29,7 +29,9 @@
 package org.opennms.alec.engine.cluster;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.core.IsEqual.equalTo;
 
@@ -38,20 +40,71 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.opennms.alec.datasource.api.Alarm;
+import org.opennms.alec.datasource.api.FeedbackType;
 import org.opennms.alec.datasource.api.Situation;
 import org.opennms.alec.datasource.api.SituationHandler;
 import org.opennms.alec.datasource.common.ImmutableAlarm;
+import org.opennms.alec.datasource.common.ImmutableAlarmFeedback;
 import org.opennms.alec.datasource.common.ImmutableSituation;
+import org.opennms.alec.engine.api.EngineInitializer;
+import org.opennms.alec.engine.api.EngineStateDelta;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Iterables;
 
 public class ClusterEngineSituationTest implements SituationHandler {
 
     private List<Situation> triggeredSituations = new ArrayList<>();
 
+    /**
+     * Verifies that the engine can be initialized incrementally, with the alarms provided in chunks.
+     */
+    @Test
+    public void canInitializeIncrementally() {
+        ImmutableAlarm.Builder alarmBuilder = ImmutableAlarm.newBuilder()
+                .setInventoryObjectId("n1")
+                .setInventoryObjectType("node")
+                .setTime(0);
+
+        Alarm a1 = alarmBuilder.setId("a1").build();
+        Alarm a2 = alarmBuilder.setId("a2").build();
+        Alarm a3 = alarmBuilder.setId("a3").build();
+
+        ClusterEngine clusterEngine = new ClusterEngine();
+        EngineInitializer initializer = clusterEngine.newInitializer();
+        initializer.addInventory(Collections.emptyList());
+        initializer.addAlarms(Arrays.asList(a1, a2));
+        initializer.addAlarms(Collections.singletonList(a3));
+        initializer.complete(Collections.emptyList(), Collections.emptyList());
+        clusterEngine.registerSituationHandler(this);
+        clusterEngine.tick(clusterEngine.getTickResolutionMs());
+
+        // The alarms from all of the chunks should be clustered together
+        assertThat(triggeredSituations, hasSize(1));
+        assertThat(triggeredSituations.get(0).getAlarms(), containsInAnyOrder(a1, a2, a3));
+    }
+
+    /**
+     * Verifies that aborting the initialization releases the callers waiting for it to complete.
+     */
+    @Test(timeout = 10000)
+    public void canAbortInitialization() throws InterruptedException {
+        ClusterEngine clusterEngine = new ClusterEngine();
+        EngineInitializer initializer = clusterEngine.newInitializer();
+        initializer.addInventory(Collections.emptyList());
+        initializer.abort();
+
+        // This waits for the initialization, and would block forever if it was not released
+        clusterEngine.deleteSituation("s1");
+        clusterEngine.registerSituationHandler(this);
+        clusterEngine.tick(clusterEngine.getTickResolutionMs());
+        assertThat(triggeredSituations, hasSize(0));
+    }
+
     /**
      * Verifies that alarms are added to existing situations when given.
      */
@@ -125,6 +178,143 @@ public class ClusterEngineSituationTest implements SituationHandler {
 
     }
 
+    /**
+     * Verifies that a standby engine applying the state deltas of the active engine takes over with the same
+     * situation identities.
+     */
+    @Test
+    public void canTakeOverFromActiveEngine() {
+        ImmutableAlarm.Builder alarmBuilder = ImmutableAlarm.newBuilder()
+                .setInventoryObjectId("n1")
+                .setInventoryObjectType("node")
+                .setTime(0);
+
+        Alarm a1 = alarmBuilder.setId("a1").build();
+        Alarm a2 = alarmBuilder.setId("a2").build();
+        Alarm a3 = alarmBuilder.setId("a3").build();
+        List<Alarm> alarms = Arrays.asList(a1, a2, a3);
+
+        List<EngineStateDelta> deltas = new ArrayList<>();
+        ClusterEngine activeEngine = new ClusterEngine();
+        activeEngine.init(alarms, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+        activeEngine.registerSituationHandler(this);
+        activeEngine.registerStateDeltaHandler(deltas::add);
+
+        List<Situation> standbySituations = new ArrayList<>();
+        ClusterEngine standbyEngine = new ClusterEngine();
+        standbyEngine.init(alarms, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+        standbyEngine.registerSituationHandler(new SituationHandler() {
+            @Override
+            public void onSituation(Situation situation) {
+                standbySituations.add(situation);
+            }
+        });
+        standbyEngine.setStandby(true);
+
+        long tick = activeEngine.getTickResolutionMs();
+        activeEngine.tick(tick);
+        standbyEngine.tick(tick);
+
+        // Only the active engine creates situations, and reports these
+        assertThat(triggeredSituations, hasSize(1));
+        assertThat(standbySituations, hasSize(0));
+        String situationId = triggeredSituations.get(0).getId();
+        assertThat(deltas, hasSize(1));
+        assertThat(deltas.get(0).getSituations().get(situationId).getAlarmIds(),
+                containsInAnyOrder("a1", "a2", "a3"));
+
+        // Blacklist a3 from the situation
+        activeEngine.handleAlarmFeedback(ImmutableAlarmFeedback.newBuilder()
+                .setSituationKey("uei.opennms.org/alarms/situation:" + situationId)
+                .setAlarmKey("a3")
+                .setFeedbackType(FeedbackType.FALSE_POSITIVE)
+                .setTimestamp(0)
+                .build());
+        tick += activeEngine.getTickResolutionMs();
+        activeEngine.tick(tick);
+        assertThat(deltas, hasSize(2));
+        assertThat(deltas.get(1).getBlacklistsBySituationId().get(situationId), contains("a3"));
+        assertThat(deltas.get(1).getSituations().get(situationId).getAlarmIds(), containsInAnyOrder("a1", "a2"));
+
+        deltas.forEach(standbyEngine::applyStateDelta);
+
+        // Fail over, a new alarm on the same node should be added to the same situation
+        standbyEngine.setStandby(false);
+        Alarm a4 = alarmBuilder.setId("a4").build();
+        standbyEngine.onAlarmCreatedOrUpdated(a4);
+        tick += activeEngine.getTickResolutionMs();
+        standbyEngine.tick(tick);
+
+        assertThat(standbySituations, hasSize(1));
+        assertThat(standbySituations.get(0).getId(), equalTo(situationId));
+        // The blacklisted alarm must not come back
+        assertThat(standbySituations.get(0).getAlarms(), containsInAnyOrder(a1, a2, a4));
+    }
+
+    /**
+     * Verifies that situations are evicted once all of their alarms have been garbage collected, and that
+     * blacklists for situations the engine does not know about are expired.
+     */
+    @Test
+    public void canEvictRetainedState() {
+        ImmutableAlarm.Builder alarmBuilder = ImmutableAlarm.newBuilder()
+                .setInventoryObjectId("n1")
+                .setInventoryObjectType("node")
+                .setTime(0);
+
+        Alarm a1 = alarmBuilder.setId("a1").build();
+        Alarm a2 = alarmBuilder.setId("a2").build();
+
+        MetricRegistry metrics = new MetricRegistry();
+        ClusterEngine clusterEngine = new ClusterEngine();
+        clusterEngine.setSituationRetentionMs(TimeUnit.MINUTES.toMillis(5));
+        clusterEngine.setBlacklistRetentionMs(TimeUnit.MINUTES.toMillis(10));
+        clusterEngine.registerMetrics(metrics, "cluster");
+        clusterEngine.init(Arrays.asList(a1, a2), Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList());
+        clusterEngine.registerSituationHandler(this);
+
+        // Blacklist an alarm from a situation the engine does not know about
+        clusterEngine.handleAlarmFeedback(ImmutableAlarmFeedback.newBuilder()
+                .setSituationKey("uei.opennms.org/alarms/situation:unknown")
+                .setAlarmKey("a1")
+                .setFeedbackType(FeedbackType.FALSE_POSITIVE)
+                .setTimestamp(0)
+                .build());
+
+        long tick = clusterEngine.getTickResolutionMs();
+        clusterEngine.tick(tick);
+        assertThat(triggeredSituations, hasSize(1));
+        assertThat(clusterEngine.getSituationsById().keySet(), hasSize(1));
+        assertThat(metrics.getGauges().get("cluster.situations.size").getValue(), equalTo(1));
+        assertThat(metrics.getGauges().get("cluster.blacklists.size").getValue(), equalTo(1));
+        assertThat((Long) metrics.getGauges().get("cluster.situations.estimatedBytes").getValue(),
+                greaterThan(0L));
+
+        // Garbage collect the alarms in the situation, a new alarm is needed to trigger the garbage collection
+        tick = TimeUnit.HOURS.toMillis(3);
+        clusterEngine.onAlarmCreatedOrUpdated(ImmutableAlarm.newBuilder()
+                .setId("b1")
+                .setInventoryObjectId("n2")
+                .setInventoryObjectType("node")
+                .setTime(tick)
+                .build());
+        clusterEngine.tick(tick);
+
+        // The situation is retained for the retention period, the blacklist expired in the meantime
+        assertThat(clusterEngine.getSituationsById().keySet(), hasSize(1));
+        assertThat(metrics.getGauges().get("cluster.blacklists.size").getValue(), equalTo(0));
+        assertThat(metrics.meter("cluster.blacklists.expired").getCount(), equalTo(1L));
+
+        tick += TimeUnit.MINUTES.toMillis(5);
+        clusterEngine.tick(tick);
+        assertThat(clusterEngine.getSituationsById().keySet(), hasSize(0));
+        assertThat(metrics.getGauges().get("cluster.situations.size").getValue(), equalTo(0));
+        assertThat(metrics.getGauges().get("cluster.alarmToSituation.size").getValue(), equalTo(0));
+        assertThat(metrics.meter("cluster.situations.evicted").getCount(), equalTo(1L));
+        assertThat(metrics.getGauges().get("cluster.situations.estimatedBytes").getValue(), equalTo(0L));
+    }
+
     @Override
     public void onSituation(Situation i) {
         triggeredSituations.add(i);
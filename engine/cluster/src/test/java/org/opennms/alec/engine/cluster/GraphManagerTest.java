@@ -31,6 +31,7 @@ package org.opennms.alec.engine.cluster;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasSize;
 
@@ -151,6 +152,36 @@ public class GraphManagerTest {
         assertThat(graphManager.getNumDeferredObjects(), equalTo(0));
     }
 
+    /**
+     * Verifies that we stop waiting on objects that never appear once the retention period has elapsed.
+     */
+    @Test
+    public void canExpireDeferrals() {
+        final GraphManager graphManager = new GraphManager();
+        // Add a link that references two non-existent peers
+        graphManager.addInventory(new MockInventoryBuilder()
+                .withInventoryObject(MockInventoryType.LINK, "n1-c1-p1___n2-c1-p1")
+                .withPeerRelation(MockInventoryType.LINK, "n1-c1-p1___n2-c1-p1", MockInventoryType.PORT, "n1-c1-p1", MockInventoryType.PORT, "n2-c1-p1")
+                .getInventory());
+
+        // The deferral should be retained until the retention period has elapsed
+        assertThat(graphManager.expireDeferrals(0, 1000), equalTo(0));
+        assertThat(graphManager.getNumDeferredObjects(), equalTo(1));
+        assertThat(graphManager.getEstimatedDeferredBytes(), greaterThan(0L));
+        assertThat(graphManager.expireDeferrals(999, 1000), equalTo(0));
+        assertThat(graphManager.getNumDeferredObjects(), equalTo(1));
+
+        assertThat(graphManager.expireDeferrals(1000, 1000), equalTo(1));
+        assertThat(graphManager.getNumDeferredObjects(), equalTo(0));
+        assertThat(graphManager.getEstimatedDeferredBytes(), equalTo(0L));
+
+        // The link remains in the graph, without edges
+        graphManager.withGraph(g -> {
+            assertThat(g.getVertices(), hasSize(1));
+            assertThat(g.getEdges(), hasSize(0));
+        });
+    }
+
     @Test
     public void canHandleDeferredParent() {
         final GraphManager graphManager = new GraphManager();
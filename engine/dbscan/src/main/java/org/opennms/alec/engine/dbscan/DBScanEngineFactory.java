@@ -28,14 +28,31 @@
 
 package org.opennms.alec.engine.dbscan;
 
+import java.util.Objects;
+
 import org.opennms.alec.engine.api.EngineFactory;
 import org.opennms.alec.engine.cluster.AbstractClusterEngine;
 
+import com.codahale.metrics.MetricRegistry;
+
 public class DBScanEngineFactory implements EngineFactory {
 
+    private final MetricRegistry metrics;
+
     private double epsilon = DBScanEngine.DEFAULT_EPSILON;
     private double alpha = DBScanEngine.DEFAULT_ALPHA;
     private double beta = DBScanEngine.DEFAULT_BETA;
+    private long situationRetentionMs = AbstractClusterEngine.DEFAULT_SITUATION_RETENTION_MS;
+    private long blacklistRetentionMs = AbstractClusterEngine.DEFAULT_BLACKLIST_RETENTION_MS;
+    private long deferredInventoryRetentionMs = AbstractClusterEngine.DEFAULT_DEFERRED_INVENTORY_RETENTION_MS;
+
+    public DBScanEngineFactory() {
+        this(new MetricRegistry());
+    }
+
+    public DBScanEngineFactory(MetricRegistry metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
 
     @Override
     public String getName() {
@@ -44,7 +61,12 @@ public class DBScanEngineFactory implements EngineFactory {
 
     @Override
     public AbstractClusterEngine createEngine() {
-        return new DBScanEngine(epsilon, alpha, beta);
+        final DBScanEngine engine = new DBScanEngine(epsilon, alpha, beta);
+        engine.setSituationRetentionMs(situationRetentionMs);
+        engine.setBlacklistRetentionMs(blacklistRetentionMs);
+        engine.setDeferredInventoryRetentionMs(deferredInventoryRetentionMs);
+        engine.registerMetrics(metrics, getName());
+        return engine;
     }
 
     public double getEpsilon() {
@@ -70,4 +92,28 @@ public class DBScanEngineFactory implements EngineFactory {
     public void setBeta(double beta) {
         this.beta = beta;
     }
+
+    public long getSituationRetentionMs() {
+        return situationRetentionMs;
+    }
+
+    public void setSituationRetentionMs(long situationRetentionMs) {
+        this.situationRetentionMs = situationRetentionMs;
+    }
+
+    public long getBlacklistRetentionMs() {
+        return blacklistRetentionMs;
+    }
+
+    public void setBlacklistRetentionMs(long blacklistRetentionMs) {
+        this.blacklistRetentionMs = blacklistRetentionMs;
+    }
+
+    public long getDeferredInventoryRetentionMs() {
+        return deferredInventoryRetentionMs;
+    }
+
+    public void setDeferredInventoryRetentionMs(long deferredInventoryRetentionMs) {
+        this.deferredInventoryRetentionMs = deferredInventoryRetentionMs;
+    }
 }
@@ -28,8 +28,13 @@
 
 package org.opennms.alec.engine.deeplearning;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.math3.ml.clustering.Cluster;
 import org.opennms.alec.engine.cluster.AbstractClusterEngine;
@@ -37,6 +42,11 @@ import org.opennms.alec.engine.cluster.AlarmInSpaceTime;
 import org.opennms.alec.engine.cluster.CEEdge;
 import org.opennms.alec.engine.cluster.CEVertex;
 import org.osgi.framework.BundleContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 
 import edu.uci.ics.jung.graph.Graph;
 
@@ -44,34 +54,97 @@ import edu.uci.ics.jung.graph.Graph;
  * A clustering engine based on Tensorflow.
  *
  * We load a Tensorlfow model delegate to the {@link TFClusterer} to
- * perform the clustering.
+ * perform the clustering. The model is evaluated by the {@link RelationClassifier}
+ * selected by {@link DeepLearningEngineConf#getInferenceBackend()}.
+ *
+ * The model is warmed up with synthetic vectors when the engine is initialized, so that the
+ * first tick does not pay for any lazy initialization.
  */
 public class DeepLearningEngine extends AbstractClusterEngine {
+    private static final Logger LOG = LoggerFactory.getLogger(DeepLearningEngine.class);
+    private static final String METRIC_PREFIX = "deeplearning";
+    private static final long WARM_UP_SEED = 0x5EEDL;
+
+    private static final String[] WARM_UP_TYPES = new String[]{"Node", "SnmpInterface", "SnmpInterfaceLink", "BgpPeer", "<UNK>"};
+
     private final DeepLearningEngineConf conf;
-    private final TFModel tfModel;
+    private final RelationClassifier relationClassifier;
+    private final RelationClassifier timedRelationClassifier;
     private Vectorizer vectorizer;
     private TFClusterer tfClusterer;
 
     public DeepLearningEngine(BundleContext bundleContext, DeepLearningEngineConf conf) {
-        this(new TFModel(bundleContext, conf.getModelPath()), conf);
+        this(bundleContext, conf, new MetricRegistry());
     }
 
-    private DeepLearningEngine(TFModel tfModel, DeepLearningEngineConf conf) {
-        this.tfModel = Objects.requireNonNull(tfModel);
+    public DeepLearningEngine(BundleContext bundleContext, DeepLearningEngineConf conf, MetricRegistry metrics) {
         this.conf = Objects.requireNonNull(conf);
+        final Timer modelLoadTimer = metrics.timer(name(METRIC_PREFIX, "modelLoad"));
+        try (Timer.Context ctx = modelLoadTimer.time()) {
+            relationClassifier = newRelationClassifier(bundleContext, conf);
+        }
+        timedRelationClassifier = new TimedRelationClassifier(relationClassifier, metrics, METRIC_PREFIX);
     }
 
     @Override
     public void onInit() {
+        warmUp();
         vectorizer = new Vectorizer(getGraphManager(), this);
-        tfClusterer = new TFClusterer(tfModel, vectorizer, conf);
+        tfClusterer = new TFClusterer(timedRelationClassifier, vectorizer, conf);
         tfClusterer.init();
     }
 
+    /**
+     * Evaluate synthetic vectors, both one at a time and in batches, in order to trigger any
+     * lazy initialization in the model before processing real alarms.
+     *
+     * The calls are made directly against the model, and are not included in the inference metrics.
+     */
+    private void warmUp() {
+        final int numIterations = conf.getNumWarmUpIterations();
+        if (numIterations < 1) {
+            return;
+        }
+        final long startNanos = System.nanoTime();
+        // Use a fixed seed so that every warm-up evaluates the same vectors
+        final Random random = new Random(WARM_UP_SEED);
+        for (int i = 0; i < numIterations; i++) {
+            final List<InputVector> batch = new ArrayList<>(conf.getWarmUpBatchSize());
+            for (int j = 0; j < conf.getWarmUpBatchSize(); j++) {
+                batch.add(InputVector.builder()
+                        .typeA(WARM_UP_TYPES[random.nextInt(WARM_UP_TYPES.length)])
+                        .typeB(WARM_UP_TYPES[random.nextInt(WARM_UP_TYPES.length)])
+                        .sameInstance(random.nextBoolean())
+                        .sameParent(random.nextBoolean())
+                        .shareAncestors(random.nextBoolean())
+                        .timeDifferenceInSeconds((double)random.nextInt(600000))
+                        .distanceOnGraph((double)random.nextInt(20))
+                        .similarityOfInventoryObjectIds(random.nextDouble())
+                        .similarityOfInventoryObjectLabels(random.nextDouble())
+                        .build());
+            }
+            relationClassifier.areRelated(batch);
+            relationClassifier.isRelated(batch.get(0));
+        }
+        LOG.info("Warmed up the model with {} batches of {} vectors in {}ms.", numIterations, conf.getWarmUpBatchSize(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
     @Override
     public void onDestroy() {
         tfClusterer.destroy();
-        tfModel.close();
+        relationClassifier.close();
+    }
+
+    private static RelationClassifier newRelationClassifier(BundleContext bundleContext, DeepLearningEngineConf conf) {
+        switch (conf.getInferenceBackend()) {
+            case JAVA:
+                return new JavaModel(conf.getModelPath());
+            case TENSORFLOW:
+            default:
+                return new TFModel(bundleContext, conf.getModelPath(), TFModel.toConfigProto(
+                        conf.getNumTensorFlowIntraOpThreads(), conf.getNumTensorFlowInterOpThreads()));
+        }
     }
 
     @Override
@@ -37,11 +37,34 @@ public class DeepLearningEngineConf {
     private static final int DEFAULT_NUM_GRAPH_THREADS = 2;
     private static final int DEFAULT_NUM_TF_THREADS = Math.max(Runtime.getRuntime().availableProcessors() - 3, 1);
     private static final double DEFAULT_EPSILON = 500;
+    private static final InferenceBackend DEFAULT_INFERENCE_BACKEND = InferenceBackend.TENSORFLOW;
+    private static final int DEFAULT_NUM_TF_INTRA_OP_THREADS = 1;
+    private static final int DEFAULT_NUM_WARM_UP_ITERATIONS = 10;
+    private static final int DEFAULT_WARM_UP_BATCH_SIZE = 100;
+
+    /**
+     * The implementation used to evaluate the model.
+     */
+    public enum InferenceBackend {
+        /**
+         * Evaluate the SavedModel using TensorFlow.
+         */
+        TENSORFLOW,
+        /**
+         * Evaluate the exported model weights in the JVM, see {@link JavaModel}.
+         */
+        JAVA
+    }
 
     private String modelPath;
+    private InferenceBackend inferenceBackend = DEFAULT_INFERENCE_BACKEND;
     private double epsilon = DEFAULT_EPSILON;
     private int numGraphProcessingThreads = DEFAULT_NUM_GRAPH_THREADS;
     private int numTensorFlowProcessingThreads = DEFAULT_NUM_TF_THREADS;
+    private int numTensorFlowIntraOpThreads = DEFAULT_NUM_TF_INTRA_OP_THREADS;
+    private int numTensorFlowInterOpThreads = 0;
+    private int numWarmUpIterations = DEFAULT_NUM_WARM_UP_ITERATIONS;
+    private int warmUpBatchSize = DEFAULT_WARM_UP_BATCH_SIZE;
 
     public String getModelPath() {
         return modelPath;
@@ -51,6 +74,14 @@ public class DeepLearningEngineConf {
         this.modelPath = modelPath;
     }
 
+    public InferenceBackend getInferenceBackend() {
+        return inferenceBackend;
+    }
+
+    public void setInferenceBackend(InferenceBackend inferenceBackend) {
+        this.inferenceBackend = inferenceBackend != null ? inferenceBackend : DEFAULT_INFERENCE_BACKEND;
+    }
+
     public double getEpsilon() {
         return epsilon;
     }
@@ -88,29 +119,104 @@ public class DeepLearningEngineConf {
         }
     }
 
+    /**
+     * Number of threads TensorFlow uses to parallelize the execution of a single operation.
+     *
+     * The model is small, and the operations are already issued concurrently by the TensorFlow
+     * processing threads, so we default to a single thread in order to avoid oversubscribing the CPUs.
+     *
+     * @return the number of threads, or 0 if TensorFlow should choose
+     */
+    public int getNumTensorFlowIntraOpThreads() {
+        return numTensorFlowIntraOpThreads;
+    }
+
+    public void setNumTensorFlowIntraOpThreads(int numTensorFlowIntraOpThreads) {
+        if (numTensorFlowIntraOpThreads < 0) {
+            throw new IllegalArgumentException("Number of TensorFlow intra-op threads must be >= 0. Got: " + numTensorFlowIntraOpThreads);
+        }
+        this.numTensorFlowIntraOpThreads = numTensorFlowIntraOpThreads;
+    }
+
+    /**
+     * Number of threads TensorFlow uses to execute independent operations.
+     *
+     * @return the number of threads, defaults to the number of TensorFlow processing threads
+     */
+    public int getNumTensorFlowInterOpThreads() {
+        return numTensorFlowInterOpThreads > 0 ? numTensorFlowInterOpThreads : getNumTensorFlowProcessingThreads();
+    }
+
+    public void setNumTensorFlowInterOpThreads(int numTensorFlowInterOpThreads) {
+        if (numTensorFlowInterOpThreads < 0) {
+            throw new IllegalArgumentException("Number of TensorFlow inter-op threads must be >= 0. Got: " + numTensorFlowInterOpThreads);
+        }
+        // Use a value of 0 to fallback to the number of processing threads - this is used in the Blueprint
+        this.numTensorFlowInterOpThreads = numTensorFlowInterOpThreads;
+    }
+
+    /**
+     * Number of synthetic batches to evaluate when the engine is initialized, before processing
+     * the first tick.
+     *
+     * @return the number of batches, or 0 if the warm-up is disabled
+     */
+    public int getNumWarmUpIterations() {
+        return numWarmUpIterations;
+    }
+
+    public void setNumWarmUpIterations(int numWarmUpIterations) {
+        if (numWarmUpIterations < 0) {
+            throw new IllegalArgumentException("Number of warm-up iterations must be >= 0. Got: " + numWarmUpIterations);
+        }
+        this.numWarmUpIterations = numWarmUpIterations;
+    }
+
+    public int getWarmUpBatchSize() {
+        return warmUpBatchSize;
+    }
+
+    public void setWarmUpBatchSize(int warmUpBatchSize) {
+        if (warmUpBatchSize <= 0) {
+            throw new IllegalArgumentException("Warm-up batch size must be strictly positive. Got: " + warmUpBatchSize);
+        }
+        this.warmUpBatchSize = warmUpBatchSize;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         DeepLearningEngineConf that = (DeepLearningEngineConf) o;
         return Objects.equals(modelPath, that.modelPath) &&
+                Objects.equals(inferenceBackend, that.inferenceBackend) &&
                 Objects.equals(epsilon, that.epsilon) &&
                 Objects.equals(numGraphProcessingThreads, that.numGraphProcessingThreads) &&
-                Objects.equals(numTensorFlowProcessingThreads, that.numTensorFlowProcessingThreads);
+                Objects.equals(numTensorFlowProcessingThreads, that.numTensorFlowProcessingThreads) &&
+                Objects.equals(numTensorFlowIntraOpThreads, that.numTensorFlowIntraOpThreads) &&
+                Objects.equals(numTensorFlowInterOpThreads, that.numTensorFlowInterOpThreads) &&
+                Objects.equals(numWarmUpIterations, that.numWarmUpIterations) &&
+                Objects.equals(warmUpBatchSize, that.warmUpBatchSize);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(modelPath, epsilon, numGraphProcessingThreads, numTensorFlowProcessingThreads);
+        return Objects.hash(modelPath, inferenceBackend, epsilon, numGraphProcessingThreads, numTensorFlowProcessingThreads,
+                numTensorFlowIntraOpThreads, numTensorFlowInterOpThreads, numWarmUpIterations, warmUpBatchSize);
     }
 
     @Override
     public String toString() {
         return "DeepLearningEngineConf{" +
                 "modelPath='" + getModelPath() + '\'' +
+                ", inferenceBackend=" + getInferenceBackend() +
                 ", epsilon=" + getEpsilon() +
                 ", numGraphProcessingThreads=" + getNumGraphProcessingThreads() +
                 ", numTensorFlowProcessingThreads=" + getNumTensorFlowProcessingThreads() +
+                ", numTensorFlowIntraOpThreads=" + getNumTensorFlowIntraOpThreads() +
+                ", numTensorFlowInterOpThreads=" + getNumTensorFlowInterOpThreads() +
+                ", numWarmUpIterations=" + getNumWarmUpIterations() +
+                ", warmUpBatchSize=" + getWarmUpBatchSize() +
                 '}';
     }
 }
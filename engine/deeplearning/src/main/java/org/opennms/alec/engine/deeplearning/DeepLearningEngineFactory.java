@@ -33,14 +33,22 @@ import java.util.Objects;
 import org.opennms.alec.engine.api.EngineFactory;
 import org.osgi.framework.BundleContext;
 
+import com.codahale.metrics.MetricRegistry;
+
 public class DeepLearningEngineFactory implements EngineFactory {
 
     private final BundleContext bundleContext;
     private final DeepLearningEngineConf conf;
+    private final MetricRegistry metrics;
 
     public DeepLearningEngineFactory(BundleContext bundleContext, DeepLearningEngineConf conf) {
+        this(bundleContext, conf, new MetricRegistry());
+    }
+
+    public DeepLearningEngineFactory(BundleContext bundleContext, DeepLearningEngineConf conf, MetricRegistry metrics) {
         this.bundleContext = Objects.requireNonNull(bundleContext);
         this.conf = Objects.requireNonNull(conf);
+        this.metrics = Objects.requireNonNull(metrics);
     }
 
     @Override
@@ -55,7 +63,9 @@ public class DeepLearningEngineFactory implements EngineFactory {
 
     @Override
     public DeepLearningEngine createEngine() {
-        return new DeepLearningEngine(bundleContext, conf);
+        final DeepLearningEngine engine = new DeepLearningEngine(bundleContext, conf, metrics);
+        engine.registerMetrics(metrics, getName());
+        return engine;
     }
 
 }
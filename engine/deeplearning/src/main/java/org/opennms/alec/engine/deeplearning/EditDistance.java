@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.deeplearning;
+
+import java.util.Objects;
+
+/**
+ * Levenshtein based edit distance, normalized to [0,1].
+ *
+ * Yields the same results as {@link info.debatty.java.stringsimilarity.NormalizedLevenshtein}, but:
+ *  * Returns early for identical strings, and skips any common prefix and suffix before
+ *    filling in the matrix, since these do not contribute to the distance
+ *  * Re-uses per-thread row buffers instead of allocating new arrays on every call
+ */
+public class EditDistance {
+
+    private static final ThreadLocal<int[][]> ROWS = ThreadLocal.withInitial(() -> new int[2][64]);
+
+    private EditDistance() {}
+
+    public static double normalizedDistance(String s1, String s2) {
+        Objects.requireNonNull(s1, "s1 must not be null");
+        Objects.requireNonNull(s2, "s2 must not be null");
+        if (s1.equals(s2)) {
+            return 0d;
+        }
+        final int maxLength = Math.max(s1.length(), s2.length());
+        if (maxLength == 0) {
+            return 0d;
+        }
+        return distance(s1, s2) / (double) maxLength;
+    }
+
+    public static int distance(String s1, String s2) {
+        int start = 0;
+        int end1 = s1.length();
+        int end2 = s2.length();
+
+        // Skip the common prefix and suffix
+        while (start < end1 && start < end2 && s1.charAt(start) == s2.charAt(start)) {
+            start++;
+        }
+        while (end1 > start && end2 > start && s1.charAt(end1 - 1) == s2.charAt(end2 - 1)) {
+            end1--;
+            end2--;
+        }
+
+        final int len1 = end1 - start;
+        final int len2 = end2 - start;
+        if (len1 == 0) {
+            return len2;
+        } else if (len2 == 0) {
+            return len1;
+        }
+
+        int[] prev = getRow(0, len2 + 1);
+        int[] curr = getRow(1, len2 + 1);
+        for (int j = 0; j <= len2; j++) {
+            prev[j] = j;
+        }
+
+        for (int i = 0; i < len1; i++) {
+            final char c1 = s1.charAt(start + i);
+            curr[0] = i + 1;
+            for (int j = 0; j < len2; j++) {
+                final int cost = c1 == s2.charAt(start + j) ? 0 : 1;
+                curr[j + 1] = Math.min(Math.min(curr[j] + 1, prev[j + 1] + 1), prev[j] + cost);
+            }
+            final int[] swap = prev;
+            prev = curr;
+            curr = swap;
+        }
+        return prev[len2];
+    }
+
+    private static int[] getRow(int index, int minLength) {
+        final int[][] rows = ROWS.get();
+        if (rows[index].length < minLength) {
+            rows[index] = new int[Math.max(minLength, rows[index].length * 2)];
+        }
+        return rows[index];
+    }
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.deeplearning;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+/**
+ * A pure Java implementation of the model.
+ *
+ * Loads the same vocabularies as the {@link TFModel} along with the weights exported
+ * from the SavedModel (see {@link TFModel#exportWeights}) and evaluates the network directly.
+ *
+ * The model encodes the categorical features with embeddings, the numerical features with a
+ * single dense unit, concatenates these with the binary features and feeds the result to
+ * a logistic output unit.
+ */
+public class JavaModel implements RelationClassifier {
+    private static final Logger LOG = LoggerFactory.getLogger(JavaModel.class);
+    private static final String CLASSPATH_MODEL_PATH = "/tf_model/";
+
+    private static final int NUM_BINARY_FEATURES = 3;
+    private static final float THRESHOLD = 0.5f;
+
+    private final ModelVocabulary vocabulary;
+
+    private final int embeddingSize;
+    private final float[] typeAEmbeddings;
+    private final float[] typeBEmbeddings;
+    private final float[] numericalWeights = new float[ModelWeights.NUMERICAL_FEATURES.size()];
+    private final float[] numericalBiases = new float[ModelWeights.NUMERICAL_FEATURES.size()];
+    private final float[] outputWeights;
+    private final float outputBias;
+
+    public JavaModel() {
+        this("");
+    }
+
+    public JavaModel(String modelPath) {
+        this(loadVocabulary(modelPath), loadWeights(modelPath));
+    }
+
+    public JavaModel(ModelVocabulary vocabulary, ModelWeights weights) {
+        this.vocabulary = vocabulary;
+
+        final long vocabSizeA = vocabulary.getTypeAVocabularySize();
+        final long vocabSizeB = vocabulary.getTypeBVocabularySize();
+        final float[] outputWeightsAsColumn = weights.getValues(ModelWeights.OUTPUT_WEIGHTS,
+                weights.getShape(ModelWeights.OUTPUT_WEIGHTS)[0], 1);
+        final int numNonEmbeddedFeatures = NUM_BINARY_FEATURES + ModelWeights.NUMERICAL_FEATURES.size();
+        embeddingSize = (outputWeightsAsColumn.length - numNonEmbeddedFeatures) / 2;
+
+        typeAEmbeddings = weights.getValues(ModelWeights.TYPE_A_EMBEDDINGS, vocabSizeA, embeddingSize);
+        typeBEmbeddings = weights.getValues(ModelWeights.TYPE_B_EMBEDDINGS, vocabSizeB, embeddingSize);
+        for (int k = 0; k < ModelWeights.NUMERICAL_FEATURES.size(); k++) {
+            final String feature = ModelWeights.NUMERICAL_FEATURES.get(k);
+            numericalWeights[k] = weights.getValues(ModelWeights.getNumericalWeightsName(feature), 1, 1)[0];
+            numericalBiases[k] = weights.getValues(ModelWeights.getNumericalBiasesName(feature), 1)[0];
+        }
+        outputWeights = weights.getValues(ModelWeights.OUTPUT_WEIGHTS, 2L * embeddingSize + numNonEmbeddedFeatures, 1);
+        outputBias = weights.getValues(ModelWeights.OUTPUT_BIASES, 1)[0];
+    }
+
+    @Override
+    public boolean isRelated(InputVector inputVector) {
+        return isRelated(vocabulary.toTypeIdA(inputVector.getTypeA()),
+                vocabulary.toTypeIdB(inputVector.getTypeB()),
+                inputVector.isSameInstance(),
+                inputVector.isSameParent(),
+                inputVector.isShareAncestor(),
+                (float)inputVector.getTimeDifferenceInSeconds(),
+                (float)inputVector.getDistanceOnGraph(),
+                (float)inputVector.getSimilarityOfInventoryObjectIds(),
+                (float)inputVector.getSimilarityOfInventoryObjectLabels());
+    }
+
+    @Override
+    public boolean[] areRelated(List<InputVector> inputVectors) {
+        final int n = inputVectors.size();
+        final int[] typeA = new int[n];
+        final int[] typeB = new int[n];
+        final boolean[] sameInstance = new boolean[n];
+        final boolean[] sameParent = new boolean[n];
+        final boolean[] shareAncestor = new boolean[n];
+        final float[] timeDelta = new float[n];
+        final float[] distanceOnGraph = new float[n];
+        final float[] ioIdSimilarity = new float[n];
+        final float[] ioLabelSimilarity = new float[n];
+        for (int i = 0; i < n; i++) {
+            final InputVector inputVector = inputVectors.get(i);
+            typeA[i] = vocabulary.toTypeIdA(inputVector.getTypeA());
+            typeB[i] = vocabulary.toTypeIdB(inputVector.getTypeB());
+            sameInstance[i] = inputVector.isSameInstance();
+            sameParent[i] = inputVector.isSameParent();
+            shareAncestor[i] = inputVector.isShareAncestor();
+            timeDelta[i] = (float)inputVector.getTimeDifferenceInSeconds();
+            distanceOnGraph[i] = (float)inputVector.getDistanceOnGraph();
+            ioIdSimilarity[i] = (float)inputVector.getSimilarityOfInventoryObjectIds();
+            ioLabelSimilarity[i] = (float)inputVector.getSimilarityOfInventoryObjectLabels();
+        }
+
+        final boolean[] related = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            related[i] = isRelated(typeA[i], typeB[i], sameInstance[i], sameParent[i], shareAncestor[i],
+                    timeDelta[i], distanceOnGraph[i], ioIdSimilarity[i], ioLabelSimilarity[i]);
+        }
+        return related;
+    }
+
+    private boolean isRelated(int typeA, int typeB, boolean sameInstance, boolean sameParent, boolean shareAncestor,
+                              float timeDelta, float distanceOnGraph, float ioIdSimilarity, float ioLabelSimilarity) {
+        // Walk through the concatenated features in the same order as the model
+        float logit = 0;
+        int w = 0;
+        for (int j = 0; j < embeddingSize; j++) {
+            logit += typeAEmbeddings[typeA * embeddingSize + j] * outputWeights[w++];
+        }
+        for (int j = 0; j < embeddingSize; j++) {
+            logit += typeBEmbeddings[typeB * embeddingSize + j] * outputWeights[w++];
+        }
+        logit += (sameInstance ? 1f : 0f) * outputWeights[w++];
+        logit += (sameParent ? 1f : 0f) * outputWeights[w++];
+        logit += (shareAncestor ? 1f : 0f) * outputWeights[w++];
+        logit += (timeDelta * numericalWeights[0] + numericalBiases[0]) * outputWeights[w++];
+        logit += (distanceOnGraph * numericalWeights[1] + numericalBiases[1]) * outputWeights[w++];
+        logit += (ioIdSimilarity * numericalWeights[2] + numericalBiases[2]) * outputWeights[w++];
+        logit += (ioLabelSimilarity * numericalWeights[3] + numericalBiases[3]) * outputWeights[w];
+        logit += outputBias;
+
+        final float probability = (float)(1d / (1d + Math.exp(-logit)));
+        return probability >= THRESHOLD;
+    }
+
+    private static ModelVocabulary loadVocabulary(String modelPath) {
+        try (Reader reader = openModelFile(modelPath, ModelVocabulary.HYPER_PARAMETERS_FILE_NAME)) {
+            return ModelVocabulary.load(reader);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load model hyper parameters.", e);
+        }
+    }
+
+    private static ModelWeights loadWeights(String modelPath) {
+        try (Reader reader = openModelFile(modelPath, ModelWeights.WEIGHTS_FILE_NAME)) {
+            return ModelWeights.read(reader);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load model weights.", e);
+        }
+    }
+
+    private static Reader openModelFile(String modelPath, String fileName) throws IOException {
+        if (Strings.isNullOrEmpty(modelPath)) {
+            LOG.debug("No model path is set. Loading {} from the class-path.", fileName);
+            final InputStream is = JavaModel.class.getResourceAsStream(CLASSPATH_MODEL_PATH + fileName);
+            if (is == null) {
+                throw new IOException("No resource found on the class-path for: " + CLASSPATH_MODEL_PATH + fileName);
+            }
+            return new InputStreamReader(is, StandardCharsets.UTF_8);
+        }
+        LOG.debug("Loading {} from: {}", fileName, modelPath);
+        return Files.newBufferedReader(Paths.get(modelPath, fileName), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.deeplearning;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Maps the categorical features to the ids used by the model, as defined
+ * in the model's hyper-parameters (model_hyperparameters.json).
+ */
+public class ModelVocabulary {
+    public static final String HYPER_PARAMETERS_FILE_NAME = "model_hyperparameters.json";
+
+    private static final Gson gson = new Gson();
+
+    private final Map<String,Integer> typeA_ioTypeToId = new HashMap<>();
+    private final Map<String,Integer> typeB_ioTypeToId = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public static ModelVocabulary load(Reader hyperParametersReader) throws IOException {
+        List<String> type_a_vocab = null;
+        List<String> type_b_vocab = null;
+
+        try (JsonReader reader = new JsonReader(hyperParametersReader)) {
+            Map<String,Object> result = gson.fromJson(reader , Map.class);
+            List<Map<String,Object>> inputFeatures = (List<Map<String,Object>>)result.get("input_features");
+            for (Map<String,Object> inputFeature : inputFeatures) {
+                if ("type_a".equals(inputFeature.get("name"))) {
+                    type_a_vocab = (List<String>)inputFeature.get("vocab");
+                } else if ("type_b".equals(inputFeature.get("name"))) {
+                    type_b_vocab = (List<String>)inputFeature.get("vocab");
+                }
+            }
+        }
+
+        if (type_a_vocab == null) {
+            throw new IllegalStateException("Failed to find vocabulary for type_a");
+        }
+        if (type_b_vocab == null) {
+            throw new IllegalStateException("Failed to find vocabulary for type_b");
+        }
+        return new ModelVocabulary(type_a_vocab, type_b_vocab);
+    }
+
+    private ModelVocabulary(List<String> type_a_vocab, List<String> type_b_vocab) {
+        for (int i = 0; i < type_a_vocab.size(); i++) {
+            typeA_ioTypeToId.put(type_a_vocab.get(i), i);
+        }
+        for (int i = 0; i < type_b_vocab.size(); i++) {
+            typeB_ioTypeToId.put(type_b_vocab.get(i), i);
+        }
+    }
+
+    public int toTypeIdA(String inventoryObjectType) {
+        return typeA_ioTypeToId.getOrDefault(inventoryObjectType, 0);
+    }
+
+    public int toTypeIdB(String inventoryObjectType) {
+        return typeB_ioTypeToId.getOrDefault(inventoryObjectType, 0);
+    }
+
+    public int getTypeAVocabularySize() {
+        return typeA_ioTypeToId.size();
+    }
+
+    public int getTypeBVocabularySize() {
+        return typeB_ioTypeToId.size();
+    }
+}
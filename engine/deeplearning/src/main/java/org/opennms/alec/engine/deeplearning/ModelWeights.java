@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.deeplearning;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * The trained variables of the model, exported from the TensorFlow SavedModel to a flat file
+ * (model_weights.json) so that the model can be evaluated without TensorFlow.
+ *
+ * Each variable is stored with its shape, and its values flattened in row-major order.
+ */
+public class ModelWeights {
+    public static final String WEIGHTS_FILE_NAME = "model_weights.json";
+
+    public static final String TYPE_A_EMBEDDINGS = "type_a/embeddings";
+    public static final String TYPE_B_EMBEDDINGS = "type_b/embeddings";
+    public static final String OUTPUT_WEIGHTS = "related/predictions_related/weights";
+    public static final String OUTPUT_BIASES = "related/predictions_related/biases";
+
+    /**
+     * Numerical features, in the order in which they are concatenated by the model.
+     */
+    public static final List<String> NUMERICAL_FEATURES = Collections.unmodifiableList(Arrays.asList(
+            "time_delta_seconds",
+            "distance_on_graph",
+            "io_id_similarity",
+            "io_label_similarity"));
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private final Map<String, Variable> variablesByName;
+
+    public static class Variable {
+        private long[] shape;
+        private float[] values;
+
+        public Variable(long[] shape, float[] values) {
+            this.shape = Objects.requireNonNull(shape);
+            this.values = Objects.requireNonNull(values);
+        }
+
+        public long[] getShape() {
+            return shape;
+        }
+
+        public float[] getValues() {
+            return values;
+        }
+    }
+
+    public ModelWeights(Map<String, Variable> variablesByName) {
+        this.variablesByName = new LinkedHashMap<>(variablesByName);
+    }
+
+    /**
+     * @return the names of all the variables required to evaluate the model
+     */
+    public static List<String> getVariableNames() {
+        final List<String> names = new ArrayList<>();
+        names.add(TYPE_A_EMBEDDINGS);
+        names.add(TYPE_B_EMBEDDINGS);
+        for (String feature : NUMERICAL_FEATURES) {
+            names.add(getNumericalWeightsName(feature));
+            names.add(getNumericalBiasesName(feature));
+        }
+        names.add(OUTPUT_WEIGHTS);
+        names.add(OUTPUT_BIASES);
+        return names;
+    }
+
+    public static String getNumericalWeightsName(String feature) {
+        return feature + "/weights";
+    }
+
+    public static String getNumericalBiasesName(String feature) {
+        return feature + "/biases";
+    }
+
+    public static ModelWeights read(Reader reader) {
+        final Map<String, Variable> variablesByName = gson.fromJson(reader, new TypeToken<LinkedHashMap<String, Variable>>(){}.getType());
+        if (variablesByName == null) {
+            throw new IllegalStateException("No variables found.");
+        }
+        return new ModelWeights(variablesByName);
+    }
+
+    public void write(Writer writer) {
+        gson.toJson(variablesByName, writer);
+    }
+
+    public long[] getShape(String name) {
+        final Variable variable = variablesByName.get(name);
+        if (variable == null) {
+            throw new IllegalStateException("No variable found with name: " + name);
+        }
+        return variable.getShape();
+    }
+
+    /**
+     * Retrieve the values for the variable with the given name, validating the shape.
+     *
+     * @param name name of the variable
+     * @param shape expected shape
+     * @return the values, flattened in row-major order
+     */
+    public float[] getValues(String name, long... shape) {
+        final Variable variable = variablesByName.get(name);
+        if (variable == null) {
+            throw new IllegalStateException("No variable found with name: " + name);
+        }
+        if (!Arrays.equals(variable.getShape(), shape)) {
+            throw new IllegalStateException(String.format("Variable %s has shape %s, but %s was expected.",
+                    name, Arrays.toString(variable.getShape()), Arrays.toString(shape)));
+        }
+        final long numElements = Arrays.stream(shape).reduce(1, (a, b) -> a * b);
+        if (variable.getValues().length != numElements) {
+            throw new IllegalStateException(String.format("Variable %s has %d values, but %d were expected.",
+                    name, variable.getValues().length, numElements));
+        }
+        return variable.getValues();
+    }
+
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.deeplearning;
+
+import java.util.List;
+
+/**
+ * A binary classifier used to determine whether or not two alarms are related.
+ */
+public interface RelationClassifier extends AutoCloseable {
+
+    boolean isRelated(InputVector inputVector);
+
+    /**
+     * Classify many vectors at once.
+     *
+     * @param inputVectors vectors to classify
+     * @return the result for each of the given vectors, in the same order
+     */
+    default boolean[] areRelated(List<InputVector> inputVectors) {
+        final boolean[] related = new boolean[inputVectors.size()];
+        for (int i = 0; i < related.length; i++) {
+            related[i] = isRelated(inputVectors.get(i));
+        }
+        return related;
+    }
+
+    @Override
+    void close();
+
+}
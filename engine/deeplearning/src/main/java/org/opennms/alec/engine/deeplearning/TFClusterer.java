@@ -67,7 +67,7 @@ import edu.uci.ics.jung.graph.Graph;
 public class TFClusterer {
     private static final Logger LOG = LoggerFactory.getLogger(TFClusterer.class);
 
-    private final TFModel tfModel;
+    private final RelationClassifier relationClassifier;
     private final Vectorizer vectorizer;
 
     private final double epsilon;
@@ -79,8 +79,8 @@ public class TFClusterer {
 
     private final WeakComponentClusterer<CEVertex, CEEdge> weakComponentClusterer = new WeakComponentClusterer<>();
 
-    public TFClusterer(TFModel tfModel, Vectorizer vectorizer, DeepLearningEngineConf conf) {
-        this.tfModel = Objects.requireNonNull(tfModel);
+    public TFClusterer(RelationClassifier relationClassifier, Vectorizer vectorizer, DeepLearningEngineConf conf) {
+        this.relationClassifier = Objects.requireNonNull(relationClassifier);
         this.vectorizer = Objects.requireNonNull(vectorizer);
         Objects.requireNonNull(conf);
 
@@ -291,7 +291,7 @@ public class TFClusterer {
 
                 LOG.trace("Processing task: {}", task);
                 try {
-                    final TFTaskVisitor visitor = new TFTaskVisitor(tfModel, vectorizer, relationQueue);
+                    final TFTaskVisitor visitor = new TFTaskVisitor(relationClassifier, vectorizer, relationQueue);
                     task.visit(visitor);
                     LOG.trace("Done processing task. {} related calls total.", visitor.getNumIsRelatedCalls());
                 } catch (Exception e) {
@@ -307,14 +307,23 @@ public class TFClusterer {
 
     private static class TFTaskVisitor implements TFClustererTasks.TaskVisitor {
 
-        private final TFModel tfModel;
+        /**
+         * Maximum number of vectors classified in a single call, bounds the memory used by vertices with many alarms.
+         */
+        private static final int MAX_BATCH_SIZE = 1000;
+
+        private final RelationClassifier relationClassifier;
         private final Vectorizer vectorizer;
         private final BlockingQueue<TFClustererTasks.RelatesTo> relationQueue;
 
+        private final List<AlarmInSpaceTime> pendingA1s = new ArrayList<>(MAX_BATCH_SIZE);
+        private final List<AlarmInSpaceTime> pendingA2s = new ArrayList<>(MAX_BATCH_SIZE);
+        private final List<InputVector> pendingVectors = new ArrayList<>(MAX_BATCH_SIZE);
+
         private long numIsRelatedCalls = 0;
 
-        public TFTaskVisitor(TFModel tfModel, Vectorizer vectorizer, BlockingQueue<TFClustererTasks.RelatesTo> relationQueue) {
-            this.tfModel = tfModel;
+        public TFTaskVisitor(RelationClassifier relationClassifier, Vectorizer vectorizer, BlockingQueue<TFClustererTasks.RelatesTo> relationQueue) {
+            this.relationClassifier = relationClassifier;
             this.vectorizer = vectorizer;
             this.relationQueue = relationQueue;
         }
@@ -331,13 +340,10 @@ public class TFClusterer {
                 for (int j = i + 1; j < alarms.size(); j++) {
                     final Alarm a2 = alarms.get(j);
                     final AlarmInSpaceTime a2st = new AlarmInSpaceTime(vertex, a2);
-                    final InputVector inputVector = vectorizer.vectorize(a1st, a2st);
-                    if (tfModel.isRelated(inputVector)) {
-                        relationQueue.add(new TFClustererTasks.RelatesTo(a1st, a2st, inputVector));
-                    }
-                    numIsRelatedCalls++;
+                    enqueue(a1st, a2st);
                 }
             }
+            flush();
         }
 
         @Override
@@ -351,13 +357,39 @@ public class TFClusterer {
 
                 for (Alarm a2 : v2.getAlarms()) {
                     final AlarmInSpaceTime a2st = new AlarmInSpaceTime(v2, a2);
-                    final InputVector inputVector = vectorizer.vectorize(a1st, a2st);
-                    if (tfModel.isRelated(inputVector)) {
-                        relationQueue.add(new TFClustererTasks.RelatesTo(a1st, a2st, inputVector));
-                    }
-                    numIsRelatedCalls++;
+                    enqueue(a1st, a2st);
+                }
+            }
+            flush();
+        }
+
+        private void enqueue(AlarmInSpaceTime a1st, AlarmInSpaceTime a2st) {
+            pendingA1s.add(a1st);
+            pendingA2s.add(a2st);
+            pendingVectors.add(vectorizer.vectorize(a1st, a2st));
+            if (pendingVectors.size() >= MAX_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Classify the pending pairs with a single call to the model.
+         */
+        private void flush() {
+            if (pendingVectors.isEmpty()) {
+                return;
+            }
+            final boolean[] related = relationClassifier.areRelated(pendingVectors);
+            for (int i = 0; i < related.length; i++) {
+                if (related[i]) {
+                    relationQueue.add(new TFClustererTasks.RelatesTo(pendingA1s.get(i), pendingA2s.get(i),
+                            pendingVectors.get(i)));
                 }
             }
+            numIsRelatedCalls += pendingVectors.size();
+            pendingA1s.clear();
+            pendingA2s.clear();
+            pendingVectors.clear();
         }
 
         public long getNumIsRelatedCalls() {
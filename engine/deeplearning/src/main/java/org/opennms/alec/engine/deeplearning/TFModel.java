@@ -28,13 +28,16 @@
 
 package org.opennms.alec.engine.deeplearning;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.FloatBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -47,17 +50,16 @@ import org.tensorflow.Session;
 import org.tensorflow.Tensor;
 
 import com.google.common.base.Strings;
-import com.google.gson.Gson;
-import com.google.gson.stream.JsonReader;
 
-public class TFModel implements AutoCloseable {
+public class TFModel implements RelationClassifier {
     private static final Logger LOG = LoggerFactory.getLogger(TFModel.class);
     private static final String CLASSPATH_MODEL_PATH = "/tf_model";
 
-    private static final Gson gson = new Gson();
+    // Field numbers from tensorflow/core/protobuf/config.proto
+    private static final int CONFIG_PROTO_INTRA_OP_PARALLELISM_THREADS = 2;
+    private static final int CONFIG_PROTO_INTER_OP_PARALLELISM_THREADS = 5;
 
-    private final Map<String,Integer> typeA_ioTypeToId = new HashMap<>();
-    private final Map<String,Integer> typeB_ioTypeToId = new HashMap<>();
+    private final ModelVocabulary vocabulary;
 
     private final Session sess;
     private final Path tempDir;
@@ -71,6 +73,15 @@ public class TFModel implements AutoCloseable {
     }
 
     public TFModel(BundleContext bundleContext, String modelPath) {
+        this(bundleContext, modelPath, null);
+    }
+
+    /**
+     * @param bundleContext used to load the default model, may be null
+     * @param modelPath path to the SavedModel, or empty to use the default model
+     * @param configProto serialized ConfigProto used to configure the session, or null to use the defaults
+     */
+    public TFModel(BundleContext bundleContext, String modelPath, byte[] configProto) {
         final String effectiveModelPath;
         if (Strings.isNullOrEmpty(modelPath)) {
             LOG.info("No model path is set. Using default model from class-path.");
@@ -92,90 +103,155 @@ public class TFModel implements AutoCloseable {
         }
 
         LOG.info("Loading model from: {}", effectiveModelPath);
-        final SavedModelBundle savedModelBundle = SavedModelBundle.load(effectiveModelPath, "serve");
+        final SavedModelBundle.Loader loader = SavedModelBundle.loader(effectiveModelPath).withTags("serve");
+        if (configProto != null) {
+            loader.withConfigProto(configProto);
+        }
+        final SavedModelBundle savedModelBundle = loader.load();
         this.sess = savedModelBundle.session();
 
         // Load vocabulary maps
-        loadModelHyperParameters(effectiveModelPath);
+        try (FileReader fileReader = new FileReader(Paths.get(effectiveModelPath, ModelVocabulary.HYPER_PARAMETERS_FILE_NAME).toFile())) {
+            vocabulary = ModelVocabulary.load(fileReader);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load model hyper parameters.", e);
+        }
     }
 
+    @Override
     public boolean isRelated(InputVector inputVector) {
-        final List<Tensor<?>> inputTensors = toTensors(inputVector);
-        List<Tensor<?>> outputTensors = sess.runner()
-                .feed("type_a/type_a_placeholder", inputTensors.get(0))
-                .feed("type_b/type_b_placeholder", inputTensors.get(1))
-                .feed("same_instance/same_instance_placeholder", inputTensors.get(2))
-                .feed("same_parent/same_parent_placeholder", inputTensors.get(3))
-                .feed("share_ancestor/share_ancestor_placeholder", inputTensors.get(4))
-                .feed("distance_on_graph/distance_on_graph_placeholder", inputTensors.get(5))
-                .feed("time_delta_seconds/time_delta_seconds_placeholder", inputTensors.get(6))
-                .feed("io_id_similarity/io_id_similarity_placeholder", inputTensors.get(7))
-                .feed("io_label_similarity/io_label_similarity_placeholder", inputTensors.get(8))
-                .fetch("related/predictions_related/predictions_related")
-                .run();
-
-        Tensor result = outputTensors.get(0);
-
-        boolean[] outputBuffer = new boolean[1];
-        result.copyTo(outputBuffer);
-        return outputBuffer[0];
+        return areRelated(toTensors(inputVector), 1)[0];
     }
 
-    public List<Tensor<?>> toTensors(InputVector inputVector) {
-        return Arrays.asList(
-                Tensor.create(new int[]{toTypeIdA(inputVector.getTypeA())}, Integer.class), // type_a
-                Tensor.create(new int[]{toTypeIdB(inputVector.getTypeB())}, Integer.class), // type_b
-                Tensor.create(new boolean[]{inputVector.isSameInstance()}, Boolean.class), // same_instance
-                Tensor.create(new boolean[]{inputVector.isSameParent()}, Boolean.class), // same_parent
-                Tensor.create(new boolean[]{inputVector.isShareAncestor()}, Boolean.class), // share_ancestor
-                Tensor.create(new float[]{(float)inputVector.getDistanceOnGraph()}, Float.class), // distance_on_graph
-                Tensor.create(new float[]{(float)inputVector.getTimeDifferenceInSeconds()}, Float.class), // time_delta_seconds
-                Tensor.create(new float[]{(float)inputVector.getSimilarityOfInventoryObjectIds()}, Float.class), // io_id_similarity
-                Tensor.create(new float[]{(float)inputVector.getSimilarityOfInventoryObjectLabels()}, Float.class) // io_label_similarity
-        );
+    @Override
+    public boolean[] areRelated(List<InputVector> inputVectors) {
+        if (inputVectors.isEmpty()) {
+            return new boolean[0];
+        }
+        return areRelated(toTensors(inputVectors), inputVectors.size());
     }
 
-    private void loadModelHyperParameters(String modelPath) {
-        List<String> type_a_vocab = null;
-        List<String> type_b_vocab = null;
-
-        try (FileReader fileReader = new FileReader(Paths.get(modelPath, "model_hyperparameters.json").toFile());
-             JsonReader reader = new JsonReader(fileReader)
-        ) {
-            Map<String,Object> result = gson.fromJson(reader , Map.class);
-            List<Map<String,Object>> inputFeatures = (List<Map<String,Object>>)result.get("input_features");
-            for (Map<String,Object> inputFeature : inputFeatures) {
-                if ("type_a".equals(inputFeature.get("name"))) {
-                    type_a_vocab = (List<String>)inputFeature.get("vocab");
-                } else if ("type_b".equals(inputFeature.get("name"))) {
-                    type_b_vocab = (List<String>)inputFeature.get("vocab");
-                }
+    private boolean[] areRelated(List<Tensor<?>> inputTensors, int numVectors) {
+        try {
+            List<Tensor<?>> outputTensors = sess.runner()
+                    .feed("type_a/type_a_placeholder", inputTensors.get(0))
+                    .feed("type_b/type_b_placeholder", inputTensors.get(1))
+                    .feed("same_instance/same_instance_placeholder", inputTensors.get(2))
+                    .feed("same_parent/same_parent_placeholder", inputTensors.get(3))
+                    .feed("share_ancestor/share_ancestor_placeholder", inputTensors.get(4))
+                    .feed("distance_on_graph/distance_on_graph_placeholder", inputTensors.get(5))
+                    .feed("time_delta_seconds/time_delta_seconds_placeholder", inputTensors.get(6))
+                    .feed("io_id_similarity/io_id_similarity_placeholder", inputTensors.get(7))
+                    .feed("io_label_similarity/io_label_similarity_placeholder", inputTensors.get(8))
+                    .fetch("related/predictions_related/predictions_related")
+                    .run();
+
+            try (Tensor<?> result = outputTensors.get(0)) {
+                boolean[] outputBuffer = new boolean[numVectors];
+                result.copyTo(outputBuffer);
+                return outputBuffer;
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to load model hyper parameters.", e);
+        } finally {
+            inputTensors.forEach(Tensor::close);
         }
+    }
 
-        if (type_a_vocab == null) {
-            throw new IllegalStateException("Failed to find vocabulary for type_a");
-        }
-        if (type_b_vocab == null) {
-            throw new IllegalStateException("Failed to find vocabulary for type_b");
-        }
+    public List<Tensor<?>> toTensors(InputVector inputVector) {
+        return toTensors(Arrays.asList(inputVector));
+    }
 
-        for (int i = 0; i < type_a_vocab.size(); i++) {
-            typeA_ioTypeToId.put(type_a_vocab.get(i), i);
+    public List<Tensor<?>> toTensors(List<InputVector> inputVectors) {
+        final int n = inputVectors.size();
+        final int[] typeA = new int[n];
+        final int[] typeB = new int[n];
+        final boolean[] sameInstance = new boolean[n];
+        final boolean[] sameParent = new boolean[n];
+        final boolean[] shareAncestor = new boolean[n];
+        final float[] distanceOnGraph = new float[n];
+        final float[] timeDelta = new float[n];
+        final float[] ioIdSimilarity = new float[n];
+        final float[] ioLabelSimilarity = new float[n];
+        for (int i = 0; i < n; i++) {
+            final InputVector inputVector = inputVectors.get(i);
+            typeA[i] = vocabulary.toTypeIdA(inputVector.getTypeA());
+            typeB[i] = vocabulary.toTypeIdB(inputVector.getTypeB());
+            sameInstance[i] = inputVector.isSameInstance();
+            sameParent[i] = inputVector.isSameParent();
+            shareAncestor[i] = inputVector.isShareAncestor();
+            distanceOnGraph[i] = (float)inputVector.getDistanceOnGraph();
+            timeDelta[i] = (float)inputVector.getTimeDifferenceInSeconds();
+            ioIdSimilarity[i] = (float)inputVector.getSimilarityOfInventoryObjectIds();
+            ioLabelSimilarity[i] = (float)inputVector.getSimilarityOfInventoryObjectLabels();
         }
-        for (int i = 0; i < type_b_vocab.size(); i++) {
-            typeB_ioTypeToId.put(type_b_vocab.get(i), i);
+        return Arrays.asList(
+                Tensor.create(typeA, Integer.class), // type_a
+                Tensor.create(typeB, Integer.class), // type_b
+                Tensor.create(sameInstance, Boolean.class), // same_instance
+                Tensor.create(sameParent, Boolean.class), // same_parent
+                Tensor.create(shareAncestor, Boolean.class), // share_ancestor
+                Tensor.create(distanceOnGraph, Float.class), // distance_on_graph
+                Tensor.create(timeDelta, Float.class), // time_delta_seconds
+                Tensor.create(ioIdSimilarity, Float.class), // io_id_similarity
+                Tensor.create(ioLabelSimilarity, Float.class) // io_label_similarity
+        );
+    }
+
+    /**
+     * Export the trained variables of the model to a flat file that can
+     * be loaded by the {@link JavaModel}.
+     *
+     * @param writer where to write the weights
+     */
+    public void exportWeights(Writer writer) {
+        final Map<String, ModelWeights.Variable> variablesByName = new LinkedHashMap<>();
+        for (String name : ModelWeights.getVariableNames()) {
+            final List<Tensor<?>> outputTensors = sess.runner()
+                    .fetch(name + "/read")
+                    .run();
+            try (Tensor<?> tensor = outputTensors.get(0)) {
+                final FloatBuffer values = FloatBuffer.allocate(tensor.numElements());
+                tensor.writeTo(values);
+                variablesByName.put(name, new ModelWeights.Variable(tensor.shape(), values.array()));
+            }
         }
+        new ModelWeights(variablesByName).write(writer);
     }
 
-    private int toTypeIdA(String inventoryObjectType) {
-        return typeA_ioTypeToId.getOrDefault(inventoryObjectType, 0);
+    /**
+     * Build a serialized ConfigProto with the given thread pool sizes.
+     *
+     * We only need to set a couple of scalar fields, so we encode these directly instead of
+     * depending on the generated protobuf classes.
+     *
+     * @param intraOpThreads number of threads used to parallelize a single operation, 0 to let TensorFlow choose
+     * @param interOpThreads number of threads used to run independent operations, 0 to let TensorFlow choose
+     * @return the serialized ConfigProto
+     */
+    public static byte[] toConfigProto(int intraOpThreads, int interOpThreads) {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writeVarintField(os, CONFIG_PROTO_INTRA_OP_PARALLELISM_THREADS, intraOpThreads);
+        writeVarintField(os, CONFIG_PROTO_INTER_OP_PARALLELISM_THREADS, interOpThreads);
+        return os.toByteArray();
     }
 
-    private int toTypeIdB(String inventoryObjectType) {
-        return typeB_ioTypeToId.getOrDefault(inventoryObjectType, 0);
+    private static void writeVarintField(ByteArrayOutputStream os, int fieldNumber, int value) {
+        if (value == 0) {
+            // Default value, nothing to encode
+            return;
+        }
+        // Tag, using the varint wire type (0)
+        writeVarint(os, fieldNumber << 3);
+        writeVarint(os, value);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream os, int value) {
+        // Negative int32 values are sign extended to 64-bits
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            os.write((int)((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        os.write((int)v);
     }
 
     @Override
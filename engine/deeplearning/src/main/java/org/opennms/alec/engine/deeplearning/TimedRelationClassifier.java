@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.deeplearning;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.List;
+import java.util.Objects;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Records the latency of the calls made to another {@link RelationClassifier}.
+ */
+public class TimedRelationClassifier implements RelationClassifier {
+
+    private final RelationClassifier delegate;
+    private final Timer inferenceTimer;
+    private final Timer batchInferenceTimer;
+    private final Histogram batchSizes;
+
+    public TimedRelationClassifier(RelationClassifier delegate, MetricRegistry metrics, String prefix) {
+        this.delegate = Objects.requireNonNull(delegate);
+        inferenceTimer = metrics.timer(name(prefix, "inference"));
+        batchInferenceTimer = metrics.timer(name(prefix, "batchInference"));
+        batchSizes = metrics.histogram(name(prefix, "batchSize"));
+    }
+
+    @Override
+    public boolean isRelated(InputVector inputVector) {
+        try (Timer.Context ctx = inferenceTimer.time()) {
+            return delegate.isRelated(inputVector);
+        }
+    }
+
+    @Override
+    public boolean[] areRelated(List<InputVector> inputVectors) {
+        batchSizes.update(inputVectors.size());
+        try (Timer.Context ctx = batchInferenceTimer.time()) {
+            return delegate.areRelated(inputVectors);
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -33,13 +33,14 @@ import java.util.Optional;
 
 import org.opennms.alec.datasource.api.InventoryObject;
 import org.opennms.alec.engine.cluster.AlarmInSpaceTime;
+import org.opennms.alec.engine.cluster.AncestorIndex;
 import org.opennms.alec.engine.cluster.CEVertex;
 import org.opennms.alec.engine.cluster.GraphManager;
 import org.opennms.alec.engine.cluster.SpatialDistanceCalculator;
 
 import com.google.common.base.Strings;
-
-import info.debatty.java.stringsimilarity.NormalizedLevenshtein;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * Used to build a {@link InputVector} from two {@link AlarmInSpaceTime} alarms.
@@ -47,12 +48,21 @@ import info.debatty.java.stringsimilarity.NormalizedLevenshtein;
  * @author jwhite
  */
 public class Vectorizer {
-    private final GraphManager graphManager;
+    private static final int SIMILARITY_CACHE_SIZE = 100000;
+
+    private final AncestorIndex ancestorIndex;
     private final SpatialDistanceCalculator spatialDistanceCalculator;
-    private final NormalizedLevenshtein normalizedLevenshtein = new NormalizedLevenshtein();
+
+    /**
+     * The string similarity features only depend on the inventory objects, and not on the alarms themselves,
+     * so we compute these once for every pair of vertices and re-use them for all of the alarms on these.
+     */
+    private final Cache<VertexPairKey, Similarities> similaritiesByVertexPair = CacheBuilder.newBuilder()
+            .maximumSize(SIMILARITY_CACHE_SIZE)
+            .build();
 
     public Vectorizer(GraphManager graphManager, SpatialDistanceCalculator spatialDistanceCalculator) {
-        this.graphManager = Objects.requireNonNull(graphManager);
+        this.ancestorIndex = Objects.requireNonNull(graphManager).getAncestorIndex();
         this.spatialDistanceCalculator = Objects.requireNonNull(spatialDistanceCalculator);
     }
 
@@ -61,22 +71,23 @@ public class Vectorizer {
     }
 
     public InputVector vectorize(AlarmInSpaceTime a1, AlarmInSpaceTime a2, double distanceOnGraph) {
+        final Optional<InventoryObject> io1 = a1.getVertex().getInventoryObject();
+        final Optional<InventoryObject> io2 = a2.getVertex().getInventoryObject();
+        final Similarities similarities = getSimilarities(a1.getVertex(), a1.getAlarm().getInventoryObjectId(), io1.orElse(null),
+                a2.getVertex(), a2.getAlarm().getInventoryObjectId(), io2.orElse(null));
+
         // Build the input vector
         final InputVector.Builder builder = InputVector.builder()
                 .typeA(a1.getAlarm().getInventoryObjectType())
                 .typeB(a2.getAlarm().getInventoryObjectType())
-                .similarityOfInventoryObjectIds(getSimilarityOfInventoryObjectIds(a1.getAlarm().getInventoryObjectId(), a2.getAlarm().getInventoryObjectId()));
+                .similarityOfInventoryObjectIds(similarities.ids);
 
         // Process additional facts if we can obtain the IO
         int firstAncestorMatch = -1;
         double similarityOfInventoryObjectLabels = -1;
-        final Optional<InventoryObject> io1 = a1.getVertex().getInventoryObject();
-        final Optional<InventoryObject> io2 = a2.getVertex().getInventoryObject();
         if (io1.isPresent() && io2.isPresent()) {
-            final InventoryObject ioa = io1.get();
-            final InventoryObject iob = io2.get();
-            firstAncestorMatch = getFirstAncestorMatch(ioa, iob);
-            similarityOfInventoryObjectLabels = getSimilarityOfInventoryObjectLabels(ioa, iob);
+            firstAncestorMatch = ancestorIndex.getFirstAncestorMatch(a1.getVertex().getResourceKey(), a2.getVertex().getResourceKey());
+            similarityOfInventoryObjectLabels = similarities.labels;
         }
 
         builder.sameInstance(firstAncestorMatch == 0)
@@ -89,55 +100,35 @@ public class Vectorizer {
         return builder.build();
     }
 
-    private double getSimilarityOfInventoryObjectIds(String ioId1, String ioId2) {
-        return normalizedLevenshtein.distance(ioId1, ioId2);
-    }
+    private Similarities getSimilarities(CEVertex v1, String ioId1, InventoryObject io1,
+                                         CEVertex v2, String ioId2, InventoryObject io2) {
+        // The similarities are symmetric, so we always key them using the vertex with the lowest id first
+        if (v1.getNumericId() > v2.getNumericId()) {
+            return getSimilarities(v2, ioId2, io2, v1, ioId1, io1);
+        }
 
-    private double getSimilarityOfInventoryObjectLabels(final InventoryObject io1, final InventoryObject io2) {
-        if (!Strings.isNullOrEmpty(io1.getFriendlyName()) && !Strings.isNullOrEmpty(io2.getFriendlyName())) {
-            return normalizedLevenshtein.distance(io1.getFriendlyName(), io2.getFriendlyName());
+        final VertexPairKey key = new VertexPairKey(v1.getNumericId(), v2.getNumericId());
+        Similarities similarities = similaritiesByVertexPair.getIfPresent(key);
+        if (similarities == null || !similarities.isFor(ioId1, io1, ioId2, io2)) {
+            // Nothing cached yet, or either of the inventory objects has changed since
+            similarities = new Similarities(ioId1, io1, ioId2, io2);
+            similaritiesByVertexPair.put(key, similarities);
         }
-        return -1d;
+        return similarities;
     }
 
-    private int getFirstAncestorMatch(final InventoryObject io1, final InventoryObject io2) {
-        InventoryObject ioa = io1;
-        InventoryObject iob = io2;
-
-        int level = 0;
-        while (true) {
-            if (Objects.equals(ioa.getType(), iob.getType()) &&
-                    Objects.equals(ioa.getId(), iob.getId())) {
-                // Same instance
-                return level;
-            }
-
-            if (ioa.getParentType() == null || iob.getParentType() == null) {
-                // One of the IOs does not have a parent, stop here
-                return -1;
-            }
-
-            if (Objects.equals(ioa.getParentType(), iob.getParentType()) &&
-                    Objects.equals(ioa.getParentId(), iob.getParentId())) {
-                // Same parent
-                return level + 1;
-            }
-
-            // We now know that both IOs have parents, and they are not the same, let's go up a level
-            level++;
-
-            Optional<CEVertex> va = graphManager.getVertexForParentOf(ioa);
-            if (!va.isPresent() || !va.get().getInventoryObject().isPresent()) {
-                return -1;
-            }
-            ioa = va.get().getInventoryObject().get();
-
-            Optional<CEVertex> vb = graphManager.getVertexForParentOf(iob);
-            if (!vb.isPresent() || !vb.get().getInventoryObject().isPresent()) {
-                return -1;
-            }
-            iob = vb.get().getInventoryObject().get();
+    private static double getSimilarityOfInventoryObjectIds(String ioId1, String ioId2) {
+        return EditDistance.normalizedDistance(ioId1, ioId2);
+    }
+
+    private static double getSimilarityOfInventoryObjectLabels(final InventoryObject io1, final InventoryObject io2) {
+        if (io1 == null || io2 == null) {
+            return -1d;
+        }
+        if (!Strings.isNullOrEmpty(io1.getFriendlyName()) && !Strings.isNullOrEmpty(io2.getFriendlyName())) {
+            return EditDistance.normalizedDistance(io1.getFriendlyName(), io2.getFriendlyName());
         }
+        return -1d;
     }
 
     private double timeDeltaInSeconds(AlarmInSpaceTime a1, AlarmInSpaceTime a2) {
@@ -151,4 +142,52 @@ public class Vectorizer {
     public double distanceOnGraph(CEVertex v1, CEVertex v2) {
         return spatialDistanceCalculator.getSpatialDistanceBetween(v1.getNumericId(), v2.getNumericId());
     }
+
+    private static class VertexPairKey {
+        private final long vertexIdA;
+        private final long vertexIdB;
+
+        private VertexPairKey(long vertexIdA, long vertexIdB) {
+            this.vertexIdA = vertexIdA;
+            this.vertexIdB = vertexIdB;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            VertexPairKey that = (VertexPairKey) o;
+            return vertexIdA == that.vertexIdA &&
+                    vertexIdB == that.vertexIdB;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(vertexIdA) * 31 + Long.hashCode(vertexIdB);
+        }
+    }
+
+    private static class Similarities {
+        private final String ioId1;
+        private final InventoryObject io1;
+        private final String ioId2;
+        private final InventoryObject io2;
+        private final double ids;
+        private final double labels;
+
+        private Similarities(String ioId1, InventoryObject io1, String ioId2, InventoryObject io2) {
+            this.ioId1 = ioId1;
+            this.io1 = io1;
+            this.ioId2 = ioId2;
+            this.io2 = io2;
+            ids = getSimilarityOfInventoryObjectIds(ioId1, ioId2);
+            labels = getSimilarityOfInventoryObjectLabels(io1, io2);
+        }
+
+        private boolean isFor(String ioId1, InventoryObject io1, String ioId2, InventoryObject io2) {
+            // Inventory objects are immutable, so any change results in a different instance
+            return this.io1 == io1 && this.io2 == io2
+                    && Objects.equals(this.ioId1, ioId1) && Objects.equals(this.ioId2, ioId2);
+        }
+    }
 }
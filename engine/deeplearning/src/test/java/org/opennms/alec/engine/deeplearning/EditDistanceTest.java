@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.deeplearning;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import info.debatty.java.stringsimilarity.NormalizedLevenshtein;
+
+public class EditDistanceTest {
+
+    @Test
+    public void canComputeEditDistance() {
+        assertThat(EditDistance.distance("", ""), equalTo(0));
+        assertThat(EditDistance.distance("abc", ""), equalTo(3));
+        assertThat(EditDistance.distance("", "abc"), equalTo(3));
+        assertThat(EditDistance.distance("kitten", "sitting"), equalTo(3));
+        assertThat(EditDistance.distance("n1-c1-p1", "n1-c2-p1"), equalTo(1));
+        assertThat(EditDistance.distance("aaaa", "aa"), equalTo(2));
+    }
+
+    @Test
+    public void canMatchNormalizedLevenshtein() {
+        final NormalizedLevenshtein normalizedLevenshtein = new NormalizedLevenshtein();
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            final String s1 = randomString(random);
+            final String s2 = random.nextBoolean() ? mutate(s1, random) : randomString(random);
+            assertThat(s1 + " vs " + s2, EditDistance.normalizedDistance(s1, s2),
+                    closeTo(normalizedLevenshtein.distance(s1, s2), 1e-9));
+        }
+    }
+
+    private static String randomString(Random random) {
+        final StringBuilder sb = new StringBuilder();
+        final int length = random.nextInt(100);
+        for (int i = 0; i < length; i++) {
+            sb.append((char)('a' + random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+
+    private static String mutate(String s, Random random) {
+        final StringBuilder sb = new StringBuilder(s);
+        final int numEdits = random.nextInt(5);
+        for (int i = 0; i < numEdits && sb.length() > 0; i++) {
+            final int idx = random.nextInt(sb.length());
+            switch (random.nextInt(3)) {
+                case 0:
+                    sb.deleteCharAt(idx);
+                    break;
+                case 1:
+                    sb.insert(idx, 'z');
+                    break;
+                default:
+                    sb.setCharAt(idx, 'y');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.engine.deeplearning;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class JavaModelTest {
+
+    /**
+     * Verifies that the Java implementation yields the same results as TensorFlow
+     * for the recorded set of vectors.
+     */
+    @Test
+    public void canMatchTensorFlowModel() throws IOException {
+        final List<InputVector> inputVectors = loadVectors();
+        final boolean[] expected;
+        try (TFModel tfModel = new TFModel()) {
+            expected = tfModel.areRelated(inputVectors);
+            // Batches should match single evaluations
+            for (int i = 0; i < inputVectors.size(); i++) {
+                assertThat(tfModel.isRelated(inputVectors.get(i)), equalTo(expected[i]));
+            }
+        }
+
+        // Make sure the data set contains both classes
+        int numRelated = 0;
+        for (boolean related : expected) {
+            numRelated += related ? 1 : 0;
+        }
+        assertThat(numRelated, greaterThan(0));
+        assertThat(inputVectors.size() - numRelated, greaterThan(0));
+
+        try (JavaModel javaModel = new JavaModel()) {
+            final boolean[] actual = javaModel.areRelated(inputVectors);
+            for (int i = 0; i < inputVectors.size(); i++) {
+                assertThat(inputVectors.get(i).toString(), actual[i], equalTo(expected[i]));
+                assertThat(inputVectors.get(i).toString(), javaModel.isRelated(inputVectors.get(i)), equalTo(expected[i]));
+            }
+        }
+    }
+
+    /**
+     * Evaluate the model to determine the average amount of time
+     * (milliseconds) it takes to compute.
+     */
+    @Test(timeout=30000)
+    public void canMeasureLatency() throws IOException {
+        final List<InputVector> inputVectors = loadVectors();
+        try (JavaModel javaModel = new JavaModel()) {
+            int N = 100;
+            long startMs = System.currentTimeMillis();
+            for (int i = 0; i < N; i++) {
+                javaModel.areRelated(inputVectors);
+            }
+            long deltaMs = System.currentTimeMillis() - startMs;
+            System.out.printf("Took %d ms for %d batches of %d vectors - %.4f ms per vector on average.\n",
+                    deltaMs, N, inputVectors.size(), deltaMs / (double)(N * inputVectors.size()));
+        }
+    }
+
+    private static List<InputVector> loadVectors() throws IOException {
+        final List<InputVector> inputVectors = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                JavaModelTest.class.getResourceAsStream("/vectors.csv"), StandardCharsets.UTF_8))) {
+            // Skip the header
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                final String[] values = line.split(",");
+                inputVectors.add(InputVector.builder()
+                        .typeA(values[0])
+                        .typeB(values[1])
+                        .sameInstance("1".equals(values[2]))
+                        .sameParent("1".equals(values[3]))
+                        .shareAncestors("1".equals(values[4]))
+                        .timeDifferenceInSeconds(Double.valueOf(values[5]))
+                        .distanceOnGraph(Double.valueOf(values[6]))
+                        .similarityOfInventoryObjectIds(Double.valueOf(values[7]))
+                        .similarityOfInventoryObjectLabels(Double.valueOf(values[8]))
+                        .build());
+            }
+        }
+        return inputVectors;
+    }
+}
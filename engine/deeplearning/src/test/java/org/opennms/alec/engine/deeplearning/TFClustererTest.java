@@ -29,6 +29,7 @@
 package org.opennms.alec.engine.deeplearning;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
@@ -48,6 +49,8 @@ import org.opennms.alec.engine.cluster.AlarmInSpaceTime;
 import org.opennms.alec.engine.cluster.GraphManager;
 import org.opennms.alec.engine.cluster.SpatialDistanceCalculator;
 
+import com.codahale.metrics.MetricRegistry;
+
 public class TFClustererTest {
 
     // Define our own network instead of using the MockInventory.SAMPLE_NETWORK
@@ -77,10 +80,16 @@ public class TFClustererTest {
 
         // Build our clusterer
         TFModel tfModel = mock(TFModel.class);
-        when(tfModel.isRelated(any())).thenReturn(true);
+        when(tfModel.areRelated(any())).thenAnswer(invocation -> {
+            final boolean[] related = new boolean[invocation.<List<InputVector>>getArgument(0).size()];
+            Arrays.fill(related, true);
+            return related;
+        });
         SpatialDistanceCalculator spatialDistanceCalculator = mock(SpatialDistanceCalculator.class);
         Vectorizer vectorizer = new Vectorizer(graphManager, spatialDistanceCalculator);
-        TFClusterer tfClusterer = new TFClusterer(tfModel, vectorizer, new DeepLearningEngineConf());
+        MetricRegistry metrics = new MetricRegistry();
+        TimedRelationClassifier timedRelationClassifier = new TimedRelationClassifier(tfModel, metrics, "test");
+        TFClusterer tfClusterer = new TFClusterer(timedRelationClassifier, vectorizer, new DeepLearningEngineConf());
         tfClusterer.init();
 
         // There are no alarms to cluster, so we should get 0 clusters
@@ -100,6 +109,11 @@ public class TFClustererTest {
         clusters = graphManager.withGraph(tfClusterer::cluster);
         assertThat(clusters, hasSize(1));
         assertThat(clusters.get(0).getPoints(), hasSize(2));
+
+        // The pair should have been classified through the batch path
+        assertThat(metrics.timer("test.batchInference").getCount(), equalTo(1L));
+        assertThat(metrics.histogram("test.batchSize").getSnapshot().getMax(), equalTo(1L));
+        assertThat(metrics.timer("test.inference").getCount(), equalTo(0L));
     }
 
     @Test(timeout = 180000)
@@ -29,6 +29,7 @@
 package org.opennms.alec.engine.deeplearning;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 
 import java.util.List;
@@ -59,6 +60,31 @@ public class TFModelTest {
         assertThat(tensors, hasSize(9));
     }
 
+    @Test
+    public void canEncodeConfigProto() {
+        assertThat(TFModel.toConfigProto(0, 0), equalTo(new byte[0]));
+        assertThat(TFModel.toConfigProto(1, 0), equalTo(new byte[]{0x10, 0x01}));
+        assertThat(TFModel.toConfigProto(2, 300), equalTo(new byte[]{0x10, 0x02, 0x28, (byte)0xAC, 0x02}));
+    }
+
+    @Test
+    public void canLoadModelWithSessionConfig() {
+        InputVector inputVector = InputVector.builder()
+                .typeA("a")
+                .typeB("b")
+                .sameInstance(false)
+                .sameParent(false)
+                .shareAncestors(true)
+                .timeDifferenceInSeconds(1d)
+                .distanceOnGraph(2d)
+                .similarityOfInventoryObjectLabels(1.0)
+                .similarityOfInventoryObjectIds(1.0)
+                .build();
+        try (TFModel configuredModel = new TFModel(null, "", TFModel.toConfigProto(1, 2))) {
+            assertThat(configuredModel.isRelated(inputVector), equalTo(tfModel.isRelated(inputVector)));
+        }
+    }
+
     /**
      * Evaluate the model to determine the average amount of time
      * (milliseconds) it takes to compute.
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.features.deeplearning.shell;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.opennms.alec.engine.deeplearning.ModelWeights;
+import org.opennms.alec.engine.deeplearning.TFModel;
+
+@Command(scope = "opennms-alec", name = "tensorflow-export-weights", description = "Export the weights of the TensorFlow model at the given path so that it can be evaluated by the Java inference backend.")
+@Service
+public class ExportWeights implements Action {
+
+    @Argument(name="model path", required = true)
+    private String modelPath;
+
+    @Option(name = "--out", description = "Output file. Defaults to " + ModelWeights.WEIGHTS_FILE_NAME + " in the model path.")
+    private String out;
+
+    @Override
+    public Object execute() throws Exception {
+        final Path path = out != null ? Paths.get(out) : Paths.get(modelPath, ModelWeights.WEIGHTS_FILE_NAME);
+        System.out.printf("Writing to: %s\n", path);
+        try (TFModel tfModel = new TFModel(modelPath);
+             BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            tfModel.exportWeights(writer);
+        }
+        System.out.println("Done.");
+        return null;
+    }
+
+}
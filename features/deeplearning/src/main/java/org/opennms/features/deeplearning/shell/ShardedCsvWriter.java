@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.features.deeplearning.shell;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Writes CSV records to one or more (optionally gzipped) files.
+ *
+ * Records are assigned to the shards in a round-robin fashion, so the contents
+ * of every shard only depend on the order in which the records are written.
+ */
+class ShardedCsvWriter implements Closeable {
+
+    private final List<Path> paths = new ArrayList<>();
+    private final List<CSVPrinter> printers = new ArrayList<>();
+    private long numRecords = 0;
+
+    ShardedCsvWriter(Path path, int numShards, boolean compress, String... header) throws IOException {
+        if (numShards < 1) {
+            throw new IllegalArgumentException("Number of shards must be strictly positive. Got: " + numShards);
+        }
+        try {
+            for (int i = 0; i < numShards; i++) {
+                final Path shardPath = getShardPath(path, i, numShards, compress);
+                OutputStream os = Files.newOutputStream(shardPath);
+                if (compress) {
+                    os = new GZIPOutputStream(os, 64 * 1024);
+                }
+                final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 64 * 1024);
+                paths.add(shardPath);
+                printers.add(new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(header)));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Derive the path of the given shard.
+     *
+     * A single uncompressed shard is written to the given path as-is, otherwise
+     * the shard number and compression suffix are appended i.e. vectors.csv becomes
+     * vectors-00000.csv.gz, vectors-00001.csv.gz, etc...
+     */
+    static Path getShardPath(Path path, int shard, int numShards, boolean compress) {
+        String fileName = path.getFileName().toString();
+        if (numShards > 1) {
+            final int idx = fileName.toLowerCase().lastIndexOf(".csv");
+            final String suffix = idx >= 0 ? fileName.substring(idx) : "";
+            final String base = idx >= 0 ? fileName.substring(0, idx) : fileName;
+            fileName = String.format("%s-%05d%s", base, shard, suffix);
+        }
+        if (compress && !fileName.toLowerCase().endsWith(".gz")) {
+            fileName = fileName + ".gz";
+        }
+        return path.resolveSibling(fileName);
+    }
+
+    void printRecord(Iterable<?> values) throws IOException {
+        final int shard = (int)(numRecords++ % printers.size());
+        printers.get(shard).printRecord(values);
+    }
+
+    List<Path> getPaths() {
+        return paths;
+    }
+
+    long getNumRecords() {
+        return numRecords;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException firstException = null;
+        for (CSVPrinter printer : printers) {
+            try {
+                // Closing the printer flushes and closes the underlying writer(s)
+                printer.close();
+            } catch (IOException e) {
+                if (firstException == null) {
+                    firstException = e;
+                }
+            }
+        }
+        printers.clear();
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+}
@@ -28,23 +28,27 @@
 
 package org.opennms.features.deeplearning.shell;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.function.Consumer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.math3.ml.clustering.Cluster;
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Command;
@@ -65,12 +69,19 @@ import org.opennms.alec.engine.deeplearning.InputVector;
 import org.opennms.alec.engine.deeplearning.OutputVector;
 import org.opennms.alec.engine.deeplearning.Vectorizer;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import edu.uci.ics.jung.graph.Graph;
 
 @Command(scope = "opennms-alec", name = "tensorflow-vectorize", description = "Convert a fault data set to vectors for the purpose of training a TensorFlow model.")
 @Service
 public class Vectorize implements Action {
 
+    /**
+     * Number of pairs vectorized by a single task.
+     */
+    private static final int CHUNK_SIZE = 1024;
+
     @Option(name = "--alarms-in", description = "XML file containing the list of alarms", required = true)
     private String alarmsIn;
 
@@ -80,47 +91,133 @@ public class Vectorize implements Action {
     @Option(name = "--situations-in", description = "XML file containing the list of situations", required = true)
     private String situationsIn;
 
-    @Option(name = "--csv-out", description = "Output CSV", required = true)
+    @Option(name = "--csv-out", description = "Output CSV. When using more than one shard, the shard number is appended to the file name.", required = true)
     private String csvOut;
 
-    private CSVPrinter csvPrinter;
+    @Option(name = "--max-time-delta", description = "Only vectorize pairs of alarms whose times differ by at most this amount (ms). Defaults to no limit.")
+    private long maxTimeDeltaMs = Long.MAX_VALUE;
+
+    @Option(name = "--max-distance", description = "Only vectorize pairs of alarms whose distance on the graph is at most this amount. Defaults to no limit.")
+    private double maxDistanceOnGraph = Double.MAX_VALUE;
+
+    @Option(name = "--negative-sample-ratio", description = "Fraction of the unrelated pairs to keep, in [0,1]. Defaults to 1 (keep all).")
+    private double negativeSampleRatio = 1.0d;
+
+    @Option(name = "--seed", description = "Seed used when sampling the unrelated pairs.")
+    private long seed = 0L;
+
+    @Option(name = "--threads", description = "Number of threads used to vectorize. Defaults to the number of available processors.")
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = "--shards", description = "Number of files to distribute the vectors across.")
+    private int numShards = 1;
+
+    @Option(name = "--compress", description = "Compress the output file(s) using gzip.")
+    private boolean compress = false;
 
     @Override
     public Object execute() throws Exception {
+        if (negativeSampleRatio < 0 || negativeSampleRatio > 1) {
+            throw new IllegalArgumentException("Negative sample ratio must be in [0,1]. Got: " + negativeSampleRatio);
+        }
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be strictly positive. Got: " + numThreads);
+        }
+
         final List<Alarm> alarms = JaxbUtils.getAlarms(Paths.get(alarmsIn));
         final List<InventoryObject> inventory = JaxbUtils.getInventory(Paths.get(inventoryIn));
         final Set<Situation> situations = JaxbUtils.getSituations(Paths.get(situationsIn));
+        final Stats stats = vectorize(alarms, inventory, situations);
+        System.out.printf("Considered %d pairs, of which %d were pruned by time, %d by sampling and %d by distance. Wrote %d vectors.\n",
+                stats.numPairs, stats.numPrunedByTime, stats.numPrunedBySampling, stats.numPrunedByDistance,
+                stats.numVectors);
+        System.out.println("Done.");
 
+        return null;
+    }
+
+    /**
+     * Vectorizes the given data set and writes the vectors to the configured output.
+     */
+    Stats vectorize(List<Alarm> alarms, List<InventoryObject> inventory, Set<Situation> situations) throws IOException {
         final Path path = Paths.get(csvOut);
-        System.out.printf("Writing to: %s\n", path);
-        try (
-                BufferedWriter writer = Files.newBufferedWriter(Paths.get(csvOut));
-                CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT
-                        .withHeader(getHeader()));
-        ) {
-            streamVectors(inventory, alarms, situations, v -> {
-                try {
-                    csvPrinter.printRecord(toRecordValues(v));
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-            csvPrinter.flush();
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads, new ThreadFactoryBuilder()
+                .setNameFormat("vectorizer-%d")
+                .build());
+        try (ShardedCsvWriter writer = new ShardedCsvWriter(path, numShards, compress, getHeader())) {
+            System.out.printf("Writing to: %s\n", writer.getPaths());
+            final MyEngine engine = new MyEngine(situations, this, executor, writer);
+            streamVectors(inventory, alarms, engine);
+            return new Stats(engine.numPairs, engine.numPrunedByTime, engine.numPrunedBySampling,
+                    engine.numPrunedByDistance, writer.getNumRecords());
+        } finally {
+            executor.shutdownNow();
         }
-        System.out.println("Done.");
+    }
 
-        return null;
+    /**
+     * Number of pairs considered and pruned while vectorizing.
+     */
+    static class Stats {
+        final long numPairs;
+        final long numPrunedByTime;
+        final long numPrunedBySampling;
+        final long numPrunedByDistance;
+        final long numVectors;
+
+        Stats(long numPairs, long numPrunedByTime, long numPrunedBySampling, long numPrunedByDistance, long numVectors) {
+            this.numPairs = numPairs;
+            this.numPrunedByTime = numPrunedByTime;
+            this.numPrunedBySampling = numPrunedBySampling;
+            this.numPrunedByDistance = numPrunedByDistance;
+            this.numVectors = numVectors;
+        }
+    }
+
+    void setCsvOut(String csvOut) {
+        this.csvOut = csvOut;
+    }
+
+    void setMaxTimeDeltaMs(long maxTimeDeltaMs) {
+        this.maxTimeDeltaMs = maxTimeDeltaMs;
+    }
+
+    void setMaxDistanceOnGraph(double maxDistanceOnGraph) {
+        this.maxDistanceOnGraph = maxDistanceOnGraph;
+    }
+
+    void setNegativeSampleRatio(double negativeSampleRatio) {
+        this.negativeSampleRatio = negativeSampleRatio;
+    }
+
+    void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
     }
 
     private static class MyEngine extends AbstractClusterEngine {
-        private final Consumer<OutputVector> consumer;
-        private final Set<Situation> situations;
-        private final Map<String,String> alarmIdToSituationId = new LinkedHashMap<>();
+        private final Map<String,String> alarmIdToSituationId = new HashMap<>();
+        private final long maxTimeDeltaMs;
+        private final double maxDistanceOnGraph;
+        private final double negativeSampleRatio;
+        private final long seed;
+        private final int maxTasksInFlight;
+        private final ExecutorService executor;
+        private final ShardedCsvWriter writer;
         private Vectorizer vectorizer;
 
-        private MyEngine(Set<Situation> situations, Consumer<OutputVector> consumer) {
-            this.situations = Objects.requireNonNull(situations);
-            this.consumer = Objects.requireNonNull(consumer);
+        private long numPairs = 0;
+        private long numPrunedByTime = 0;
+        private long numPrunedBySampling = 0;
+        private long numPrunedByDistance = 0;
+
+        private MyEngine(Set<Situation> situations, Vectorize options, ExecutorService executor, ShardedCsvWriter writer) {
+            this.maxTimeDeltaMs = options.maxTimeDeltaMs;
+            this.maxDistanceOnGraph = options.maxDistanceOnGraph;
+            this.negativeSampleRatio = options.negativeSampleRatio;
+            this.seed = options.seed;
+            this.maxTasksInFlight = 2 * options.numThreads;
+            this.executor = Objects.requireNonNull(executor);
+            this.writer = Objects.requireNonNull(writer);
 
             // Index the alarms by situation id
             for (Situation s : situations) {
@@ -135,31 +232,133 @@ public class Vectorize implements Action {
             vectorizer = new Vectorizer(getGraphManager(), this);
         }
 
+        /**
+         * Vectorizes the pairs of active alarms.
+         *
+         * The candidate pairs are enumerated and pruned on the calling thread, in a stable order, while
+         * the vectorization itself is performed in parallel. The results are written in the order in which
+         * the pairs were enumerated, so the output only depends on the input and on the seed.
+         *
+         * Distances on the graph are computed on the calling thread, since these rely on the engine's
+         * shortest path implementation.
+         */
         @Override
         public List<Cluster<AlarmInSpaceTime>> cluster(long timestampInMillis, Graph<CEVertex, CEEdge> g) {
             final List<AlarmInSpaceTime> alarms = getAlarmsInSpaceTime(g);
-            for (AlarmInSpaceTime a1 : alarms) {
-                for (AlarmInSpaceTime a2 : alarms) {
+            final Deque<Future<List<OutputVector>>> tasks = new ArrayDeque<>();
+            List<CandidatePair> chunk = new ArrayList<>(CHUNK_SIZE);
+
+            int windowStart = 0;
+            int windowEnd = 0;
+            for (int i = 0; i < alarms.size(); i++) {
+                final AlarmInSpaceTime a1 = alarms.get(i);
+                // Since the alarms are sorted by time, only the ones in [windowStart, windowEnd) are close enough
+                while (a1.getAlarmTime() - alarms.get(windowStart).getAlarmTime() > maxTimeDeltaMs) {
+                    windowStart++;
+                }
+                while (windowEnd < alarms.size() && alarms.get(windowEnd).getAlarmTime() - a1.getAlarmTime() <= maxTimeDeltaMs) {
+                    windowEnd++;
+                }
+                numPairs += alarms.size() - 1;
+                numPrunedByTime += alarms.size() - (windowEnd - windowStart);
+
+                for (int j = windowStart; j < windowEnd; j++) {
+                    final AlarmInSpaceTime a2 = alarms.get(j);
                     if (a1 == a2) {
                         continue;
                     }
-                    final InputVector inputVector = vectorizer.vectorize(a1, a2);
-                    consumer.accept(OutputVector.builder()
+                    final boolean related = areAlarmsCurrentlyRelated(a1, a2, timestampInMillis);
+                    if (!related && !shouldSampleNegative(timestampInMillis, a1, a2)) {
+                        numPrunedBySampling++;
+                        continue;
+                    }
+                    final double distance = vectorizer.distanceOnGraph(a1.getVertex(), a2.getVertex());
+                    if (distance > maxDistanceOnGraph) {
+                        numPrunedByDistance++;
+                        continue;
+                    }
+
+                    chunk.add(new CandidatePair(a1, a2, distance, related));
+                    if (chunk.size() >= CHUNK_SIZE) {
+                        submit(chunk, tasks);
+                        chunk = new ArrayList<>(CHUNK_SIZE);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(chunk, tasks);
+            }
+            while (!tasks.isEmpty()) {
+                write(tasks.removeFirst());
+            }
+            return Collections.emptyList();
+        }
+
+        private void submit(List<CandidatePair> chunk, Deque<Future<List<OutputVector>>> tasks) {
+            // Bound the number of pending results
+            while (tasks.size() >= maxTasksInFlight) {
+                write(tasks.removeFirst());
+            }
+            tasks.addLast(executor.submit(() -> {
+                final List<OutputVector> outputVectors = new ArrayList<>(chunk.size());
+                for (CandidatePair pair : chunk) {
+                    final InputVector inputVector = vectorizer.vectorize(pair.a1, pair.a2, pair.distance);
+                    outputVectors.add(OutputVector.builder()
                             .inputVector(inputVector)
-                            .areAlarmsRelated(areAlarmsCurrentlyRelated(a1, a2, timestampInMillis))
+                            .areAlarmsRelated(pair.related)
                             .build());
                 }
+                return outputVectors;
+            }));
+        }
+
+        private void write(Future<List<OutputVector>> task) {
+            try {
+                for (OutputVector outputVector : task.get()) {
+                    writer.printRecord(toRecordValues(outputVector));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-            return Collections.emptyList();
         }
 
+        /**
+         * Decides whether or not the given unrelated pair should be kept.
+         *
+         * The decision is derived from the seed, the tick and the pair itself, and not from
+         * a shared sequence of random numbers, so that it does not depend on the order in
+         * which the pairs are processed.
+         */
+        private boolean shouldSampleNegative(long timestampInMillis, AlarmInSpaceTime a1, AlarmInSpaceTime a2) {
+            if (negativeSampleRatio >= 1.0d) {
+                return true;
+            } else if (negativeSampleRatio <= 0.0d) {
+                return false;
+            }
+            long hash = seed;
+            hash = 31 * hash + timestampInMillis;
+            hash = 31 * hash + a1.getAlarmId().hashCode();
+            hash = 31 * hash + a2.getAlarmId().hashCode();
+            return new SplittableRandom(hash).nextDouble() < negativeSampleRatio;
+        }
+
+        /**
+         * Retrieves the active alarms, sorted by time and then id.
+         */
         private List<AlarmInSpaceTime> getAlarmsInSpaceTime(Graph<CEVertex,CEEdge> g) {
-            final List<AlarmInSpaceTime> alarmsInSpaceAndTime = new LinkedList<>();
+            final List<AlarmInSpaceTime> alarmsInSpaceAndTime = new ArrayList<>();
             for (CEVertex v : g.getVertices()) {
                 for (Alarm a : v.getAlarms()) {
                     alarmsInSpaceAndTime.add(new AlarmInSpaceTime(v,a));
                 }
             }
+            alarmsInSpaceAndTime.sort(Comparator.comparingLong(AlarmInSpaceTime::getAlarmTime)
+                    .thenComparing(AlarmInSpaceTime::getAlarmId));
             return alarmsInSpaceAndTime;
         }
 
@@ -174,6 +373,20 @@ public class Vectorize implements Action {
         }
     }
 
+    private static class CandidatePair {
+        private final AlarmInSpaceTime a1;
+        private final AlarmInSpaceTime a2;
+        private final double distance;
+        private final boolean related;
+
+        private CandidatePair(AlarmInSpaceTime a1, AlarmInSpaceTime a2, double distance, boolean related) {
+            this.a1 = a1;
+            this.a2 = a2;
+            this.distance = distance;
+            this.related = related;
+        }
+    }
+
     private static class MyEngineFactory implements EngineFactory {
         private final MyEngine engine;
 
@@ -192,10 +405,7 @@ public class Vectorize implements Action {
         }
     }
 
-    private void streamVectors(List<InventoryObject> inventory, List<Alarm> alarms, Set<Situation> situations, Consumer<OutputVector> consumer) {
-        // Extend the cluster engine
-        final MyEngine engine = new MyEngine(situations, consumer);
-
+    private void streamVectors(List<InventoryObject> inventory, List<Alarm> alarms, MyEngine engine) {
         // Use the test driver
         final MyEngineFactory factory = new MyEngineFactory(engine);
         final TestDriver driver = TestDriver.builder()
@@ -203,8 +413,8 @@ public class Vectorize implements Action {
                 .withVerboseOutput()
                 .build();
 
-        // On tick, the engine will perform a pairwise comparison of all active alarms, convert these
-        // to vectors and feed it to the consumer
+        // On tick, the engine will perform a pairwise comparison of the active alarms, convert these
+        // to vectors and write them out
         driver.run(alarms, inventory);
     }
 
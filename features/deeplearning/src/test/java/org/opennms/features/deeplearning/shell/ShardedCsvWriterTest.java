@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.features.deeplearning.shell;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShardedCsvWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void canDeriveShardPaths() {
+        final Path path = Paths.get("/tmp/vectors.csv");
+        // A single uncompressed shard uses the path as-is
+        assertThat(ShardedCsvWriter.getShardPath(path, 0, 1, false), equalTo(path));
+        assertThat(ShardedCsvWriter.getShardPath(path, 0, 1, true), equalTo(Paths.get("/tmp/vectors.csv.gz")));
+        assertThat(ShardedCsvWriter.getShardPath(path, 1, 2, false), equalTo(Paths.get("/tmp/vectors-00001.csv")));
+        assertThat(ShardedCsvWriter.getShardPath(path, 12, 16, true), equalTo(Paths.get("/tmp/vectors-00012.csv.gz")));
+        // The suffixes are not duplicated, and the shard number is appended when there is no .csv extension
+        assertThat(ShardedCsvWriter.getShardPath(Paths.get("/tmp/vectors.csv.gz"), 0, 2, true),
+                equalTo(Paths.get("/tmp/vectors-00000.csv.gz")));
+        assertThat(ShardedCsvWriter.getShardPath(Paths.get("/tmp/vectors"), 3, 4, false),
+                equalTo(Paths.get("/tmp/vectors-00003")));
+    }
+
+    @Test
+    public void canDistributeRecordsAcrossShards() throws IOException {
+        final Path path = temporaryFolder.getRoot().toPath().resolve("vectors.csv");
+        final List<Path> paths;
+        try (ShardedCsvWriter writer = new ShardedCsvWriter(path, 2, true, "a", "b")) {
+            for (int i = 0; i < 5; i++) {
+                writer.printRecord(Arrays.asList(i, i * 10));
+            }
+            paths = writer.getPaths();
+            assertThat(writer.getNumRecords(), equalTo(5L));
+        }
+
+        // The records should roll over to the next shard in a round-robin fashion, and every shard has the header
+        assertThat(paths, contains(path.resolveSibling("vectors-00000.csv.gz"),
+                path.resolveSibling("vectors-00001.csv.gz")));
+        assertThat(readGzippedLines(paths.get(0)), contains("a,b", "0,0", "2,20", "4,40"));
+        assertThat(readGzippedLines(paths.get(1)), contains("a,b", "1,10", "3,30"));
+    }
+
+    @Test
+    public void canWriteSingleUncompressedShard() throws IOException {
+        final Path path = temporaryFolder.getRoot().toPath().resolve("vectors.csv");
+        try (ShardedCsvWriter writer = new ShardedCsvWriter(path, 1, false, "a")) {
+            writer.printRecord(Arrays.asList(1));
+            assertThat(writer.getPaths(), contains(path));
+        }
+        assertThat(Files.readAllLines(path), contains("a", "1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotCreateWriterWithoutShards() throws IOException {
+        new ShardedCsvWriter(temporaryFolder.getRoot().toPath().resolve("vectors.csv"), 0, false, "a");
+    }
+
+    private static List<String> readGzippedLines(Path path) throws IOException {
+        try (InputStream is = new GZIPInputStream(Files.newInputStream(path));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+}
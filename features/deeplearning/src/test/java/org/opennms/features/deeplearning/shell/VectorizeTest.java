@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.features.deeplearning.shell;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.alec.datasource.api.Alarm;
+import org.opennms.alec.datasource.api.InventoryObject;
+import org.opennms.alec.datasource.api.Situation;
+import org.opennms.alec.datasource.common.ImmutableAlarm;
+import org.opennms.alec.datasource.common.ImmutableSituation;
+import org.opennms.alec.driver.test.MockInventoryBuilder;
+import org.opennms.alec.driver.test.MockInventoryType;
+
+public class VectorizeTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // A device with a single card
+    private final List<InventoryObject> inventory = new MockInventoryBuilder()
+            .withInventoryObject(MockInventoryType.DEVICE, "n1")
+            .withInventoryObject(MockInventoryType.CARD, "n1-c1", MockInventoryType.DEVICE, "n1")
+            .getInventory();
+
+    // All of the alarms are raised within the same tick
+    private final Alarm a1 = alarm("a1", MockInventoryType.DEVICE, "n1", 0);
+    private final Alarm a2 = alarm("a2", MockInventoryType.CARD, "n1-c1", 1000);
+    private final Alarm a3 = alarm("a3", MockInventoryType.DEVICE, "n1", 20000);
+    private final Alarm a4 = alarm("a4", MockInventoryType.DEVICE, "n1", 2000);
+    private final List<Alarm> alarms = Arrays.asList(a1, a2, a3, a4);
+
+    // a3 is not part of any situation
+    private final Set<Situation> situations = new HashSet<>(Arrays.asList(ImmutableSituation.newBuilder()
+            .setId("s1")
+            .setCreationTime(0)
+            .setAlarms(new HashSet<>(Arrays.asList(a1, a2, a4)))
+            .build()));
+
+    @Test
+    public void canPruneByTime() throws IOException {
+        final Path csvOut = temporaryFolder.getRoot().toPath().resolve("vectors.csv");
+        final Vectorize vectorize = newVectorize(csvOut);
+        vectorize.setMaxTimeDeltaMs(5000);
+
+        final Vectorize.Stats stats = vectorize.vectorize(alarms, inventory, situations);
+
+        // Every alarm is paired with every other alarm
+        assertThat(stats.numPairs, equalTo(12L));
+        // a3 is more than 5s away from all of the other alarms
+        assertThat(stats.numPrunedByTime, equalTo(6L));
+        assertThat(stats.numPrunedBySampling, equalTo(0L));
+        assertThat(stats.numPrunedByDistance, equalTo(0L));
+        assertThat(stats.numVectors, equalTo(6L));
+        // The header and one line per vector
+        assertThat(Files.readAllLines(csvOut), hasSize(7));
+    }
+
+    @Test
+    public void canPruneBySamplingAndDistance() throws IOException {
+        final Path csvOut = temporaryFolder.getRoot().toPath().resolve("vectors.csv");
+        final Vectorize vectorize = newVectorize(csvOut);
+        vectorize.setNegativeSampleRatio(0);
+        vectorize.setMaxDistanceOnGraph(0);
+
+        final Vectorize.Stats stats = vectorize.vectorize(alarms, inventory, situations);
+
+        assertThat(stats.numPairs, equalTo(12L));
+        assertThat(stats.numPrunedByTime, equalTo(0L));
+        // All of the pairs with a3 are unrelated
+        assertThat(stats.numPrunedBySampling, equalTo(6L));
+        // a2 is on a different vertex than a1 and a4
+        assertThat(stats.numPrunedByDistance, equalTo(4L));
+        // Only a1 and a4 remain
+        assertThat(stats.numVectors, equalTo(2L));
+        assertThat(Files.readAllLines(csvOut), hasSize(3));
+    }
+
+    private static Vectorize newVectorize(Path csvOut) {
+        final Vectorize vectorize = new Vectorize();
+        vectorize.setCsvOut(csvOut.toString());
+        vectorize.setNumThreads(2);
+        return vectorize;
+    }
+
+    private static Alarm alarm(String id, MockInventoryType type, String ioId, long time) {
+        return ImmutableAlarm.newBuilder()
+                .setId(id)
+                .setInventoryObjectType(type.getType())
+                .setInventoryObjectId(ioId)
+                .setTime(time)
+                .build();
+    }
+}
@@ -32,4 +32,15 @@ public interface SinkWrapper {
 
     byte[] wrapMessageInProto(String messageId, byte[] messageBytes);
 
+    /**
+     * Wrap the given range of the buffer, allowing callers to re-use their buffers.
+     *
+     * The buffer is not retained after this call returns.
+     */
+    default byte[] wrapMessageInProto(String messageId, byte[] buffer, int offset, int length) {
+        final byte[] messageBytes = new byte[length];
+        System.arraycopy(buffer, offset, messageBytes, 0, length);
+        return wrapMessageInProto(messageId, messageBytes);
+    }
+
 }
@@ -28,18 +28,42 @@
 
 package org.opennms.alec.integrations.opennms.sink.impl;
 
+import java.io.IOException;
+
 import org.opennms.alec.integrations.opennms.sink.api.SinkWrapper;
 import org.opennms.alec.integrations.opennms.sink.impl.model.SinkMessageProtos;
 
-import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
 
+/**
+ * Encodes the {@link SinkMessageProtos.SinkMessage} directly, instead of building the message,
+ * in order to avoid copying the content into a {@link com.google.protobuf.ByteString} first.
+ * The content is copied once, straight into the encoded message.
+ */
 public class SinkWrapperImpl implements SinkWrapper {
     @Override
     public byte[] wrapMessageInProto(String messageId, byte[] messageBytes) {
-        final SinkMessageProtos.SinkMessage sinkMessage = SinkMessageProtos.SinkMessage.newBuilder()
-                .setMessageId(messageId)
-                .setContent(ByteString.copyFrom(messageBytes))
-                .build();
-        return sinkMessage.toByteArray();
+        return wrapMessageInProto(messageId, messageBytes, 0, messageBytes.length);
+    }
+
+    @Override
+    public byte[] wrapMessageInProto(String messageId, byte[] buffer, int offset, int length) {
+        final byte[] sinkMessageBytes = new byte[CodedOutputStream.computeStringSize(SinkMessageProtos.SinkMessage.MESSAGE_ID_FIELD_NUMBER, messageId)
+                + CodedOutputStream.computeTagSize(SinkMessageProtos.SinkMessage.CONTENT_FIELD_NUMBER)
+                + CodedOutputStream.computeRawVarint32Size(length)
+                + length];
+        final CodedOutputStream output = CodedOutputStream.newInstance(sinkMessageBytes);
+        try {
+            output.writeString(SinkMessageProtos.SinkMessage.MESSAGE_ID_FIELD_NUMBER, messageId);
+            output.writeTag(SinkMessageProtos.SinkMessage.CONTENT_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeRawVarint32(length);
+            output.writeRawBytes(buffer, offset, length);
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            // we size the array ourselves, so this should never happen
+            throw new IllegalStateException(e);
+        }
+        return sinkMessageBytes;
     }
 }
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.integrations.opennms.sink.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.opennms.alec.integrations.opennms.sink.impl.model.SinkMessageProtos;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+public class SinkWrapperImplTest {
+
+    private final SinkWrapperImpl sinkWrapper = new SinkWrapperImpl();
+
+    @Test
+    public void canWrapMessages() throws InvalidProtocolBufferException {
+        for (int length : new int[]{0, 1, 127, 128, 300, 70000}) {
+            final byte[] content = new byte[length];
+            Arrays.fill(content, (byte)'x');
+            final byte[] expected = SinkMessageProtos.SinkMessage.newBuilder()
+                    .setMessageId("id-" + length)
+                    .setContent(ByteString.copyFrom(content))
+                    .build()
+                    .toByteArray();
+            assertThat(sinkWrapper.wrapMessageInProto("id-" + length, content), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void canWrapPartOfBuffer() throws InvalidProtocolBufferException {
+        final byte[] buffer = "__<log/>__".getBytes(StandardCharsets.UTF_8);
+        final SinkMessageProtos.SinkMessage sinkMessage = SinkMessageProtos.SinkMessage.parseFrom(
+                sinkWrapper.wrapMessageInProto("id", buffer, 2, buffer.length - 4));
+        assertThat(sinkMessage.getMessageId(), equalTo("id"));
+        assertThat(sinkMessage.getContent().toStringUtf8(), equalTo("<log/>"));
+    }
+}
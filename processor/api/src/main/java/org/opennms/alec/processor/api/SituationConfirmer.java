@@ -28,12 +28,6 @@
 
 package org.opennms.alec.processor.api;
 
-import java.util.Collections;
-import java.util.Objects;
-import java.util.Set;
-import java.util.stream.Collectors;
-
-import org.opennms.alec.datasource.api.Alarm;
 import org.opennms.alec.datasource.api.Situation;
 import org.opennms.alec.datasource.api.SituationHandler;
 
@@ -67,12 +61,8 @@ public class SituationConfirmer implements SituationHandler {
 
     @Override
     public void onSituation(Situation situation) {
-        // Collect each of the reduction keys (Ids) contained in the related alarms so we can use these to
-        // uniquely identify the situation to confirm it via the situation processor
-        Set<String> reductionKeysInAlarm = Objects.requireNonNull(situation).getAlarms().stream()
-                .map(Alarm::getId)
-                .collect(Collectors.toSet());
-
-        situationProcessor.confirm(Collections.unmodifiableSet(reductionKeysInAlarm));
+        // Fingerprint the reduction keys (Ids) contained in the related alarms so we can use this to uniquely identify
+        // the situation to confirm it via the situation processor
+        situationProcessor.confirm(SituationFingerprint.of(situation));
     }
 }
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.processor.api;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+import org.opennms.alec.datasource.api.Alarm;
+import org.opennms.alec.datasource.api.Situation;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * A compact 128-bit fingerprint of the sorted reduction keys of the alarms in a situation, used to match the
+ * situations we generate with the situation alarms that come round trip.
+ */
+public final class SituationFingerprint {
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final long high;
+    private final long low;
+
+    private SituationFingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @param situation the situation
+     * @return the fingerprint of the reduction keys of the alarms in the situation
+     */
+    public static SituationFingerprint of(Situation situation) {
+        final String[] reductionKeys = Objects.requireNonNull(situation).getAlarms().stream()
+                .map(Alarm::getId)
+                .toArray(String[]::new);
+        return of(reductionKeys);
+    }
+
+    /**
+     * @param reductionKeys the reduction keys of the alarms in the situation
+     * @return the fingerprint of the reduction keys
+     */
+    public static SituationFingerprint of(Collection<String> reductionKeys) {
+        return of(reductionKeys.toArray(new String[0]));
+    }
+
+    private static SituationFingerprint of(String[] reductionKeys) {
+        // Sort the keys so that the fingerprint does not depend on the order of the alarms
+        Arrays.sort(reductionKeys);
+        final Hasher hasher = HASH_FUNCTION.newHasher();
+        for (String reductionKey : reductionKeys) {
+            // Prefix every key with its length so that the boundaries between the keys are unambiguous
+            hasher.putInt(reductionKey.length()).putUnencodedChars(reductionKey);
+        }
+        final ByteBuffer hash = ByteBuffer.wrap(hasher.hash().asBytes());
+        return new SituationFingerprint(hash.getLong(), hash.getLong());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SituationFingerprint that = (SituationFingerprint) o;
+        return high == that.high &&
+                low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (low ^ (low >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
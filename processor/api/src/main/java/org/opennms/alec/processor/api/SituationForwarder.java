@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.processor.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.opennms.alec.datasource.api.Situation;
+import org.opennms.alec.datasource.api.SituationDatasource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Forwards situations to a {@link SituationDatasource} on a pool of worker threads so that slow downstream handling
+ * does not hold up the caller (i.e. the engine's tick thread), which only enqueues.
+ * <p>
+ * Situations are assigned to a worker based on their id, so that successive versions of the same situation are always
+ * forwarded in the order they were submitted. Failed forwards are retried with an exponential backoff before the
+ * situation is given up on.
+ * <p>
+ * The number of pending situations is bounded, callers block until there is room in the queue.
+ */
+public class SituationForwarder implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(SituationForwarder.class);
+
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    public static final int DEFAULT_WORKER_THREADS = 2;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_INITIAL_BACKOFF_MS = 100;
+
+    /**
+     * The upper bound for the delay between two attempts.
+     */
+    private static final long MAX_BACKOFF_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private final String name;
+    private final SituationDatasource situationDatasource;
+    private final int maxRetries;
+    private final long initialBackoffMs;
+    private final boolean synchronous;
+    private final List<BlockingQueue<Situation>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final Object idleLock = new Object();
+    /**
+     * The number of situations that were submitted but not yet forwarded or given up on. Guarded by
+     * {@link #idleLock}.
+     */
+    private int outstanding;
+    /**
+     * Situations are enqueued while holding the read lock, and {@link #running} is only cleared while holding the
+     * write lock, so that no situation is enqueued once the workers were told to drain the queues and stop.
+     */
+    private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+    private volatile boolean running;
+
+    private final Timer forwardLatency;
+    private final Meter failuresMeter;
+    private final Meter droppedMeter;
+
+    public SituationForwarder(String name, SituationDatasource situationDatasource, int queueSize, int workerThreads,
+                              int maxRetries, long initialBackoffMs, MetricRegistry metrics) {
+        this(name, situationDatasource, queueSize, workerThreads, maxRetries, initialBackoffMs, metrics, false);
+    }
+
+    private SituationForwarder(String name, SituationDatasource situationDatasource, int queueSize,
+                               int workerThreads, int maxRetries, long initialBackoffMs, MetricRegistry metrics,
+                               boolean synchronous) {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("workerThreads must be strictly positive, got: " + workerThreads);
+        }
+        if (queueSize < workerThreads) {
+            throw new IllegalArgumentException("queueSize must be at least the number of worker threads, got: "
+                    + queueSize);
+        }
+        if (maxRetries < 0 || initialBackoffMs < 0) {
+            throw new IllegalArgumentException("maxRetries and initialBackoffMs must not be negative");
+        }
+        this.name = Objects.requireNonNull(name);
+        this.situationDatasource = Objects.requireNonNull(situationDatasource);
+        this.maxRetries = maxRetries;
+        this.initialBackoffMs = initialBackoffMs;
+        this.synchronous = synchronous;
+        for (int i = 0; i < workerThreads; i++) {
+            queues.add(new ArrayBlockingQueue<>(queueSize / workerThreads));
+        }
+        metrics.register(MetricRegistry.name(name, "queueDepth"), (Gauge<Integer>) this::getQueueDepth);
+        forwardLatency = metrics.timer(MetricRegistry.name(name, "forwardLatency"));
+        failuresMeter = metrics.meter(MetricRegistry.name(name, "failures"));
+        droppedMeter = metrics.meter(MetricRegistry.name(name, "dropped"));
+    }
+
+    /**
+     * @return a forwarder that forwards the situations directly on the calling thread, without retrying
+     */
+    public static SituationForwarder synchronous(SituationDatasource situationDatasource) {
+        return new SituationForwarder("forwarder", situationDatasource, 1, 1, 0, 0, new MetricRegistry(), true);
+    }
+
+    public synchronized void start() {
+        if (synchronous || running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < queues.size(); i++) {
+            final BlockingQueue<Situation> queue = queues.get(i);
+            final Thread worker = new Thread(() -> run(queue), "alec-" + name + "-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Submits a situation for forwarding, blocking while the queue for the situation is full.
+     *
+     * @param situation the situation to forward
+     */
+    public void forward(Situation situation) {
+        Objects.requireNonNull(situation);
+        if (synchronous) {
+            forwardWithRetries(situation);
+            return;
+        }
+
+        final BlockingQueue<Situation> queue = queues.get(Math.floorMod(Objects.hashCode(situation.getId()),
+                queues.size()));
+        runningLock.readLock().lock();
+        try {
+            if (!running) {
+                LOG.warn("Forwarder {} is not running. The situation will be lost: {}", name, situation);
+                droppedMeter.mark();
+                return;
+            }
+            synchronized (idleLock) {
+                outstanding++;
+            }
+            // The workers keep polling while we hold the read lock, so there will be room in the queue eventually
+            queue.put(situation);
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while waiting for room in the queue of forwarder {}. The situation will be lost: {}",
+                    name, situation);
+            droppedMeter.mark();
+            completed();
+            Thread.currentThread().interrupt();
+        } finally {
+            runningLock.readLock().unlock();
+        }
+    }
+
+    private void run(BlockingQueue<Situation> queue) {
+        try {
+            while (true) {
+                final Situation situation = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (situation == null) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    forwardWithRetries(situation);
+                } finally {
+                    completed();
+                }
+            }
+        } catch (InterruptedException e) {
+            LOG.debug("Forwarder {} was interrupted.", name);
+        }
+    }
+
+    private void forwardWithRetries(Situation situation) {
+        long backoffMs = initialBackoffMs;
+        for (int attempt = 0; ; attempt++) {
+            try (Timer.Context ignored = forwardLatency.time()) {
+                LOG.debug("Forwarding situation: {}", situation);
+                situationDatasource.forwardSituation(situation);
+                LOG.debug("Successfully forwarded situation.");
+                return;
+            } catch (Exception e) {
+                failuresMeter.mark();
+                if (attempt >= maxRetries) {
+                    LOG.error("An error occurred while forwarding situation: {}. The situation will be lost.",
+                            situation, e);
+                    droppedMeter.mark();
+                    return;
+                }
+                LOG.warn("An error occurred while forwarding situation: {}. Retrying in {}ms.", situation, backoffMs,
+                        e);
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while waiting to retry. The situation will be lost: {}", situation);
+                droppedMeter.mark();
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    private void completed() {
+        synchronized (idleLock) {
+            outstanding--;
+            if (outstanding == 0) {
+                idleLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until all of the submitted situations were forwarded or given up on.
+     *
+     * @return true if the forwarder is idle, false if the timeout elapsed
+     */
+    @VisibleForTesting
+    boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (idleLock) {
+            while (outstanding > 0) {
+                final long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    return false;
+                }
+                idleLock.wait(remainingMs);
+            }
+            return true;
+        }
+    }
+
+    public int getQueueDepth() {
+        return queues.stream().mapToInt(BlockingQueue::size).sum();
+    }
+
+    /**
+     * Stops accepting new situations, and waits for the workers to drain the situations that are already queued.
+     * Situations that are left in the queues once the workers stopped are dropped.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        // Wait for the callers that are enqueuing to finish
+        runningLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while waiting for forwarder {} to drain.", name);
+                Thread.currentThread().interrupt();
+            }
+            if (worker.isAlive()) {
+                LOG.warn("Forwarder {} did not drain in time. {} situations will be lost.", name, getQueueDepth());
+                worker.interrupt();
+            }
+        }
+        workers.clear();
+
+        // Account for the situations the workers did not get to, so that nothing is left outstanding
+        for (BlockingQueue<Situation> queue : queues) {
+            Situation situation;
+            while ((situation = queue.poll()) != null) {
+                LOG.warn("Forwarder {} was closed. The situation will be lost: {}", name, situation);
+                droppedMeter.mark();
+                completed();
+            }
+        }
+    }
+}
@@ -44,11 +44,31 @@ public interface SituationProcessor {
     void accept(Situation situation);
 
     /**
-     * Confirm that a situation alarm was received for the generated situation. Implementing this method is optional and
-     * defaults to a no-op.
+     * Checks if this processor is currently responsible for forwarding situations, as opposed to standing by for
+     * another member. Defaults to true.
+     *
+     * @return true if active, false otherwise
+     */
+    default boolean isActive() {
+        return true;
+    }
+
+    /**
+     * Confirm that a situation alarm was received for the generated situation. Delegates to
+     * {@link #confirm(SituationFingerprint)}.
      *
      * @param reductionKeysInAlarm the reduction keys contained in the individual alarms in the situation
      */
     default void confirm(Set<String> reductionKeysInAlarm) {
+        confirm(SituationFingerprint.of(reductionKeysInAlarm));
+    }
+
+    /**
+     * Confirm that a situation alarm was received for the generated situation. Implementing this method is optional and
+     * defaults to a no-op.
+     *
+     * @param fingerprint the fingerprint of the reduction keys contained in the individual alarms in the situation
+     */
+    default void confirm(SituationFingerprint fingerprint) {
     }
 }
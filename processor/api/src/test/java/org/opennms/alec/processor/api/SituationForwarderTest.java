@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.processor.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.alec.datasource.api.Situation;
+import org.opennms.alec.datasource.api.SituationDatasource;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Tests for {@link SituationForwarder}.
+ */
+public class SituationForwarderTest {
+    private final SituationDatasource situationDatasource = mock(SituationDatasource.class);
+    private final MetricRegistry metrics = new MetricRegistry();
+    private SituationForwarder forwarder;
+
+    @After
+    public void tearDown() {
+        if (forwarder != null) {
+            forwarder.close();
+        }
+    }
+
+    /**
+     * Test that the caller does not wait for the situation to be forwarded, and that the versions of a situation are
+     * forwarded in the order they were submitted.
+     */
+    @Test
+    public void testForwardsAsynchronouslyInOrderPerSituation() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> forwarded = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            release.await();
+            Situation situation = invocation.getArgument(0);
+            forwarded.add(situation.getId() + ":" + situation.getDiagnosticText());
+            return null;
+        }).when(situationDatasource).forwardSituation(any(Situation.class));
+
+        forwarder = new SituationForwarder("forwarder", situationDatasource, 100, 4, 0, 0, metrics);
+        forwarder.start();
+
+        for (int version = 0; version < 10; version++) {
+            for (String id : new String[]{"a", "b", "c"}) {
+                forwarder.forward(situation(id, Integer.toString(version)));
+            }
+        }
+        // Nothing could be forwarded yet, we did not block on the downstream handling
+        assertTrue(forwarder.getQueueDepth() > 0);
+        release.countDown();
+
+        assertTrue(forwarder.awaitIdle(10, TimeUnit.SECONDS));
+        assertEquals(30, forwarded.size());
+        for (String id : new String[]{"a", "b", "c"}) {
+            int expectedVersion = 0;
+            for (String entry : forwarded) {
+                if (entry.startsWith(id + ":")) {
+                    assertEquals(id + ":" + expectedVersion++, entry);
+                }
+            }
+            assertEquals(10, expectedVersion);
+        }
+        assertEquals(30, metrics.timer("forwarder.forwardLatency").getCount());
+        assertEquals(0, metrics.meter("forwarder.failures").getCount());
+    }
+
+    /**
+     * Test that failed forwards are retried.
+     */
+    @Test
+    public void testRetries() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("unavailable");
+            }
+            return null;
+        }).when(situationDatasource).forwardSituation(any(Situation.class));
+
+        forwarder = new SituationForwarder("forwarder", situationDatasource, 10, 1, 3, 1, metrics);
+        forwarder.start();
+        forwarder.forward(situation("a", "0"));
+
+        assertTrue(forwarder.awaitIdle(10, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+        assertEquals(2, metrics.meter("forwarder.failures").getCount());
+        assertEquals(0, metrics.meter("forwarder.dropped").getCount());
+    }
+
+    /**
+     * Test that we give up on a situation once the retries are exhausted, and move on to the next one.
+     */
+    @Test
+    public void testGivesUpAfterMaxRetries() throws Exception {
+        final List<String> forwarded = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            Situation situation = invocation.getArgument(0);
+            if ("bad".equals(situation.getDiagnosticText())) {
+                throw new IllegalStateException("rejected");
+            }
+            forwarded.add(situation.getDiagnosticText());
+            return null;
+        }).when(situationDatasource).forwardSituation(any(Situation.class));
+
+        forwarder = new SituationForwarder("forwarder", situationDatasource, 10, 1, 2, 1, metrics);
+        forwarder.start();
+        forwarder.forward(situation("a", "bad"));
+        forwarder.forward(situation("a", "good"));
+
+        assertTrue(forwarder.awaitIdle(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("good"), forwarded);
+        assertEquals(3, metrics.meter("forwarder.failures").getCount());
+        assertEquals(1, metrics.meter("forwarder.dropped").getCount());
+    }
+
+    /**
+     * Test that the synchronous forwarder forwards on the calling thread.
+     */
+    @Test
+    public void testSynchronous() throws Exception {
+        final List<Thread> threads = new ArrayList<>();
+        doAnswer(invocation -> {
+            threads.add(Thread.currentThread());
+            return null;
+        }).when(situationDatasource).forwardSituation(any(Situation.class));
+
+        SituationForwarder.synchronous(situationDatasource).forward(situation("a", "0"));
+        assertEquals(Collections.singletonList(Thread.currentThread()), threads);
+    }
+
+    /**
+     * Test that situations queued before closing are still forwarded.
+     */
+    @Test
+    public void testCloseDrainsQueue() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        doAnswer(invocation -> {
+            Thread.sleep(5);
+            count.incrementAndGet();
+            return null;
+        }).when(situationDatasource).forwardSituation(any(Situation.class));
+
+        forwarder = new SituationForwarder("forwarder", situationDatasource, 100, 2, 0, 0, metrics);
+        forwarder.start();
+        for (int i = 0; i < 20; i++) {
+            forwarder.forward(situation("s" + i, "0"));
+        }
+        forwarder.close();
+        assertEquals(20, count.get());
+
+        // Situations submitted after closing are dropped
+        forwarder.forward(situation("late", "0"));
+        assertEquals(20, count.get());
+        assertNotEquals(0, metrics.meter("forwarder.dropped").getCount());
+    }
+
+    /**
+     * Test that every situation submitted while closing is either forwarded or dropped, and none is left queued.
+     */
+    @Test(timeout = 30000)
+    public void testCloseWhileForwarding() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        doAnswer(invocation -> {
+            count.incrementAndGet();
+            return null;
+        }).when(situationDatasource).forwardSituation(any(Situation.class));
+
+        forwarder = new SituationForwarder("forwarder", situationDatasource, 4, 2, 0, 0, metrics);
+        forwarder.start();
+        final int numThreads = 4;
+        final int numSituationsPerThread = 500;
+        final CountDownLatch started = new CountDownLatch(numThreads);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            final int thread = i;
+            threads.add(new Thread(() -> {
+                started.countDown();
+                for (int j = 0; j < numSituationsPerThread; j++) {
+                    forwarder.forward(situation("s" + thread + "-" + j, "0"));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        started.await();
+        forwarder.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, forwarder.getQueueDepth());
+        assertTrue(forwarder.awaitIdle(0, TimeUnit.MILLISECONDS));
+        assertEquals(numThreads * numSituationsPerThread,
+                count.get() + metrics.meter("forwarder.dropped").getCount());
+    }
+
+    private static Situation situation(String id, String version) {
+        Situation situation = mock(Situation.class);
+        when(situation.getId()).thenReturn(id);
+        // Use the diagnostic text to tell the versions apart
+        when(situation.getDiagnosticText()).thenReturn(version);
+        return situation;
+    }
+}
@@ -29,26 +29,35 @@
 package org.opennms.alec.processor.redundant;
 
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import org.opennms.integration.api.v1.coordination.DomainManager;
 import org.opennms.integration.api.v1.coordination.DomainManagerFactory;
 import org.opennms.integration.api.v1.coordination.Role;
 import org.opennms.integration.api.v1.coordination.RoleChangeHandler;
-import org.opennms.alec.datasource.api.Alarm;
 import org.opennms.alec.datasource.api.Situation;
 import org.opennms.alec.datasource.api.SituationDatasource;
+import org.opennms.alec.processor.api.SituationFingerprint;
+import org.opennms.alec.processor.api.SituationForwarder;
 import org.opennms.alec.processor.api.SituationProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 /**
  * A situation processor that uses active-standby redundancy. The active member immediately forwards situations while
  * standby members queue situations and listen to make sure the situation was processed by the active. In the event of
@@ -71,15 +80,20 @@ public class ActiveStandbySituationProcessor implements SituationProcessor, Role
      */
     private static final String ALEC_SERVICE_ID = "alec.driver";
 
+    /**
+     * The default time to live for unconfirmed situations in milliseconds.
+     */
+    static final long DEFAULT_UNCONFIRMED_SITUATION_TTL_MS = TimeUnit.MINUTES.toMillis(1);
+
     /**
      * The domain manager.
      */
     private final DomainManager domainManager;
 
     /**
-     * The situation data source.
+     * The forwarder used to forward situations to the situation data source.
      */
-    private final SituationDatasource situationDatasource;
+    private final SituationForwarder situationForwarder;
 
     /**
      * The current role.
@@ -87,14 +101,44 @@ public class ActiveStandbySituationProcessor implements SituationProcessor, Role
     private Role currentRole = Role.UNKNOWN;
 
     /**
-     * The map of unconfirmed situations. The key for this map is the set of reduction keys for the alarms correlated to
-     * this situation.
+     * The map of unconfirmed situations. The key for this map is the fingerprint of the reduction keys for the alarms
+     * correlated to this situation.
      * <p>
-     * Entries in this map will age out after one minute. Therefore if a situation takes greater than this time to
-     * complete a round trip then it can potentially be dropped in the case of a switchover.
+     * Entries in this map will age out after {@link #unconfirmedSituationTtlMs}. Therefore if a situation takes greater
+     * than this time to complete a round trip then it can potentially be dropped in the case of a switchover.
      */
-    private final Map<Set<String>, Situation> unconfirmedSituations = SynchronizedExpiringLinkedHashMap.newInstance(1,
-            TimeUnit.MINUTES);
+    private final ConcurrentMap<SituationFingerprint, UnconfirmedSituation> unconfirmedSituations =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The sequence used to preserve the order in which situations were stored.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * The time to live for unconfirmed situations in milliseconds.
+     */
+    private final long unconfirmedSituationTtlMs;
+
+    /**
+     * The expirer used to age out unconfirmed situations.
+     */
+    private final TimingWheelExpirer expirer;
+
+    /**
+     * Whether the expirer was created for this instance and must be closed when it is destroyed.
+     */
+    private final boolean ownsExpirer;
+
+    /**
+     * The time taken between storing a situation and receiving its confirmation.
+     */
+    private final Timer confirmationLatency;
+
+    /**
+     * The rate at which unconfirmed situations age out.
+     */
+    private final Meter expiredSituations;
 
     /**
      * Private Constructor.
@@ -102,13 +146,29 @@ public class ActiveStandbySituationProcessor implements SituationProcessor, Role
      * Factory methods must perform the registration with the {@link #domainManager} or this instance will never become
      * active.
      *
-     * @param situationDatasource   the situation data source
-     * @param domainManagerFactory the domain manager factory
+     * @param situationForwarder        the forwarder used to forward situations
+     * @param domainManagerFactory      the domain manager factory
+     * @param unconfirmedSituationTtlMs the time to live for unconfirmed situations in milliseconds
+     * @param expirer                   the expirer used to age out unconfirmed situations
+     * @param ownsExpirer               whether to close the expirer when this instance is destroyed
+     * @param metrics                   the metric registry
      */
-    private ActiveStandbySituationProcessor(SituationDatasource situationDatasource,
-                                            DomainManagerFactory domainManagerFactory) {
-        this.situationDatasource = Objects.requireNonNull(situationDatasource);
+    private ActiveStandbySituationProcessor(SituationForwarder situationForwarder,
+                                            DomainManagerFactory domainManagerFactory,
+                                            long unconfirmedSituationTtlMs, TimingWheelExpirer expirer,
+                                            boolean ownsExpirer, MetricRegistry metrics) {
+        this.situationForwarder = Objects.requireNonNull(situationForwarder);
         domainManager = Objects.requireNonNull(domainManagerFactory).getManagerForDomain(ALEC_DOMAIN);
+        if (unconfirmedSituationTtlMs <= 0) {
+            throw new IllegalArgumentException("The unconfirmed situation TTL must be positive");
+        }
+        this.unconfirmedSituationTtlMs = unconfirmedSituationTtlMs;
+        this.expirer = Objects.requireNonNull(expirer);
+        this.ownsExpirer = ownsExpirer;
+        metrics.register(MetricRegistry.name("situations", "unconfirmed"),
+                (Gauge<Integer>) unconfirmedSituations::size);
+        confirmationLatency = metrics.timer(MetricRegistry.name("situations", "confirmationLatency"));
+        expiredSituations = metrics.meter(MetricRegistry.name("situations", "expired"));
     }
 
     /**
@@ -120,8 +180,52 @@ public class ActiveStandbySituationProcessor implements SituationProcessor, Role
      */
     static ActiveStandbySituationProcessor newInstance(SituationDatasource situationDatasource,
                                                        DomainManagerFactory domainManagerFactory) {
-        ActiveStandbySituationProcessor instance = new ActiveStandbySituationProcessor(situationDatasource,
-                domainManagerFactory);
+        return newInstance(SituationForwarder.synchronous(situationDatasource), domainManagerFactory,
+                DEFAULT_UNCONFIRMED_SITUATION_TTL_MS, new MetricRegistry());
+    }
+
+    /**
+     * Factory method with a configurable time to live for unconfirmed situations. The instance creates its own
+     * expirer, which is closed when the instance is destroyed.
+     *
+     * @param situationForwarder        the forwarder used to forward situations
+     * @param domainManagerFactory      the domain manager factory
+     * @param unconfirmedSituationTtlMs the time to live for unconfirmed situations in milliseconds
+     * @param metrics                   the metric registry
+     * @return a new {@link ActiveStandbySituationProcessor} instance
+     */
+    static ActiveStandbySituationProcessor newInstance(SituationForwarder situationForwarder,
+                                                       DomainManagerFactory domainManagerFactory,
+                                                       long unconfirmedSituationTtlMs, MetricRegistry metrics) {
+        return newInstance(situationForwarder, domainManagerFactory, unconfirmedSituationTtlMs,
+                new TimingWheelExpirer(), true, metrics);
+    }
+
+    /**
+     * Factory method with a specific expirer. The expirer is not closed when the instance is destroyed.
+     *
+     * @param situationForwarder        the forwarder used to forward situations
+     * @param domainManagerFactory      the domain manager factory
+     * @param unconfirmedSituationTtlMs the time to live for unconfirmed situations in milliseconds
+     * @param expirer                   the expirer used to age out unconfirmed situations
+     * @param metrics                   the metric registry
+     * @return a new {@link ActiveStandbySituationProcessor} instance
+     */
+    static ActiveStandbySituationProcessor newInstance(SituationForwarder situationForwarder,
+                                                       DomainManagerFactory domainManagerFactory,
+                                                       long unconfirmedSituationTtlMs, TimingWheelExpirer expirer,
+                                                       MetricRegistry metrics) {
+        return newInstance(situationForwarder, domainManagerFactory, unconfirmedSituationTtlMs, expirer, false,
+                metrics);
+    }
+
+    private static ActiveStandbySituationProcessor newInstance(SituationForwarder situationForwarder,
+                                                               DomainManagerFactory domainManagerFactory,
+                                                               long unconfirmedSituationTtlMs,
+                                                               TimingWheelExpirer expirer, boolean ownsExpirer,
+                                                               MetricRegistry metrics) {
+        ActiveStandbySituationProcessor instance = new ActiveStandbySituationProcessor(situationForwarder,
+                domainManagerFactory, unconfirmedSituationTtlMs, expirer, ownsExpirer, metrics);
         LOG.debug("Registering service {} for domain {}", ALEC_SERVICE_ID, ALEC_DOMAIN);
         // The domain registration has to happen after the instance has been created to prevent leaking a 'this'
         // reference that may be used by the domain manager before the processor has been fully constructed
@@ -135,7 +239,8 @@ public class ActiveStandbySituationProcessor implements SituationProcessor, Role
      *
      * @return true if active, false otherwise
      */
-    private synchronized boolean isActive() {
+    @Override
+    public synchronized boolean isActive() {
         return currentRole == Role.ACTIVE;
     }
 
@@ -146,25 +251,56 @@ public class ActiveStandbySituationProcessor implements SituationProcessor, Role
      */
     private void storeSituation(Situation situation) {
         LOG.debug("Storing situation {}", situation);
-        Set<String> reductionKeys = situation.getAlarms().stream()
-                .map(Alarm::getId)
-                .collect(Collectors.toSet());
-        unconfirmedSituations.put(Collections.unmodifiableSet(reductionKeys), situation);
+        SituationFingerprint fingerprint = SituationFingerprint.of(situation);
+        UnconfirmedSituation unconfirmedSituation = new UnconfirmedSituation(fingerprint,
+                sequence.incrementAndGet(), situation);
+        UnconfirmedSituation previous = unconfirmedSituations.put(fingerprint, unconfirmedSituation);
+        if (previous != null) {
+            previous.cancelExpiry();
+        }
+        // Scheduled after the put so that the expiry can never run before the entry is in the map
+        unconfirmedSituation.expiry = expirer.schedule(unconfirmedSituationTtlMs, TimeUnit.MILLISECONDS,
+                () -> expire(unconfirmedSituation));
+    }
+
+    /**
+     * Age out an unconfirmed situation unless it was confirmed or replaced in the meantime.
+     *
+     * @param unconfirmedSituation the unconfirmed situation
+     */
+    private void expire(UnconfirmedSituation unconfirmedSituation) {
+        if (unconfirmedSituations.remove(unconfirmedSituation.fingerprint, unconfirmedSituation)) {
+            LOG.debug("Situation {} was not confirmed in time", unconfirmedSituation.situation);
+            expiredSituations.mark();
+        }
+    }
+
+    /**
+     * Get the unconfirmed situations in the order in which they were stored.
+     *
+     * @return the unconfirmed situations
+     */
+    private List<UnconfirmedSituation> getOrderedUnconfirmedSituations() {
+        return unconfirmedSituations.values().stream()
+                .sorted(Comparator.comparingLong(u -> u.sequence))
+                .collect(Collectors.toList());
     }
 
     /**
      * Forwards all situations that were queued while standby.
      */
     private void catchupSituations() {
-        synchronized (unconfirmedSituations) {
-            LOG.debug("Catching up stored situations");
-
-            for (Iterator<Map.Entry<Set<String>, Situation>> iter = unconfirmedSituations.entrySet().iterator();
-                 iter.hasNext() && isActive(); ) {
-                Situation situation = iter.next().getValue();
-                LOG.debug("Catching up situation {}", situation);
-                forwardSituation(situation);
-                iter.remove();
+        LOG.debug("Catching up stored situations");
+
+        for (UnconfirmedSituation unconfirmedSituation : getOrderedUnconfirmedSituations()) {
+            if (!isActive()) {
+                break;
+            }
+            // Only forward the situation if it was not confirmed, expired or caught up concurrently
+            if (unconfirmedSituations.remove(unconfirmedSituation.fingerprint, unconfirmedSituation)) {
+                unconfirmedSituation.cancelExpiry();
+                LOG.debug("Catching up situation {}", unconfirmedSituation.situation);
+                forwardSituation(unconfirmedSituation.situation);
             }
         }
     }
@@ -174,15 +310,8 @@ public class ActiveStandbySituationProcessor implements SituationProcessor, Role
      *
      * @param situation the situation to forward
      */
-    @SuppressWarnings("Duplicates")
     private void forwardSituation(Situation situation) {
-        try {
-            LOG.debug("Forwarding situation: {}", situation);
-            situationDatasource.forwardSituation(situation);
-            LOG.debug("Successfully forwarded situation.");
-        } catch (Exception e) {
-            LOG.error("An error occurred while forwarding situation: {}. The situation will be lost.", situation, e);
-        }
+        situationForwarder.forward(situation);
     }
 
     /**
@@ -195,11 +324,14 @@ public class ActiveStandbySituationProcessor implements SituationProcessor, Role
     }
 
     /**
-     * Deregister with the domain manager.
+     * Deregister with the domain manager, and stop the expirer if it was created for this instance.
      */
     void destroy() {
         LOG.debug("Deregistering service {}", ALEC_SERVICE_ID);
         domainManager.deregister(ALEC_SERVICE_ID);
+        if (ownsExpirer) {
+            expirer.close();
+        }
     }
 
     /**
@@ -207,8 +339,10 @@ public class ActiveStandbySituationProcessor implements SituationProcessor, Role
      *
      * @return a copy of the current unconfirmed situations map
      */
-    Map<Set<String>, Situation> getUnconfirmedSituations() {
-        return Collections.unmodifiableMap(new LinkedHashMap<>(unconfirmedSituations));
+    Map<SituationFingerprint, Situation> getUnconfirmedSituations() {
+        Map<SituationFingerprint, Situation> copy = new LinkedHashMap<>();
+        getOrderedUnconfirmedSituations().forEach(u -> copy.put(u.fingerprint, u.situation));
+        return Collections.unmodifiableMap(copy);
     }
 
     @Override
@@ -223,9 +357,14 @@ public class ActiveStandbySituationProcessor implements SituationProcessor, Role
     }
 
     @Override
-    public void confirm(Set<String> reductionKeysInAlarm) {
-        LOG.debug("Confirming alarm with key {}", reductionKeysInAlarm);
-        unconfirmedSituations.remove(reductionKeysInAlarm);
+    public void confirm(SituationFingerprint fingerprint) {
+        LOG.debug("Confirming alarm with fingerprint {}", fingerprint);
+        UnconfirmedSituation unconfirmedSituation = unconfirmedSituations.remove(fingerprint);
+        if (unconfirmedSituation != null) {
+            unconfirmedSituation.cancelExpiry();
+            confirmationLatency.update(System.nanoTime() - unconfirmedSituation.storedAtNanos,
+                    TimeUnit.NANOSECONDS);
+        }
     }
 
     @Override
@@ -237,4 +376,29 @@ public class ActiveStandbySituationProcessor implements SituationProcessor, Role
             CompletableFuture.runAsync(this::catchupSituations);
         }
     }
+
+    /**
+     * A situation waiting to be confirmed.
+     */
+    private static final class UnconfirmedSituation {
+        private final SituationFingerprint fingerprint;
+        private final long sequence;
+        private final long storedAtNanos = System.nanoTime();
+        private final Situation situation;
+        private volatile TimingWheelExpirer.Timeout expiry;
+
+        private UnconfirmedSituation(SituationFingerprint fingerprint, long sequence, Situation situation) {
+            this.fingerprint = fingerprint;
+            this.sequence = sequence;
+            this.situation = situation;
+        }
+
+        private void cancelExpiry() {
+            TimingWheelExpirer.Timeout timeout = expiry;
+            // A missing expiry is harmless since it will not find this entry in the map once it runs
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
 }
@@ -30,9 +30,12 @@ package org.opennms.alec.processor.redundant;
 
 import org.opennms.integration.api.v1.coordination.DomainManagerFactory;
 import org.opennms.alec.datasource.api.SituationDatasource;
+import org.opennms.alec.processor.api.SituationForwarder;
 import org.opennms.alec.processor.api.SituationProcessor;
 import org.opennms.alec.processor.api.SituationProcessorFactory;
 
+import com.codahale.metrics.MetricRegistry;
+
 /**
  * A factory that supplies a singleton {@link ActiveStandbySituationProcessor}.
  */
@@ -52,6 +55,39 @@ public class ActiveStandbySituationProcessorFactory implements SituationProcesso
         INSTANCE = ActiveStandbySituationProcessor.newInstance(situationDatasource, domainManagerFactory);
     }
 
+    /**
+     * Constructor.
+     *
+     * @param situationForwarder        the forwarder used to forward situations
+     * @param domainManagerFactory      the domain manager factory
+     * @param unconfirmedSituationTtlMs the time to live for unconfirmed situations in milliseconds
+     * @param metrics                   the metric registry
+     */
+    public ActiveStandbySituationProcessorFactory(SituationForwarder situationForwarder,
+                                                  DomainManagerFactory domainManagerFactory,
+                                                  long unconfirmedSituationTtlMs, MetricRegistry metrics) {
+        INSTANCE = ActiveStandbySituationProcessor.newInstance(situationForwarder, domainManagerFactory,
+                unconfirmedSituationTtlMs, metrics);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param situationForwarder        the forwarder used to forward situations
+     * @param domainManagerFactory      the domain manager factory
+     * @param unconfirmedSituationTtlMs the time to live for unconfirmed situations in milliseconds
+     * @param expirer                   the expirer used to age out unconfirmed situations, which is managed by the
+     *                                  caller
+     * @param metrics                   the metric registry
+     */
+    public ActiveStandbySituationProcessorFactory(SituationForwarder situationForwarder,
+                                                  DomainManagerFactory domainManagerFactory,
+                                                  long unconfirmedSituationTtlMs, TimingWheelExpirer expirer,
+                                                  MetricRegistry metrics) {
+        INSTANCE = ActiveStandbySituationProcessor.newInstance(situationForwarder, domainManagerFactory,
+                unconfirmedSituationTtlMs, expirer, metrics);
+    }
+
     /**
      * Destroy the instance.
      */
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.processor.redundant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A hashed timing wheel that runs tasks once their delay has elapsed.
+ * <p>
+ * Scheduling a task is a single append to the queue of the bucket the deadline falls into and all of the tasks are
+ * driven by one thread that advances the wheel by one bucket per tick. Tasks run on that thread and are
+ * expected to be short. The precision of the deadlines is bounded by the tick duration.
+ */
+public class TimingWheelExpirer implements AutoCloseable {
+    /**
+     * The logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelExpirer.class);
+
+    /**
+     * The default duration of a tick in milliseconds.
+     */
+    private static final long DEFAULT_TICK_DURATION_MS = 1000;
+
+    /**
+     * The default number of buckets in the wheel.
+     */
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * The duration of a tick in nanoseconds.
+     */
+    private final long tickNanos;
+
+    /**
+     * The buckets of the wheel, indexed by tick modulo the size of the wheel.
+     */
+    private final List<Queue<Timeout>> wheel;
+
+    /**
+     * The time the wheel started at.
+     */
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * The last tick whose bucket has been processed. Only written by the wheel thread.
+     */
+    private volatile long processedTick = 0;
+
+    /**
+     * The executor that drives the wheel.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Constructor with the default tick duration and wheel size. The wheel runs until it is closed.
+     */
+    public TimingWheelExpirer() {
+        this(DEFAULT_TICK_DURATION_MS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tickDuration the duration of a tick
+     * @param timeUnit     the time unit for the tick duration
+     * @param wheelSize    the number of buckets in the wheel
+     */
+    TimingWheelExpirer(long tickDuration, TimeUnit timeUnit, int wheelSize) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("The tick duration and wheel size must be positive");
+        }
+        tickNanos = timeUnit.toNanos(tickDuration);
+        wheel = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            wheel.add(new ConcurrentLinkedQueue<>());
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("ALEC Timing Wheel Expirer")
+                .setDaemon(true)
+                .build());
+        executor.scheduleAtFixedRate(this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Schedule a task to run once the given delay has elapsed.
+     *
+     * @param delay    the delay
+     * @param timeUnit the time unit for the delay
+     * @param task     the task to run
+     * @return a handle that can be used to cancel the task
+     */
+    public Timeout schedule(long delay, TimeUnit timeUnit, Runnable task) {
+        long elapsedNanos = System.nanoTime() - startNanos + timeUnit.toNanos(Math.max(0, delay));
+        // Round up so that tasks never run before their delay has elapsed
+        long deadlineTick = (elapsedNanos + tickNanos - 1) / tickNanos;
+        Timeout timeout = new Timeout(deadlineTick, Objects.requireNonNull(task));
+
+        while (true) {
+            long tick = Math.max(deadlineTick, processedTick + 1);
+            Queue<Timeout> bucket = bucketFor(tick);
+            bucket.add(timeout);
+            // If the wheel moved past the bucket while we were adding to it the timeout would only be seen on the next
+            // revolution, try again unless the wheel thread has already taken it
+            if (processedTick < tick || !bucket.remove(timeout)) {
+                return timeout;
+            }
+        }
+    }
+
+    /**
+     * Process the buckets for all of the ticks that have elapsed since the last time the wheel advanced.
+     */
+    private void advance() {
+        long currentTick = (System.nanoTime() - startNanos) / tickNanos;
+        while (processedTick < currentTick) {
+            long tick = processedTick + 1;
+            Queue<Timeout> bucket = bucketFor(tick);
+            List<Timeout> pending = new ArrayList<>();
+            Timeout timeout;
+            while ((timeout = bucket.poll()) != null) {
+                if (timeout.deadlineTick <= tick) {
+                    timeout.expire();
+                } else {
+                    // Due on a later revolution of the wheel
+                    pending.add(timeout);
+                }
+            }
+            bucket.addAll(pending);
+            processedTick = tick;
+        }
+    }
+
+    /**
+     * Gets the bucket for the given tick.
+     *
+     * @param tick the tick
+     * @return the bucket
+     */
+    private Queue<Timeout> bucketFor(long tick) {
+        return wheel.get((int) (tick % wheel.size()));
+    }
+
+    /**
+     * Stop the wheel. Pending tasks will not run.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Checks if the wheel was stopped.
+     *
+     * @return true if the wheel was closed, false otherwise
+     */
+    boolean isClosed() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * A handle to a scheduled task.
+     */
+    public static final class Timeout {
+        /**
+         * The tick the task is due at.
+         */
+        private final long deadlineTick;
+
+        /**
+         * The task to run, null once the task has run or was cancelled.
+         */
+        private volatile Runnable task;
+
+        private Timeout(long deadlineTick, Runnable task) {
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+
+        /**
+         * Cancel the task if it has not run yet. The entry is discarded when the wheel reaches its bucket.
+         */
+        public void cancel() {
+            task = null;
+        }
+
+        /**
+         * Checks if the task was cancelled or has run.
+         *
+         * @return true if the task will not run, false otherwise
+         */
+        public boolean isDone() {
+            return task == null;
+        }
+
+        private void expire() {
+            Runnable toRun = task;
+            task = null;
+            if (toRun != null) {
+                try {
+                    toRun.run();
+                } catch (Exception e) {
+                    LOG.warn("An error occurred while running an expiry task.", e);
+                }
+            }
+        }
+    }
+}
@@ -30,6 +30,7 @@ package org.opennms.alec.processor.redundant;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
@@ -51,6 +52,10 @@ import org.opennms.integration.api.v1.coordination.Role;
 import org.opennms.alec.datasource.api.Alarm;
 import org.opennms.alec.datasource.api.Situation;
 import org.opennms.alec.datasource.api.SituationDatasource;
+import org.opennms.alec.processor.api.SituationFingerprint;
+import org.opennms.alec.processor.api.SituationForwarder;
+
+import com.codahale.metrics.MetricRegistry;
 
 /**
  * Tests for {@link ActiveStandbySituationProcessor}.
@@ -107,8 +112,8 @@ public class ActiveStandbySituationProcessorTest {
 
         acceptAndVerifyMockSituationQueued();
 
-        Set<String> key = situationProcessor.getUnconfirmedSituations().keySet().iterator().next();
-        assertEquals(mockAlarmIds, key);
+        SituationFingerprint key = situationProcessor.getUnconfirmedSituations().keySet().iterator().next();
+        assertEquals(SituationFingerprint.of(mockAlarmIds), key);
     }
 
     /**
@@ -140,6 +145,56 @@ public class ActiveStandbySituationProcessorTest {
         assertEquals(0, situationProcessor.getUnconfirmedSituations().size());
     }
 
+    /**
+     * Test that unconfirmed situations age out after their time to live.
+     */
+    @Test
+    public void testExpiry() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        try (TimingWheelExpirer expirer = new TimingWheelExpirer(10, TimeUnit.MILLISECONDS, 8)) {
+            situationProcessor = ActiveStandbySituationProcessor.newInstance(
+                    SituationForwarder.synchronous(mockSituationDataSource), mockDomainManagerFactory, 100, expirer,
+                    metrics);
+            acceptAndVerifyMockSituationQueued();
+            assertEquals(1, metrics.getGauges().get("situations.unconfirmed").getValue());
+
+            await().atMost(10, TimeUnit.SECONDS).until(() ->
+                    situationProcessor.getUnconfirmedSituations().isEmpty());
+            assertEquals(1, metrics.meter("situations.expired").getCount());
+            assertEquals(0, metrics.getGauges().get("situations.unconfirmed").getValue());
+        }
+    }
+
+    /**
+     * Test that destroying the instance only stops the expirer if it was created for the instance.
+     */
+    @Test
+    public void testDestroyStopsOwnExpirerOnly() {
+        try (TimingWheelExpirer expirer = new TimingWheelExpirer(10, TimeUnit.MILLISECONDS, 8)) {
+            ActiveStandbySituationProcessor.newInstance(SituationForwarder.synchronous(mockSituationDataSource),
+                    mockDomainManagerFactory, 100, expirer, new MetricRegistry()).destroy();
+            assertFalse(expirer.isClosed());
+        }
+    }
+
+    /**
+     * Test that we record the confirmation latency.
+     */
+    @Test
+    public void testConfirmationLatency() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        situationProcessor = ActiveStandbySituationProcessor.newInstance(
+                SituationForwarder.synchronous(mockSituationDataSource), mockDomainManagerFactory, 60000, metrics);
+        acceptAndVerifyMockSituationQueued();
+        situationProcessor.confirm(mockAlarmIds);
+        assertEquals(0, situationProcessor.getUnconfirmedSituations().size());
+        assertEquals(1, metrics.timer("situations.confirmationLatency").getCount());
+
+        // Confirming again has no effect
+        situationProcessor.confirm(mockAlarmIds);
+        assertEquals(1, metrics.timer("situations.confirmationLatency").getCount());
+    }
+
     private void acceptAndVerifyMockSituationQueued() throws Exception {
         situationProcessor.accept(mockSituation);
         verify(mockSituationDataSource, times(0)).forwardSituation(mockSituation);
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2019 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2019 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.alec.processor.redundant;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TimingWheelExpirer}.
+ */
+public class TimingWheelExpirerTest {
+    private final TimingWheelExpirer expirer = new TimingWheelExpirer(10, TimeUnit.MILLISECONDS, 8);
+
+    @After
+    public void tearDown() {
+        expirer.close();
+    }
+
+    /**
+     * Test that tasks run in deadline order, including tasks due after more than one revolution of the wheel.
+     */
+    @Test
+    public void testRunsTasksAfterTheirDelay() {
+        List<Integer> expired = new CopyOnWriteArrayList<>();
+        long start = System.nanoTime();
+        expirer.schedule(300, TimeUnit.MILLISECONDS, () -> expired.add(300));
+        expirer.schedule(50, TimeUnit.MILLISECONDS, () -> expired.add(50));
+        expirer.schedule(150, TimeUnit.MILLISECONDS, () -> expired.add(150));
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> expired.size() == 3);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+        assertEquals(50, (int) expired.get(0));
+        assertEquals(150, (int) expired.get(1));
+        assertEquals(300, (int) expired.get(2));
+    }
+
+    /**
+     * Test that cancelled tasks do not run.
+     */
+    @Test
+    public void testCancel() {
+        List<String> expired = new CopyOnWriteArrayList<>();
+        TimingWheelExpirer.Timeout cancelled = expirer.schedule(50, TimeUnit.MILLISECONDS,
+                () -> expired.add("cancelled"));
+        TimingWheelExpirer.Timeout kept = expirer.schedule(100, TimeUnit.MILLISECONDS, () -> expired.add("kept"));
+        cancelled.cancel();
+
+        await().atMost(5, TimeUnit.SECONDS).until(kept::isDone);
+        assertEquals(1, expired.size());
+        assertEquals("kept", expired.get(0));
+    }
+
+    /**
+     * Test that a failing task does not stop the wheel.
+     */
+    @Test
+    public void testFailingTask() {
+        List<String> expired = new CopyOnWriteArrayList<>();
+        expirer.schedule(0, TimeUnit.MILLISECONDS, () -> {
+            throw new IllegalStateException("failed");
+        });
+        expirer.schedule(50, TimeUnit.MILLISECONDS, () -> expired.add("next"));
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> expired.size() == 1);
+    }
+
+    /**
+     * Test that closing the wheel stops its thread, and pending tasks do not run.
+     */
+    @Test
+    public void testClose() throws Exception {
+        List<String> expired = new CopyOnWriteArrayList<>();
+        expirer.schedule(50, TimeUnit.MILLISECONDS, () -> expired.add("pending"));
+        expirer.close();
+        assertTrue(expirer.isClosed());
+
+        Thread.sleep(100);
+        assertTrue(expired.isEmpty());
+    }
+}
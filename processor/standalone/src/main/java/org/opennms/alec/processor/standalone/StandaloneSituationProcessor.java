@@ -32,44 +32,38 @@ import java.util.Objects;
 
 import org.opennms.alec.datasource.api.Situation;
 import org.opennms.alec.datasource.api.SituationDatasource;
+import org.opennms.alec.processor.api.SituationForwarder;
 import org.opennms.alec.processor.api.SituationProcessor;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * A situation processor that immediately forwards all situations.
  */
 public class StandaloneSituationProcessor implements SituationProcessor {
     /**
-     * The logger.
+     * The forwarder used to forward situations to the situation data source.
      */
-    private static final Logger LOG = LoggerFactory.getLogger(StandaloneSituationProcessor.class);
+    private final SituationForwarder situationForwarder;
 
     /**
-     * The situation data source.
+     * Constructor that forwards situations on the calling thread.
+     *
+     * @param situationDatasource the situation data source
      */
-    private final SituationDatasource situationDatasource;
+    StandaloneSituationProcessor(SituationDatasource situationDatasource) {
+        this(SituationForwarder.synchronous(situationDatasource));
+    }
 
     /**
      * Constructor.
      *
-     * @param situationDatasource the situation data source
+     * @param situationForwarder the forwarder used to forward situations
      */
-    StandaloneSituationProcessor(SituationDatasource situationDatasource) {
-        this.situationDatasource = Objects.requireNonNull(situationDatasource);
+    StandaloneSituationProcessor(SituationForwarder situationForwarder) {
+        this.situationForwarder = Objects.requireNonNull(situationForwarder);
     }
 
     @Override
-    @SuppressWarnings("Duplicates")
     public void accept(Situation situation) {
-        Objects.requireNonNull(situation);
-
-        try {
-            LOG.debug("Forwarding situation: {}", situation);
-            situationDatasource.forwardSituation(situation);
-            LOG.debug("Successfully forwarded situation.");
-        } catch (Exception e) {
-            LOG.error("An error occurred while forwarding situation: {}. The situation will be lost.", situation, e);
-        }
+        situationForwarder.forward(Objects.requireNonNull(situation));
     }
 }
@@ -29,6 +29,7 @@
 package org.opennms.alec.processor.standalone;
 
 import org.opennms.alec.datasource.api.SituationDatasource;
+import org.opennms.alec.processor.api.SituationForwarder;
 import org.opennms.alec.processor.api.SituationProcessor;
 import org.opennms.alec.processor.api.SituationProcessorFactory;
 
@@ -50,6 +51,15 @@ public class StandaloneSituationProcessorFactory implements SituationProcessorFa
         INSTANCE = new StandaloneSituationProcessor(situationDatasource);
     }
 
+    /**
+     * Constructor.
+     *
+     * @param situationForwarder the forwarder used to forward situations
+     */
+    public StandaloneSituationProcessorFactory(SituationForwarder situationForwarder) {
+        INSTANCE = new StandaloneSituationProcessor(situationForwarder);
+    }
+
     @Override
     public SituationProcessor getInstance() {
         return INSTANCE;